@@ -113,6 +113,17 @@ class GrowableOrdinateArray {
         }
     }
 
+    /**
+     * Returns the backing array, without copying it. Only the first {@link #size()} values are
+     * meaningful, and the array gets replaced when the buffer grows
+     * 
+     * @return
+     */
+    double[] getDataArray() {
+        ensureLength(curr);
+        return data;
+    }
+
     /**
      * Turns the array of ordinates into a coordinate sequence
      * 
@@ -0,0 +1,201 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * The single feature updates and deletes of a transaction waiting to be sent to the database.
+ * <p>
+ * Consecutive writes sharing the same statement shape, that is, the same sql, are accumulated in
+ * a JDBC batch, which is executed once it reaches the batch size, when a write with a different
+ * shape comes in, or when the pending writes are flushed. The writes are thus executed in the
+ * order they were issued. The prepared statements are kept open until the pending writes are
+ * flushed, so that alternating shapes do not have to be prepared over and over. With plain
+ * statements all the writes go into the same batch, in order.
+ * <p>
+ * Errors are reported when the batch holding the failing write is executed, possibly on a
+ * later write, or on commit.
+ *
+ * @source $URL$
+ */
+class BatchedWrites {
+
+    static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger(BatchedWrites.class);
+
+    /** the key of the plain statement batch */
+    static final String PLAIN = "";
+
+    JDBCDataStore dataStore;
+
+    Connection cx;
+
+    int batchSize;
+
+    /** the statements prepared so far, by sql */
+    Map<String, Batch> batches = new HashMap<String, Batch>();
+
+    /** the batch holding the pending writes, if any */
+    Batch pending;
+
+    BatchedWrites(JDBCDataStore dataStore, Connection cx, int batchSize) {
+        this.dataStore = dataStore;
+        this.cx = cx;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the prepared statement the write has to be added to, after executing the pending
+     * writes if they have a different shape. The caller is supposed to set the statement
+     * parameters and then call {@link #add(String)}
+     */
+    PreparedStatement prepare(String sql, SimpleFeatureType featureType, boolean delete)
+            throws SQLException, IOException {
+        Batch batch = batches.get(sql);
+        if (batch == null) {
+            PreparedStatement ps = cx.prepareStatement(sql);
+            PreparedStatementSQLDialect dialect =
+                (PreparedStatementSQLDialect) dataStore.getSQLDialect();
+            if (delete) {
+                dialect.onDelete(ps, cx, featureType);
+            } else {
+                dialect.onUpdate(ps, cx, featureType);
+            }
+            batch = new Batch(sql, ps);
+            batches.put(sql, batch);
+        }
+        switchTo(batch);
+        return (PreparedStatement) batch.statement;
+    }
+
+    /**
+     * Adds the write whose parameters have been set in the statement returned by
+     * {@link #prepare(String, SimpleFeatureType, boolean)} to the pending batch
+     */
+    void add(String sql) throws SQLException {
+        Batch batch = batches.get(sql);
+        ((PreparedStatement) batch.statement).addBatch();
+        added(batch);
+    }
+
+    /**
+     * Adds a plain sql write to the batch
+     */
+    void addSQL(String sql, SimpleFeatureType featureType, boolean delete)
+            throws SQLException, IOException {
+        Batch batch = batches.get(PLAIN);
+        if (batch == null) {
+            batch = new Batch(PLAIN, cx.createStatement());
+            batches.put(PLAIN, batch);
+        }
+        switchTo(batch);
+        BasicSQLDialect dialect = (BasicSQLDialect) dataStore.getSQLDialect();
+        if (delete) {
+            dialect.onDelete(batch.statement, cx, featureType);
+        } else {
+            dialect.onUpdate(batch.statement, cx, featureType);
+        }
+        LOGGER.log(Level.FINE, "Batching feature write: {0}", sql);
+        batch.statement.addBatch(sql);
+        added(batch);
+    }
+
+    /**
+     * Executes the pending writes if they are not in the specified batch
+     */
+    void switchTo(Batch batch) throws SQLException {
+        if (pending != null && pending != batch) {
+            execute(pending);
+        }
+    }
+
+    void added(Batch batch) throws SQLException {
+        batch.size++;
+        pending = batch;
+        if (batch.size >= batchSize) {
+            execute(batch);
+        }
+    }
+
+    void execute(Batch batch) throws SQLException {
+        LOGGER.log(Level.FINE, "Executing a batch of {0} feature writes", batch.size);
+        // the batch is done with even if it fails, the error is reported just once
+        pending = null;
+        int size = batch.size;
+        batch.size = 0;
+        if (size > 0) {
+            batch.statement.executeBatch();
+        }
+    }
+
+    /**
+     * Returns true if there are writes still to be sent to the database
+     */
+    boolean isEmpty() {
+        return pending == null;
+    }
+
+    /**
+     * Executes the pending writes, and releases the statements
+     */
+    void flush() throws IOException {
+        try {
+            if (pending != null) {
+                execute(pending);
+            }
+        } catch (SQLException e) {
+            throw (IOException) new IOException("Error executing the batched feature writes")
+                    .initCause(e);
+        } finally {
+            clear();
+        }
+    }
+
+    /**
+     * Drops the pending writes without executing them
+     */
+    void clear() {
+        for (Batch batch : batches.values()) {
+            dataStore.closeSafe(batch.statement);
+        }
+        batches.clear();
+        pending = null;
+    }
+
+    static class Batch {
+        String sql;
+
+        Statement statement;
+
+        int size;
+
+        Batch(String sql, Statement statement) {
+            this.sql = sql;
+            this.statement = statement;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.geotools.factory.Hints;
+import org.geotools.feature.FeatureIterator;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.identity.FeatureId;
+
+/**
+ * Turns a stream of features into the rows handed to
+ * {@link SQLDialect#bulkLoad(SimpleFeatureType, String[], Class[], int[], Iterator, Connection)},
+ * assigning the primary key values and collecting the ids of the features as they are consumed.
+ * <p>
+ * The key values are taken from the sequences backing the primary key columns, which are
+ * reserved in blocks of increasing size to limit the round trips to the database.
+ * </p>
+ * 
+ * @source $URL$
+ */
+class BulkInsertIterator implements Iterator<Object[]> {
+
+    static final int MIN_BLOCK_SIZE = 16;
+    
+    static final int MAX_BLOCK_SIZE = 4096;
+    
+    JDBCDataStore dataStore;
+    
+    SimpleFeatureType featureType;
+    
+    PrimaryKey key;
+    
+    String[] sequences;
+    
+    String[] attributeNames;
+    
+    FeatureIterator<SimpleFeature> features;
+    
+    Connection cx;
+    
+    List<FeatureId> ids;
+    
+    /**
+     * The sequence values reserved for each key column, and the position of the next one
+     */
+    List<Object>[] reserved;
+    
+    int[] positions;
+    
+    int blockSize = MIN_BLOCK_SIZE;
+    
+    /**
+     * Builds the iterator
+     * 
+     * @param sequences The sequences providing the values of each primary key column
+     * @param attributeNames The names of the attributes loaded, followed by the key values
+     * @param ids The list the ids of the features are added to
+     */
+    BulkInsertIterator(JDBCDataStore dataStore, SimpleFeatureType featureType, PrimaryKey key,
+            String[] sequences, String[] attributeNames, FeatureIterator<SimpleFeature> features,
+            Connection cx, List<FeatureId> ids) {
+        this.dataStore = dataStore;
+        this.featureType = featureType;
+        this.key = key;
+        this.sequences = sequences;
+        this.attributeNames = attributeNames;
+        this.features = features;
+        this.cx = cx;
+        this.ids = ids;
+        this.reserved = new List[sequences.length];
+        this.positions = new int[sequences.length];
+    }
+
+    public boolean hasNext() {
+        return features.hasNext();
+    }
+
+    public Object[] next() {
+        SimpleFeature feature = features.next();
+        int keyCount = key.getColumns().size();
+        Object[] row = new Object[attributeNames.length + keyCount];
+        for (int i = 0; i < attributeNames.length; i++) {
+            row[i] = feature.getAttribute(attributeNames[i]);
+        }
+        
+        List<Object> keyValues;
+        try {
+            if (Boolean.TRUE.equals(feature.getUserData().get(Hints.USE_PROVIDED_FID))) {
+                keyValues = dataStore.decodeFID(key, feature.getID(), true);
+            } else {
+                keyValues = new ArrayList<Object>(keyCount);
+                for (int j = 0; j < keyCount; j++) {
+                    keyValues.add(nextValue(j));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        for (int j = 0; j < keyCount; j++) {
+            row[attributeNames.length + j] = keyValues.get(j);
+        }
+        
+        String fid = featureType.getTypeName() + "." + dataStore.encodeFID(keyValues);
+        ids.add(dataStore.getFilterFactory().featureId(fid));
+        
+        return row;
+    }
+    
+    /**
+     * Returns the next value of the sequence backing the specified key column, reserving a new
+     * block of values if the current one is used up
+     */
+    Object nextValue(int column) throws SQLException, IOException {
+        if (reserved[column] == null || positions[column] >= reserved[column].size()) {
+            reserved[column] = dataStore.getSQLDialect().getNextSequenceValues(
+                    dataStore.getDatabaseSchema(), sequences[column], blockSize, cx);
+            positions[column] = 0;
+            if (reserved[column] == null || reserved[column].isEmpty()) {
+                throw new IOException("Could not get the next values of sequence "
+                        + sequences[column]);
+            }
+            // all the columns use up their blocks at the same time, grow once they are refilled
+            if (column == sequences.length - 1) {
+                blockSize = Math.min(blockSize * 2, MAX_BLOCK_SIZE);
+            }
+        }
+        return reserved[column].get(positions[column]++);
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
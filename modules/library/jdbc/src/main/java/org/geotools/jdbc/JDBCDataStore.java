@@ -36,7 +36,9 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -44,6 +46,13 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 import javax.sql.DataSource;
@@ -59,7 +68,9 @@ import org.geotools.data.Transaction;
 import org.geotools.data.Transaction.State;
 import org.geotools.data.jdbc.FilterToSQL;
 import org.geotools.data.jdbc.FilterToSQLException;
+import org.geotools.data.jdbc.datasource.DataSourceFinder;
 import org.geotools.data.jdbc.datasource.ManageableDataSource;
+import org.geotools.data.jdbc.datasource.UnWrapper;
 import org.geotools.data.jdbc.fidmapper.FIDMapper;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
@@ -68,10 +79,13 @@ import org.geotools.data.store.ContentEntry;
 import org.geotools.data.store.ContentFeatureSource;
 import org.geotools.data.store.ContentState;
 import org.geotools.factory.Hints;
+import org.geotools.feature.FeatureIterator;
 import org.geotools.feature.NameImpl;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.visitor.CountVisitor;
+import org.geotools.feature.visitor.GroupByVisitor;
 import org.geotools.feature.visitor.LimitingVisitor;
+import org.geotools.feature.visitor.QuantileListVisitor;
 import org.geotools.filter.FilterCapabilities;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.jdbc.JoinInfo.JoinPart;
@@ -177,6 +191,36 @@ public final class JDBCDataStore extends ContentDataStore
      */
     public static final String JDBC_COLUMN_ALIAS = "org.geotools.jdbc.columnAlias";
 
+    /**
+     * Query hint carrying a {@link KeysetCursor}, or its encoded form, to resume a sorted query
+     * from. See {@link JDBCFeatureSource#getKeysetCursor(Query)} for details.
+     */
+    public static final Hints.Key KEYSET_CURSOR = new Hints.Key(Object.class);
+
+    /**
+     * Query hint asking to read the features with the given number of parallel partitioned
+     * scans, each one running on its own connection. Only honoured for unsorted, unpaged, auto 
+     * commit queries against tables with a single integral primary key column, the features are
+     * returned in no particular order. The scans run on the store background reader threads,
+     * the number of partitions is capped to {@link #getReaderThreads()}.
+     */
+    public static final Hints.Key PARTITIONS = new Hints.Key(Integer.class);
+
+    /**
+     * Query hint asking for the bounds and count of a whole table to be estimated from the 
+     * database statistics or metadata, when the dialect can provide them, instead of being 
+     * computed with a full scan. The estimates are cached for
+     * {@link #getEstimatesTimeToLive()} milliseconds.
+     */
+    public static final Hints.Key ESTIMATED_STATISTICS = new Hints.Key(Boolean.class);
+
+    /**
+     * Query hint setting the number of features decoded ahead, on a background thread, while
+     * the caller processes the previous ones, overriding {@link #getPrefetchSize()}. 0 disables
+     * prefetching. Only honoured for auto commit queries.
+     */
+    public static final Hints.Key PREFETCH = new Hints.Key(Integer.class);
+
     /**
      * name of table to use to store geometries when {@link #associations}
      * is set.
@@ -275,6 +319,78 @@ public final class JDBCDataStore extends ContentDataStore
      * to 0 to disable fetch size limit and grab all the records in one shot.
      */
     protected int fetchSize;
+
+    /**
+     * The number of features sent to the database in a single batch when inserting, defaulting
+     * to 1 (no batching)
+     */
+    protected int batchInsertSize = 1;
+
+    /**
+     * The number of single feature updates and deletes sent to the database in a single batch
+     * when writing in a transaction, defaulting to 1 (no batching)
+     */
+    protected int batchUpdateSize = 1;
+    
+    /**
+     * The minimum number of features a collection must have to be bulk loaded, if the dialect
+     * supports it. Defaults to 0 (bulk loading disabled)
+     */
+    protected int bulkLoadThreshold = 0;
+
+    /**
+     * Whether paged queries sorted on a unique key remember where each page ended, so that the
+     * next page can be located with a keyset predicate rather than an offset
+     */
+    protected boolean keysetPaging = false;
+
+    /**
+     * The number of idle prepared statements cached for each physical connection, defaulting
+     * to 0 (no caching)
+     */
+    protected int statementCacheSize = 0;
+
+    /**
+     * How long, in milliseconds, the estimated bounds and counts of a table are cached, 
+     * defaulting to one minute
+     */
+    protected long estimatesTimeToLive = 60000;
+
+    /**
+     * The number of features decoded ahead on a background thread by auto commit readers, 
+     * defaulting to 0 (no prefetching)
+     */
+    protected int prefetchSize = 0;
+
+    /**
+     * The maximum number of background threads used by the prefetching and partitioned readers,
+     * defaulting to the number of available processors
+     */
+    protected int readerThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The executor running the background readers, created on demand and shut down on dispose
+     */
+    ExecutorService readerExecutor;
+
+    /**
+     * The statement caches, keyed by physical connection. The cached statements keep their
+     * connection reachable, so the caches are dropped explicitly once their connection is found
+     * closed, see {@link #purgeStatementCaches()}
+     */
+    Map<Connection, StatementCache> statementCaches = new IdentityHashMap<Connection, StatementCache>();
+
+    /**
+     * The statements taken from (or destined to) a cache and currently in use, along with their SQL
+     */
+    Map<Statement, Object[]> leasedStatements = Collections.synchronizedMap(
+            new IdentityHashMap<Statement, Object[]>());
+
+    AtomicLong statementCacheHits = new AtomicLong();
+
+    AtomicLong statementCacheMisses = new AtomicLong();
+
+    AtomicLong statementCacheEvictions = new AtomicLong();
     
     /**
      * flag controlling whether primary key columns of a table are exposed via the 
@@ -418,6 +534,206 @@ public final class JDBCDataStore extends ContentDataStore
         this.fetchSize = fetchSize;
     }
 
+    /**
+     * The number of features inserted with each batch sent to the database. When greater than 1
+     * the inserts are accumulated and executed with {@link Statement#executeBatch()}, and the
+     * insert feature writers buffer up to this many features before flushing them: the features
+     * written get their persistent id only once their batch is flushed, or the writer closed.
+     * @return
+     */
+    public int getBatchInsertSize() {
+        return batchInsertSize;
+    }
+
+    /**
+     * Changes the batch insert size. Set to 1 (the default) to disable batching.
+     * @param batchInsertSize
+     */
+    public void setBatchInsertSize(int batchInsertSize) {
+        this.batchInsertSize = batchInsertSize;
+    }
+
+    /**
+     * The number of feature updates and deletes sent to the database with each batch. When 
+     * greater than 1 the features updated or removed by the feature writers of a transaction are
+     * queued, and sent to the database in issue order when the batch fills up, when a write with
+     * a different statement comes in, when the transaction connection is used again, or on
+     * commit. A failing write is thus reported by one of the calls sending the batch, possibly
+     * the commit, rather than by the write itself.
+     * @return
+     */
+    public int getBatchUpdateSize() {
+        return batchUpdateSize;
+    }
+
+    /**
+     * Changes the batch update size. Set to 1 (the default) to disable batching.
+     * @param batchUpdateSize
+     */
+    public void setBatchUpdateSize(int batchUpdateSize) {
+        this.batchUpdateSize = batchUpdateSize;
+    }
+
+    /**
+     * The minimum number of features a collection must have for
+     * {@link JDBCFeatureStore#addFeatures(org.geotools.feature.FeatureCollection)} to load it in
+     * bulk, provided the dialect {@link SQLDialect#isBulkLoadSupported() supports it}. Zero or
+     * negative values disable bulk loading.
+     * @return
+     */
+    public int getBulkLoadThreshold() {
+        return bulkLoadThreshold;
+    }
+
+    /**
+     * Changes the bulk load threshold. Set to 0 (the default) to disable bulk loading.
+     * @param bulkLoadThreshold
+     */
+    public void setBulkLoadThreshold(int bulkLoadThreshold) {
+        this.bulkLoadThreshold = bulkLoadThreshold;
+    }
+
+    /**
+     * Returns true if keyset paging is enabled. When enabled, reading a page of a query sorted
+     * on the primary key (or on non nullable attributes plus the primary key) records the sort
+     * key of its last row, and a query asking for the following page uses it to seek to the
+     * page start instead of skipping rows with an offset. The recorded keys are dropped when the
+     * table is modified through this store, changes made by other applications are not noticed
+     * and may make the following pages skip or repeat rows, as with offsets.
+     */
+    public boolean isKeysetPaging() {
+        return keysetPaging;
+    }
+
+    /**
+     * Enables/disables keyset paging, disabled by default
+     * @param keysetPaging
+     */
+    public void setKeysetPaging(boolean keysetPaging) {
+        this.keysetPaging = keysetPaging;
+    }
+
+    /**
+     * Returns the number of idle prepared statements cached for each physical connection.
+     * Queries reading features or computing aggregates reuse a cached statement with the same 
+     * SQL when available, so that only the parameter values are sent to the database.
+     */
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    /**
+     * Sets the number of idle prepared statements cached for each physical connection, 0 (the 
+     * default) disables the cache. The cache is used only by prepared statement dialects.
+     * @param statementCacheSize
+     */
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+        if (statementCacheSize <= 0) {
+            clearStatementCaches();
+        }
+    }
+
+    /**
+     * Returns how long, in milliseconds, the bounds and counts estimated when using the 
+     * {@link #ESTIMATED_STATISTICS} hint are cached
+     */
+    public long getEstimatesTimeToLive() {
+        return estimatesTimeToLive;
+    }
+
+    /**
+     * Sets how long, in milliseconds, the estimated bounds and counts are cached, 0 disables 
+     * the caching
+     * @param estimatesTimeToLive
+     */
+    public void setEstimatesTimeToLive(long estimatesTimeToLive) {
+        this.estimatesTimeToLive = estimatesTimeToLive;
+    }
+
+    /**
+     * Returns the number of features auto commit readers decode ahead on a background thread,
+     * overlapping the database round trips and the geometry parsing with the processing of the
+     * features already read. 
+     */
+    public int getPrefetchSize() {
+        return prefetchSize;
+    }
+
+    /**
+     * Sets the number of features decoded ahead on a background thread, 0 (the default) 
+     * disables prefetching. Can be overridden on a query basis with the {@link #PREFETCH} hint.
+     * @param prefetchSize
+     */
+    public void setPrefetchSize(int prefetchSize) {
+        this.prefetchSize = prefetchSize;
+    }
+
+    /**
+     * Returns the maximum number of background threads shared by the prefetching and partitioned
+     * readers of this store. Scans exceeding it wait for a thread to become available.
+     */
+    public int getReaderThreads() {
+        return readerThreads;
+    }
+
+    /**
+     * Sets the maximum number of background threads shared by the prefetching and partitioned
+     * readers, it has to be set before the first of them is opened.
+     * @param readerThreads
+     */
+    public void setReaderThreads(int readerThreads) {
+        if (readerThreads < 1) {
+            throw new IllegalArgumentException("At least one reader thread is required");
+        }
+        this.readerThreads = readerThreads;
+    }
+
+    /**
+     * Returns the executor running the background readers, creating it on first use. The idle
+     * threads are released after one minute, the executor is shut down by {@link #dispose()}.
+     */
+    synchronized ExecutorService getReaderExecutor() {
+        if (readerExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(readerThreads, readerThreads,
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        AtomicInteger count = new AtomicInteger();
+
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "JDBC background reader "
+                                    + count.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            readerExecutor = executor;
+        }
+        return readerExecutor;
+    }
+
+    /**
+     * The number of statements found in the statement cache
+     */
+    public long getStatementCacheHits() {
+        return statementCacheHits.get();
+    }
+
+    /**
+     * The number of statements that had to be prepared because not found in the statement cache
+     */
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.get();
+    }
+
+    /**
+     * The number of cached statements closed to make room for more recently used ones
+     */
+    public long getStatementCacheEvictions() {
+        return statementCacheEvictions.get();
+    }
+
     /**
      * Determines if the datastore creates feature types which include those columns / attributes
      * which compose the primary key.
@@ -1399,6 +1715,13 @@ public final class JDBCDataStore extends ContentDataStore
     protected Object getAggregateValue(FeatureVisitor visitor, SimpleFeatureType featureType, Query query, Connection cx ) 
         throws IOException {
         
+        // visitors that need more than a single aggregate call
+        if (visitor instanceof GroupByVisitor) {
+            return getGroupByValue((GroupByVisitor) visitor, featureType, query, cx);
+        } else if (visitor instanceof QuantileListVisitor) {
+            return getQuantileListValue((QuantileListVisitor) visitor, featureType, query, cx);
+        }
+        
         // get the name of the function
         String function = getAggregateFunctions().get( visitor.getClass() );
         if ( function == null ) {
@@ -1424,6 +1747,10 @@ public final class JDBCDataStore extends ContentDataStore
         if(att == null && !(visitor instanceof CountVisitor)){
             return null; // aggregate function optimization only supported for PropertyName expression
         }
+        function = dialect.getAggregateFunction(function, att);
+        if (function == null) {
+            return null; // the database cannot compute it over this attribute type
+        }
         // if the visitor is limiting the result to a given start - max, we will
         // try to apply limits to the aggregate query
         LimitingVisitor limitingVisitor = null;
@@ -1472,6 +1799,283 @@ public final class JDBCDataStore extends ContentDataStore
         }
     }
 
+    /**
+     * Computes a group by visitor with a single <code>GROUP BY</code> query.
+     * @return the map of group values, or null if the visitor cannot be encoded in SQL
+     */
+    Object getGroupByValue(GroupByVisitor visitor, SimpleFeatureType featureType, Query query,
+            Connection cx) throws IOException {
+        // joins and paging would require a nested query, leave them to the in memory code
+        if (!query.getJoins().isEmpty()
+                || checkLimitOffset(query.getStartIndex(), query.getMaxFeatures())) {
+            return null;
+        }
+        String function = getAggregateFunctions().get(visitor.getAggregate().getVisitorClass());
+        if (function == null) {
+            return null;
+        }
+        AttributeDescriptor att = null;
+        if (visitor.getExpression() != null) {
+            att = getAggregateAttribute(visitor.getExpression(), featureType);
+            if (att == null) {
+                return null;
+            }
+        }
+        function = dialect.getAggregateFunction(function, att);
+        if (function == null) {
+            return null;
+        }
+        List<AttributeDescriptor> groupBy = new ArrayList<AttributeDescriptor>();
+        for (Expression e : visitor.getGroupByExpressions()) {
+            AttributeDescriptor ad = getAggregateAttribute(e, featureType);
+            if (ad == null || ad instanceof GeometryDescriptor) {
+                return null;
+            }
+            groupBy.add(ad);
+        }
+
+        StringBuffer columns = new StringBuffer();
+        for (AttributeDescriptor ad : groupBy) {
+            dialect.encodeColumnName(ad.getLocalName(), columns);
+            columns.append(", ");
+        }
+        columns.setLength(columns.length() - 2);
+
+        try {
+            StringBuffer sql = new StringBuffer("SELECT ");
+            sql.append(columns).append(", ");
+            encodeFunction(function, att, query, sql);
+            List<FilterToSQL> toSQL = encodeAggregateFrom(featureType, query.getFilter(), sql);
+            sql.append(" GROUP BY ").append(columns);
+            applySearchHints(featureType, query, sql);
+
+            Map<List<Object>, Object> results = new LinkedHashMap<List<Object>, Object>();
+            Statement st = null;
+            ResultSet rs = null;
+            try {
+                st = prepareAggregateStatement(sql.toString(), toSQL, cx);
+                rs = st instanceof PreparedStatement ? ((PreparedStatement) st).executeQuery() 
+                        : st.executeQuery(sql.toString());
+                int groups = groupBy.size();
+                while (rs.next()) {
+                    List<Object> key = new ArrayList<Object>(groups);
+                    for (int i = 1; i <= groups; i++) {
+                        key.add(rs.getObject(i));
+                    }
+                    results.put(key, rs.getObject(groups + 1));
+                }
+            } finally {
+                closeSafe(rs);
+                closeSafe(st);
+            }
+            
+            visitor.setValue(results);
+            return results;
+        } catch (SQLException e) {
+            throw (IOException) new IOException().initCause(e);
+        }
+    }
+
+    /**
+     * Extracts the sorted, non null values of the quantile visitor expression in a single
+     * column query, the binning is then performed by the visitor itself.
+     * @return the list of values, or null if the visitor cannot be encoded in SQL
+     */
+    Object getQuantileListValue(QuantileListVisitor visitor, SimpleFeatureType featureType,
+            Query query, Connection cx) throws IOException {
+        if (!query.getJoins().isEmpty()
+                || checkLimitOffset(query.getStartIndex(), query.getMaxFeatures())) {
+            return null;
+        }
+        AttributeDescriptor att = getAggregateAttribute(visitor.getExpression(), featureType);
+        if (att == null || att instanceof GeometryDescriptor) {
+            return null;
+        }
+        
+        Filter notNull = filterFactory.not(filterFactory.isNull(filterFactory.property(att
+                .getLocalName())));
+        Filter filter = query.getFilter();
+        if (filter == null || Filter.INCLUDE.equals(filter)) {
+            filter = notNull;
+        } else {
+            filter = filterFactory.and(filter, notNull);
+        }
+        
+        try {
+            StringBuffer sql = new StringBuffer("SELECT ");
+            dialect.encodeColumnName(att.getLocalName(), sql);
+            List<FilterToSQL> toSQL = encodeAggregateFrom(featureType, filter, sql);
+            sql.append(" ORDER BY ");
+            dialect.encodeColumnName(att.getLocalName(), sql);
+            applySearchHints(featureType, query, sql);
+            
+            List<Object> values = new ArrayList<Object>();
+            Statement st = null;
+            ResultSet rs = null;
+            try {
+                st = prepareAggregateStatement(sql.toString(), toSQL, cx);
+                rs = st instanceof PreparedStatement ? ((PreparedStatement) st).executeQuery() 
+                        : st.executeQuery(sql.toString());
+                while (rs.next()) {
+                    values.add(rs.getObject(1));
+                }
+            } finally {
+                closeSafe(rs);
+                closeSafe(st);
+            }
+            
+            visitor.setValue(values);
+            return values;
+        } catch (SQLException e) {
+            throw (IOException) new IOException().initCause(e);
+        }
+    }
+
+    /**
+     * Returns the attribute a visitor expression refers to, or null if the expression is not
+     * a plain property name
+     */
+    AttributeDescriptor getAggregateAttribute(Expression expression, SimpleFeatureType featureType) {
+        if (!(expression instanceof PropertyName)) {
+            return null;
+        }
+        return (AttributeDescriptor) expression.evaluate(featureType);
+    }
+
+    /**
+     * Returns the bounds of the table estimated by the dialect, or null if the dialect cannot
+     * estimate them
+     */
+    ReferencedEnvelope getEstimatedBounds(SimpleFeatureType featureType, Connection cx) 
+            throws IOException {
+        if (featureType.getGeometryDescriptor() == null) {
+            return EMPTY_ENVELOPE;
+        }
+        try {
+            List<ReferencedEnvelope> result = dialect.getEstimatedBounds(databaseSchema, 
+                    featureType, cx);
+            if (result == null || result.isEmpty()) {
+                return null;
+            }
+            ReferencedEnvelope bounds = ReferencedEnvelope.create(featureType
+                    .getCoordinateReferenceSystem());
+            for (ReferencedEnvelope envelope : result) {
+                bounds = mergeEnvelope(bounds, envelope);
+            }
+            return bounds;
+        } catch (SQLException e) {
+            throw (IOException) new IOException().initCause(e);
+        } catch (TransformException e) {
+            throw (IOException) new IOException("Failed to merge the estimated bounds")
+                    .initCause(e);
+        } catch (FactoryException e) {
+            throw (IOException) new IOException("Failed to merge the estimated bounds")
+                    .initCause(e);
+        }
+    }
+
+    /**
+     * Returns the row count of the table estimated by the dialect, or -1 if the dialect cannot
+     * estimate it
+     */
+    int getEstimatedCount(SimpleFeatureType featureType, Connection cx) throws IOException {
+        try {
+            return dialect.getEstimatedCount(databaseSchema, featureType, cx);
+        } catch (SQLException e) {
+            throw (IOException) new IOException().initCause(e);
+        }
+    }
+
+    /**
+     * Returns the minimum and maximum value of an integral primary key column among the rows
+     * matching the filter, or null if there are no such rows. The values are read as objects,
+     * numeric keys can go past the range of a long
+     */
+    BigInteger[] getPrimaryKeyBounds(SimpleFeatureType featureType, String column, Filter filter,
+            Connection cx) throws IOException {
+        StringBuffer sql = new StringBuffer("SELECT MIN(");
+        dialect.encodeColumnName(column, sql);
+        sql.append("), MAX(");
+        dialect.encodeColumnName(column, sql);
+        sql.append(")");
+        try {
+            List<FilterToSQL> toSQL = encodeAggregateFrom(featureType, filter, sql);
+            Statement st = null;
+            ResultSet rs = null;
+            try {
+                st = prepareAggregateStatement(sql.toString(), toSQL, cx);
+                rs = st instanceof PreparedStatement ? ((PreparedStatement) st).executeQuery() 
+                        : st.executeQuery(sql.toString());
+                if (!rs.next()) {
+                    return null;
+                }
+                Object min = rs.getObject(1);
+                Object max = rs.getObject(2);
+                if (min == null || max == null) {
+                    return null;
+                }
+                return new BigInteger[] { toBigInteger(min), toBigInteger(max) };
+            } finally {
+                closeSafe(rs);
+                closeSafe(st);
+            }
+        } catch (SQLException e) {
+            throw (IOException) new IOException().initCause(e);
+        }
+    }
+
+    /**
+     * Converts an integral value read from the database to a big integer, without going
+     * through a long
+     */
+    BigInteger toBigInteger(Object value) {
+        if (value instanceof BigInteger) {
+            return (BigInteger) value;
+        } else if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toBigInteger();
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            return BigInteger.valueOf(((Number) value).longValue());
+        } else {
+            return new BigDecimal(value.toString()).toBigInteger();
+        }
+    }
+
+    /**
+     * Encodes the FROM and WHERE clauses of a non joining aggregate query
+     */
+    List<FilterToSQL> encodeAggregateFrom(SimpleFeatureType featureType, Filter filter,
+            StringBuffer sql) throws SQLException, IOException {
+        sql.append(" FROM ");
+        encodeTableName(featureType.getTypeName(), sql, null);
+        
+        List<FilterToSQL> toSQL = new ArrayList<FilterToSQL>();
+        if (filter != null && !Filter.INCLUDE.equals(filter)) {
+            sql.append(" WHERE ");
+            toSQL.add(filter(featureType, filter, sql));
+        }
+        return toSQL;
+    }
+
+    /**
+     * Creates the statement for an aggregate query, a prepared one with the filter values 
+     * already set if the dialect is a prepared statement one
+     */
+    Statement prepareAggregateStatement(String sql, List<FilterToSQL> toSQL, Connection cx) 
+            throws SQLException {
+        LOGGER.fine(sql);
+        if (dialect instanceof PreparedStatementSQLDialect) {
+            PreparedStatement ps = prepareCachedStatement(sql, cx);
+            ps.setFetchSize(fetchSize);
+            setPreparedFilterValues(ps, toSQL, cx);
+            return ps;
+        } else {
+            Statement st = cx.createStatement();
+            st.setFetchSize(fetchSize);
+            return st;
+        }
+    }
+
     /**
      * Helper method for getting the expression from a visitor
      * TODO: Remove this method when there is an interface for aggregate visitors.
@@ -1508,10 +2112,15 @@ public final class JDBCDataStore extends ContentDataStore
             catch( Exception e ) {}
             
             if ( s == null ) {
+                // prefer an overload accepting the result as is, fall back on conversion
                 for ( Method m : visitor.getClass().getMethods()) {
-                    if ( "setValue".equals( m.getName() ) ) {
-                        s = m;
-                        break;
+                    if ( "setValue".equals( m.getName() ) && m.getParameterTypes().length == 1) {
+                        if ( m.getParameterTypes()[0].isInstance( result ) ) {
+                            s = m;
+                            break;
+                        } else if ( s == null ) {
+                            s = m;
+                        }
                     }
                 }
             }
@@ -1550,6 +2159,14 @@ public final class JDBCDataStore extends ContentDataStore
     /**
      * Inserts a collection of new features into the database for a particular
      * feature type / table.
+     * <p>
+     * When the {@link #getBatchInsertSize() batch insert size} is greater than one the inserts
+     * are sent to the database in batches. Features whose key values are generated by the
+     * database are batched only if the driver can return the generated keys, otherwise they are
+     * inserted one at a time so that the keys can be looked up after each insert. The same goes
+     * for keys computed from the maximum value in the table, which must account for the
+     * features inserted before.
+     * </p>
      */
     protected void insert(Collection features, SimpleFeatureType featureType, Connection cx)
         throws IOException {
@@ -1559,6 +2176,12 @@ public final class JDBCDataStore extends ContentDataStore
         // first to figure out what the id will be, then the insert statement
         synchronized (this) {
             Statement st = null;
+            PreparedStatement ps = null;
+            String psSQL = null;
+            
+            // the features in the current batch, along with their key values
+            List<SimpleFeature> batched = new ArrayList<SimpleFeature>();
+            List<List<Object>> batchedKeys = new ArrayList<List<Object>>();
 
             try {
                 if ( !(dialect instanceof PreparedStatementSQLDialect) ) {
@@ -1568,6 +2191,13 @@ public final class JDBCDataStore extends ContentDataStore
                 // figure out if we should determine what the fid is pre or post insert
                 boolean postInsert = dialect.lookupGeneratedValuesPostInsert() && isGenerated(key);
                 
+                // figure out if we should batch, and if the generated keys can be batched too
+                boolean batch = batchInsertSize > 1 && features.size() > 1;
+                boolean batchGeneratedKeys = batch && postInsert
+                        && dialect instanceof PreparedStatementSQLDialect
+                        && cx.getMetaData().supportsGetGeneratedKeys();
+                boolean maxPlusOneKeys = isMaxPlusOne(key);
+                
                 for (Iterator f = features.iterator(); f.hasNext();) {
                     SimpleFeature feature = (SimpleFeature) f.next();
                     
@@ -1579,19 +2209,61 @@ public final class JDBCDataStore extends ContentDataStore
                         keyValues = getNextValues( key, cx );
                     }
                     
+                    boolean batchable = keyValues != null ? useExisting || !maxPlusOneKeys
+                            : batchGeneratedKeys;
+                    if (batch && batchable) {
+                        if ( dialect instanceof PreparedStatementSQLDialect ) {
+                            // a new statement is needed every time the sql changes
+                            String sql = insertSQLPS(featureType, feature, key);
+                            if (ps != null && !sql.equals(psSQL)) {
+                                executeInsertBatch(ps, featureType, key, batched, batchedKeys, cx);
+                                closeSafe(ps);
+                                ps = null;
+                            }
+                            if (ps == null) {
+                                if (keyValues == null) {
+                                    Set<String> pkColumnNames = getColumnNames(key);
+                                    ps = cx.prepareStatement(sql,
+                                            pkColumnNames.toArray(new String[pkColumnNames.size()]));
+                                } else {
+                                    ps = cx.prepareStatement(sql);
+                                }
+                                psSQL = sql;
+                            }
+                            setInsertValues(featureType, feature, keyValues, key, ps, cx);
+                            ps.addBatch();
+                        } else {
+                            String sql = insertSQL(featureType, feature, keyValues, cx);
+                            LOGGER.log(Level.FINE, "Batching new feature: {0}", sql);
+                            st.addBatch(sql);
+                        }
+                        batched.add(feature);
+                        batchedKeys.add(keyValues);
+                        
+                        if (batched.size() >= batchInsertSize) {
+                            executeInsertBatch(ps != null ? ps : st, featureType, key, batched,
+                                    batchedKeys, cx);
+                        }
+                        continue;
+                    }
+                    
+                    // not batched, make sure the features batched so far get inserted first
+                    if (!batched.isEmpty()) {
+                        executeInsertBatch(ps != null ? ps : st, featureType, key, batched,
+                                batchedKeys, cx);
+                    }
 
                     if ( dialect instanceof PreparedStatementSQLDialect ) {
-                        PreparedStatement ps = insertSQLPS( featureType, feature, keyValues, cx );
+                        PreparedStatement single = insertSQLPS( featureType, feature, keyValues, cx );
                         try {
-                            ((PreparedStatementSQLDialect)dialect).onInsert(ps, cx, featureType);
-                            ps.execute();
+                            ((PreparedStatementSQLDialect)dialect).onInsert(single, cx, featureType);
+                            single.execute();
                         } finally {
-                            closeSafe( ps );
+                            closeSafe( single );
                         }
                     } else {
                         String sql = insertSQL(featureType, feature, keyValues, cx);
                         
-                        //TODO: execute in batch to improve performance?
                         ((BasicSQLDialect)dialect).onInsert(st, cx, featureType);
                         
                         LOGGER.log(Level.FINE, "Inserting new feature: {0}", sql);
@@ -1608,15 +2280,185 @@ public final class JDBCDataStore extends ContentDataStore
                     feature.getUserData().put("fid", fid);
                 }
 
-                //st.executeBatch();
+                if (!batched.isEmpty()) {
+                    executeInsertBatch(ps != null ? ps : st, featureType, key, batched,
+                            batchedKeys, cx);
+                }
             } catch (SQLException e) {
                 String msg = "Error inserting features";
                 throw (IOException) new IOException(msg).initCause(e);
             } finally {
+                closeSafe(ps);
                 closeSafe(st);
             }
         }
     }
+    
+    /**
+     * Returns true if some of the key values are computed as the maximum value in the table plus
+     * one, see {@link #getNextValue(PrimaryKeyColumn, PrimaryKey, Connection)}
+     */
+    boolean isMaxPlusOne(PrimaryKey key) {
+        for (PrimaryKeyColumn col : key.getColumns()) {
+            if (!(col instanceof AutoGeneratedPrimaryKeyColumn)
+                    && !(col instanceof SequencedPrimaryKeyColumn)
+                    && Number.class.isAssignableFrom(col.getType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Executes a batch of inserts and reports the feature ids as user data, looking up the
+     * generated keys of the features that have no key values
+     */
+    void executeInsertBatch(Statement st, SimpleFeatureType featureType, PrimaryKey key,
+            List<SimpleFeature> features, List<List<Object>> keys, Connection cx)
+            throws SQLException, IOException {
+        if ( st instanceof PreparedStatement ) {
+            ((PreparedStatementSQLDialect)dialect).onInsert((PreparedStatement) st, cx, featureType);
+        } else {
+            ((BasicSQLDialect)dialect).onInsert(st, cx, featureType);
+        }
+        
+        LOGGER.log(Level.FINE, "Inserting a batch of {0} features", features.size());
+        st.executeBatch();
+        
+        ResultSet rs = null;
+        try {
+            for (int i = 0; i < features.size(); i++) {
+                List<Object> keyValues = keys.get(i);
+                if (keyValues == null) {
+                    // the generated keys are returned in the same order as the inserts
+                    if (rs == null) {
+                        rs = st.getGeneratedKeys();
+                    }
+                    if (!rs.next()) {
+                        throw new IOException("The database did not return the generated keys "
+                                + "for all the features in the batch");
+                    }
+                    keyValues = new ArrayList<Object>();
+                    for (int j = 1; j <= key.getColumns().size(); j++) {
+                        keyValues.add(rs.getObject(j));
+                    }
+                }
+                
+                //report the feature id as user data since we cant set the fid
+                String fid = featureType.getTypeName() + "." + encodeFID(keyValues);
+                features.get(i).getUserData().put("fid", fid);
+            }
+        } finally {
+            closeSafe(rs);
+        }
+        
+        features.clear();
+        keys.clear();
+    }
+
+    /**
+     * Loads a stream of features in bulk into the database, using
+     * {@link SQLDialect#bulkLoad(SimpleFeatureType, String[], Class[], int[], Iterator, Connection)}.
+     * <p>
+     * Bulk loading requires the values of all the primary key columns to come from sequences,
+     * as there is no way to read back the keys generated by the database. If the dialect does
+     * not support bulk loading, or the table primary key does not allow it, <code>null</code>
+     * is returned without consuming the features, and the caller should fall back on regular
+     * inserts.
+     * </p>
+     * 
+     * @return The ids of the inserted features, or <code>null</code> if bulk loading is not
+     *         possible
+     */
+    protected List<FeatureId> bulkInsert(SimpleFeatureType featureType,
+            FeatureIterator<SimpleFeature> features, Connection cx) throws IOException {
+        if (!dialect.isBulkLoadSupported()) {
+            return null;
+        }
+        
+        PrimaryKey key = getPrimaryKey(featureType);
+        if (key.getColumns().isEmpty()) {
+            return null;
+        }
+        
+        try {
+            // find the sequences providing the key values
+            String[] sequences = new String[key.getColumns().size()];
+            for (int i = 0; i < sequences.length; i++) {
+                PrimaryKeyColumn col = key.getColumns().get(i);
+                if (col instanceof SequencedPrimaryKeyColumn) {
+                    sequences[i] = ((SequencedPrimaryKeyColumn) col).getSequenceName();
+                } else if (col instanceof AutoGeneratedPrimaryKeyColumn) {
+                    sequences[i] = dialect.getSequenceForColumn(databaseSchema,
+                            key.getTableName(), col.getName(), cx);
+                }
+                if (sequences[i] == null) {
+                    return null;
+                }
+            }
+            
+            // the attribute columns, skipping the exposed primary keys, followed by the keys
+            Set<String> pkColumnNames = getColumnNames(key);
+            List<String> attributes = new ArrayList<String>();
+            List<String> columns = new ArrayList<String>();
+            List<Class> bindings = new ArrayList<Class>();
+            List<Integer> srids = new ArrayList<Integer>();
+            for (AttributeDescriptor att : featureType.getAttributeDescriptors()) {
+                String colName = att.getLocalName();
+                if (pkColumnNames.contains(colName)) {
+                    continue;
+                }
+                attributes.add(colName);
+                columns.add(colName);
+                bindings.add(att.getType().getBinding());
+                
+                int srid = -1;
+                if (att instanceof GeometryDescriptor) {
+                    srid = getDescriptorSRID(att);
+                    CoordinateReferenceSystem crs = ((GeometryDescriptor) att)
+                            .getCoordinateReferenceSystem();
+                    if (srid <= 0 && crs != null) {
+                        try {
+                            Integer candidate = CRS.lookupEpsgCode(crs, false);
+                            if (candidate != null) {
+                                srid = candidate;
+                            }
+                        } catch (Exception e) {
+                            LOGGER.log(Level.FINE, "Could not determine the srid of " + colName, e);
+                        }
+                    }
+                }
+                srids.add(srid);
+            }
+            for (PrimaryKeyColumn col : key.getColumns()) {
+                columns.add(col.getName());
+                bindings.add(col.getType());
+                srids.add(-1);
+            }
+            int[] sridArray = new int[srids.size()];
+            for (int i = 0; i < sridArray.length; i++) {
+                sridArray[i] = srids.get(i);
+            }
+            
+            List<FeatureId> ids = new ArrayList<FeatureId>();
+            BulkInsertIterator rows = new BulkInsertIterator(this, featureType, key, sequences,
+                    attributes.toArray(new String[attributes.size()]), features, cx, ids);
+            long count = dialect.bulkLoad(featureType, columns.toArray(new String[columns.size()]),
+                    bindings.toArray(new Class[bindings.size()]), sridArray, rows, cx);
+            LOGGER.log(Level.FINE, "Bulk loaded {0} features", count);
+            
+            return ids;
+        } catch (SQLException e) {
+            throw (IOException) new IOException("Error bulk loading features").initCause(e);
+        } catch (RuntimeException e) {
+            // the row iterator cannot throw checked exceptions, unwrap them
+            if (e.getCause() instanceof SQLException || e.getCause() instanceof IOException) {
+                throw (IOException) new IOException("Error bulk loading features").initCause(
+                        e.getCause());
+            }
+            throw e;
+        }
+    }
 
     /**
      * Updates an existing feature(s) in the database for a particular feature type / table.
@@ -1647,18 +2489,8 @@ public final class JDBCDataStore extends ContentDataStore
             throw new RuntimeException( e );
         }
         Set<String> pkColumnNames = getColumnNames(key);
+        checkUpdatedAttributes(attributes, pkColumnNames);
 
-        //do a check to ensure that the update includes at least one non primary key column
-        boolean nonPkeyColumn = false;
-        for (AttributeDescriptor att : attributes) {
-            if (!pkColumnNames.contains(att.getLocalName())) {
-                nonPkeyColumn = true;
-            }
-        }
-        if (!nonPkeyColumn) {
-            throw new IllegalArgumentException("Illegal update, must include at least one non primary key column, " +
-                    "all primary key columns are ignored.");
-        }
         if ( dialect instanceof PreparedStatementSQLDialect ) {
             try {
                 PreparedStatement ps = updateSQLPS(featureType, attributes, values, filter, pkColumnNames, cx);
@@ -1696,6 +2528,110 @@ public final class JDBCDataStore extends ContentDataStore
         }
     }
 
+    /**
+     * Ensures that the update includes at least one non primary key column
+     */
+    void checkUpdatedAttributes(AttributeDescriptor[] attributes, Set<String> pkColumnNames) {
+        boolean nonPkeyColumn = false;
+        for (AttributeDescriptor att : attributes) {
+            if (!pkColumnNames.contains(att.getLocalName())) {
+                nonPkeyColumn = true;
+            }
+        }
+        if (!nonPkeyColumn) {
+            throw new IllegalArgumentException("Illegal update, must include at least one non primary key column, " +
+                    "all primary key columns are ignored.");
+        }
+    }
+
+    /**
+     * Updates a single feature, by id. When writing in a transaction with a
+     * {@link #getBatchUpdateSize() batch update size} greater than one the update is queued in
+     * the transaction state, and sent to the database along with the consecutive writes sharing
+     * the same sql.
+     */
+    void updateFeature(SimpleFeatureType featureType, List<AttributeDescriptor> attributes,
+            List<Object> values, String fid, Transaction tx, Connection cx)
+            throws IOException, SQLException {
+        Filter filter = filterFactory.id(Collections.singleton(filterFactory.featureId(fid)));
+        BatchedWrites batch = getBatchedWrites(tx);
+        if (batch == null || attributes.isEmpty()) {
+            update(featureType, attributes, values, filter, cx);
+            return;
+        }
+
+        AttributeDescriptor[] atts = attributes.toArray(new AttributeDescriptor[attributes.size()]);
+        Object[] vals = values.toArray(new Object[values.size()]);
+        Set<String> pkColumnNames = getColumnNames(getPrimaryKey(featureType));
+        checkUpdatedAttributes(atts, pkColumnNames);
+
+        if ( dialect instanceof PreparedStatementSQLDialect ) {
+            PreparedFilterToSQL toSQL = createPreparedFilterToSQL(featureType);
+            String sql = updateSQLPS(featureType, atts, vals, filter, pkColumnNames, toSQL);
+            PreparedStatement ps = batch.prepare(sql, featureType, false);
+            setUpdateValues(atts, vals, pkColumnNames, toSQL, ps, cx);
+            batch.add(sql);
+        } else {
+            String sql = updateSQL(featureType, atts, vals, filter, pkColumnNames);
+            batch.addSQL(sql, featureType, false);
+        }
+    }
+
+    /**
+     * Deletes a single feature, by id, queueing the delete in the transaction state like
+     * {@link #updateFeature(SimpleFeatureType, List, List, String, Transaction, Connection)} does
+     */
+    void deleteFeature(SimpleFeatureType featureType, String fid, Transaction tx, Connection cx)
+            throws IOException {
+        BatchedWrites batch = getBatchedWrites(tx);
+        if (batch == null) {
+            delete(featureType, fid, cx);
+            return;
+        }
+
+        Filter filter = filterFactory.id(Collections.singleton(filterFactory.featureId(fid)));
+        try {
+            if ( dialect instanceof PreparedStatementSQLDialect ) {
+                PreparedFilterToSQL toSQL = createPreparedFilterToSQL(featureType);
+                String sql = deleteSQLPS(featureType, filter, toSQL);
+                PreparedStatement ps = batch.prepare(sql, featureType, true);
+                setPreparedFilterValues(ps, toSQL, 0, cx);
+                batch.add(sql);
+            } else {
+                batch.addSQL(deleteSQL(featureType, filter), featureType, true);
+            }
+        } catch (SQLException e) {
+            String msg = "Error occured during delete";
+            throw (IOException) new IOException(msg).initCause(e);
+        }
+    }
+
+    /**
+     * Returns the pending writes of the transaction, or null if the writes should not be batched
+     */
+    BatchedWrites getBatchedWrites(Transaction tx) {
+        if (batchUpdateSize <= 1 || tx == null || tx == Transaction.AUTO_COMMIT) {
+            return null;
+        }
+        State state = tx.getState(this);
+        if (state instanceof JDBCTransactionState) {
+            return ((JDBCTransactionState) state).getBatchedWrites();
+        }
+        return null;
+    }
+
+    /**
+     * Sends the queued updates and deletes of the transaction to the database
+     */
+    void flushBatchedWrites(Transaction tx) throws IOException {
+        if (tx != null && tx != Transaction.AUTO_COMMIT) {
+            State state = tx.getState(this);
+            if (state instanceof JDBCTransactionState) {
+                ((JDBCTransactionState) state).flushBatchedWrites();
+            }
+        }
+    }
+
     /**
      * Deletes an existing feature in the database for a particular feature type / fid.
      */
@@ -1780,6 +2716,8 @@ public final class JDBCDataStore extends ContentDataStore
         
         JDBCTransactionState tstate = (JDBCTransactionState) t.getState(this);
         if(tstate != null) {
+            // the caller is going to use the connection, make it see the queued writes
+            tstate.flushBatchedWrites();
             return tstate.cx;
         } else {
             Connection cx = createConnection();
@@ -3343,7 +4281,7 @@ public final class JDBCDataStore extends ContentDataStore
         applySearchHints(featureType, query, sql);
 
         LOGGER.fine( sql.toString() );
-        PreparedStatement ps = cx.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        PreparedStatement ps = prepareCachedStatement(sql.toString(), cx);
         ps.setFetchSize(fetchSize);
         
         if ( toSQL != null ) {
@@ -3384,7 +4322,7 @@ public final class JDBCDataStore extends ContentDataStore
         applyLimitOffset(sql, query.getStartIndex(), query.getMaxFeatures());
     
         LOGGER.fine( sql.toString() );
-        PreparedStatement ps = cx.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        PreparedStatement ps = prepareCachedStatement(sql.toString(), cx);
         ps.setFetchSize(fetchSize);
         
         setPreparedFilterValues(ps, toSQLs, cx);
@@ -3392,6 +4330,85 @@ public final class JDBCDataStore extends ContentDataStore
         return ps;
     }
 
+    /**
+     * Prepares a forward only, read only statement, reusing an idle one with the same SQL from 
+     * the statement cache of the physical connection if possible. The statement must be closed
+     * with {@link #closeSafe(Statement)}, which gives it back to the cache.
+     */
+    PreparedStatement prepareCachedStatement(String sql, Connection cx) throws SQLException {
+        if (statementCacheSize <= 0) {
+            return cx.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, 
+                    ResultSet.CONCUR_READ_ONLY);
+        }
+
+        // statements prepared on pooled connections are closed when the connection is 
+        // returned to the pool, work against the physical connection instead
+        Connection physical = unwrapConnection(cx);
+        StatementCache cache;
+        synchronized (statementCaches) {
+            cache = statementCaches.get(physical);
+            if (cache == null) {
+                purgeStatementCaches();
+                cache = new StatementCache(physical, statementCacheSize);
+                statementCaches.put(physical, cache);
+            }
+        }
+        
+        PreparedStatement ps = cache.take(sql);
+        if (ps != null) {
+            statementCacheHits.incrementAndGet();
+        } else {
+            statementCacheMisses.incrementAndGet();
+            ps = physical.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, 
+                    ResultSet.CONCUR_READ_ONLY);
+        }
+        leasedStatements.put(ps, new Object[] { cache, sql });
+        return ps;
+    }
+
+    Connection unwrapConnection(Connection cx) {
+        try {
+            UnWrapper unwrapper = DataSourceFinder.getUnWrapper(cx);
+            if (unwrapper != null) {
+                Connection unwrapped = unwrapper.unwrap(cx);
+                if (unwrapped != null) {
+                    return unwrapped;
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Could not unwrap connection " + cx, e);
+        }
+        return cx;
+    }
+
+    /**
+     * Drops the caches of the physical connections that have been closed, either by this store or
+     * by the connection pool
+     */
+    void purgeStatementCaches() {
+        synchronized (statementCaches) {
+            for (Iterator<StatementCache> it = statementCaches.values().iterator(); it.hasNext();) {
+                StatementCache cache = it.next();
+                if (cache.isConnectionClosed()) {
+                    cache.close();
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes all the statements cached so far
+     */
+    void clearStatementCaches() {
+        synchronized (statementCaches) {
+            for (StatementCache cache : statementCaches.values()) {
+                cache.close();
+            }
+            statementCaches.clear();
+        }
+    }
+
     /**
      * Helper method for setting the values of the WHERE class of a prepared statement from a 
      * list of PreparedFilterToSQL.
@@ -3633,7 +4650,7 @@ public final class JDBCDataStore extends ContentDataStore
         
         LOGGER.fine( sql.toString() );
           
-        PreparedStatement ps = cx.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        PreparedStatement ps = prepareCachedStatement(sql.toString(), cx);
         ps.setFetchSize(fetchSize);
         
         setPreparedFilterValues(ps, toSQL, cx);
@@ -3713,20 +4730,20 @@ public final class JDBCDataStore extends ContentDataStore
     }
 
     protected void encodeFunction( String function, AttributeDescriptor att, Query query, StringBuffer sql ) {
-        sql.append(function).append("(");
+        StringBuffer column = new StringBuffer();
         if ( att == null ) {
-            sql.append( "*" );
+            column.append( "*" );
         }
         else {
             if ( att instanceof GeometryDescriptor ) {
-                encodeGeometryColumn((GeometryDescriptor)att, sql,query.getHints());
+                encodeGeometryColumn((GeometryDescriptor)att, column,query.getHints());
             }
             else {
-                dialect.encodeColumnName( att.getLocalName(), sql);
+                dialect.encodeColumnName( att.getLocalName(), column);
             }
         }
         
-        sql.append(")");
+        dialect.encodeAggregateFunction(function, column.toString(), sql);
     }
     
     /**
@@ -3755,31 +4772,44 @@ public final class JDBCDataStore extends ContentDataStore
      * Generates a 'DELETE FROM' prepared statement.
      */
     protected PreparedStatement deleteSQLPS(SimpleFeatureType featureType, Filter filter, Connection cx ) 
+        throws SQLException {
+        PreparedFilterToSQL toSQL = null;
+        if (filter != null && !Filter.INCLUDE.equals(filter)) {
+            toSQL = createPreparedFilterToSQL(featureType);
+        }
+        String sql = deleteSQLPS(featureType, filter, toSQL);
+
+        LOGGER.fine( sql );
+        PreparedStatement ps = cx.prepareStatement(sql);
+        
+        if ( toSQL != null ) {
+            setPreparedFilterValues(ps, toSQL, 0, cx);
+        }
+        
+        return ps;
+    }
+
+    /**
+     * Generates the sql of a 'DELETE FROM' prepared statement, the filter is encoded with the
+     * provided encoder, if any, which collects the values to be set in the statement.
+     */
+    String deleteSQLPS(SimpleFeatureType featureType, Filter filter, PreparedFilterToSQL toSQL) 
         throws SQLException {
         StringBuffer sql = new StringBuffer();
 
         sql.append("DELETE FROM ");
         encodeTableName(featureType.getTypeName(), sql, null);
 
-        PreparedFilterToSQL toSQL = null;
-        if (filter != null && !Filter.INCLUDE.equals(filter)) {
+        if (toSQL != null) {
             //encode filter
             try {
-                toSQL = createPreparedFilterToSQL(featureType);
                 sql.append(" ").append(toSQL.encodeToString(filter));
             } catch (FilterToSQLException e) {
                 throw new RuntimeException(e);
             }
         }
 
-        LOGGER.fine( sql.toString() );
-        PreparedStatement ps = cx.prepareStatement(sql.toString());
-        
-        if ( toSQL != null ) {
-            setPreparedFilterValues(ps, toSQL, 0, cx);
-        }
-        
-        return ps;
+        return sql.toString();
     }
 
     /**
@@ -3908,15 +4938,32 @@ public final class JDBCDataStore extends ContentDataStore
      */
     protected PreparedStatement insertSQLPS(SimpleFeatureType featureType, SimpleFeature feature, List keyValues, Connection cx) 
         throws IOException, SQLException {
-        PreparedStatementSQLDialect dialect = (PreparedStatementSQLDialect) getSQLDialect();
-        
-        // grab the primary key and collect the pk column names 
+        // grab the primary key
         PrimaryKey key = null; 
         try {
             key = getPrimaryKey(featureType);
         } catch (IOException e) {
             throw new RuntimeException( e );
         }
+        
+        //create the prepared statement
+        PreparedStatement ps = cx.prepareStatement(insertSQLPS(featureType, feature, key));
+        
+        //set the attribute and key values
+        setInsertValues(featureType, feature, keyValues, key, ps, cx);
+        
+        return ps;
+    }
+
+    /**
+     * Generates the sql of a 'INSERT INFO' prepared statement. Features sharing the same sql can
+     * be inserted with the same statement.
+     */
+    String insertSQLPS(SimpleFeatureType featureType, SimpleFeature feature, PrimaryKey key)
+        throws IOException, SQLException {
+        PreparedStatementSQLDialect dialect = (PreparedStatementSQLDialect) getSQLDialect();
+        
+        // collect the pk column names 
         Set<String> pkColumnNames = getColumnNames(key);
         
         StringBuffer sql = new StringBuffer();
@@ -3978,8 +5025,18 @@ public final class JDBCDataStore extends ContentDataStore
         sql.append(")");
         LOGGER.log(Level.FINE, "Inserting new feature with ps: {0}", sql);
         
-        //create the prepared statement
-        PreparedStatement ps = cx.prepareStatement(sql.toString());
+        return sql.toString();
+    }
+
+    /**
+     * Sets the attribute and key values of a feature in a 'INSERT INTO' prepared statement
+     * generated by {@link #insertSQLPS(SimpleFeatureType, SimpleFeature, PrimaryKey)}
+     */
+    void setInsertValues(SimpleFeatureType featureType, SimpleFeature feature, List keyValues,
+            PrimaryKey key, PreparedStatement ps, Connection cx) throws IOException, SQLException {
+        PreparedStatementSQLDialect dialect = (PreparedStatementSQLDialect) getSQLDialect();
+        Set<String> pkColumnNames = getColumnNames(key);
+        boolean useExisting = Boolean.TRUE.equals(feature.getUserData().get(Hints.USE_PROVIDED_FID));
         
         //set the attribute values
         int i = 1;
@@ -4030,8 +5087,6 @@ public final class JDBCDataStore extends ContentDataStore
                 }
             }
         }
-        
-        return ps;
     }
     
     /**
@@ -4181,6 +5236,28 @@ public final class JDBCDataStore extends ContentDataStore
      */
     protected PreparedStatement updateSQLPS(SimpleFeatureType featureType, AttributeDescriptor[] attributes,
             Object[] values, Filter filter, Set<String> pkColumnNames, Connection cx ) throws IOException, SQLException {
+        PreparedFilterToSQL toSQL = null;
+        if (filter != null  && !Filter.INCLUDE.equals(filter)) {
+            toSQL = createPreparedFilterToSQL(featureType);
+        }
+        String sql = updateSQLPS(featureType, attributes, values, filter, pkColumnNames, toSQL);
+        
+        PreparedStatement ps = cx.prepareStatement(sql);
+        LOGGER.log(Level.FINE, "Updating features with prepared statement: {0}", sql);
+        
+        setUpdateValues(attributes, values, pkColumnNames, toSQL, ps, cx);
+        
+        return ps;
+    }
+
+    /**
+     * Generates the sql of an 'UPDATE' prepared statement, the filter is encoded with the
+     * provided encoder, if any, which collects the values to be set in the statement. Updates
+     * sharing the same sql can be executed with the same statement.
+     */
+    String updateSQLPS(SimpleFeatureType featureType, AttributeDescriptor[] attributes,
+            Object[] values, Filter filter, Set<String> pkColumnNames, PreparedFilterToSQL toSQL)
+            throws IOException, SQLException {
         PreparedStatementSQLDialect dialect = (PreparedStatementSQLDialect) getSQLDialect();
         
 
@@ -4214,19 +5291,26 @@ public final class JDBCDataStore extends ContentDataStore
         sql.setLength(sql.length() - 1);
         sql.append(" ");
 
-        PreparedFilterToSQL toSQL = null;
-        if (filter != null  && !Filter.INCLUDE.equals(filter)) {
+        if (toSQL != null) {
             //encode filter
             try {
-                toSQL = createPreparedFilterToSQL(featureType);
                 sql.append(" ").append(toSQL.encodeToString(filter));
             } catch (FilterToSQLException e) {
                 throw new RuntimeException(e);
             }
         }
         
-        PreparedStatement ps = cx.prepareStatement(sql.toString());
-        LOGGER.log(Level.FINE, "Updating features with prepared statement: {0}", sql);
+        return sql.toString();
+    }
+
+    /**
+     * Sets the attribute and filter values of an 'UPDATE' prepared statement generated by
+     * {@link #updateSQLPS(SimpleFeatureType, AttributeDescriptor[], Object[], Filter, Set, PreparedFilterToSQL)}
+     */
+    void setUpdateValues(AttributeDescriptor[] attributes, Object[] values,
+            Set<String> pkColumnNames, PreparedFilterToSQL toSQL, PreparedStatement ps,
+            Connection cx) throws IOException, SQLException {
+        PreparedStatementSQLDialect dialect = (PreparedStatementSQLDialect) getSQLDialect();
         
         int i = 0;
         int j = 0;
@@ -4255,8 +5339,6 @@ public final class JDBCDataStore extends ContentDataStore
         if ( toSQL != null ) {
             setPreparedFilterValues(ps, toSQL, j, cx);
         }
-        
-        return ps;
     }
 
     /**
@@ -4571,6 +5653,13 @@ public final class JDBCDataStore extends ContentDataStore
         }
 
         try {
+            Object[] lease = leasedStatements.remove(st);
+            if (lease != null && statementCacheSize > 0) {
+                StatementCache cache = (StatementCache) lease[0];
+                int evicted = cache.release((String) lease[1], (PreparedStatement) st);
+                statementCacheEvictions.addAndGet(evicted);
+                return;
+            }
             st.close();
         } catch (SQLException e) {
             String msg = "Error occurred closing statement";
@@ -4599,6 +5688,10 @@ public final class JDBCDataStore extends ContentDataStore
 //            System.out.println("Closing connection " + System.identityHashCode(cx));
             cx.close();
             LOGGER.fine( "CLOSE CONNECTION");
+            if (statementCacheSize > 0) {
+                // the physical connection might have been closed along, or evicted by the pool
+                purgeStatementCaches();
+            }
         } catch (SQLException e) {
             String msg = "Error occurred closing connection";
             LOGGER.warning(msg);
@@ -4621,6 +5714,14 @@ public final class JDBCDataStore extends ContentDataStore
     }
     
     public void dispose() {
+        synchronized (this) {
+            if (readerExecutor != null) {
+                // the interrupted background readers stop and close their connections
+                readerExecutor.shutdownNow();
+                readerExecutor = null;
+            }
+        }
+        clearStatementCaches();
         if(dataSource != null && dataSource instanceof ManageableDataSource) {
             try {
                 ManageableDataSource mds = (ManageableDataSource) dataSource; 
@@ -98,6 +98,17 @@ public abstract class JDBCDataStoreFactory implements DataStoreFactorySpi {
     /** If connections should be validated before using them */
     public static final Param FETCHSIZE = new Param("fetch size", Integer.class,
             "number of records read with each iteraction with the dbms", false, 1000);
+
+    /** Number of features inserted with each batch sent to the dbms */
+    public static final Param BATCH_INSERT_SIZE = new Param("Batch insert size", Integer.class,
+            "number of features inserted with each batch sent to the dbms, use 1 to disable batching",
+            false, 1);
+    
+    /** Number of feature updates and deletes sent with each batch to the dbms */
+    public static final Param BATCH_UPDATE_SIZE = new Param("Batch update size", Integer.class,
+            "number of feature updates and deletes sent with each batch to the dbms when " +
+            "writing in a transaction, use 1 to disable batching. With batching, write errors " +
+            "are reported when the batch is sent, possibly on commit", false, 1);
     
     /** Maximum amount of time the pool will wait when trying to grab a new connection **/
     public static final Param MAXWAIT = new Param("Connection timeout", Integer.class,
@@ -131,6 +142,23 @@ public abstract class JDBCDataStoreFactory implements DataStoreFactorySpi {
     /** expose primary key columns as attributes */
     public static final Param EXPOSE_PK = new Param("Expose primary keys", Boolean.class, "Expose primary key columns as " +
     		"attributes of the feature type", false, false);
+
+    /** parameter enabling keyset paging */
+    public static final Param KEYSET_PAGING = new Param("Keyset paging", Boolean.class,
+            "Page queries sorted on the primary key by seeking past the last key read " +
+            "instead of skipping rows with an offset. The recorded keys are dropped when " +
+            "the table is modified through this store, not when other applications modify it",
+            false, false);
+
+    /** parameter for the size of the statement cache */
+    public static final Param STATEMENT_CACHE_SIZE = new Param("Statement cache size", Integer.class,
+            "Number of prepared select statements cached and reused for each physical connection, " +
+            "0 disables the cache (prepared statements only)", false, 0);
+    
+    /** parameter for the number of features decoded ahead in the background */
+    public static final Param PREFETCH_SIZE = new Param("Prefetch size", Integer.class,
+            "Number of features decoded ahead on a background thread while the previous ones " +
+            "are processed, 0 disables prefetching (auto commit reads only)", false, 0);
     
     /** SQL executed when the session begins */
     public static final Param SQL_ON_BORROW = new Param("Session startup SQL", String.class, 
@@ -212,6 +240,16 @@ public abstract class JDBCDataStoreFactory implements DataStoreFactorySpi {
         if(fetchSize != null && fetchSize > 0)
             dataStore.setFetchSize(fetchSize);
 
+        // batch insert size
+        Integer batchInsertSize = (Integer) BATCH_INSERT_SIZE.lookUp(params);
+        if(batchInsertSize != null && batchInsertSize > 0)
+            dataStore.setBatchInsertSize(batchInsertSize);
+
+        // batch update size
+        Integer batchUpdateSize = (Integer) BATCH_UPDATE_SIZE.lookUp(params);
+        if(batchUpdateSize != null && batchUpdateSize > 0)
+            dataStore.setBatchUpdateSize(batchUpdateSize);
+
         // namespace
         String namespace = (String) NAMESPACE.lookUp(params);
 
@@ -249,6 +287,21 @@ public abstract class JDBCDataStoreFactory implements DataStoreFactorySpi {
         if(exposePk != null) {
             dataStore.setExposePrimaryKeyColumns(exposePk);
         }
+
+        Boolean keysetPaging = (Boolean) KEYSET_PAGING.lookUp(params);
+        if(keysetPaging != null) {
+            dataStore.setKeysetPaging(keysetPaging);
+        }
+
+        Integer statementCacheSize = (Integer) STATEMENT_CACHE_SIZE.lookUp(params);
+        if(statementCacheSize != null) {
+            dataStore.setStatementCacheSize(statementCacheSize);
+        }
+
+        Integer prefetchSize = (Integer) PREFETCH_SIZE.lookUp(params);
+        if(prefetchSize != null) {
+            dataStore.setPrefetchSize(prefetchSize);
+        }
         
         // session startup and teardown
         String sqlOnBorrow = (String) SQL_ON_BORROW.lookUp(params);
@@ -340,9 +393,14 @@ public abstract class JDBCDataStoreFactory implements DataStoreFactorySpi {
         parameters.put(PASSWD.key, PASSWD);
         parameters.put(NAMESPACE.key, NAMESPACE);
         parameters.put(EXPOSE_PK.key, EXPOSE_PK);
+        parameters.put(KEYSET_PAGING.key, KEYSET_PAGING);
+        parameters.put(STATEMENT_CACHE_SIZE.key, STATEMENT_CACHE_SIZE);
+        parameters.put(PREFETCH_SIZE.key, PREFETCH_SIZE);
         parameters.put(MAXCONN.key, MAXCONN);
         parameters.put(MINCONN.key, MINCONN);
         parameters.put(FETCHSIZE.key, FETCHSIZE);
+        parameters.put(BATCH_INSERT_SIZE.key, BATCH_INSERT_SIZE);
+        parameters.put(BATCH_UPDATE_SIZE.key, BATCH_UPDATE_SIZE);
         parameters.put(MAXWAIT.key, MAXWAIT);
         if(getValidationQuery() != null)
             parameters.put(VALIDATECONN.key, VALIDATECONN);
@@ -17,6 +17,8 @@
 package org.geotools.jdbc;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
@@ -28,6 +30,7 @@ import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -54,16 +57,20 @@ import org.geotools.filter.visitor.PostPreProcessFilterSplittingVisitor;
 import org.geotools.filter.visitor.SimplifyingFilterVisitor;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
+import org.geotools.util.Converters;
 import org.geotools.util.logging.Logging;
 import org.opengis.feature.Association;
 import org.opengis.feature.FeatureVisitor;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory;
 import org.opengis.filter.expression.Expression;
 import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import com.vividsolutions.jts.geom.Geometry;
@@ -113,6 +120,10 @@ public class JDBCFeatureSource extends ContentFeatureSource {
         // mark the features as detached, that is, the user can directly alter them
         // without altering the state of the datastore
         hints.add(Hints.FEATURE_DETACHED);
+        hints.add(JDBCDataStore.KEYSET_CURSOR);
+        hints.add(JDBCDataStore.PARTITIONS);
+        hints.add(JDBCDataStore.ESTIMATED_STATISTICS);
+        hints.add(JDBCDataStore.PREFETCH);
         getDataStore().getSQLDialect().addSupportedHints(hints);
     }
 
@@ -421,6 +432,25 @@ public class JDBCFeatureSource extends ContentFeatureSource {
     protected int getCountInternal(Query query) throws IOException {
         JDBCDataStore dataStore = getDataStore();
 
+        // use the database statistics if an estimate is good enough
+        if (isEstimateRequested(query)) {
+            int count = getState().getEstimatedCount(dataStore.getEstimatesTimeToLive());
+            if (count < 0) {
+                Connection cx = dataStore.getConnection(getState());
+                try {
+                    count = dataStore.getEstimatedCount(getSchema(), cx);
+                } finally {
+                    dataStore.releaseConnection(cx, getState());
+                }
+                if (count >= 0) {
+                    getState().setEstimatedCount(count);
+                }
+            }
+            if (count >= 0) {
+                return count;
+            }
+        }
+
         //split the filter
         Filter[] split = splitFilter( query.getFilter() );
         Filter preFilter = split[0];
@@ -486,6 +516,26 @@ public class JDBCFeatureSource extends ContentFeatureSource {
             throws IOException {
         JDBCDataStore dataStore = getDataStore();
 
+        // use the database statistics if an estimate is good enough
+        if (isEstimateRequested(query)) {
+            ReferencedEnvelope bounds = getState().getEstimatedBounds(
+                    dataStore.getEstimatesTimeToLive());
+            if (bounds == null) {
+                Connection cx = dataStore.getConnection(getState());
+                try {
+                    bounds = dataStore.getEstimatedBounds(getSchema(), cx);
+                } finally {
+                    dataStore.releaseConnection(cx, getState());
+                }
+                if (bounds != null) {
+                    getState().setEstimatedBounds(bounds);
+                }
+            }
+            if (bounds != null) {
+                return new ReferencedEnvelope(bounds);
+            }
+        }
+
         //split the filter
         Filter[] split = splitFilter( query.getFilter() );
         Filter preFilter = split[0];
@@ -578,6 +628,29 @@ public class JDBCFeatureSource extends ContentFeatureSource {
         DefaultQuery preQuery = new DefaultQuery(query);
         preQuery.setFilter(preFilter);
 
+        // keyset paging, seek to the page start if we know where the previous page ended
+        KeysetKey keyset = null;
+        int pageStart = query.getStartIndex() != null ? query.getStartIndex() : 0;
+        if (postFilter == null || postFilter == Filter.INCLUDE) {
+            Object hint = query.getHints() != null ? 
+                    query.getHints().get(JDBCDataStore.KEYSET_CURSOR) : null;
+            if (hint != null || getDataStore().isKeysetPaging()) {
+                keyset = getKeysetKey(query);
+            }
+            if (keyset != null) {
+                KeysetCursor cursor = getKeysetCursor(keyset, query, hint);
+                if (cursor != null) {
+                    pageStart = Math.max(pageStart, cursor.getOffset());
+                    int skip = pageStart - cursor.getOffset();
+                    Filter seek = keyset.toFilter(getDataStore().getFilterFactory(), 
+                            cursor.getValues());
+                    preQuery.setFilter(preFilter == null || preFilter == Filter.INCLUDE ? seek
+                            : getDataStore().getFilterFactory().and(preFilter, seek));
+                    preQuery.setStartIndex(skip > 0 ? skip : null);
+                }
+            }
+        }
+
         // Build the feature type returned by this query. Also build an eventual extra feature type
         // containing the attributes we might need in order to evaluate the post filter
         SimpleFeatureType[] types = 
@@ -585,6 +658,19 @@ public class JDBCFeatureSource extends ContentFeatureSource {
         SimpleFeatureType querySchema = types[0];
         SimpleFeatureType returnedSchema = types[1];
 
+        // parallel scan, if requested and possible
+        List<Filter> partitions = keyset == null ? getPartitionFilters(query, preFilter) : null;
+        if (partitions != null) {
+            FeatureReader<SimpleFeatureType, SimpleFeature> reader = getPartitionedReader(
+                    querySchema, preQuery, preFilter, partitions, query.getHints());
+            if (postFilter != null && postFilter != Filter.INCLUDE) {
+                reader = new FilteringFeatureReader<SimpleFeatureType, SimpleFeature>(reader,postFilter);
+                if(!returnedSchema.equals(querySchema))
+                    reader = new ReTypeFeatureReader(reader, returnedSchema);
+            }
+            return reader;
+        }
+
         //grab connection
         Connection cx = getDataStore().getConnection(getState());
         
@@ -642,7 +728,19 @@ public class JDBCFeatureSource extends ContentFeatureSource {
                 throw (IOException) new IOException().initCause(e);
             }
         }
-        
+
+        // decode ahead in the background, the reader owns its connection only in auto commit
+        int prefetch = getPrefetchSize(query);
+        if (prefetch > 0 && getState().getTransaction() == Transaction.AUTO_COMMIT) {
+            reader = new PrefetchingFeatureReader(reader, prefetch,
+                    getDataStore().getReaderExecutor());
+        }
+
+        // remember where the page ends so that the next one can seek to it
+        if (keyset != null && query.getMaxFeatures() < Integer.MAX_VALUE) {
+            reader = new KeysetRecordingReader(reader, keyset, keyset.getPosition(query,
+                    pageStart + query.getMaxFeatures()), query.getMaxFeatures());
+        }
 
         // if post filter, wrap it
         if (postFilter != null && postFilter != Filter.INCLUDE) {
@@ -654,6 +752,463 @@ public class JDBCFeatureSource extends ContentFeatureSource {
         return reader;
     }
 
+    /**
+     * Returns the number of features to be decoded ahead for the query, as set by the
+     * {@link JDBCDataStore#PREFETCH} hint or, by default, by the store
+     */
+    int getPrefetchSize(Query query) {
+        Object hint = query.getHints() != null ? 
+                query.getHints().get(JDBCDataStore.PREFETCH) : null;
+        if (hint instanceof Number) {
+            return ((Number) hint).intValue();
+        }
+        return getDataStore().getPrefetchSize();
+    }
+
+    /**
+     * Returns true if the query asks for estimated statistics, and targets the whole table
+     */
+    boolean isEstimateRequested(Query query) {
+        Object hint = query.getHints() != null ? 
+                query.getHints().get(JDBCDataStore.ESTIMATED_STATISTICS) : null;
+        return Boolean.TRUE.equals(hint)
+                && (query.getFilter() == null || query.getFilter() == Filter.INCLUDE)
+                && query.getJoins().isEmpty()
+                && (query.getStartIndex() == null || query.getStartIndex() == 0)
+                && query.getMaxFeatures() == Integer.MAX_VALUE;
+    }
+
+    /**
+     * Splits the query in ranges of primary key values, as many as requested by the
+     * {@link JDBCDataStore#PARTITIONS} hint up to the store reader threads, or returns null if
+     * the query cannot be partitioned
+     */
+    List<Filter> getPartitionFilters(Query query, Filter preFilter) throws IOException {
+        Object hint = query.getHints() != null ? 
+                query.getHints().get(JDBCDataStore.PARTITIONS) : null;
+        int partitions = hint instanceof Number ? ((Number) hint).intValue() : 0;
+        // the scans share the store reader threads, extra partitions would hold idle connections
+        partitions = Math.min(partitions, getDataStore().getReaderThreads());
+        // each partition needs its own connection, and there is no global sorting or paging
+        if (partitions < 2 || getState().getTransaction() != Transaction.AUTO_COMMIT
+                || !query.getJoins().isEmpty()
+                || (query.getSortBy() != null && query.getSortBy().length > 0)
+                || (query.getStartIndex() != null && query.getStartIndex() > 0)
+                || query.getMaxFeatures() < Integer.MAX_VALUE) {
+            return null;
+        }
+        PrimaryKey key = getPrimaryKey();
+        if (key == null || key instanceof NullPrimaryKey || key.getColumns().size() != 1) {
+            return null;
+        }
+        PrimaryKeyColumn column = key.getColumns().get(0);
+        Class<?> binding = column.getType();
+        if (!(Integer.class.equals(binding) || Long.class.equals(binding)
+                || Short.class.equals(binding) || BigInteger.class.equals(binding)
+                || BigDecimal.class.equals(binding))) {
+            return null;
+        }
+
+        BigInteger[] bounds;
+        Connection cx = getDataStore().getConnection(getState());
+        try {
+            bounds = getDataStore().getPrimaryKeyBounds(getSchema(), column.getName(), preFilter,
+                    cx);
+        } finally {
+            getDataStore().releaseConnection(cx, getState());
+        }
+        if (bounds == null) {
+            return null;
+        }
+        BigInteger min = bounds[0];
+        BigInteger span = bounds[1].subtract(min).add(BigInteger.ONE);
+        if (span.compareTo(BigInteger.valueOf(partitions)) < 0) {
+            partitions = span.intValue();
+        }
+        if (partitions < 2) {
+            return null;
+        }
+        BigInteger step = span.divide(BigInteger.valueOf(partitions));
+
+        // the first and last ranges are left open, rows added after the bounds were 
+        // computed will still be read 
+        FilterFactory ff = getDataStore().getFilterFactory();
+        Expression pk = ff.property(column.getName());
+        List<Filter> filters = new ArrayList<Filter>(partitions);
+        Expression lower = null;
+        for (int i = 0; i < partitions; i++) {
+            Expression upper = null;
+            if (i < partitions - 1) {
+                BigInteger value = min.add(step.multiply(BigInteger.valueOf(i + 1)));
+                upper = ff.literal(Converters.convert(value, binding));
+            }
+            if (lower == null) {
+                filters.add(ff.less(pk, upper));
+            } else if (upper == null) {
+                filters.add(ff.greaterOrEqual(pk, lower));
+            } else {
+                filters.add(ff.and(ff.greaterOrEqual(pk, lower), ff.less(pk, upper)));
+            }
+            lower = upper;
+        }
+        return filters;
+    }
+
+    /**
+     * Opens a reader for each partition of the query, each on its own connection, and merges
+     * them into a reader scanning them in parallel
+     */
+    FeatureReader<SimpleFeatureType, SimpleFeature> getPartitionedReader(
+            SimpleFeatureType querySchema, Query preQuery, Filter preFilter,
+            List<Filter> partitions, Hints hints) throws IOException {
+        SQLDialect dialect = getDataStore().getSQLDialect();
+        FilterFactory ff = getDataStore().getFilterFactory();
+        List<FeatureReader<SimpleFeatureType, SimpleFeature>> readers = 
+            new ArrayList<FeatureReader<SimpleFeatureType, SimpleFeature>>();
+        try {
+            for (Filter partition : partitions) {
+                DefaultQuery partitionQuery = new DefaultQuery(preQuery);
+                partitionQuery.setFilter(preFilter == null || preFilter == Filter.INCLUDE ? 
+                        partition : ff.and(preFilter, partition));
+                
+                Connection cx = getDataStore().getConnection(getState());
+                try {
+                    cx.setAutoCommit(dialect.isAutoCommitQuery());
+                    if ( dialect instanceof PreparedStatementSQLDialect ) {
+                        PreparedStatement ps = getDataStore().selectSQLPS(querySchema, 
+                                partitionQuery, cx);
+                        readers.add(new JDBCFeatureReader(ps, cx, this, querySchema, hints));
+                    } else {
+                        String sql = getDataStore().selectSQL(querySchema, partitionQuery);
+                        getDataStore().getLogger().fine(sql);
+                        readers.add(new JDBCFeatureReader(sql, cx, this, querySchema, hints));
+                    }
+                } catch (Throwable e) { // NOSONAR
+                    getDataStore().closeSafe(cx);
+                    if (e instanceof Error) {
+                        throw (Error) e;
+                    } else {
+                        throw (IOException) new IOException().initCause(e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            for (FeatureReader<SimpleFeatureType, SimpleFeature> reader : readers) {
+                try {
+                    reader.close();
+                } catch (IOException ce) {
+                    LOGGER.log(Level.FINE, "Error closing partition reader", ce);
+                }
+            }
+            throw e;
+        }
+
+        int fetchSize = getDataStore().getFetchSize();
+        return new PartitionedFeatureReader(readers, fetchSize > 0 ? fetchSize : 1000,
+                getDataStore().getReaderExecutor());
+    }
+
+    /**
+     * Returns the keyset cursor leading to the page that follows the one described by the query,
+     * provided such page has already been read with keyset paging enabled (either at the store
+     * level, see {@link JDBCDataStore#setKeysetPaging(boolean)}, or by using the
+     * {@link JDBCDataStore#KEYSET_CURSOR} hint).
+     * <p>
+     * The cursor, or its {@link KeysetCursor#encode() encoded} form, can be set in the
+     * {@link JDBCDataStore#KEYSET_CURSOR} hint of a query with the same filter and sorting to
+     * read the next page. When a cursor is provided the query start index is only used to skip
+     * rows past the cursor offset.
+     * </p>
+     * <p>
+     * Keyset paging is available for queries sorted on all the primary key columns, possibly
+     * after non nullable attributes, that do not require any in memory filtering, against
+     * databases supporting native offsets.
+     * </p>
+     * @return The cursor, or null if not available
+     */
+    public KeysetCursor getKeysetCursor(Query query) throws IOException {
+        query = joinQuery(query);
+        KeysetKey keyset = getKeysetKey(query);
+        if (keyset == null || query.getMaxFeatures() == Integer.MAX_VALUE) {
+            return null;
+        }
+        int pageStart = query.getStartIndex() != null ? query.getStartIndex() : 0;
+        Object hint = query.getHints() != null ? 
+                query.getHints().get(JDBCDataStore.KEYSET_CURSOR) : null;
+        if (hint != null) {
+            KeysetCursor cursor = getKeysetCursor(keyset, query, hint);
+            if (cursor != null) {
+                pageStart = Math.max(pageStart, cursor.getOffset());
+            }
+        }
+        return getState().getKeysetCursor(keyset.getPosition(query,
+                pageStart + query.getMaxFeatures()));
+    }
+
+    /**
+     * Looks up the cursor to resume the query from, either from the hint, or from the cursors
+     * recorded reading the previous pages
+     */
+    KeysetCursor getKeysetCursor(KeysetKey keyset, Query query, Object hint) {
+        KeysetCursor cursor = null;
+        if (hint instanceof KeysetCursor) {
+            cursor = (KeysetCursor) hint;
+        } else if (hint != null) {
+            cursor = KeysetCursor.decode(hint.toString(), keyset.bindings);
+        } else if (query.getStartIndex() != null && query.getStartIndex() > 0) {
+            cursor = getState().getKeysetCursor(keyset.getPosition(query, query.getStartIndex()));
+        }
+        if (cursor != null && cursor.getValues().length != keyset.names.length) {
+            LOGGER.fine("Ignoring keyset cursor not matching the query sort: " + cursor);
+            return null;
+        }
+        return cursor;
+    }
+
+    /**
+     * Returns the sort keys of the query if they identify rows uniquely, that is, if they 
+     * contain all of the primary key columns and no nullable attribute, or null otherwise.
+     */
+    KeysetKey getKeysetKey(Query query) throws IOException {
+        // without native offsets the start index is skipped again in memory, past the seek
+        if (!canOffset()) {
+            return null;
+        }
+        SortBy[] sortBy = query.getSortBy();
+        if (sortBy == null || sortBy.length == 0 || !query.getJoins().isEmpty()) {
+            return null;
+        }
+        PrimaryKey key = getPrimaryKey();
+        if (key == null || key instanceof NullPrimaryKey) {
+            return null;
+        }
+        
+        List<PrimaryKeyColumn> columns = key.getColumns();
+        boolean[] covered = new boolean[columns.size()];
+        KeysetKey keyset = new KeysetKey(key);
+        for (SortBy sort : sortBy) {
+            boolean ascending = sort.getSortOrder() != SortOrder.DESCENDING;
+            if (SortBy.NATURAL_ORDER.equals(sort) || SortBy.REVERSE_ORDER.equals(sort)) {
+                for (int i = 0; i < columns.size(); i++) {
+                    PrimaryKeyColumn col = columns.get(i);
+                    keyset.add(col.getName(), ascending, col.getType(), true);
+                    covered[i] = true;
+                }
+            } else if (sort.getPropertyName() == null) {
+                return null;
+            } else {
+                String name = sort.getPropertyName().getPropertyName();
+                int pkIndex = -1;
+                for (int i = 0; i < columns.size() && pkIndex == -1; i++) {
+                    if (columns.get(i).getName().equals(name)) {
+                        pkIndex = i;
+                    }
+                }
+                if (pkIndex != -1) {
+                    keyset.add(name, ascending, columns.get(pkIndex).getType(), true);
+                    covered[pkIndex] = true;
+                } else {
+                    // nulls would not be matched by the keyset predicate
+                    AttributeDescriptor ad = getSchema().getDescriptor(name);
+                    if (ad == null || ad.isNillable() || ad instanceof GeometryDescriptor) {
+                        return null;
+                    }
+                    keyset.add(name, ascending, ad.getType().getBinding(), false);
+                }
+            }
+        }
+        for (boolean c : covered) {
+            if (!c) {
+                return null;
+            }
+        }
+        return keyset;
+    }
+
+    /**
+     * The unique sort keys of a query paged with keyset predicates
+     */
+    static class KeysetKey {
+        PrimaryKey primaryKey;
+        String[] names = new String[0];
+        boolean[] ascending = new boolean[0];
+        Class<?>[] bindings = new Class<?>[0];
+        boolean[] primary = new boolean[0];
+        
+        KeysetKey(PrimaryKey primaryKey) {
+            this.primaryKey = primaryKey;
+        }
+        
+        void add(String name, boolean asc, Class<?> binding, boolean pk) {
+            int n = names.length;
+            names = Arrays.copyOf(names, n + 1);
+            ascending = Arrays.copyOf(ascending, n + 1);
+            bindings = Arrays.copyOf(bindings, n + 1);
+            primary = Arrays.copyOf(primary, n + 1);
+            names[n] = name;
+            ascending[n] = asc;
+            bindings[n] = binding;
+            primary[n] = pk;
+        }
+
+        /**
+         * Identifies a position in the results of queries with the same filter and sorting 
+         */
+        KeysetPosition getPosition(Query query, int offset) {
+            List<String> sort = new ArrayList<String>(names.length);
+            for (int i = 0; i < names.length; i++) {
+                sort.add(names[i] + (ascending[i] ? " ASC" : " DESC"));
+            }
+            return new KeysetPosition(query.getFilter(), sort, offset);
+        }
+
+        /**
+         * Builds the predicate matching the rows sorted after the given key values, the 
+         * equivalent of <code>(k1, k2, ...) &gt; (v1, v2, ...)</code> 
+         */
+        Filter toFilter(FilterFactory ff, Object[] values) {
+            List<Filter> alternatives = new ArrayList<Filter>();
+            for (int i = 0; i < names.length; i++) {
+                List<Filter> conditions = new ArrayList<Filter>();
+                for (int j = 0; j < i; j++) {
+                    conditions.add(ff.equals(ff.property(names[j]), ff.literal(values[j])));
+                }
+                Expression p = ff.property(names[i]);
+                Expression v = ff.literal(values[i]);
+                conditions.add(ascending[i] ? ff.greater(p, v) : ff.less(p, v));
+                alternatives.add(conditions.size() == 1 ? conditions.get(0) : ff.and(conditions));
+            }
+            if (alternatives.size() == 1) {
+                return alternatives.get(0);
+            }
+            // bound the leading key too, so that the database can use a range scan on it
+            Expression p = ff.property(names[0]);
+            Expression v = ff.literal(values[0]);
+            Filter bound = ascending[0] ? ff.greaterOrEqual(p, v) : ff.lessOrEqual(p, v);
+            return ff.and(bound, ff.or(alternatives));
+        }
+    }
+
+    /**
+     * A position in the results of queries with the same filter and sorting. The filter is
+     * compared by value, its string representation is not guaranteed to tell filters apart
+     */
+    static class KeysetPosition {
+        Filter filter;
+        List<String> sort;
+        int offset;
+
+        KeysetPosition(Filter filter, List<String> sort, int offset) {
+            this.filter = filter;
+            this.sort = sort;
+            this.offset = offset;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = filter == null ? 0 : filter.hashCode();
+            result = 31 * result + sort.hashCode();
+            return 31 * result + offset;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof KeysetPosition)) {
+                return false;
+            }
+            KeysetPosition other = (KeysetPosition) obj;
+            return offset == other.offset && sort.equals(other.sort)
+                    && (filter == null ? other.filter == null : filter.equals(other.filter));
+        }
+
+        @Override
+        public String toString() {
+            return filter + " " + sort + " @" + offset;
+        }
+    }
+
+    /**
+     * Wraps a paged reader and records the keyset cursor of the following page when the 
+     * page has been fully read
+     */
+    class KeysetRecordingReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+        FeatureReader<SimpleFeatureType, SimpleFeature> delegate;
+        KeysetKey keyset;
+        KeysetPosition position;
+        int pageSize;
+        int count;
+        SimpleFeature last;
+        
+        KeysetRecordingReader(FeatureReader<SimpleFeatureType, SimpleFeature> delegate, 
+                KeysetKey keyset, KeysetPosition position, int pageSize) {
+            this.delegate = delegate;
+            this.keyset = keyset;
+            this.position = position;
+            this.pageSize = pageSize;
+        }
+
+        public SimpleFeatureType getFeatureType() {
+            return delegate.getFeatureType();
+        }
+
+        public SimpleFeature next() throws IOException, IllegalArgumentException,
+                NoSuchElementException {
+            last = delegate.next();
+            count++;
+            return last;
+        }
+
+        public boolean hasNext() throws IOException {
+            return delegate.hasNext();
+        }
+
+        public void close() throws IOException {
+            try {
+                if (count == pageSize && last != null) {
+                    Object[] values = getKeyValues(last);
+                    if (values != null) {
+                        getState().putKeysetCursor(position, 
+                                new KeysetCursor(position.offset, values));
+                    }
+                }
+            } finally {
+                delegate.close();
+            }
+        }
+        
+        Object[] getKeyValues(SimpleFeature feature) {
+            Object[] values = new Object[keyset.names.length];
+            List<Object> pkValues = null;
+            for (int i = 0; i < values.length; i++) {
+                String name = keyset.names[i];
+                if (feature.getFeatureType().getDescriptor(name) != null) {
+                    values[i] = feature.getAttribute(name);
+                } else if (keyset.primary[i]) {
+                    try {
+                        if (pkValues == null) {
+                            pkValues = getDataStore().decodeFID(keyset.primaryKey, 
+                                    feature.getID(), false);
+                        }
+                        int idx = 0;
+                        while (!keyset.primaryKey.getColumns().get(idx).getName().equals(name)) {
+                            idx++;
+                        }
+                        values[i] = pkValues.get(idx);
+                    } catch (IllegalArgumentException e) {
+                        LOGGER.log(Level.FINE, "Could not decode the feature id " 
+                                + feature.getID(), e);
+                        return null;
+                    }
+                }
+                if (values[i] == null) {
+                    // the sort key was not read, or does not identify the row
+                    return null;
+                }
+            }
+            return values;
+        }
+    }
+
     SimpleFeatureType[] buildQueryAndReturnFeatureTypes(SimpleFeatureType featureType, 
         String[] propertyNames, Filter filter) {
 
@@ -20,8 +20,13 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.geotools.data.DefaultQuery;
@@ -38,6 +43,9 @@ import org.geotools.data.store.ContentEntry;
 import org.geotools.data.store.ContentFeatureStore;
 import org.geotools.data.store.ContentState;
 import org.geotools.factory.Hints;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.filter.identity.FeatureIdImpl;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.opengis.feature.FeatureVisitor;
 import org.opengis.feature.simple.SimpleFeature;
@@ -45,6 +53,8 @@ import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.feature.type.Name;
 import org.opengis.filter.Filter;
+import org.opengis.filter.identity.FeatureId;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import com.vividsolutions.jts.geom.Geometry;
 
@@ -326,6 +336,179 @@ public final class JDBCFeatureStore extends ContentFeatureStore {
         return writer;
     }
     
+    /**
+     * Adds a collection of features to the store.
+     * <p>
+     * When the {@link JDBCDataStore#getBatchInsertSize() batch insert size} is greater than one
+     * the appending writer inserts the features once a batch is full, or when closed, so the
+     * persistent feature ids are copied in the user data of the added features only after the
+     * writer has been closed.
+     * </p>
+     */
+    @Override
+    public List<FeatureId> addFeatures(Collection collection) throws IOException {
+        if (getDataStore().getBatchInsertSize() <= 1) {
+            return super.addFeatures(collection);
+        }
+
+        List<FeatureId> ids = new ArrayList<FeatureId>();
+        List<SimpleFeature[]> written = new ArrayList<SimpleFeature[]>();
+        FeatureWriter<SimpleFeatureType, SimpleFeature> writer = getWriter(Filter.INCLUDE,
+                WRITER_ADD);
+        try {
+            for (Iterator it = collection.iterator(); it.hasNext();) {
+                ids.add(addFeature((SimpleFeature) it.next(), writer, written));
+            }
+        } finally {
+            writer.close();
+        }
+        copyUserData(written);
+        return ids;
+    }
+
+    /**
+     * Adds a collection of features to the store.
+     * <p>
+     * When the collection is at least as big as the
+     * {@link JDBCDataStore#getBulkLoadThreshold() bulk load threshold}, and the dialect supports
+     * it, the features are streamed to the database with
+     * {@link JDBCDataStore#bulkInsert(SimpleFeatureType, FeatureIterator, Connection)},
+     * otherwise they are inserted one by one with an appending feature writer, in batches as
+     * described in {@link #addFeatures(Collection)}.
+     * </p>
+     */
+    @Override
+    public List<FeatureId> addFeatures(
+            FeatureCollection<SimpleFeatureType, SimpleFeature> featureCollection)
+            throws IOException {
+        JDBCDataStore dataStore = getDataStore();
+        int threshold = dataStore.getBulkLoadThreshold();
+        if (threshold <= 0 || !dataStore.getSQLDialect().isBulkLoadSupported()
+                || featureCollection.size() < threshold) {
+            return addFeaturesInBatches(featureCollection);
+        }
+        
+        // let's grab the connection
+        Transaction tx = getState().getTransaction();
+        Connection cx = null;
+        List<FeatureId> ids;
+        BoundsFeatureIterator features = null;
+        try {
+            cx = dataStore.getConnection(tx);
+            features = new BoundsFeatureIterator(featureCollection.features(),
+                    getSchema().getCoordinateReferenceSystem());
+            ids = dataStore.bulkInsert(getSchema(), features, cx);
+            
+            if (ids != null && !ids.isEmpty()) {
+                // issue notification
+                Filter filter = getDataStore().getFilterFactory().id(new HashSet<FeatureId>(ids));
+                FeatureEvent event = new FeatureEvent(this, Type.ADDED, features.bounds, filter);
+                getState().fireFeatureEvent(event);
+            }
+        } finally {
+            if (features != null) {
+                features.close();
+            }
+            if (tx == null || tx == Transaction.AUTO_COMMIT) {
+                dataStore.closeSafe(cx);
+            }
+        }
+        
+        if (ids == null) {
+            // the table cannot be bulk loaded
+            return addFeaturesInBatches(featureCollection);
+        }
+        return ids;
+    }
+
+    List<FeatureId> addFeaturesInBatches(
+            FeatureCollection<SimpleFeatureType, SimpleFeature> featureCollection)
+            throws IOException {
+        if (getDataStore().getBatchInsertSize() <= 1) {
+            return super.addFeatures(featureCollection);
+        }
+
+        List<FeatureId> ids = new ArrayList<FeatureId>();
+        List<SimpleFeature[]> written = new ArrayList<SimpleFeature[]>();
+        FeatureWriter<SimpleFeatureType, SimpleFeature> writer = getWriter(Filter.INCLUDE,
+                WRITER_ADD);
+        FeatureIterator<SimpleFeature> it = featureCollection.features();
+        try {
+            while (it.hasNext()) {
+                ids.add(addFeature(it.next(), writer, written));
+            }
+        } finally {
+            writer.close();
+            it.close();
+        }
+        copyUserData(written);
+        return ids;
+    }
+
+    /**
+     * Writes a feature with the appending writer, keeping track of the written copy so that its
+     * user data can be copied back once the batch it belongs to has been inserted
+     */
+    FeatureId addFeature(SimpleFeature feature,
+            FeatureWriter<SimpleFeatureType, SimpleFeature> writer, List<SimpleFeature[]> written)
+            throws IOException {
+        SimpleFeature toWrite = writer.next();
+        for (int i = 0; i < toWrite.getType().getAttributeCount(); i++) {
+            String name = toWrite.getType().getDescriptor(i).getLocalName();
+            toWrite.setAttribute(name, feature.getAttribute(name));
+        }
+        if (feature.getUserData().size() > 0) {
+            toWrite.getUserData().putAll(feature.getUserData());
+        }
+        boolean useExisting = Boolean.TRUE.equals(feature.getUserData().get(
+                Hints.USE_PROVIDED_FID));
+        if (getQueryCapabilities().isUseProvidedFIDSupported() && useExisting) {
+            ((FeatureIdImpl) toWrite.getIdentifier()).setID(feature.getID());
+        }
+        writer.write();
+        written.add(new SimpleFeature[] { feature, toWrite });
+        // the id object is updated once the feature gets inserted
+        return toWrite.getIdentifier();
+    }
+
+    void copyUserData(List<SimpleFeature[]> written) {
+        for (SimpleFeature[] pair : written) {
+            pair[0].getUserData().putAll(pair[1].getUserData());
+        }
+    }
+    
+    /**
+     * Collects the bounds of the features while they are streamed to the database
+     */
+    static class BoundsFeatureIterator implements FeatureIterator<SimpleFeature> {
+        FeatureIterator<SimpleFeature> delegate;
+        
+        ReferencedEnvelope bounds;
+        
+        BoundsFeatureIterator(FeatureIterator<SimpleFeature> delegate,
+                CoordinateReferenceSystem crs) {
+            this.delegate = delegate;
+            this.bounds = new ReferencedEnvelope(crs);
+        }
+
+        public boolean hasNext() {
+            return delegate.hasNext();
+        }
+
+        public SimpleFeature next() throws NoSuchElementException {
+            SimpleFeature feature = delegate.next();
+            Geometry geometry = (Geometry) feature.getDefaultGeometry();
+            if (geometry != null) {
+                bounds.expandToInclude(geometry.getEnvelopeInternal());
+            }
+            return feature;
+        }
+
+        public void close() {
+            delegate.close();
+        }
+    }
+    
     @Override
     public void modifyFeatures(Name[] names, Object[] values, Filter filter)
             throws IOException {
@@ -20,6 +20,8 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.geotools.data.FeatureWriter;
 import org.geotools.data.store.ContentEntry;
@@ -38,6 +40,11 @@ public class JDBCInsertFeatureWriter extends JDBCFeatureReader implements Featur
     
     ResultSetFeature last;
     
+    /**
+     * The features written but not yet inserted, when batching inserts
+     */
+    List<ResultSetFeature> buffer = new ArrayList<ResultSetFeature>();
+    
     public JDBCInsertFeatureWriter(String sql, Connection cx,
             JDBCFeatureSource featureSource, Hints hints) throws SQLException, IOException {
         super(sql, cx, featureSource, featureSource.getSchema(), hints);
@@ -60,6 +67,15 @@ public class JDBCInsertFeatureWriter extends JDBCFeatureReader implements Featur
     }
 
     public SimpleFeature next() throws IOException {
+        if ( last == null ) {
+            // the previous feature is waiting in the batch buffer, use a new one
+            try {
+                last = new ResultSetFeature( rs, st.getConnection() );
+            } catch (SQLException e) {
+                throw (IOException) new IOException().initCause(e);
+            }
+        }
+        
         //init, setting id to null explicity since the feature is yet to be 
         // inserted
         last.init(null);
@@ -71,8 +87,19 @@ public class JDBCInsertFeatureWriter extends JDBCFeatureReader implements Featur
     }
 
     public void write() throws IOException {
+        if ( dataStore.getBatchInsertSize() > 1 ) {
+            // buffer the feature, it will be inserted along with the rest of its batch
+            buffer.add( last );
+            last = null;
+            if ( buffer.size() >= dataStore.getBatchInsertSize() ) {
+                flush();
+            }
+            return;
+        }
+        
         try {
-            //do the insert
+            //do the insert, after the writes still queued in the transaction
+            dataStore.flushBatchedWrites(tx);
             dataStore.insert(last, featureType, st.getConnection());
             
             //the datastore sets as userData, grab it and update the fid
@@ -87,8 +114,43 @@ public class JDBCInsertFeatureWriter extends JDBCFeatureReader implements Featur
         }
     }
 
+    /**
+     * Inserts the buffered features in a single batch, and reports them as added. The features
+     * keep their id and user data, but are detached from the result set afterwards
+     * @throws IOException
+     */
+    void flush() throws IOException {
+        if ( buffer.isEmpty() ) {
+            return;
+        }
+        
+        try {
+            dataStore.flushBatchedWrites(tx);
+            dataStore.insert(buffer, featureType, st.getConnection());
+            
+            ContentEntry entry = featureSource.getEntry();
+            ContentState state = entry.getState( this.tx );
+            for ( ResultSetFeature feature : buffer ) {
+                //the datastore sets as userData, grab it and update the fid
+                feature.setID( (String) feature.getUserData().get( "fid" ) );
+                state.fireFeatureAdded( featureSource, feature );
+            }
+        } catch (SQLException e) {
+            throw (IOException) new IOException().initCause(e);
+        } finally {
+            for ( ResultSetFeature feature : buffer ) {
+                feature.close();
+            }
+            buffer.clear();
+        }
+    }
+
     public void close() throws IOException {
-        super.close();
+        try {
+            flush();
+        } finally {
+            super.close();
+        }
         
         if ( last != null ) {
             last.close();
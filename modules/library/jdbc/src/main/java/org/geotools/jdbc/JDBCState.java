@@ -16,8 +16,14 @@
  */
 package org.geotools.jdbc;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.geotools.data.FeatureEvent;
+import org.geotools.data.FeatureListener;
 import org.geotools.data.store.ContentEntry;
 import org.geotools.data.store.ContentState;
+import org.geotools.geometry.jts.ReferencedEnvelope;
 
 
 /**
@@ -42,6 +48,34 @@ public final class JDBCState extends ContentState {
      * are exposed.
      */
     private boolean exposePrimaryKeyColumns;
+
+    /**
+     * Maximum number of keyset cursors remembered
+     */
+    static final int MAX_KEYSET_CURSORS = 64;
+
+    /**
+     * keyset cursors recorded at the end of the pages read so far, least recently used first
+     */
+    private Map<Object, KeysetCursor> keysetCursors;
+
+    /**
+     * drops the keyset cursors when the table is modified, as the pages they lead to may have
+     * shifted. Registered when the first cursor is recorded
+     */
+    private FeatureListener keysetInvalidator;
+
+    /**
+     * bounds estimated from the database statistics, and when they were computed
+     */
+    private ReferencedEnvelope estimatedBounds;
+    private long estimatedBoundsTime;
+
+    /**
+     * row count estimated from the database statistics, and when it was computed
+     */
+    private int estimatedCount = -1;
+    private long estimatedCountTime;
     
     /**
      * Creates the state from an existing one.
@@ -96,11 +130,97 @@ public final class JDBCState extends ContentState {
         this.exposePrimaryKeyColumns = exposePrimaryKeyColumns;
     }
     
+    /**
+     * Returns the keyset cursor recorded for the specified page position, or null if not known.
+     * @param key The page position, as built by the feature source, compared by value
+     */
+    public synchronized KeysetCursor getKeysetCursor(Object key) {
+        return keysetCursors == null ? null : keysetCursors.get(key);
+    }
+
+    /**
+     * Records a keyset cursor for a page position, evicting the least recently used one if too
+     * many have been recorded
+     */
+    public synchronized void putKeysetCursor(Object key, KeysetCursor cursor) {
+        if (keysetCursors == null) {
+            keysetCursors = new LinkedHashMap<Object, KeysetCursor>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<Object, KeysetCursor> eldest) {
+                    return size() > MAX_KEYSET_CURSORS;
+                }
+            };
+        }
+        if (keysetInvalidator == null && listeners != null) {
+            // notified of the changes made in this transaction, and of the ones committed by
+            // the others
+            keysetInvalidator = new FeatureListener() {
+                public void changed(FeatureEvent featureEvent) {
+                    clearKeysetCursors();
+                }
+            };
+            addListener(keysetInvalidator);
+        }
+        keysetCursors.put(key, cursor);
+    }
+
+    /**
+     * Drops all the recorded keyset cursors
+     */
+    public synchronized void clearKeysetCursors() {
+        keysetCursors = null;
+    }
+
+    /**
+     * Returns the cached estimate of the bounds, or null if not available or older than the
+     * specified time to live
+     * @param timeToLive The maximum age of the estimate, in milliseconds
+     */
+    public synchronized ReferencedEnvelope getEstimatedBounds(long timeToLive) {
+        if (estimatedBounds != null
+                && System.currentTimeMillis() - estimatedBoundsTime > timeToLive) {
+            estimatedBounds = null;
+        }
+        return estimatedBounds;
+    }
+
+    /**
+     * Caches an estimate of the bounds
+     */
+    public synchronized void setEstimatedBounds(ReferencedEnvelope estimatedBounds) {
+        this.estimatedBounds = estimatedBounds;
+        this.estimatedBoundsTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the cached estimate of the row count, or -1 if not available or older than the 
+     * specified time to live
+     * @param timeToLive The maximum age of the estimate, in milliseconds
+     */
+    public synchronized int getEstimatedCount(long timeToLive) {
+        if (estimatedCount >= 0 && System.currentTimeMillis() - estimatedCountTime > timeToLive) {
+            estimatedCount = -1;
+        }
+        return estimatedCount;
+    }
+
+    /**
+     * Caches an estimate of the row count
+     */
+    public synchronized void setEstimatedCount(int estimatedCount) {
+        this.estimatedCount = estimatedCount;
+        this.estimatedCountTime = System.currentTimeMillis();
+    }
+
     /**
      * Flushes all cached state.
      */
     public void flush() {
         primaryKey = null;
+        synchronized (this) {
+            keysetCursors = null;
+            estimatedBounds = null;
+            estimatedCount = -1;
+        }
         super.flush();
     }
 
@@ -47,6 +47,10 @@ final class JDBCTransactionState implements State {
      * case no attempt to commit, rollback or close will be done)
      */
     boolean external;
+    /**
+     * The updates and deletes waiting to be sent to the database, if any
+     */
+    BatchedWrites batchedWrites;
 
     public JDBCTransactionState(Connection cx, JDBCDataStore dataStore) {
         this(cx, dataStore, false);
@@ -65,6 +69,10 @@ final class JDBCTransactionState implements State {
         }
             
         if ( tx == null ) {
+            if ( batchedWrites != null ) {
+                batchedWrites.clear();
+                batchedWrites = null;
+            }
             if ( cx != null && !external) {
                 dataStore.closeSafe(cx);
             }  else {
@@ -80,7 +88,29 @@ final class JDBCTransactionState implements State {
     public void addAuthorization(String AuthID) throws IOException {
     }
 
+    /**
+     * Returns the writes waiting to be sent to the database in batches, creating them if
+     * necessary
+     */
+    BatchedWrites getBatchedWrites() {
+        if (batchedWrites == null) {
+            batchedWrites = new BatchedWrites(dataStore, cx, dataStore.getBatchUpdateSize());
+        }
+        return batchedWrites;
+    }
+
+    /**
+     * Sends the pending batched writes to the database
+     */
+    void flushBatchedWrites() throws IOException {
+        if (batchedWrites != null && !batchedWrites.isEmpty()) {
+            batchedWrites.flush();
+        }
+    }
+
     public void commit() throws IOException {
+        // the pending writes are part of the transaction, even if externally managed
+        flushBatchedWrites();
         if(!external) {        
             try {
                 cx.commit();
@@ -92,6 +122,9 @@ final class JDBCTransactionState implements State {
     }
 
     public void rollback() throws IOException {
+        if (batchedWrites != null) {
+            batchedWrites.clear();
+        }
         if(!external) {
             try {
                 cx.rollback();
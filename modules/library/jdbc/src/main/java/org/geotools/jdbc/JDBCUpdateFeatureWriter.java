@@ -21,7 +21,6 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
 
@@ -33,7 +32,6 @@ import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
-import org.opengis.filter.Id;
 
 /**
  * 
@@ -83,7 +81,7 @@ public class JDBCUpdateFeatureWriter extends JDBCFeatureReader implements
     
     public void remove() throws IOException {
         try {
-            dataStore.delete(featureType, last.getID(), st.getConnection());
+            dataStore.deleteFeature(featureType, last.getID(), tx, st.getConnection());
             
             // issue notification
             ContentEntry entry = featureSource.getEntry();
@@ -102,10 +100,6 @@ public class JDBCUpdateFeatureWriter extends JDBCFeatureReader implements
             PrimaryKey key = dataStore.getPrimaryKey(featureType);
             String fid = dataStore.encodeFID(key, rs);
 
-            Id filter = dataStore.getFilterFactory()
-                                 .id(Collections.singleton(dataStore.getFilterFactory()
-                                                                    .featureId(fid)));
-
             //figure out which attributes changed
             List<AttributeDescriptor> changed = new ArrayList<AttributeDescriptor>();
             List<Object> values = new ArrayList<Object>();
@@ -117,8 +111,9 @@ public class JDBCUpdateFeatureWriter extends JDBCFeatureReader implements
                 }
             }
 
-            // do the write
-            dataStore.update(featureType, changed, values, filter, st.getConnection());
+            // do the write, possibly batched with the others of the transaction
+            dataStore.updateFeature(featureType, changed, values, featureType.getTypeName() + "."
+                    + fid, tx, st.getConnection());
             
             // issue notification
             ContentEntry entry = featureSource.getEntry();
@@ -95,8 +95,12 @@ public class JDBCUpdateInsertFeatureWriter extends JDBCUpdateFeatureWriter {
             // from this reader... super will deal with it.
             // AA: yet, make it throw away all references so that we won't get
             // false positive information about connection leaks
-            inserter.cleanup();
-            inserter = null;
+            try {
+                inserter.flush();
+            } finally {
+                inserter.cleanup();
+                inserter = null;
+            }
         }
         
         super.close();
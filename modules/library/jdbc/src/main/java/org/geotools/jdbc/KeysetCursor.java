@@ -0,0 +1,125 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Arrays;
+
+import org.geotools.util.Converters;
+
+/**
+ * Position in a sorted result set used for keyset (seek) paging: the values of the sort keys in
+ * the last row of a page, along with the number of rows preceding the next one.
+ * <p>
+ * A query resuming from a cursor is run with a <code>WHERE (k1, k2) &gt; (v1, v2)</code> like
+ * predicate instead of skipping <code>offset</code> rows, which keeps every page equally fast
+ * regardless of how deep it is in the result set. Cursors can be turned into an opaque string
+ * with {@link #encode()} and handed back later through the {@link JDBCDataStore#KEYSET_CURSOR}
+ * query hint.
+ *
+ * @source $URL$
+ */
+public class KeysetCursor {
+
+    int offset;
+
+    Object[] values;
+
+    /**
+     * Creates a new cursor
+     *
+     * @param offset The number of rows preceding the ones the cursor leads to
+     * @param values The sort key values of the last row before the cursor, in sort order
+     */
+    public KeysetCursor(int offset, Object[] values) {
+        this.offset = offset;
+        this.values = values.clone();
+    }
+
+    /**
+     * The number of rows preceding the ones this cursor leads to
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * The sort key values of the last row before the cursor
+     */
+    public Object[] getValues() {
+        return values.clone();
+    }
+
+    /**
+     * Encodes the cursor as a URL safe string
+     */
+    public String encode() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(offset);
+        try {
+            for (Object value : values) {
+                String converted = Converters.convert(value, String.class);
+                if (converted == null) {
+                    converted = String.valueOf(value);
+                }
+                sb.append(";").append(URLEncoder.encode(converted, "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parses a cursor encoded with {@link #encode()}
+     *
+     * @param token The encoded cursor
+     * @param bindings The types of the sort keys, used to convert back the values
+     * @throws IllegalArgumentException If the token is not a valid cursor for the given keys
+     */
+    public static KeysetCursor decode(String token, Class<?>[] bindings) {
+        String[] parts = token.split(";", -1);
+        if (parts.length != bindings.length + 1) {
+            throw new IllegalArgumentException("Invalid cursor " + token + ", expected "
+                    + bindings.length + " key values");
+        }
+        try {
+            int offset = Integer.parseInt(parts[0]);
+            Object[] values = new Object[bindings.length];
+            for (int i = 0; i < bindings.length; i++) {
+                String value = URLDecoder.decode(parts[i + 1], "UTF-8");
+                values[i] = Converters.convert(value, bindings[i]);
+                if (values[i] == null) {
+                    throw new IllegalArgumentException("Invalid cursor " + token + ", could not "
+                            + "convert " + value + " to " + bindings[i].getName());
+                }
+            }
+            return new KeysetCursor(offset, values);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor " + token, e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "KeysetCursor[" + offset + ", " + Arrays.toString(values) + "]";
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.FeatureReader;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Feature reader merging the contents of multiple readers, each one scanning a partition of the
+ * same query on its own connection. Every partition is read by a task submitted to the provided
+ * executor, the features are returned in the order they get decoded, not in the order of the
+ * partitions.
+ * <p>
+ * The partition readers are closed as soon as they are exhausted, or when this reader is closed.
+ * Should this reader be abandoned without being closed, the tasks notice it once it has been
+ * garbage collected, and close the partition readers, releasing their connections.
+ *
+ * @source $URL$
+ */
+public class PartitionedFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+    static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger(PartitionedFeatureReader.class);
+
+    /** marks the end of a partition in the queue */
+    static final Object END_MARKER = new Object();
+
+    SimpleFeatureType featureType;
+
+    Partitions partitions;
+
+    List<PartitionScan> scans = new ArrayList<PartitionScan>();
+
+    int running;
+
+    SimpleFeature next;
+
+    /**
+     * Creates the reader and starts scanning the partitions
+     *
+     * @param readers The readers of the partitions, they must all return the same feature type
+     * @param bufferSize The number of decoded features that can wait for the caller to consume
+     *        them before the partition tasks block
+     * @param executor The executor running the partition scans
+     */
+    public PartitionedFeatureReader(List<FeatureReader<SimpleFeatureType, SimpleFeature>> readers,
+            int bufferSize, ExecutorService executor) {
+        if (readers.isEmpty()) {
+            throw new IllegalArgumentException("At least one partition reader is required");
+        }
+        this.featureType = readers.get(0).getFeatureType();
+        this.partitions = new Partitions(Math.max(1, bufferSize), readers.size());
+        this.running = readers.size();
+        WeakReference<PartitionedFeatureReader> owner =
+                new WeakReference<PartitionedFeatureReader>(this);
+        for (FeatureReader<SimpleFeatureType, SimpleFeature> reader : readers) {
+            scans.add(new PartitionScan(reader, partitions, owner));
+        }
+        try {
+            for (PartitionScan scan : scans) {
+                executor.execute(scan);
+            }
+        } catch (RejectedExecutionException e) {
+            closeQuietly();
+            throw e;
+        }
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    public boolean hasNext() throws IOException {
+        if (next != null) {
+            return true;
+        }
+        if (partitions.closed) {
+            return false;
+        }
+        try {
+            while (running > 0) {
+                Object item = partitions.queue.poll(100, TimeUnit.MILLISECONDS);
+                if (item == null) {
+                    // a scan stopped by the executor shutdown could not queue its end marker
+                    if (partitions.done.getCount() == 0 && partitions.queue.isEmpty()) {
+                        running = 0;
+                    }
+                } else if (item == END_MARKER) {
+                    running--;
+                    checkFailure();
+                } else {
+                    next = (SimpleFeature) item;
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            throw (IOException) new IOException("Interrupted while reading the partitions")
+                    .initCause(e);
+        }
+        checkFailure();
+        return false;
+    }
+
+    void checkFailure() throws IOException {
+        Throwable t = partitions.failure;
+        if (t != null) {
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            }
+            throw (IOException) new IOException("Failed to read a partition").initCause(t);
+        }
+    }
+
+    public SimpleFeature next() throws IOException, IllegalArgumentException,
+            NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more features");
+        }
+        SimpleFeature result = next;
+        next = null;
+        return result;
+    }
+
+    public void close() throws IOException {
+        if (partitions.closed) {
+            return;
+        }
+        // the tasks waiting on a full queue notice the flag and close their readers. No
+        // interrupts, some drivers close the connection when interrupted during I/O
+        partitions.closed = true;
+        partitions.queue.clear();
+        // the scans still waiting in the executor queue are closed here
+        for (PartitionScan scan : scans) {
+            if (scan.claim()) {
+                scan.finish();
+            }
+        }
+        try {
+            partitions.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        partitions.queue.clear();
+    }
+
+    void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Error closing partitioned reader", e);
+        }
+    }
+
+    /**
+     * The state shared between the reader and the partition scans, which must not reference the
+     * reader itself, or it could never be collected when abandoned
+     */
+    static class Partitions {
+        BlockingQueue<Object> queue;
+
+        CountDownLatch done;
+
+        volatile boolean closed;
+
+        volatile Throwable failure;
+
+        Partitions(int bufferSize, int count) {
+            this.queue = new ArrayBlockingQueue<Object>(bufferSize);
+            this.done = new CountDownLatch(count);
+        }
+    }
+
+    /**
+     * Drains one partition reader into the queue
+     */
+    static class PartitionScan implements Runnable {
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader;
+
+        Partitions partitions;
+
+        WeakReference<PartitionedFeatureReader> owner;
+
+        AtomicBoolean started = new AtomicBoolean();
+
+        PartitionScan(FeatureReader<SimpleFeatureType, SimpleFeature> reader,
+                Partitions partitions, WeakReference<PartitionedFeatureReader> owner) {
+            this.reader = reader;
+            this.partitions = partitions;
+            this.owner = owner;
+        }
+
+        /**
+         * Returns true if the caller got to own the scan, which had not started yet
+         */
+        boolean claim() {
+            return started.compareAndSet(false, true);
+        }
+
+        public void run() {
+            if (!claim()) {
+                return;
+            }
+            try {
+                while (!partitions.closed && partitions.failure == null && reader.hasNext()) {
+                    put(reader.next());
+                }
+            } catch (Throwable t) { // NOSONAR
+                if (!partitions.closed) {
+                    partitions.failure = t;
+                }
+            } finally {
+                put(END_MARKER);
+                finish();
+            }
+        }
+
+        void finish() {
+            try {
+                reader.close();
+            } catch (Throwable t) { // NOSONAR
+                LOGGER.log(Level.FINE, "Error closing partition reader", t);
+            } finally {
+                partitions.done.countDown();
+            }
+        }
+
+        /**
+         * Puts the item in the queue, giving up if the reader gets closed or abandoned
+         */
+        void put(Object item) {
+            try {
+                while (!partitions.closed) {
+                    if (partitions.queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                    if (owner.get() == null) {
+                        LOGGER.fine("Partitioned reader abandoned without being closed");
+                        partitions.closed = true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                // the executor is shutting down, let the reader report it
+                if (partitions.failure == null) {
+                    partitions.failure = e;
+                }
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+
+import org.geotools.data.FeatureReader;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Feature reader decoding the features of a delegate reader in the background, into a bounded
+ * buffer of ready features, so that fetching and parsing the rows overlaps with the caller
+ * processing the previous features. The features are returned in the delegate order.
+ * <p>
+ * The delegate is closed, releasing its statement and connection, as soon as it is exhausted or
+ * when this reader is closed, even if not all the features have been consumed. The delegate
+ * must not share its connection with other threads, e.g., it should not be part of a
+ * transaction.
+ *
+ * @source $URL$
+ */
+public class PrefetchingFeatureReader extends PartitionedFeatureReader {
+
+    /**
+     * Creates the reader and starts decoding the delegate features
+     *
+     * @param delegate The reader to be read in the background
+     * @param bufferSize The number of decoded features that can wait for the caller to consume
+     *        them before the background task blocks
+     * @param executor The executor running the background task
+     */
+    public PrefetchingFeatureReader(FeatureReader<SimpleFeatureType, SimpleFeature> delegate,
+            int bufferSize, ExecutorService executor) {
+        super(Collections.singletonList(delegate), bufferSize, executor);
+    }
+}
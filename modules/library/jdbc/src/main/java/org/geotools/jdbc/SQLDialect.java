@@ -28,6 +28,7 @@ import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -380,6 +381,37 @@ public abstract class SQLDialect {
         aggregates.put( MaxVisitor.class, "max");
         aggregates.put( SumVisitor.class, "sum");
     }
+
+    /**
+     * Encodes the call to an aggregate function registered in 
+     * {@link #registerAggregateFunctions(Map)}.
+     * <p>
+     * The default implementation encodes <code>function(column)</code>, subclasses can override
+     * to handle functions that have a different syntax, such as ordered set aggregates used 
+     * to compute percentiles.
+     * </p>
+     * @param function The aggregate function name
+     * @param column The already encoded column, or "*"
+     * @param sql The buffer to append to
+     */
+    public void encodeAggregateFunction(String function, String column, StringBuffer sql) {
+        sql.append(function).append("(").append(column).append(")");
+    }
+
+    /**
+     * Returns the aggregate function to be encoded for the given attribute, or null if the
+     * database cannot compute it over the attribute type, in which case the aggregate is
+     * computed in memory.
+     * <p>
+     * The default implementation returns the function unchanged.
+     * </p>
+     * @param function The aggregate function name, as registered in 
+     *        {@link #registerAggregateFunctions(Map)}
+     * @param attribute The aggregated attribute, or null when counting rows
+     */
+    public String getAggregateFunction(String function, AttributeDescriptor attribute) {
+        return function;
+    }
     
     /**
      * Returns the java class mapping for a particular column.
@@ -640,6 +672,45 @@ public abstract class SQLDialect {
         return null;
     }
 
+    /**
+     * Returns an estimate of the bounds of all geometry columns in the layer, based on the 
+     * database statistics or metadata tables, or null if no estimate is available. 
+     * <p>
+     * Used when the {@link JDBCDataStore#ESTIMATED_STATISTICS} hint is set, the estimate is 
+     * expected to be cheap to compute, but it can be stale or larger than the actual bounds. 
+     * The default implementation returns the {@link #getOptimizedBounds(String, SimpleFeatureType, Connection)
+     * optimized bounds}.
+     * </p>
+     * @param schema
+     *            The database schema, if any, or null
+     * @param featureType
+     *            The feature type containing the geometry columns whose bounds need to estimated.
+     * @param cx
+     * @return a list of referenced envelopes (some of which may be null or empty)
+     */
+    public List<ReferencedEnvelope> getEstimatedBounds(String schema, SimpleFeatureType featureType,
+            Connection cx) throws SQLException, IOException {
+        return getOptimizedBounds(schema, featureType, cx);
+    }
+
+    /**
+     * Returns an estimate of the number of rows in the table, based on the database statistics
+     * or metadata tables, or -1 if no estimate is available. 
+     * <p>
+     * Used when the {@link JDBCDataStore#ESTIMATED_STATISTICS} hint is set, the estimate is 
+     * expected to be cheap to compute, but it can be stale. The default implementation returns -1.
+     * </p>
+     * @param schema
+     *            The database schema, if any, or null
+     * @param featureType
+     *            The feature type of the table
+     * @param cx
+     */
+    public int getEstimatedCount(String schema, SimpleFeatureType featureType, Connection cx) 
+            throws SQLException, IOException {
+        return -1;
+    }
+
     /**
      * Encodes the spatial extent function of a geometry column in a SELECT statement.
      * <p>
@@ -1155,6 +1226,70 @@ public abstract class SQLDialect {
         return null;
     }
     
+    /**
+     * Obtains the next <tt>count</tt> values of a sequence, incrementing the sequence in the
+     * process.
+     * <p>
+     * The default implementation calls {@link #getNextSequenceValue(String, String, Connection)}
+     * once per value, subclasses should override if the database can return several values in
+     * a single round trip.
+     * </p>
+     * @param schemaName The schema name, this might be <code>null</code>.
+     * @param sequenceName The name of the sequence.
+     * @param count The number of values to fetch
+     * @param cx The database connection.
+     *
+     * @return The next values of the sequence, or <code>null</code>.
+     */
+    public List<Object> getNextSequenceValues(String schemaName, String sequenceName, int count,
+            Connection cx) throws SQLException {
+        List<Object> values = new ArrayList<Object>(count);
+        for (int i = 0; i < count; i++) {
+            Object value = getNextSequenceValue(schemaName, sequenceName, cx);
+            if (value == null) {
+                return null;
+            }
+            values.add(value);
+        }
+        return values;
+    }
+    
+    /**
+     * Returns true if this dialect can load features in bulk with
+     * {@link #bulkLoad(SimpleFeatureType, String[], Class[], int[], Iterator, Connection)}, 
+     * bypassing the regular inserts. The default implementation returns false.
+     */
+    public boolean isBulkLoadSupported() {
+        return false;
+    }
+    
+    /**
+     * Loads rows in bulk into the table of a feature type, using a mechanism faster than regular
+     * inserts (e.g. a <code>COPY</code>).
+     * <p>
+     * The rows are usually backed by a stream of features, implementations should consume them
+     * one at a time as they are loaded, without holding onto them.
+     * </p>
+     * <p>
+     * This method is given a direct connection to the database, but this connection
+     * should never be closed. However any statements or result sets instantiated
+     * from the connection must be closed.
+     * </p>
+     * @param featureType The feature type of the table being loaded.
+     * @param columns The names of the columns being loaded.
+     * @param bindings The classes of the column values.
+     * @param srids The srid of each geometry column, or -1 if unknown (in this case the srid of
+     *        the geometry, if any, should be used).
+     * @param rows The column values of each row, in the same order as <tt>columns</tt>.
+     * @param cx The database connection.
+     * 
+     * @return The number of rows loaded.
+     */
+    public long bulkLoad(SimpleFeatureType featureType, String[] columns, Class[] bindings,
+            int[] srids, Iterator<Object[]> rows, Connection cx) throws SQLException, IOException {
+        throw new UnsupportedOperationException("Override this method when isBulkLoadSupported returns true");
+    }
+    
     /**
      * Returns true if this dialect can encode both {@linkplain Query#getStartIndex()}
      * and {@linkplain Query#getMaxFeatures()} into native SQL. 
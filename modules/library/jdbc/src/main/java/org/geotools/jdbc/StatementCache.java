@@ -0,0 +1,148 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded LRU cache of the idle prepared statements of a single physical connection, keyed by
+ * their SQL text.
+ * <p>
+ * A statement is removed from the cache while in use, and put back once its user is done with
+ * it, so that two readers running the same query on the same connection never share a
+ * statement. When the cache is full the least recently used statement is closed.
+ *
+ * @source $URL$
+ */
+class StatementCache {
+
+    static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger(StatementCache.class);
+
+    Connection connection;
+
+    int maxSize;
+
+    /** idle statements, in access order */
+    LinkedHashMap<String, List<PreparedStatement>> idle =
+            new LinkedHashMap<String, List<PreparedStatement>>(16, 0.75f, true);
+
+    int size;
+
+    StatementCache(Connection connection, int maxSize) {
+        this.connection = connection;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns an idle statement for the given SQL, or null if none is available
+     */
+    synchronized PreparedStatement take(String sql) {
+        List<PreparedStatement> statements = idle.get(sql);
+        while (statements != null && !statements.isEmpty()) {
+            PreparedStatement ps = statements.remove(statements.size() - 1);
+            size--;
+            if (statements.isEmpty()) {
+                idle.remove(sql);
+            }
+            if (isOpen(ps)) {
+                return ps;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Puts back a statement taken or prepared for the given SQL, closing the least recently
+     * used ones if the cache grows past its size.
+     *
+     * @return The number of statements that had to be closed to make room
+     */
+    synchronized int release(String sql, PreparedStatement ps) throws SQLException {
+        ps.clearParameters();
+        List<PreparedStatement> statements = idle.get(sql);
+        if (statements == null) {
+            statements = new ArrayList<PreparedStatement>(1);
+            idle.put(sql, statements);
+        }
+        statements.add(ps);
+        size++;
+
+        int evicted = 0;
+        Iterator<Map.Entry<String, List<PreparedStatement>>> it = idle.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            List<PreparedStatement> eldest = it.next().getValue();
+            while (size > maxSize && !eldest.isEmpty()) {
+                close(eldest.remove(0));
+                size--;
+                evicted++;
+            }
+            if (eldest.isEmpty()) {
+                it.remove();
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Closes all the idle statements
+     */
+    synchronized void close() {
+        for (List<PreparedStatement> statements : idle.values()) {
+            for (PreparedStatement ps : statements) {
+                close(ps);
+            }
+        }
+        idle.clear();
+        size = 0;
+    }
+
+    boolean isConnectionClosed() {
+        try {
+            return connection.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    boolean isOpen(PreparedStatement ps) {
+        try {
+            return !ps.isClosed();
+        } catch (SQLException e) {
+            return false;
+        } catch (AbstractMethodError e) {
+            // pre JDBC 4 driver, let the execution fail if the statement is not usable
+            return true;
+        }
+    }
+
+    void close(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINER, "Error occurred closing cached statement", e);
+        }
+    }
+}
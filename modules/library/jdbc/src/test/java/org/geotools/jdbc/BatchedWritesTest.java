@@ -0,0 +1,207 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import junit.framework.TestCase;
+
+import org.opengis.feature.type.GeometryDescriptor;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Checks the batching of the updates and deletes of a transaction
+ *
+ * @source $URL$
+ */
+public class BatchedWritesTest extends TestCase {
+
+    static final String UPDATE_A = "UPDATE ft SET a = ? WHERE id = ?";
+
+    static final String UPDATE_B = "UPDATE ft SET a = ?, b = ? WHERE id = ?";
+
+    static final String DELETE = "DELETE FROM ft WHERE id = ?";
+
+    JDBCDataStore store;
+
+    Connection cx;
+
+    @Override
+    protected void setUp() throws Exception {
+        Class.forName("org.h2.Driver");
+        cx = DriverManager.getConnection("jdbc:h2:mem:batched_writes");
+        Statement st = cx.createStatement();
+        st.execute("CREATE TABLE ft (id INT PRIMARY KEY, a INT, b INT)");
+        for (int i = 0; i < 10; i++) {
+            st.execute("INSERT INTO ft VALUES (" + i + ", 0, 0)");
+        }
+        st.close();
+        cx.setAutoCommit(false);
+
+        store = new JDBCDataStore();
+        store.setSQLDialect(new NoGeometryDialect(store));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Statement st = cx.createStatement();
+        st.execute("DROP TABLE ft");
+        st.close();
+        cx.close();
+    }
+
+    public void testFlush() throws Exception {
+        BatchedWrites writes = new BatchedWrites(store, cx, 100);
+        for (int i = 0; i < 5; i++) {
+            update(writes, UPDATE_A, i, 10 + i);
+        }
+        assertFalse(writes.isEmpty());
+        // nothing sent yet
+        assertEquals(0, value(0));
+        delete(writes, 8);
+        delete(writes, 9);
+        // the updates went out before the deletes
+        assertEquals(10, value(0));
+        assertEquals(10, count());
+
+        writes.flush();
+        assertTrue(writes.isEmpty());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(10 + i, value(i));
+        }
+        assertEquals(8, count());
+    }
+
+    public void testBatchSize() throws Exception {
+        BatchedWrites writes = new BatchedWrites(store, cx, 3);
+        update(writes, UPDATE_A, 0, 1);
+        update(writes, UPDATE_A, 1, 1);
+        assertEquals(0, value(0));
+        update(writes, UPDATE_A, 2, 1);
+        // the batch filled up and got executed
+        assertEquals(1, value(0));
+        assertEquals(1, value(2));
+        assertTrue(writes.isEmpty());
+        writes.clear();
+    }
+
+    public void testShapeChange() throws Exception {
+        BatchedWrites writes = new BatchedWrites(store, cx, 100);
+        update(writes, UPDATE_A, 0, 1);
+        update(writes, UPDATE_A, 1, 1);
+        // a different statement, the pending writes have to run before
+        PreparedStatement ps = writes.prepare(UPDATE_B, null, false);
+        assertEquals(1, value(0));
+        assertEquals(1, value(1));
+        assertTrue(writes.isEmpty());
+        ps.setInt(1, 2);
+        ps.setInt(2, 2);
+        ps.setInt(3, 0);
+        writes.add(UPDATE_B);
+        // and back, the statements are reused
+        update(writes, UPDATE_A, 0, 3);
+        assertSame(ps, writes.batches.get(UPDATE_B).statement);
+        assertEquals(2, value(0));
+        delete(writes, 1);
+        assertEquals(3, value(0));
+        writes.flush();
+        assertEquals(9, count());
+        assertTrue(ps.isClosed());
+    }
+
+    public void testClear() throws Exception {
+        BatchedWrites writes = new BatchedWrites(store, cx, 100);
+        update(writes, UPDATE_A, 0, 1);
+        update(writes, UPDATE_A, 1, 1);
+        writes.clear();
+        assertTrue(writes.isEmpty());
+        writes.flush();
+        assertEquals(0, value(0));
+        assertEquals(0, value(1));
+    }
+
+    void update(BatchedWrites writes, String sql, int id, int value) throws Exception {
+        PreparedStatement ps = writes.prepare(sql, null, false);
+        ps.setInt(1, value);
+        ps.setInt(2, id);
+        writes.add(sql);
+    }
+
+    void delete(BatchedWrites writes, int id) throws Exception {
+        PreparedStatement ps = writes.prepare(DELETE, null, true);
+        ps.setInt(1, id);
+        writes.add(DELETE);
+    }
+
+    int value(int id) throws Exception {
+        return query("SELECT a FROM ft WHERE id = " + id);
+    }
+
+    int count() throws Exception {
+        return query("SELECT COUNT(*) FROM ft");
+    }
+
+    int query(String sql) throws Exception {
+        Statement st = cx.createStatement();
+        try {
+            ResultSet rs = st.executeQuery(sql);
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            st.close();
+        }
+    }
+
+    static class NoGeometryDialect extends PreparedStatementSQLDialect {
+
+        NoGeometryDialect(JDBCDataStore dataStore) {
+            super(dataStore);
+        }
+
+        @Override
+        public void setGeometryValue(Geometry g, int dimension, int srid, Class binding,
+                PreparedStatement ps, int column) throws SQLException {
+        }
+
+        @Override
+        public void encodeGeometryEnvelope(String tableName, String geometryColumn,
+                StringBuffer sql) {
+        }
+
+        @Override
+        public Envelope decodeGeometryEnvelope(ResultSet rs, int column, Connection cx)
+                throws SQLException, IOException {
+            return null;
+        }
+
+        @Override
+        public Geometry decodeGeometryValue(GeometryDescriptor descriptor, ResultSet rs,
+                String column, GeometryFactory factory, Connection cx) throws IOException,
+                SQLException {
+            return null;
+        }
+    }
+}
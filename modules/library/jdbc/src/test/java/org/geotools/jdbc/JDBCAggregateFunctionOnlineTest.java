@@ -18,14 +18,22 @@ package org.geotools.jdbc;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.geotools.data.DefaultQuery;
 import org.geotools.data.Query;
 import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.visitor.GroupByVisitor;
+import org.geotools.feature.visitor.GroupByVisitor.Aggregate;
 import org.geotools.feature.visitor.MaxVisitor;
+import org.geotools.feature.visitor.MedianVisitor;
 import org.geotools.feature.visitor.MinVisitor;
 import org.geotools.feature.visitor.NearestVisitor;
+import org.geotools.feature.visitor.QuantileListVisitor;
+import org.geotools.feature.visitor.StandardDeviationVisitor;
 import org.geotools.feature.visitor.SumVisitor;
 import org.geotools.feature.visitor.UniqueVisitor;
 import org.geotools.filter.IllegalFilterException;
@@ -431,4 +439,88 @@ public abstract class JDBCAggregateFunctionOnlineTest extends JDBCTestSupport {
             assertTrue("Could not match nearest " + nearestMatch + " among valid values " + Arrays.asList(validResults), found);
         }
     }
+
+    class MyGroupByVisitor extends GroupByVisitor {
+
+        public MyGroupByVisitor(Aggregate aggregate, Expression expression,
+                List<Expression> groupBy) {
+            super(aggregate, expression, groupBy);
+        }
+
+        public void visit(Feature feature) {
+            super.visit(feature);
+            visited = true;
+        }
+
+        public void visit(SimpleFeature feature) {
+            super.visit(feature);
+            visited = true;
+        }
+
+    }
+
+    public void testGroupBy() throws Exception {
+        FilterFactory ff = dataStore.getFilterFactory();
+        GroupByVisitor v = new MyGroupByVisitor(Aggregate.MAX, ff.property(aname("doubleProperty")),
+                Collections.singletonList((Expression) ff.property(aname("stringProperty"))));
+        dataStore.getFeatureSource(tname("ft1")).accepts(Query.ALL, v, null);
+        assertFalse(visited);
+        Map<List<Object>, Object> result = v.getGroupValues();
+        assertEquals(3, result.size());
+        assertEquals(0d, ((Number) result.get(Arrays.asList("zero"))).doubleValue(), 0.1);
+        assertEquals(1.1, ((Number) result.get(Arrays.asList("one"))).doubleValue(), 0.1);
+        assertEquals(2.2, ((Number) result.get(Arrays.asList("two"))).doubleValue(), 0.1);
+    }
+
+    public void testGroupByCountWithFilter() throws Exception {
+        FilterFactory ff = dataStore.getFilterFactory();
+        GroupByVisitor v = new MyGroupByVisitor(Aggregate.COUNT, null, Arrays.asList(
+                (Expression) ff.property(aname("stringProperty")), ff.property(aname("intProperty"))));
+        Filter f = ff.greater( ff.property( aname("doubleProperty") ), ff.literal(1) );
+        Query q = new Query( tname("ft1"), f);
+        dataStore.getFeatureSource(tname("ft1")).accepts(q, v, null);
+        assertFalse(visited);
+        Map<List<Object>, Object> result = v.getGroupValues();
+        assertEquals(2, result.size());
+        for (Map.Entry<List<Object>, Object> entry : result.entrySet()) {
+            assertEquals(2, entry.getKey().size());
+            assertEquals(1, ((Number) entry.getValue()).intValue());
+        }
+    }
+
+    public void testStandardDeviation() throws Exception {
+        FilterFactory ff = dataStore.getFilterFactory();
+        StandardDeviationVisitor v = new StandardDeviationVisitor(ff.property(aname("doubleProperty")));
+        dataStore.getFeatureSource(tname("ft1")).accepts(Query.ALL, v, null);
+        // 0, 1.1, 2.2
+        assertEquals(Math.sqrt(2.42 / 3), ((Number) v.getResult().getValue()).doubleValue(), 0.01);
+    }
+
+    public void testMedian() throws Exception {
+        FilterFactory ff = dataStore.getFilterFactory();
+        MedianVisitor v = new MedianVisitor(ff.property(aname("doubleProperty")));
+        dataStore.getFeatureSource(tname("ft1")).accepts(Query.ALL, v, null);
+        assertEquals(1.1, ((Number) v.getResult().getValue()).doubleValue(), 0.01);
+    }
+
+    public void testMedianNonNumeric() throws Exception {
+        // databases computing medians over numbers only fall back on the in memory median
+        FilterFactory ff = dataStore.getFilterFactory();
+        MedianVisitor v = new MedianVisitor(ff.property(aname("stringProperty")));
+        dataStore.getFeatureSource(tname("ft1")).accepts(Query.ALL, v, null);
+        // one, two, zero
+        assertEquals("two", v.getResult().getValue());
+    }
+
+    public void testQuantileList() throws Exception {
+        FilterFactory ff = dataStore.getFilterFactory();
+        QuantileListVisitor v = new QuantileListVisitor(ff.property(aname("intProperty")), 3);
+        dataStore.getFeatureSource(tname("ft1")).accepts(Query.ALL, v, null);
+        List[] bins = (List[]) v.getResult().getValue();
+        assertEquals(3, bins.length);
+        for (int i = 0; i < bins.length; i++) {
+            assertEquals(1, bins[i].size());
+            assertEquals(i, ((Number) bins[i].get(0)).intValue());
+        }
+    }
 }
@@ -17,7 +17,10 @@
 package org.geotools.jdbc;
 
 import java.sql.Connection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 import org.geotools.data.Query;
 import org.geotools.data.DefaultTransaction;
@@ -424,6 +427,222 @@ public abstract class JDBCFeatureSourceOnlineTest extends JDBCTestSupport {
         features.close();
     }
     
+    public void testKeysetPaging() throws Exception {
+        if (!dataStore.getSQLDialect().isLimitOffsetSupported()) {
+            return;
+        }
+        JDBCFeatureSource source = ((JDBCFeatureStore) featureSource).getFeatureSource();
+        dataStore.setKeysetPaging(true);
+        try {
+            Query q = new Query(featureSource.getSchema().getTypeName());
+            q.setSortBy(new SortBy[] {SortBy.NATURAL_ORDER});
+            q.setMaxFeatures(1);
+            
+            // walk the pages, each one after the first seeks to the end of the previous one
+            String prevId = null;
+            int count = 0;
+            for (int start = 0; start < 3; start++) {
+                q.setStartIndex(start);
+                SimpleFeatureIterator features = featureSource.getFeatures(q).features();
+                try {
+                    assertTrue(features.hasNext());
+                    String currId = features.next().getID();
+                    if (prevId != null) {
+                        assertTrue(prevId.compareTo(currId) < 0);
+                    }
+                    prevId = currId;
+                    count++;
+                    assertFalse(features.hasNext());
+                } finally {
+                    features.close();
+                }
+                assertNotNull(source.getKeysetCursor(q));
+                assertEquals(start + 1, source.getKeysetCursor(q).getOffset());
+            }
+            assertEquals(3, count);
+        } finally {
+            dataStore.setKeysetPaging(false);
+        }
+    }
+    
+    public void testKeysetCursorsDroppedOnWrite() throws Exception {
+        if (!dataStore.getSQLDialect().isLimitOffsetSupported()) {
+            return;
+        }
+        JDBCFeatureSource source = ((JDBCFeatureStore) featureSource).getFeatureSource();
+        dataStore.setKeysetPaging(true);
+        try {
+            Query q = new Query(featureSource.getSchema().getTypeName());
+            q.setSortBy(new SortBy[] {SortBy.NATURAL_ORDER});
+            q.setMaxFeatures(1);
+            SimpleFeatureIterator features = featureSource.getFeatures(q).features();
+            String id;
+            try {
+                id = features.next().getID();
+            } finally {
+                features.close();
+            }
+            assertNotNull(source.getKeysetCursor(q));
+
+            // any modification may shift the pages
+            FilterFactory ff = dataStore.getFilterFactory();
+            ((JDBCFeatureStore) featureSource).modifyFeatures(aname("stringProperty"), "changed",
+                    ff.id(Collections.singleton(ff.featureId(id))));
+            assertNull(source.getKeysetCursor(q));
+        } finally {
+            dataStore.setKeysetPaging(false);
+        }
+    }
+
+    public void testKeysetCursorHint() throws Exception {
+        if (!dataStore.getSQLDialect().isLimitOffsetSupported()) {
+            return;
+        }
+        JDBCFeatureSource source = ((JDBCFeatureStore) featureSource).getFeatureSource();
+        Query q = new Query(featureSource.getSchema().getTypeName());
+        q.setSortBy(new SortBy[] {SortBy.REVERSE_ORDER});
+        q.setMaxFeatures(1);
+        q.setHints(new Hints(JDBCDataStore.KEYSET_CURSOR, "0"));
+        try {
+            featureSource.getFeatures(q).features().close();
+            fail("Should have failed, the cursor has no key values");
+        } catch (Exception e) {
+            // fine
+        }
+        
+        // read the first page with a bare query, then hand the cursor token back
+        q.setHints(new Hints());
+        dataStore.setKeysetPaging(true);
+        SimpleFeatureIterator features = featureSource.getFeatures(q).features();
+        String firstId;
+        try {
+            firstId = features.next().getID();
+        } finally {
+            features.close();
+            dataStore.setKeysetPaging(false);
+        }
+        String token = source.getKeysetCursor(q).encode();
+        
+        q.setHints(new Hints(JDBCDataStore.KEYSET_CURSOR, token));
+        features = featureSource.getFeatures(q).features();
+        try {
+            assertTrue(features.hasNext());
+            assertTrue(firstId.compareTo(features.next().getID()) > 0);
+        } finally {
+            features.close();
+        }
+    }
+    
+    public void testKeysetCursorFilterEquality() throws Exception {
+        if (!dataStore.getSQLDialect().isLimitOffsetSupported()) {
+            return;
+        }
+        JDBCFeatureSource source = ((JDBCFeatureStore) featureSource).getFeatureSource();
+        FilterFactory ff = dataStore.getFilterFactory();
+        dataStore.setKeysetPaging(true);
+        try {
+            Query q = new Query(featureSource.getSchema().getTypeName(), ff.greater(
+                    ff.property(aname("intProperty")), ff.literal(-1)));
+            q.setSortBy(new SortBy[] {SortBy.NATURAL_ORDER});
+            q.setMaxFeatures(1);
+            SimpleFeatureIterator features = featureSource.getFeatures(q).features();
+            try {
+                features.next();
+            } finally {
+                features.close();
+            }
+            
+            // an equal filter finds the cursor, a different one does not
+            Query equal = new Query(q);
+            equal.setFilter(ff.greater(ff.property(aname("intProperty")), ff.literal(-1)));
+            assertNotNull(source.getKeysetCursor(equal));
+            Query different = new Query(q);
+            different.setFilter(ff.greater(ff.property(aname("intProperty")), ff.literal(-2)));
+            assertNull(source.getKeysetCursor(different));
+        } finally {
+            dataStore.setKeysetPaging(false);
+        }
+    }
+    
+    public void testPartitionedRead() throws Exception {
+        Set<String> expected = new HashSet<String>();
+        SimpleFeatureIterator features = featureSource.getFeatures().features();
+        try {
+            while (features.hasNext()) {
+                expected.add(features.next().getID());
+            }
+        } finally {
+            features.close();
+        }
+        
+        // the partitions are capped to the reader threads, which default to the processors
+        dataStore.setReaderThreads(2);
+        Query q = new Query(featureSource.getSchema().getTypeName());
+        q.setHints(new Hints(JDBCDataStore.PARTITIONS, 2));
+        Set<String> actual = new HashSet<String>();
+        features = featureSource.getFeatures(q).features();
+        try {
+            while (features.hasNext()) {
+                assertTrue(actual.add(features.next().getID()));
+            }
+        } finally {
+            features.close();
+        }
+        assertEquals(expected, actual);
+        
+        // with a filter
+        FilterFactory ff = dataStore.getFilterFactory();
+        q.setFilter(ff.greater(ff.property(aname("intProperty")), ff.literal(0)));
+        assertEquals(2, featureSource.getFeatures(q).size());
+        int count = 0;
+        features = featureSource.getFeatures(q).features();
+        try {
+            while (features.hasNext()) {
+                features.next();
+                count++;
+            }
+        } finally {
+            features.close();
+        }
+        assertEquals(2, count);
+    }
+    
+    public void testPrefetchedRead() throws Exception {
+        Query q = new Query(featureSource.getSchema().getTypeName());
+        q.setSortBy(new SortBy[] { dataStore.getFilterFactory().sort(aname("intProperty"), 
+                SortOrder.ASCENDING) });
+        q.setHints(new Hints(JDBCDataStore.PREFETCH, 1));
+        SimpleFeatureIterator features = featureSource.getFeatures(q).features();
+        try {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(features.hasNext());
+                assertEquals(i, ((Number) features.next().getAttribute(aname("intProperty"))).intValue());
+            }
+            assertFalse(features.hasNext());
+        } finally {
+            features.close();
+        }
+        
+        // abandon the read early, the connection must be released
+        features = featureSource.getFeatures(q).features();
+        features.next();
+        features.close();
+        assertEquals(3, featureSource.getCount(Query.ALL));
+    }
+    
+    public void testEstimatedStatistics() throws Exception {
+        Query q = new Query(featureSource.getSchema().getTypeName());
+        q.setHints(new Hints(JDBCDataStore.ESTIMATED_STATISTICS, Boolean.TRUE));
+        // statistics might be missing or stale, but the exact path is the fallback
+        assertTrue(featureSource.getCount(q) >= 0);
+        assertNotNull(featureSource.getBounds(q));
+        
+        // estimates are not used when filtering
+        FilterFactory ff = dataStore.getFilterFactory();
+        q.setFilter(ff.greater(ff.property(aname("intProperty")), ff.literal(0)));
+        assertEquals(2, featureSource.getCount(q));
+    }
+    
     public void testFeatureIteratorNextContract() throws Exception {
         SimpleFeatureIterator features = featureSource.getFeatures().features();
         
@@ -25,10 +25,12 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.geotools.data.CollectionFeatureReader;
 import org.geotools.data.DefaultTransaction;
 import org.geotools.data.FeatureReader;
+import org.geotools.data.FeatureWriter;
 import org.geotools.data.Transaction;
 import org.geotools.data.FeatureEvent.Type;
 import org.geotools.data.simple.SimpleFeatureCollection;
@@ -68,6 +70,16 @@ public abstract class JDBCFeatureStoreOnlineTest extends JDBCTestSupport {
     }
 
     public void testAddFeatures() throws IOException {
+        checkAddFeatures();
+    }
+    
+    public void testAddFeaturesBatched() throws IOException {
+        // two features per batch, the last one gets inserted when the writer is closed
+        dataStore.setBatchInsertSize(2);
+        checkAddFeatures();
+    }
+
+    protected void checkAddFeatures() throws IOException {
         SimpleFeatureBuilder b = new SimpleFeatureBuilder(featureStore.getSchema());
         DefaultFeatureCollection collection = new DefaultFeatureCollection(null,
                 featureStore.getSchema());
@@ -85,6 +97,20 @@ public abstract class JDBCFeatureStoreOnlineTest extends JDBCTestSupport {
         
         assertEquals(3, fids.size());
 
+        // the persistent ids are reported back in the user data of the added features
+        Set<String> ids = new HashSet<String>();
+        for (FeatureId fid : fids) {
+            ids.add(fid.getID());
+        }
+        SimpleFeatureIterator added = collection.features();
+        try {
+            while (added.hasNext()) {
+                assertTrue(ids.remove(added.next().getUserData().get("fid")));
+            }
+        } finally {
+            added.close();
+        }
+
         SimpleFeatureCollection features = featureStore.getFeatures();
         assertEquals(6, features.size());
 
@@ -179,6 +205,41 @@ public abstract class JDBCFeatureStoreOnlineTest extends JDBCTestSupport {
         t.close();
     }
     
+    public void testBatchedWritesInTransaction() throws IOException {
+        dataStore.setBatchUpdateSize(10);
+        Transaction t = new DefaultTransaction();
+        JDBCFeatureStore featureStore2 = (JDBCFeatureStore) dataStore.getFeatureSource(featureStore.getName().getLocalPart());
+        featureStore.setTransaction(t);
+        
+        FeatureWriter<SimpleFeatureType, SimpleFeature> writer = dataStore.getFeatureWriter(
+                tname("ft1"), Filter.INCLUDE, t);
+        try {
+            while (writer.hasNext()) {
+                SimpleFeature feature = writer.next();
+                if (((Number) feature.getAttribute(aname("intProperty"))).intValue() == 0) {
+                    writer.remove();
+                } else {
+                    feature.setAttribute(aname("stringProperty"), "batched");
+                    writer.write();
+                }
+            }
+        } finally {
+            writer.close();
+        }
+        
+        // the transaction sees the queued writes, the other store does not
+        FilterFactory ff = dataStore.getFilterFactory();
+        Filter batched = ff.equals(ff.property(aname("stringProperty")), ff.literal("batched"));
+        assertEquals(2, featureStore.getFeatures().size());
+        assertEquals(2, featureStore.getFeatures(batched).size());
+        assertEquals(3, featureStore2.getFeatures().size());
+        
+        t.commit();
+        assertEquals(2, featureStore2.getFeatures().size());
+        assertEquals(2, featureStore2.getFeatures(batched).size());
+        t.close();
+    }
+    
     public void testExternalConnection() throws IOException, SQLException {
         SimpleFeatureBuilder b = new SimpleFeatureBuilder(featureStore.getSchema());
         DefaultFeatureCollection collection = new DefaultFeatureCollection(null,
@@ -0,0 +1,225 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.CollectionFeatureReader;
+import org.geotools.data.FeatureReader;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ *
+ *
+ * @source $URL$
+ */
+public class PartitionedFeatureReaderTest extends TestCase {
+
+    SimpleFeatureType featureType;
+
+    ExecutorService executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("test");
+        tb.add("value", Integer.class);
+        featureType = tb.buildFeatureType();
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    public void testMerge() throws Exception {
+        List<FeatureReader<SimpleFeatureType, SimpleFeature>> readers =
+            new ArrayList<FeatureReader<SimpleFeatureType, SimpleFeature>>();
+        readers.add(reader(0, 100));
+        readers.add(reader(100, 0));
+        readers.add(reader(100, 250));
+        readers.add(reader(350, 50));
+
+        // small buffer and more partitions than threads, the scans have to wait for the consumer
+        PartitionedFeatureReader reader = new PartitionedFeatureReader(readers, 4, executor);
+        Set<String> ids = new HashSet<String>();
+        try {
+            assertEquals(featureType, reader.getFeatureType());
+            while (reader.hasNext()) {
+                assertTrue(ids.add(reader.next().getID()));
+            }
+        } finally {
+            reader.close();
+        }
+        assertEquals(400, ids.size());
+        try {
+            reader.next();
+            fail("Should have thrown NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            // fine
+        }
+    }
+
+    public void testEarlyClose() throws Exception {
+        List<FeatureReader<SimpleFeatureType, SimpleFeature>> readers =
+            new ArrayList<FeatureReader<SimpleFeatureType, SimpleFeature>>();
+        CloseTrackingReader r1 = new CloseTrackingReader(reader(0, 1000));
+        CloseTrackingReader r2 = new CloseTrackingReader(reader(1000, 1000));
+        readers.add(r1);
+        readers.add(r2);
+
+        PartitionedFeatureReader reader = new PartitionedFeatureReader(readers, 2, executor);
+        assertTrue(reader.hasNext());
+        reader.next();
+        reader.close();
+        assertTrue(r1.closed);
+        assertTrue(r2.closed);
+    }
+
+    public void testFailure() throws Exception {
+        List<FeatureReader<SimpleFeatureType, SimpleFeature>> readers =
+            new ArrayList<FeatureReader<SimpleFeatureType, SimpleFeature>>();
+        readers.add(reader(0, 10));
+        readers.add(new CloseTrackingReader(reader(10, 10)) {
+            @Override
+            public SimpleFeature next() throws IOException {
+                throw new IOException("Broken partition");
+            }
+        });
+
+        PartitionedFeatureReader reader = new PartitionedFeatureReader(readers, 100, executor);
+        try {
+            while (reader.hasNext()) {
+                reader.next();
+            }
+            fail("Should have reported the partition failure");
+        } catch (IOException e) {
+            assertEquals("Broken partition", e.getMessage());
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testAbandoned() throws Exception {
+        List<FeatureReader<SimpleFeatureType, SimpleFeature>> readers =
+            new ArrayList<FeatureReader<SimpleFeatureType, SimpleFeature>>();
+        CloseTrackingReader r1 = new CloseTrackingReader(reader(0, 1000));
+        CloseTrackingReader r2 = new CloseTrackingReader(reader(1000, 1000));
+        readers.add(r1);
+        readers.add(r2);
+
+        // never closed, the scans have to stop once the reader is collected
+        PartitionedFeatureReader reader = new PartitionedFeatureReader(readers, 2, executor);
+        assertTrue(reader.hasNext());
+        reader = null;
+        for (int i = 0; i < 100 && !(r1.closed && r2.closed); i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertTrue(r1.closed);
+        assertTrue(r2.closed);
+    }
+
+    public void testExecutorShutdown() throws Exception {
+        List<FeatureReader<SimpleFeatureType, SimpleFeature>> readers =
+            new ArrayList<FeatureReader<SimpleFeatureType, SimpleFeature>>();
+        CloseTrackingReader r1 = new CloseTrackingReader(reader(0, 1000));
+        readers.add(r1);
+
+        PartitionedFeatureReader reader = new PartitionedFeatureReader(readers, 2, executor);
+        try {
+            assertTrue(reader.hasNext());
+            executor.shutdownNow();
+            while (reader.hasNext()) {
+                reader.next();
+            }
+            fail("Should have reported the interruption");
+        } catch (IOException e) {
+            // fine
+        } finally {
+            reader.close();
+        }
+        assertTrue(r1.closed);
+    }
+
+    public void testRejected() throws Exception {
+        List<FeatureReader<SimpleFeatureType, SimpleFeature>> readers =
+            new ArrayList<FeatureReader<SimpleFeatureType, SimpleFeature>>();
+        CloseTrackingReader r1 = new CloseTrackingReader(reader(0, 10));
+        readers.add(r1);
+
+        executor.shutdown();
+        try {
+            new PartitionedFeatureReader(readers, 2, executor);
+            fail("Should have been rejected");
+        } catch (RejectedExecutionException e) {
+            // fine
+        }
+        assertTrue(r1.closed);
+    }
+
+    FeatureReader<SimpleFeatureType, SimpleFeature> reader(int start, int count) {
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(featureType);
+        List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+        for (int i = start; i < start + count; i++) {
+            fb.add(i);
+            features.add(fb.buildFeature("test." + i));
+        }
+        return new CollectionFeatureReader(features, featureType);
+    }
+
+    static class CloseTrackingReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+        FeatureReader<SimpleFeatureType, SimpleFeature> delegate;
+
+        volatile boolean closed;
+
+        CloseTrackingReader(FeatureReader<SimpleFeatureType, SimpleFeature> delegate) {
+            this.delegate = delegate;
+        }
+
+        public SimpleFeatureType getFeatureType() {
+            return delegate.getFeatureType();
+        }
+
+        public SimpleFeature next() throws IOException {
+            return delegate.next();
+        }
+
+        public boolean hasNext() throws IOException {
+            return delegate.hasNext();
+        }
+
+        public void close() throws IOException {
+            closed = true;
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.CollectionFeatureReader;
+import org.geotools.data.FeatureReader;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.jdbc.PartitionedFeatureReaderTest.CloseTrackingReader;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ *
+ *
+ * @source $URL$
+ */
+public class PrefetchingFeatureReaderTest extends TestCase {
+
+    SimpleFeatureType featureType;
+
+    ExecutorService executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("test");
+        tb.add("value", Integer.class);
+        featureType = tb.buildFeatureType();
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    public void testOrder() throws Exception {
+        CloseTrackingReader delegate = new CloseTrackingReader(reader(500));
+        PrefetchingFeatureReader reader = new PrefetchingFeatureReader(delegate, 8, executor);
+        try {
+            int i = 0;
+            while (reader.hasNext()) {
+                assertEquals(i, reader.next().getAttribute("value"));
+                i++;
+            }
+            assertEquals(500, i);
+        } finally {
+            reader.close();
+        }
+        assertTrue(delegate.closed);
+    }
+
+    public void testEarlyClose() throws Exception {
+        CloseTrackingReader delegate = new CloseTrackingReader(reader(1000));
+        PrefetchingFeatureReader reader = new PrefetchingFeatureReader(delegate, 2, executor);
+        assertTrue(reader.hasNext());
+        assertEquals(0, reader.next().getAttribute("value"));
+        reader.close();
+        assertTrue(delegate.closed);
+        assertFalse(reader.hasNext());
+    }
+
+    public void testAbandoned() throws Exception {
+        CloseTrackingReader delegate = new CloseTrackingReader(reader(1000));
+        PrefetchingFeatureReader reader = new PrefetchingFeatureReader(delegate, 2, executor);
+        assertTrue(reader.hasNext());
+        reader = null;
+        for (int i = 0; i < 100 && !delegate.closed; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertTrue(delegate.closed);
+
+        // the thread is free for the next reader
+        delegate = new CloseTrackingReader(reader(10));
+        reader = new PrefetchingFeatureReader(delegate, 2, executor);
+        try {
+            int count = 0;
+            while (reader.hasNext()) {
+                reader.next();
+                count++;
+            }
+            assertEquals(10, count);
+        } finally {
+            reader.close();
+        }
+    }
+
+    FeatureReader<SimpleFeatureType, SimpleFeature> reader(int count) {
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(featureType);
+        List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+        for (int i = 0; i < count; i++) {
+            fb.add(i);
+            features.add(fb.buildFeature("test." + i));
+        }
+        return new CollectionFeatureReader(features, featureType);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+import junit.framework.TestCase;
+
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+
+/**
+ * Checks the primary key bounds used to partition the reads, on keys past the range of a long
+ *
+ * @source $URL$
+ */
+public class PrimaryKeyBoundsTest extends TestCase {
+
+    static final BigInteger BIG = BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.TEN);
+
+    JDBCDataStore store;
+
+    Connection cx;
+
+    SimpleFeatureType featureType;
+
+    @Override
+    protected void setUp() throws Exception {
+        Class.forName("org.h2.Driver");
+        cx = DriverManager.getConnection("jdbc:h2:mem:pk_bounds");
+        Statement st = cx.createStatement();
+        st.execute("CREATE TABLE \"ft\" (\"id\" NUMERIC(30) PRIMARY KEY, \"a\" INT)");
+        for (int i = 0; i < 5; i++) {
+            st.execute("INSERT INTO \"ft\" VALUES (" + BIG.add(BigInteger.valueOf(i)) + ", " + i
+                    + ")");
+        }
+        st.close();
+
+        store = new JDBCDataStore();
+        store.setSQLDialect(new BatchedWritesTest.NoGeometryDialect(store));
+
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("ft");
+        tb.add("a", Integer.class);
+        featureType = tb.buildFeatureType();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Statement st = cx.createStatement();
+        st.execute("DROP TABLE \"ft\"");
+        st.close();
+        cx.close();
+    }
+
+    public void testBoundsPastLong() throws Exception {
+        BigInteger[] bounds = store.getPrimaryKeyBounds(featureType, "id", Filter.INCLUDE, cx);
+        assertNotNull(bounds);
+        assertEquals(BIG, bounds[0]);
+        assertEquals(BIG.add(BigInteger.valueOf(4)), bounds[1]);
+    }
+
+    public void testNoRows() throws Exception {
+        Statement st = cx.createStatement();
+        st.execute("DELETE FROM \"ft\"");
+        st.close();
+        assertNull(store.getPrimaryKeyBounds(featureType, "id", Filter.INCLUDE, cx));
+    }
+}
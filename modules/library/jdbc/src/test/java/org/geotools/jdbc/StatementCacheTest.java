@@ -0,0 +1,132 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the prepared statement cache of {@link JDBCDataStore}
+ *
+ * @source $URL$
+ */
+public class StatementCacheTest extends TestCase {
+
+    JDBCDataStore store;
+
+    Connection cx;
+
+    @Override
+    protected void setUp() throws Exception {
+        Class.forName("org.h2.Driver");
+        cx = DriverManager.getConnection("jdbc:h2:mem:statement_cache");
+        store = new JDBCDataStore();
+        store.setStatementCacheSize(2);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        store.dispose();
+        cx.close();
+    }
+
+    public void testReuse() throws Exception {
+        PreparedStatement ps = store.prepareCachedStatement("SELECT ?", cx);
+        ps.setInt(1, 1);
+        assertEquals(1, execute(ps));
+        store.closeSafe(ps);
+        assertFalse(ps.isClosed());
+
+        PreparedStatement reused = store.prepareCachedStatement("SELECT ?", cx);
+        assertSame(ps, reused);
+        reused.setInt(1, 2);
+        assertEquals(2, execute(reused));
+        store.closeSafe(reused);
+
+        assertEquals(1, store.getStatementCacheHits());
+        assertEquals(1, store.getStatementCacheMisses());
+    }
+
+    public void testConcurrentUse() throws Exception {
+        PreparedStatement ps1 = store.prepareCachedStatement("SELECT ?", cx);
+        PreparedStatement ps2 = store.prepareCachedStatement("SELECT ?", cx);
+        // a statement in use is never handed out twice
+        assertNotSame(ps1, ps2);
+        store.closeSafe(ps1);
+        store.closeSafe(ps2);
+        assertEquals(0, store.getStatementCacheHits());
+        assertEquals(2, store.getStatementCacheMisses());
+    }
+
+    public void testEviction() throws Exception {
+        PreparedStatement ps1 = store.prepareCachedStatement("SELECT 1", cx);
+        store.closeSafe(ps1);
+        PreparedStatement ps2 = store.prepareCachedStatement("SELECT 2", cx);
+        store.closeSafe(ps2);
+        // use the first again, the second becomes the least recently used
+        assertSame(ps1, store.prepareCachedStatement("SELECT 1", cx));
+        store.closeSafe(ps1);
+        PreparedStatement ps3 = store.prepareCachedStatement("SELECT 3", cx);
+        store.closeSafe(ps3);
+
+        assertEquals(1, store.getStatementCacheEvictions());
+        assertTrue(ps2.isClosed());
+        assertFalse(ps1.isClosed());
+        assertFalse(ps3.isClosed());
+    }
+
+    public void testDisabled() throws Exception {
+        store.setStatementCacheSize(0);
+        PreparedStatement ps = store.prepareCachedStatement("SELECT 1", cx);
+        store.closeSafe(ps);
+        assertTrue(ps.isClosed());
+        assertEquals(0, store.getStatementCacheMisses());
+    }
+
+    public void testDispose() throws Exception {
+        PreparedStatement ps = store.prepareCachedStatement("SELECT 1", cx);
+        store.closeSafe(ps);
+        store.dispose();
+        assertTrue(ps.isClosed());
+    }
+
+    public void testClosedConnection() throws Exception {
+        Connection other = DriverManager.getConnection("jdbc:h2:mem:statement_cache");
+        PreparedStatement ps = store.prepareCachedStatement("SELECT 1", other);
+        store.closeSafe(ps);
+        assertTrue(store.statementCaches.containsKey(other));
+
+        // the cache goes away along with its connection
+        store.closeSafe(other);
+        assertFalse(store.statementCaches.containsKey(other));
+        assertTrue(ps.isClosed());
+    }
+
+    int execute(PreparedStatement ps) throws Exception {
+        ResultSet rs = ps.executeQuery();
+        try {
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            rs.close();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.feature.visitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.opengis.feature.Feature;
+import org.opengis.feature.FeatureVisitor;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.expression.Expression;
+
+/**
+ * Computes an aggregate for each distinct combination of the group by expressions, the
+ * equivalent of a SQL <code>SELECT g1, g2, agg(x) ... GROUP BY g1, g2</code>.
+ * <p>
+ * The result value is a map from the list of group by values to the aggregate value of the
+ * group. Using {@link Aggregate#COUNT} the keys are the unique value combinations of the group by
+ * expressions, along with their occurrence count.
+ * <p>
+ * Stores able to compute the aggregation natively can set the result directly with
+ * {@link #setValue(Map)}.
+ *
+ * @source $URL$
+ */
+public class GroupByVisitor implements FeatureCalc, FeatureAttributeVisitor {
+
+    /**
+     * The aggregations a {@link GroupByVisitor} can compute on each group
+     */
+    public enum Aggregate {
+        AVERAGE(AverageVisitor.class) {
+            public FeatureCalc create(Expression expression) {
+                return new AverageVisitor(expression);
+            }
+        },
+        COUNT(CountVisitor.class) {
+            public FeatureCalc create(Expression expression) {
+                return new CountVisitor();
+            }
+        },
+        MAX(MaxVisitor.class) {
+            public FeatureCalc create(Expression expression) {
+                return new MaxVisitor(expression);
+            }
+        },
+        MEDIAN(MedianVisitor.class) {
+            public FeatureCalc create(Expression expression) {
+                return new MedianVisitor(expression);
+            }
+        },
+        MIN(MinVisitor.class) {
+            public FeatureCalc create(Expression expression) {
+                return new MinVisitor(expression);
+            }
+        },
+        STD_DEV(StandardDeviationVisitor.class) {
+            public FeatureCalc create(Expression expression) {
+                return new StandardDeviationVisitor(expression);
+            }
+        },
+        SUM(SumVisitor.class) {
+            public FeatureCalc create(Expression expression) {
+                return new SumVisitor(expression);
+            }
+        };
+
+        Class<? extends FeatureVisitor> visitorClass;
+
+        Aggregate(Class<? extends FeatureVisitor> visitorClass) {
+            this.visitorClass = visitorClass;
+        }
+
+        /**
+         * The visitor computing this aggregation on a single group, stores use it to look up
+         * the matching native aggregate function
+         */
+        public Class<? extends FeatureVisitor> getVisitorClass() {
+            return visitorClass;
+        }
+
+        /**
+         * Creates a visitor computing this aggregation over the given expression
+         */
+        public abstract FeatureCalc create(Expression expression);
+    }
+
+    Aggregate aggregate;
+
+    Expression expression;
+
+    List<Expression> groupBy;
+
+    Map<List<Object>, FeatureCalc> groups = new LinkedHashMap<List<Object>, FeatureCalc>();
+
+    /** results computed by an optimized implementation, take priority over the groups */
+    Map<List<Object>, Object> values;
+
+    /**
+     * Builds a new group by visitor
+     *
+     * @param aggregate The aggregation to perform on each group
+     * @param expression The expression to aggregate, can be null for {@link Aggregate#COUNT}
+     * @param groupBy The expressions whose values identify the groups
+     */
+    public GroupByVisitor(Aggregate aggregate, Expression expression, List<Expression> groupBy) {
+        if (aggregate == null) {
+            throw new NullPointerException("The aggregate must be specified");
+        }
+        if (expression == null && aggregate != Aggregate.COUNT) {
+            throw new IllegalArgumentException("The aggregated expression must be specified for "
+                    + aggregate);
+        }
+        if (groupBy == null || groupBy.isEmpty()) {
+            throw new IllegalArgumentException("At least one group by expression is required");
+        }
+        this.aggregate = aggregate;
+        this.expression = expression;
+        this.groupBy = new ArrayList<Expression>(groupBy);
+    }
+
+    public void init(SimpleFeatureCollection collection) {
+        // do nothing
+    }
+
+    public Aggregate getAggregate() {
+        return aggregate;
+    }
+
+    /**
+     * The aggregated expression, null when counting
+     */
+    public Expression getExpression() {
+        return expression;
+    }
+
+    public List<Expression> getGroupByExpressions() {
+        return Collections.unmodifiableList(groupBy);
+    }
+
+    @Override
+    public List<Expression> getExpressions() {
+        List<Expression> result = new ArrayList<Expression>(groupBy);
+        if (expression != null) {
+            result.add(expression);
+        }
+        return result;
+    }
+
+    public void visit(SimpleFeature feature) {
+        visit((Feature) feature);
+    }
+
+    public void visit(Feature feature) {
+        List<Object> key = new ArrayList<Object>(groupBy.size());
+        for (Expression e : groupBy) {
+            key.add(e.evaluate(feature));
+        }
+        FeatureCalc calc = groups.get(key);
+        if (calc == null) {
+            calc = aggregate.create(expression);
+            groups.put(key, calc);
+        }
+        calc.visit(feature);
+    }
+
+    /**
+     * Sets the result of the aggregation, for stores that can compute it natively
+     *
+     * @param values Map from the list of group by values to the aggregate value
+     */
+    public void setValue(Map<List<Object>, Object> values) {
+        reset();
+        this.values = values;
+    }
+
+    public void reset() {
+        groups.clear();
+        values = null;
+    }
+
+    /**
+     * Returns the aggregate value of each group
+     */
+    public Map<List<Object>, Object> getGroupValues() {
+        if (values != null) {
+            return values;
+        }
+        Map<List<Object>, Object> result = new LinkedHashMap<List<Object>, Object>();
+        for (Map.Entry<List<Object>, FeatureCalc> entry : groups.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().getResult().getValue());
+        }
+        return result;
+    }
+
+    public CalcResult getResult() {
+        if (values == null && groups.isEmpty()) {
+            return CalcResult.NULL_RESULT;
+        }
+        final Map<List<Object>, Object> result = getGroupValues();
+        return new AbstractCalcResult() {
+            public Object getValue() {
+                return result;
+            }
+        };
+    }
+}
@@ -55,6 +55,20 @@ public class QuantileListVisitor implements FeatureCalc {
 	public void init(SimpleFeatureCollection collection) {
 		//do nothing
 	}
+
+	public Expression getExpression() {
+		return expr;
+	}
+
+	/**
+	 * Sets the non null values to be classified, for stores that can extract them natively
+	 * (ideally already sorted)
+	 */
+	public void setValue(List values) {
+		reset(bins);
+		this.items = new ArrayList(values);
+		this.count = values.size();
+	}
 	
 	public CalcResult getResult() {
 	    if (bins == 0 || count == 0) {
@@ -54,6 +54,11 @@ public class StandardDeviationVisitor implements FeatureCalc, FeatureAttributeVi
     int count = 0;
     double mean = 0;
     double m2 = 0;
+    /**
+     * The standard deviation as computed by an optimized implementation, takes priority over
+     * the rolling variance when set
+     */
+    Double deviation;
 
     /**
      * Constructor left for backwards compatibility. The current algorithm uses
@@ -86,7 +91,19 @@ public class StandardDeviationVisitor implements FeatureCalc, FeatureAttributeVi
         return Arrays.asList(expr);
     }
 
+	public Expression getExpression() {
+		return expr;
+	}
+
 	public CalcResult getResult() {
+		if(deviation != null) {
+			final Double result = deviation;
+			return new AbstractCalcResult() {
+				public Object getValue() {
+					return result;
+				}
+			};
+		}
 		if(count == 0) {
     		return CalcResult.NULL_RESULT;
     	}
@@ -124,7 +141,18 @@ public class StandardDeviationVisitor implements FeatureCalc, FeatureAttributeVi
 		m2 = m2 + delta * (x - mean);  // This expression uses the new value of mean
 	}
 	
+	/**
+	 * Sets the standard deviation directly, for stores that can compute it natively
+	 */
+	public void setValue(Object value) {
+		reset();
+		if (value instanceof Number) {
+			this.deviation = ((Number) value).doubleValue();
+		}
+	}
+	
 	public void reset() {
+		this.deviation = null;
 		this.count = 0;
 	    this.countNull = 0;
 	    this.countNaN = 0;
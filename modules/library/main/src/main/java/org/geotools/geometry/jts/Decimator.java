@@ -23,12 +23,16 @@ import java.util.logging.Logger;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.TransformException;
 
+import com.vividsolutions.jts.geom.CoordinateSequence;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.MultiLineString;
 import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
 
@@ -65,6 +69,28 @@ public final class Decimator {
     
     private static final double EPS = 1e-9; 
 
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory(
+            new LiteCoordinateSequenceFactory());
+
+    /**
+     * Scratch buffer used to decimate and transform the coordinates of geometries that cannot be
+     * modified in place, one per thread, grown to the largest sequence seen so far, up to
+     * {@link #MAX_RETAINED_ORDINATES}
+     */
+    static final ThreadLocal<GrowableOrdinateArray> ORDINATES = new ThreadLocal<GrowableOrdinateArray>() {
+        @Override
+        protected GrowableOrdinateArray initialValue() {
+            return new GrowableOrdinateArray();
+        }
+    };
+
+    /**
+     * The largest scratch buffer kept around between calls, in ordinates (512KB). Larger buffers
+     * are dropped after use, so that a single huge geometry does not pin its buffer in every
+     * thread that ever rendered it
+     */
+    static final int MAX_RETAINED_ORDINATES = 64 * 1024;
+
 	private double spanx = -1;
 
 	private double spany = -1;
@@ -227,6 +253,151 @@ public final class Decimator {
 	    this.spany = spany;
 	}
 
+    /**
+     * Decimates, transforms and generalizes the geometry. If <code>clone</code> is true the
+     * original geometry is left untouched and a new one, based on
+     * {@link LiteCoordinateSequence}, is returned: the coordinates are processed in a per thread
+     * scratch buffer, so that only the final, already generalized, arrays are allocated, instead
+     * of cloning the full geometry and then trimming it. Otherwise this is the same as
+     * {@link #decimateTransformGeneralize(Geometry, MathTransform)}
+     * 
+     * @param geometry
+     * @param transform
+     * @param clone
+     * @return
+     * @throws TransformException
+     */
+    public final Geometry decimateTransformGeneralize(Geometry geometry,
+            MathTransform transform, boolean clone) throws TransformException {
+        if (!clone) {
+            return decimateTransformGeneralize(geometry, transform);
+        } else if (transform != null && transform.getSourceDimensions() != 2) {
+            // the scratch buffer only handles 2D coordinates
+            Geometry cloned = LiteCoordinateSequence.cloneGeometry(geometry,
+                    transform.getSourceDimensions());
+            return decimateTransformGeneralize(cloned, transform);
+        } else {
+            return copyDecimateTransformGeneralize(geometry, transform);
+        }
+    }
+
+    private Geometry copyDecimateTransformGeneralize(Geometry geometry, MathTransform transform)
+            throws TransformException {
+        if (geometry == null) {
+            return null;
+        } else if (geometry instanceof GeometryCollection) {
+            GeometryCollection collection = (GeometryCollection) geometry;
+            final int length = collection.getNumGeometries();
+            if (geometry instanceof MultiPoint) {
+                Point[] points = new Point[length];
+                for (int i = 0; i < length; i++) {
+                    points[i] = (Point) copyDecimateTransformGeneralize(
+                            collection.getGeometryN(i), transform);
+                }
+                return GEOMETRY_FACTORY.createMultiPoint(points);
+            } else if (geometry instanceof MultiLineString && !(geometry instanceof CurvedGeometry<?>)) {
+                LineString[] lines = new LineString[length];
+                for (int i = 0; i < length; i++) {
+                    lines[i] = (LineString) copyDecimateTransformGeneralize(
+                            collection.getGeometryN(i), transform);
+                }
+                return GEOMETRY_FACTORY.createMultiLineString(lines);
+            } else if (geometry instanceof MultiPolygon) {
+                Polygon[] polys = new Polygon[length];
+                for (int i = 0; i < length; i++) {
+                    polys[i] = (Polygon) copyDecimateTransformGeneralize(
+                            collection.getGeometryN(i), transform);
+                }
+                return GEOMETRY_FACTORY.createMultiPolygon(polys);
+            } else if (geometry instanceof CurvedGeometry<?>) {
+                return decimateTransformGeneralize(LiteCoordinateSequence.cloneGeometry(geometry),
+                        transform);
+            } else {
+                Geometry[] elements = new Geometry[length];
+                for (int i = 0; i < length; i++) {
+                    elements[i] = copyDecimateTransformGeneralize(collection.getGeometryN(i),
+                            transform);
+                }
+                return GEOMETRY_FACTORY.createGeometryCollection(elements);
+            }
+        } else if (geometry instanceof Point) {
+            CoordinateSequence cs = ((Point) geometry).getCoordinateSequence();
+            return GEOMETRY_FACTORY.createPoint(copyDecimateTransformGeneralize(cs, transform,
+                    false, spanx, spany));
+        } else if (geometry instanceof Polygon) {
+            Polygon polygon = (Polygon) geometry;
+            LinearRing shell = (LinearRing) copyDecimateTransformGeneralize(
+                    polygon.getExteriorRing(), transform);
+            LinearRing[] holes = new LinearRing[polygon.getNumInteriorRing()];
+            for (int i = 0; i < holes.length; i++) {
+                holes[i] = (LinearRing) copyDecimateTransformGeneralize(
+                        polygon.getInteriorRingN(i), transform);
+            }
+            return GEOMETRY_FACTORY.createPolygon(shell, holes);
+        } else if (geometry instanceof LineString) {
+            if (geometry instanceof CurvedGeometry<?>) {
+                // linearization needs the geometry itself, go through the in place path
+                return decimateTransformGeneralize(LiteCoordinateSequence.cloneGeometry(geometry),
+                        transform);
+            }
+            LineString ls = (LineString) geometry;
+            CoordinateSequence cs = ls.getCoordinateSequence();
+            boolean ring = ls instanceof LinearRing;
+            boolean loop = ring;
+            if (!loop && cs.size() > 1) {
+                double x0 = cs.getOrdinate(0, 0);
+                double y0 = cs.getOrdinate(0, 1);
+                double x1 = cs.getOrdinate(cs.size() - 1, 0);
+                double y1 = cs.getOrdinate(cs.size() - 1, 1);
+                loop = Math.abs(x0 - x1) < EPS && Math.abs(y0 - y1) < EPS;
+            }
+            LiteCoordinateSequence seq = copyDecimateTransformGeneralize(cs, transform, loop,
+                    spanx, spany);
+            if (ring) {
+                return GEOMETRY_FACTORY.createLinearRing(seq);
+            } else {
+                return GEOMETRY_FACTORY.createLineString(seq);
+            }
+        } else {
+            return geometry;
+        }
+    }
+
+    /**
+     * Reads the 2D coordinates of the sequence in the scratch buffer, generalizes and transforms
+     * them there, and returns a new sequence holding just the coordinates that survived
+     */
+    private LiteCoordinateSequence copyDecimateTransformGeneralize(CoordinateSequence cs,
+            MathTransform transform, boolean ring, double spanx, double spany)
+            throws TransformException {
+        final int ncoords = cs.size();
+        GrowableOrdinateArray buffer = ORDINATES.get();
+        buffer.setSize(ncoords * 2);
+        double[] coords = buffer.getDataArray();
+        try {
+            for (int i = 0; i < ncoords; i++) {
+                coords[i * 2] = cs.getOrdinate(i, 0);
+                coords[i * 2 + 1] = cs.getOrdinate(i, 1);
+            }
+
+            int actualCoords = ncoords;
+            if (ncoords >= 2 && (spanx != -1 || spany != -1)) {
+                actualCoords = generalize(coords, ncoords, ncoords * 2, ring, spanx, spany);
+            }
+            if (actualCoords > 0 && transform != null && !transform.isIdentity()) {
+                transform.transform(coords, 0, coords, 0, actualCoords);
+            }
+
+            double[] result = new double[actualCoords * 2];
+            System.arraycopy(coords, 0, result, 0, actualCoords * 2);
+            return new LiteCoordinateSequence(result, 2);
+        } finally {
+            if (coords.length > MAX_RETAINED_ORDINATES) {
+                ORDINATES.remove();
+            }
+        }
+    }
+
     public final Geometry decimateTransformGeneralize(Geometry geometry,
 			MathTransform transform) throws TransformException {
 		if (geometry instanceof GeometryCollection) {
@@ -485,6 +656,34 @@ public final class Decimator {
             return;
         }
 
+        int actualCoords = generalize(coords, ncoords, coords.length, ring, spanx, spany);
+
+		// DO THE XFORM
+		if ((transform == null) || (transform.isIdentity())) {
+		    // no actual xform
+		} else {
+		    transform.transform(coords, 0, coords, 0, actualCoords);
+		}
+
+		// stick back into the coordinate sequence
+		if(actualCoords * 2 < coords.length) {
+		    double[] seqDouble = new double[2 * actualCoords];
+		    System.arraycopy(coords, 0, seqDouble, 0, actualCoords * 2);
+		    seq.setArray(seqDouble, 2);
+		} else {
+		    seq.setArray(coords, 2);
+		}
+	}
+
+    /**
+     * Generalizes the first <code>ncoords</code> coordinates of the packed xy array, in place,
+     * and returns the number of coordinates left. The first and last coordinates are always
+     * kept
+     * 
+     * @param length the number of ordinates in use in the array
+     */
+    private int generalize(double[] coords, int ncoords, int length, boolean ring,
+            double spanx, double spany) {
         // generalize, use the heavier algorithm for longer lines
         int actualCoords = spanBasedGeneralize(ncoords, coords, spanx, spany);
         if(DP_THRESHOLD > 0 && actualCoords > DP_THRESHOLD) {
@@ -493,14 +692,14 @@ public final class Decimator {
 		
 		// handle rings
 		if(ring && actualCoords <= 3) {
-		    if(coords.length > 6) {
+		    if(length > 6) {
 		        // normal rings
     			coords[2] = coords[2];
     			coords[3] = coords[3];
     			coords[4] = coords[4];
     			coords[5] = coords[5];
     			actualCoords = 3;
-		    } else if(coords.length > 4){
+		    } else if(length > 4){
 		        // invalid rings, they do A-B-A, that is, two overlapping lines
 		        coords[2] = coords[2];
                 coords[3] = coords[3];
@@ -512,22 +711,7 @@ public final class Decimator {
 		coords[actualCoords * 2] = coords[(ncoords - 1) * 2];
 		coords[actualCoords * 2 + 1] = coords[(ncoords - 1) * 2 + 1];
 		actualCoords++;
-
-		// DO THE XFORM
-		if ((transform == null) || (transform.isIdentity())) {
-		    // no actual xform
-		} else {
-		    transform.transform(coords, 0, coords, 0, actualCoords);
-		}
-
-		// stick back into the coordinate sequence
-		if(actualCoords * 2 < coords.length) {
-		    double[] seqDouble = new double[2 * actualCoords];
-		    System.arraycopy(coords, 0, seqDouble, 0, actualCoords * 2);
-		    seq.setArray(seqDouble, 2);
-		} else {
-		    seq.setArray(coords, 2);
-		}
+		return actualCoords;
 	}
 
     private int spanBasedGeneralize(int ncoords, double[] coords, double spanx, double spany) {
@@ -141,19 +141,19 @@ public final class LiteShape2 implements Shape, Cloneable {
 	public LiteShape2(Geometry geom, MathTransform mathTransform,
 			Decimator decimator, boolean generalize, boolean clone) throws TransformException,
 			FactoryException {
-		if (geom != null) {
-		    if(!clone && geom.getFactory().getCoordinateSequenceFactory() instanceof LiteCoordinateSequenceFactory)
-		        this.geometry = geom;
-		    else
-		        this.geometry = LiteCoordinateSequence.cloneGeometry(geom);
-		}
+		boolean copy = geom != null
+		        && (clone || !(geom.getFactory().getCoordinateSequenceFactory() instanceof LiteCoordinateSequenceFactory));
 
 		this.mathTransform = mathTransform;
 		if (decimator != null) {
+		    // the decimator copies only the coordinates surviving the generalization
             this.geometry = decimator
-                    .decimateTransformGeneralize(this.geometry, this.mathTransform);
+                    .decimateTransformGeneralize(geom, this.mathTransform, copy);
 			this.geometry.geometryChanged();
 		} else {
+		    if (geom != null) {
+		        this.geometry = copy ? LiteCoordinateSequence.cloneGeometry(geom) : geom;
+		    }
 		        // if we have a transform a decimation span can be detected, so try to decimate anyways
 			if (mathTransform != null && !mathTransform.isIdentity() && generalize && geometry != null) {
 				new Decimator(mathTransform.inverse()).decimate(this.geometry);
@@ -0,0 +1,122 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.feature.visitor;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.feature.visitor.GroupByVisitor.Aggregate;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.expression.Expression;
+
+public class GroupByVisitorTest {
+
+    FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+
+    ListFeatureCollection features;
+
+    @Before
+    public void setUp() throws Exception {
+        SimpleFeatureTypeBuilder ftb = new SimpleFeatureTypeBuilder();
+        ftb.setName("test");
+        ftb.add("state", String.class);
+        ftb.add("type", String.class);
+        ftb.add("value", Double.class);
+        SimpleFeatureType featureType = ftb.buildFeatureType();
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(featureType);
+        features = new ListFeatureCollection(featureType);
+        features.add(fb.buildFeature("f1", new Object[] { "NY", "road", 1d }));
+        features.add(fb.buildFeature("f2", new Object[] { "NY", "road", 3d }));
+        features.add(fb.buildFeature("f3", new Object[] { "NY", "river", 10d }));
+        features.add(fb.buildFeature("f4", new Object[] { "CA", "road", 5d }));
+    }
+
+    @Test
+    public void testSingleGroupBy() throws Exception {
+        GroupByVisitor visitor = new GroupByVisitor(Aggregate.SUM, ff.property("value"),
+                Collections.singletonList((Expression) ff.property("state")));
+        features.accepts(visitor, null);
+
+        Map<List<Object>, Object> result = visitor.getGroupValues();
+        assertEquals(2, result.size());
+        assertEquals(14d, ((Number) result.get(Arrays.asList("NY"))).doubleValue(), 0d);
+        assertEquals(5d, ((Number) result.get(Arrays.asList("CA"))).doubleValue(), 0d);
+        assertEquals(result, visitor.getResult().getValue());
+    }
+
+    @Test
+    public void testMultipleGroupBy() throws Exception {
+        GroupByVisitor visitor = new GroupByVisitor(Aggregate.COUNT, null,
+                Arrays.asList((Expression) ff.property("state"), ff.property("type")));
+        features.accepts(visitor, null);
+
+        Map<List<Object>, Object> result = visitor.getGroupValues();
+        assertEquals(3, result.size());
+        assertEquals(2, result.get(Arrays.asList("NY", "road")));
+        assertEquals(1, result.get(Arrays.asList("NY", "river")));
+        assertEquals(1, result.get(Arrays.asList("CA", "road")));
+    }
+
+    @Test
+    public void testStandardDeviation() throws Exception {
+        GroupByVisitor visitor = new GroupByVisitor(Aggregate.STD_DEV, ff.property("value"),
+                Collections.singletonList((Expression) ff.property("type")));
+        features.accepts(visitor, null);
+
+        Map<List<Object>, Object> result = visitor.getGroupValues();
+        // road: 1, 3, 5
+        assertEquals(Math.sqrt(8d / 3), (Double) result.get(Arrays.asList("road")), 1e-9);
+        assertEquals(0d, (Double) result.get(Arrays.asList("river")), 0d);
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        GroupByVisitor visitor = new GroupByVisitor(Aggregate.MAX, ff.property("value"),
+                Collections.singletonList((Expression) ff.property("type")));
+        assertSame(CalcResult.NULL_RESULT, visitor.getResult());
+    }
+
+    @Test
+    public void testSetValue() throws Exception {
+        GroupByVisitor visitor = new GroupByVisitor(Aggregate.MAX, ff.property("value"),
+                Collections.singletonList((Expression) ff.property("type")));
+        features.accepts(visitor, null);
+
+        Map<List<Object>, Object> values = new HashMap<List<Object>, Object>();
+        values.put(Arrays.<Object> asList("lake"), 7d);
+        visitor.setValue(values);
+        assertEquals(values, visitor.getResult().getValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingExpression() throws Exception {
+        new GroupByVisitor(Aggregate.SUM, null,
+                Collections.singletonList((Expression) ff.property("type")));
+    }
+}
@@ -18,6 +18,7 @@ package org.geotools.geometry.jts;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.awt.Rectangle;
@@ -29,6 +30,7 @@ import org.junit.Test;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.TransformException;
 
+import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
@@ -209,4 +211,52 @@ public class DecimatorTest {
         assertEquals("CircularString", origin.getGeometryN(1).getGeometryType());
         assertEquals("LineString", simplified.getGeometryN(1).getGeometryType());
     }
+
+    @Test
+    public void testCopyMatchesInPlace() throws Exception {
+        WKTReader2 reader = new WKTReader2();
+        AffineTransform2D toScreen = new AffineTransform2D(new AffineTransform(10, 0, 0, -10, 0,
+                100));
+        String[] wkts = new String[] { "POINT(1 2)",
+                "LINESTRING(0 0, 0.01 0.01, 0.02 0.02, 1 1, 2 2, 2 0)",
+                "POLYGON((0 0, 0 10, 0.01 10, 10 10, 10 0, 0 0), (2 2, 2 3, 3 3, 2 2))",
+                "MULTIPOLYGON(((0 0, 0 1, 1 1, 0 0)), ((5 5, 5 6, 6 6, 5 5)))",
+                "GEOMETRYCOLLECTION(POINT(1 1), LINESTRING(0 0, 0.05 0, 10 10))" };
+        for (String wkt : wkts) {
+            // a plain JTS geometry, which cannot be modified in place
+            Geometry original = reader.read(wkt);
+            Geometry reference = (Geometry) original.clone();
+
+            Decimator d = new Decimator(0.5, 0.5);
+            Geometry copied = d.decimateTransformGeneralize(original, toScreen, true);
+            Geometry inPlace = d.decimateTransformGeneralize(
+                    LiteCoordinateSequence.cloneGeometry(original), toScreen);
+
+            assertTrue(wkt, reference.equalsExact(original));
+            assertTrue(wkt, inPlace.equalsExact(copied));
+            assertEquals(wkt, original.getGeometryType(), copied.getGeometryType());
+            assertTrue(wkt, copied.getFactory().getCoordinateSequenceFactory() instanceof LiteCoordinateSequenceFactory);
+        }
+    }
+
+    @Test
+    public void testLargeBufferNotRetained() throws Exception {
+        Decimator d = new Decimator(-1, -1);
+        d.decimateTransformGeneralize(gf.createLineString(new Coordinate[] {
+                new Coordinate(0, 0), new Coordinate(1, 1), new Coordinate(2, 2) }), identity,
+                true);
+        GrowableOrdinateArray small = Decimator.ORDINATES.get();
+        d.decimateTransformGeneralize(gf.createLineString(new Coordinate[] {
+                new Coordinate(0, 0), new Coordinate(1, 1) }), identity, true);
+        assertSame(small, Decimator.ORDINATES.get());
+
+        Coordinate[] coords = new Coordinate[Decimator.MAX_RETAINED_ORDINATES];
+        for (int i = 0; i < coords.length; i++) {
+            coords[i] = new Coordinate(i, i % 2);
+        }
+        Geometry copied = d.decimateTransformGeneralize(gf.createLineString(coords), identity,
+                true);
+        assertEquals(coords.length, copied.getNumPoints());
+        assertTrue(Decimator.ORDINATES.get().getDataArray().length <= Decimator.MAX_RETAINED_ORDINATES);
+    }
 }
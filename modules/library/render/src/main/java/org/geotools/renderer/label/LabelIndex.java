@@ -17,15 +17,20 @@
 package org.geotools.renderer.label;
 
 import java.awt.geom.Rectangle2D;
-import java.util.Iterator;
+import java.util.ArrayList;
 import java.util.List;
 
 import com.vividsolutions.jts.geom.Envelope;
-import com.vividsolutions.jts.index.quadtree.Quadtree;
 
 /**
  * Stores label items and helps in finding the interferering ones, either by
  * pure overlap or within a certain distance from the specified bounds
+ * <p>
+ * The labels are indexed by a uniform grid in screen space, which grows as
+ * needed to cover the inserted labels. Unlike a tree the grid does not need
+ * rebalancing as labels get added one at a time, and a lookup only visits the
+ * few cells covered by the label being placed. Labels too large for the grid,
+ * or too far away from the others, are kept in a list scanned at each lookup.
  * 
  * @author Andrea Aime
  * 
@@ -36,7 +41,41 @@ import com.vividsolutions.jts.index.quadtree.Quadtree;
  */
 public class LabelIndex {
 
-    Quadtree index = new Quadtree();
+    /**
+     * Size of the grid cells, in pixels
+     */
+    static final int CELL_SIZE = 64;
+
+    /**
+     * Max number of cells covered by a single label before it's kept out of the
+     * grid
+     */
+    static final int MAX_ITEM_CELLS = 256;
+
+    /**
+     * Max number of cells in the grid
+     */
+    static final int MAX_GRID_CELLS = 1 << 20;
+
+    /**
+     * The grid cells, row by row, allocated lazily
+     */
+    List<InterferenceItem>[] cells;
+
+    /**
+     * Grid coordinates of the first cell, and grid size, in cells
+     */
+    int minCol, minRow, cols, rows;
+
+    /**
+     * All the items stored in the grid, used to rebuild it when it grows
+     */
+    List<InterferenceItem> gridItems = new ArrayList<InterferenceItem>();
+
+    /**
+     * Items that do not fit in the grid
+     */
+    List<InterferenceItem> overflow = new ArrayList<InterferenceItem>();
 
     /**
      * Returns true if there is any label in the index within the specified
@@ -47,19 +86,38 @@ public class LabelIndex {
      * @param distance
      * @return
      */
-    @SuppressWarnings("unchecked")
     public boolean labelsWithinDistance(Rectangle2D bounds, double distance) {
         if (distance < 0)
             return false;
 
-        Envelope e = toEnvelope(bounds);
-        e.expandBy(distance);
-        List<InterferenceItem> results = index.query(e);
-        if (results.size() == 0)
-            return false;
-        for (Iterator<InterferenceItem> it = results.iterator(); it.hasNext();) {
-            InterferenceItem item = it.next();
-            if (item.env.intersects(e)) {
+        final double minx = bounds.getMinX() - distance;
+        final double miny = bounds.getMinY() - distance;
+        final double maxx = bounds.getMaxX() + distance;
+        final double maxy = bounds.getMaxY() + distance;
+
+        if (cells != null) {
+            int c0 = Math.max(cell(minx), minCol);
+            int c1 = Math.min(cell(maxx), minCol + cols - 1);
+            int r0 = Math.max(cell(miny), minRow);
+            int r1 = Math.min(cell(maxy), minRow + rows - 1);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    List<InterferenceItem> items = cells[(r - minRow) * cols + (c - minCol)];
+                    if (items != null && intersects(items, minx, miny, maxx, maxy)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return intersects(overflow, minx, miny, maxx, maxy);
+    }
+
+    private boolean intersects(List<InterferenceItem> items, double minx, double miny,
+            double maxx, double maxy) {
+        for (int i = 0; i < items.size(); i++) {
+            Envelope env = items.get(i).env;
+            if (env.getMinX() <= maxx && env.getMaxX() >= minx && env.getMinY() <= maxy
+                    && env.getMaxY() >= miny) {
                 return true;
             }
         }
@@ -74,7 +132,7 @@ public class LabelIndex {
      */
     public void addLabel(LabelCacheItem item, Rectangle2D bounds) {
         Envelope e = toEnvelope(bounds);
-        index.insert(e, new InterferenceItem(e, item));
+        insert(new InterferenceItem(e, item));
     }
 
     /**
@@ -88,7 +146,100 @@ public class LabelIndex {
     }
 
     /**
-     * Simple structure stored into the quadtree (keeping the item around helps
+     * Returns the grid row or column containing the specified ordinate
+     */
+    private static int cell(double ordinate) {
+        double c = Math.floor(ordinate / CELL_SIZE);
+        // keep far away or invalid ordinates from overflowing the int range
+        if (c < -Integer.MAX_VALUE / 2 || Double.isNaN(c)) {
+            return -Integer.MAX_VALUE / 2;
+        } else if (c > Integer.MAX_VALUE / 2) {
+            return Integer.MAX_VALUE / 2;
+        }
+        return (int) c;
+    }
+
+    private void insert(InterferenceItem item) {
+        Envelope env = item.env;
+        int c0 = cell(env.getMinX());
+        int c1 = cell(env.getMaxX());
+        int r0 = cell(env.getMinY());
+        int r1 = cell(env.getMaxY());
+        if (((long) c1 - c0 + 1) * ((long) r1 - r0 + 1) > MAX_ITEM_CELLS) {
+            overflow.add(item);
+            return;
+        }
+
+        if (cells == null || c0 < minCol || r0 < minRow || c1 >= minCol + cols
+                || r1 >= minRow + rows) {
+            if (!grow(c0, r0, c1, r1)) {
+                overflow.add(item);
+                return;
+            }
+        }
+        gridItems.add(item);
+        addToCells(item, c0, r0, c1, r1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addToCells(InterferenceItem item, int c0, int r0, int c1, int r1) {
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int idx = (r - minRow) * cols + (c - minCol);
+                List<InterferenceItem> items = cells[idx];
+                if (items == null) {
+                    items = new ArrayList<InterferenceItem>(4);
+                    cells[idx] = items;
+                }
+                items.add(item);
+            }
+        }
+    }
+
+    /**
+     * Grows the grid so that it covers the specified cell range, with some
+     * slack to avoid growing it again right away. Returns false if the grid
+     * would become too large
+     */
+    @SuppressWarnings("unchecked")
+    private boolean grow(int c0, int r0, int c1, int r1) {
+        int newMinCol, newMinRow, newMaxCol, newMaxRow;
+        if (cells == null) {
+            newMinCol = c0;
+            newMinRow = r0;
+            newMaxCol = Math.max(c1, c0 + 15);
+            newMaxRow = Math.max(r1, r0 + 15);
+        } else {
+            int slackCols = cols / 2;
+            int slackRows = rows / 2;
+            newMinCol = c0 < minCol ? Math.min(c0, minCol - slackCols) : minCol;
+            newMinRow = r0 < minRow ? Math.min(r0, minRow - slackRows) : minRow;
+            newMaxCol = c1 >= minCol + cols ? Math.max(c1, minCol + cols - 1 + slackCols)
+                    : minCol + cols - 1;
+            newMaxRow = r1 >= minRow + rows ? Math.max(r1, minRow + rows - 1 + slackRows)
+                    : minRow + rows - 1;
+        }
+        long newCols = (long) newMaxCol - newMinCol + 1;
+        long newRows = (long) newMaxRow - newMinRow + 1;
+        if (newCols * newRows > MAX_GRID_CELLS) {
+            return false;
+        }
+
+        minCol = newMinCol;
+        minRow = newMinRow;
+        cols = (int) newCols;
+        rows = (int) newRows;
+        cells = new List[cols * rows];
+        for (InterferenceItem item : gridItems) {
+            Envelope env = item.env;
+            addToCells(item, cell(env.getMinX()), cell(env.getMinY()), cell(env.getMaxX()),
+                    cell(env.getMaxY()));
+        }
+        return true;
+    }
+
+    /**
+     * Simple structure stored into the grid (keeping the item around helps
      * in debugging)
      * 
      * @author Andrea Aime
@@ -117,7 +268,7 @@ public class LabelIndex {
             Envelope env = toEnvelope(area);
             
             InterferenceItem item = new InterferenceItem(env,null);            
-            index.insert( env, item );
+            insert( item );
         }
     }
 }
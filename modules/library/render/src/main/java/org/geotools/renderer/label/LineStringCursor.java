@@ -150,8 +150,6 @@ public class LineStringCursor {
      * @param ordinate
      */
     public void moveTo(double ordinate) {
-        double position = 0;
-
         if (ordinate < 0) {
             // before start
             segment = 0;
@@ -162,17 +160,33 @@ public class LineStringCursor {
             offsetDistance = segmentLenghts[segment];
         } else {
             // find the segment and the offset within the segment
-            for (int i = 0; i < segmentLenghts.length; i++) {
-                double length = segmentLenghts[i];
-                if (ordinate <= (length + position)) {
-                    segment = i;
-                    offsetDistance = ordinate - position;
-                    break;
-                } else {
-                    position += length;
-                }
+            segment = getSegment(ordinate);
+            offsetDistance = ordinate - segmentStartOrdinate[segment];
+        }
+    }
+
+    /**
+     * Returns the first segment whose end is at or past the specified
+     * curvilinear coordinate, using a binary search on the segment ordinates
+     * 
+     * @param ordinate
+     * @return
+     */
+    int getSegment(double ordinate) {
+        if (ordinate < 0) {
+            return 0;
+        }
+        int low = 0;
+        int high = segmentLenghts.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ordinate <= segmentStartOrdinate[mid] + segmentLenghts[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
             }
         }
+        return low;
     }
 
     /**
@@ -305,11 +319,8 @@ public class LineStringCursor {
             throw new IllegalArgumentException("Invalid arguments, endOrdinate < starOrdinate");
 
         // compute the begin and end segments
-        LineStringCursor delegate = new LineStringCursor(this);
-        delegate.moveTo(startOrdinate);
-        int startSegment = delegate.segment;
-        delegate.moveTo(endOrdinate);
-        int endSegment = delegate.segment;
+        int startSegment = getSegment(startOrdinate);
+        int endSegment = getSegment(endOrdinate);
 
         // everything inside the same segment
         if (startSegment == endSegment)
@@ -20,20 +20,24 @@ import java.awt.Composite;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.map.DirectLayer;
 import org.geotools.map.FeatureLayer;
 import org.geotools.map.Layer;
-import org.geotools.map.MapContent;
 import org.geotools.renderer.style.SLDStyleFactory;
 import org.geotools.styling.FeatureTypeStyle;
 import org.geotools.styling.Style;
 import org.geotools.styling.StyleFactory;
 
 /**
- * Data structure holding a MapContent that has its own compositing base
+ * Data structure holding a group of layers that has its own compositing base. The layers are
+ * the ones of the map content being painted, or clones of them when their style had to be split,
+ * only the latter are owned by the group
  * 
  * @author Andrea Aime - GeoSolutions
  */
@@ -43,10 +47,11 @@ class CompositingGroup {
 
     public static List<CompositingGroup> splitOnCompositingBase(Graphics2D graphics,
             Rectangle screenSize,
-            MapContent mc) {
+            List<Layer> mapLayers) {
         List<CompositingGroup> result = new ArrayList<>();
         List<Layer> layers = new ArrayList<>();
-        for (Layer layer : mc.layers()) {
+        Set<Layer> clones = Collections.newSetFromMap(new IdentityHashMap<Layer, Boolean>());
+        for (Layer layer : mapLayers) {
             Style style = layer.getStyle();
             if (layer instanceof DirectLayer) {
                 layers.add(layer);
@@ -55,7 +60,7 @@ class CompositingGroup {
                 for (Style s : styles) {
                     FeatureTypeStyle firstFts = s.featureTypeStyles().get(0);
                     if (isCompositingBase(firstFts) && !layers.isEmpty()) {
-                        addToCompositingMapContents(graphics, screenSize, result, layers);
+                        addToCompositingMapContents(graphics, screenSize, result, layers, clones);
                     }
                     if (s == style) {
                         layers.add(layer);
@@ -68,6 +73,7 @@ class CompositingGroup {
                         clone.setSelected(layer.isSelected());
                         clone.getUserData().putAll(layer.getUserData());
                         layers.add(clone);
+                        clones.add(clone);
                     }
                 }
             }
@@ -75,14 +81,14 @@ class CompositingGroup {
 
         // do we have it simple?
         if (!layers.isEmpty()) {
-            addToCompositingMapContents(graphics, screenSize, result, layers);
+            addToCompositingMapContents(graphics, screenSize, result, layers, clones);
         }
 
         return result;
     }
 
     private static void addToCompositingMapContents(Graphics2D graphics, Rectangle screenSize,
-            List<CompositingGroup> compositingContents, List<Layer> layers) {
+            List<CompositingGroup> compositingContents, List<Layer> layers, Set<Layer> clones) {
         Composite composite = getComposite(layers);
         Graphics2D cmcGraphic;
         if (compositingContents.size() == 0 && !hasAlphaCompositing(layers)) {
@@ -90,9 +96,13 @@ class CompositingGroup {
         } else {
             cmcGraphic = new DelayedBackbufferGraphic(graphics, screenSize);
         }
-        MapContent current = new MapContent();
-        current.addLayers(layers);
-        CompositingGroup cmc = new CompositingGroup(cmcGraphic, current,
+        List<Layer> owned = new ArrayList<>();
+        for (Layer layer : layers) {
+            if (clones.contains(layer)) {
+                owned.add(layer);
+            }
+        }
+        CompositingGroup cmc = new CompositingGroup(cmcGraphic, new ArrayList<>(layers), owned,
                 composite);
         compositingContents.add(cmc);
         layers.clear();
@@ -159,14 +169,18 @@ class CompositingGroup {
 
     Graphics2D graphics;
 
-    MapContent mapContent;
+    List<Layer> layers;
+
+    List<Layer> clonedLayers;
 
     Composite composite;
 
-    CompositingGroup(Graphics2D graphics, MapContent mapContent, Composite composite) {
+    CompositingGroup(Graphics2D graphics, List<Layer> layers, List<Layer> clonedLayers,
+            Composite composite) {
         super();
         this.graphics = graphics;
-        this.mapContent = mapContent;
+        this.layers = layers;
+        this.clonedLayers = clonedLayers;
         this.composite = composite;
     }
 
@@ -174,12 +188,23 @@ class CompositingGroup {
         return graphics;
     }
 
-    public MapContent getMapContent() {
-        return mapContent;
+    public List<Layer> getLayers() {
+        return layers;
     }
 
     public Composite getComposite() {
         return composite;
     }
 
+    /**
+     * Disposes the layers cloned by this group, the other ones belong to the map content being
+     * painted and are left alone
+     */
+    public void dispose() {
+        for (Layer layer : clonedLayers) {
+            layer.dispose();
+        }
+        clonedLayers.clear();
+    }
+
 }
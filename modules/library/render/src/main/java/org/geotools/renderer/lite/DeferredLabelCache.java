@@ -0,0 +1,117 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.geotools.geometry.jts.LiteShape2;
+import org.geotools.styling.TextSymbolizer;
+import org.geotools.util.NumberRange;
+import org.opengis.feature.Feature;
+
+/**
+ * Label cache recording the labels and obstacles of a single layer painted on its own thread,
+ * so that they can be later replayed, in layer order, into the label cache shared by all the
+ * layers. The lifecycle methods are ignored, the shared cache is started and ended by the
+ * renderer driving the layer painting.
+ *
+ * @source $URL$
+ */
+class DeferredLabelCache implements LabelCache {
+
+    List<Label> labels = new ArrayList<Label>();
+
+    List<Rectangle2D> obstacles = new ArrayList<Rectangle2D>();
+
+    /**
+     * Puts the recorded labels and obstacles in the target cache, under the specified layer
+     */
+    synchronized void replay(LabelCache target, String layerId) {
+        for (Rectangle2D obstacle : obstacles) {
+            target.put(obstacle);
+        }
+        for (Label label : labels) {
+            target.put(layerId, label.symbolizer, label.feature, label.shape, label.scaleRange);
+        }
+    }
+
+    public synchronized void put(String layerId, TextSymbolizer symbolizer, Feature feature,
+            LiteShape2 shape, NumberRange<Double> scaleRange) {
+        labels.add(new Label(symbolizer, feature, shape, scaleRange));
+    }
+
+    public synchronized void put(Rectangle2D geometry) {
+        // obstacles are put by the painter thread
+        obstacles.add(geometry);
+    }
+
+    public synchronized void clear() {
+        labels.clear();
+        obstacles.clear();
+    }
+
+    public void start() {
+    }
+
+    public void startLayer(String layerId) {
+    }
+
+    public void endLayer(String layerId, Graphics2D graphics, Rectangle displayArea) {
+    }
+
+    public void end(Graphics2D graphics, Rectangle displayArea) {
+    }
+
+    public void stop() {
+    }
+
+    public void clear(String layerId) {
+    }
+
+    public void disableLayer(String layerId) {
+    }
+
+    public void enableLayer(String layerId) {
+    }
+
+    public List orderedLabels() {
+        return Collections.emptyList();
+    }
+
+    static class Label {
+        TextSymbolizer symbolizer;
+
+        Feature feature;
+
+        LiteShape2 shape;
+
+        NumberRange<Double> scaleRange;
+
+        Label(TextSymbolizer symbolizer, Feature feature, LiteShape2 shape,
+                NumberRange<Double> scaleRange) {
+            this.symbolizer = symbolizer;
+            this.feature = feature;
+            this.shape = shape;
+            this.scaleRange = scaleRange;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.Layer;
+import org.geotools.map.MapContent;
+import org.geotools.map.StyleLayer;
+import org.geotools.styling.Style;
+
+/**
+ * Renders a block of adjacent tiles, a meta tile, in a single pass of the wrapped
+ * {@link StreamingRenderer}, and then slices it into the tiles.
+ * <p>
+ * Compared to painting each tile on its own, the data is queried, reprojected and styled once
+ * for the whole block, and the labels crossing the seams between the tiles of the block are
+ * placed once and show up consistently on both sides. The meta tile is painted with a gutter all
+ * around it, large enough to contain the symbols of the features sitting just outside of it, and
+ * sized by default with the {@link MetaBufferEstimator} run against the styles of the map layers.
+ *
+ * @source $URL$
+ */
+public class MetaTileRenderer {
+
+    /** The logger for the rendering module. */
+    private static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geotools.rendering");
+
+    StreamingRenderer renderer;
+
+    int tileWidth;
+
+    int tileHeight;
+
+    int gutter = -1;
+
+    /**
+     * Creates a meta tile renderer
+     *
+     * @param renderer The renderer painting the meta tiles, with its map content already set
+     * @param tileWidth The width of a single tile, in pixels
+     * @param tileHeight The height of a single tile, in pixels
+     */
+    public MetaTileRenderer(StreamingRenderer renderer, int tileWidth, int tileHeight) {
+        if (tileWidth <= 0 || tileHeight <= 0) {
+            throw new IllegalArgumentException("The tile size must be positive, got "
+                    + tileWidth + "x" + tileHeight);
+        }
+        this.renderer = renderer;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+    }
+
+    /**
+     * Sets the size of the gutter painted around the meta tile, in pixels. A negative value, the
+     * default, has the gutter computed from the layer styles
+     */
+    public void setGutter(int gutter) {
+        this.gutter = gutter;
+    }
+
+    /**
+     * Returns the size of the gutter painted around the meta tile, in pixels. Unless set
+     * explicitly, this is the {@link StreamingRenderer#RENDERING_BUFFER} renderer hint if
+     * available, or otherwise an estimate based on the symbol sizes found in the styles of the
+     * visible layers
+     */
+    public int getGutter() {
+        if (gutter >= 0) {
+            return gutter;
+        }
+        Map hints = renderer.getRendererHints();
+        if (hints != null && hints.get(StreamingRenderer.RENDERING_BUFFER) instanceof Number) {
+            return ((Number) hints.get(StreamingRenderer.RENDERING_BUFFER)).intValue();
+        }
+
+        MapContent content = renderer.getMapContent();
+        if (content == null) {
+            return 0;
+        }
+        MetaBufferEstimator rbe = new MetaBufferEstimator();
+        for (Layer layer : content.layers()) {
+            if (layer.isVisible() && layer instanceof StyleLayer) {
+                Style style = ((StyleLayer) layer).getStyle();
+                if (style != null) {
+                    style.accept(rbe);
+                }
+            }
+        }
+        if (!rbe.isEstimateAccurate()) {
+            LOGGER.fine("Assuming meta tile gutter = " + rbe.getBuffer()
+                    + ", but estimation is not accurate, you may want to set a gutter manually");
+        }
+        // same as the rendering buffer, half of the symbol sizes plus one pixel for antialiasing
+        return (int) Math.round(rbe.getBuffer() / 2.0 + 1);
+    }
+
+    /**
+     * Paints the meta tile covering the specified area and slices it into tiles.
+     * <p>
+     * The returned tiles are indexed by row and then column, with the first row at the top of
+     * the area. They are sub images sharing the raster of the meta tile, copy them if they need
+     * to be modified independently.
+     *
+     * @param area The area covered by the tiles, gutter excluded
+     * @param columns The number of tiles along the horizontal axis
+     * @param rows The number of tiles along the vertical axis
+     * @return the tiles, as a <code>rows</code> by <code>columns</code> array
+     */
+    public BufferedImage[][] paint(ReferencedEnvelope area, int columns, int rows) {
+        if (columns <= 0 || rows <= 0) {
+            throw new IllegalArgumentException("The meta tile must have at least one tile, got "
+                    + columns + "x" + rows);
+        }
+        int width = columns * tileWidth;
+        int height = rows * tileHeight;
+        int gutter = getGutter();
+
+        // grow the area by the gutter, keeping the same resolution
+        double dx = gutter * area.getWidth() / width;
+        double dy = gutter * area.getHeight() / height;
+        ReferencedEnvelope metaArea = new ReferencedEnvelope(area.getMinX() - dx,
+                area.getMaxX() + dx, area.getMinY() - dy, area.getMaxY() + dy,
+                area.getCoordinateReferenceSystem());
+
+        BufferedImage metaTile = new BufferedImage(width + 2 * gutter, height + 2 * gutter,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = metaTile.createGraphics();
+        try {
+            renderer.paint(graphics, new Rectangle(metaTile.getWidth(), metaTile.getHeight()),
+                    metaArea);
+        } finally {
+            graphics.dispose();
+        }
+
+        BufferedImage[][] tiles = new BufferedImage[rows][columns];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                tiles[r][c] = metaTile.getSubimage(gutter + c * tileWidth, gutter + r
+                        * tileHeight, tileWidth, tileHeight);
+            }
+        }
+        return tiles;
+    }
+}
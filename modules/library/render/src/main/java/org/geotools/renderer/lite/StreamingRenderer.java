@@ -19,10 +19,12 @@ package org.geotools.renderer.lite;
 import java.awt.AlphaComposite;
 import java.awt.Composite;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.RenderingHints.Key;
 import java.awt.Shape;
+import java.awt.Transparency;
 import java.awt.font.GlyphVector;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.NoninvertibleTransformException;
@@ -35,17 +37,22 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -105,6 +112,7 @@ import org.geotools.renderer.lite.gridcoverage2d.GridCoverageReaderHelper;
 import org.geotools.renderer.lite.gridcoverage2d.GridCoverageRenderer;
 import org.geotools.renderer.style.SLDStyleFactory;
 import org.geotools.renderer.style.Style2D;
+import org.geotools.renderer.style.Style2DCache;
 import org.geotools.resources.coverage.FeatureUtilities;
 import org.geotools.resources.image.ImageUtilities;
 import org.geotools.styling.FeatureTypeStyle;
@@ -228,6 +236,13 @@ public class StreamingRenderer implements GTRenderer {
      */
     private MapContent mapContent;
 
+    /**
+     * When set, the only layer of the map content that gets painted. Used by the renderers
+     * painting a single layer of a parallel rendering, which share the map content of the parent
+     * renderer without owning it
+     */
+    Layer paintedLayer;
+
     /**
      * Flag which determines if the renderer is interactive or not. An
      * interactive renderer will return rather than waiting for time consuming
@@ -373,6 +388,21 @@ public class StreamingRenderer implements GTRenderer {
     public static final String SCALE_COMPUTATION_METHOD_KEY = "scaleComputationMethod";
     public static final String BYLAYER_INTERPOLATION = "byLayerInterpolation";
 
+    /**
+     * Boolean flag enabling the parallel painting of the layers. When enabled each visible layer
+     * is read, styled and painted on its own back buffer by a task submitted to the
+     * {@link #setThreadPool(ExecutorService) thread pool}, and the back buffers are composited
+     * on the target graphics in z-order. Labels are still resolved by the renderer label cache,
+     * in layer order. To bound the memory used by the back buffers, only as many layers as the
+     * pool threads (or the processors, if the pool size is unknown) are painted ahead of the
+     * compositing.
+     * <p>The layers are painted in sequence anyway when no thread pool was set, when the styles
+     * use compositing, when concatenating transforms, or when the target graphics is
+     * transformed, as painting them on separate back buffers would not give the same
+     * result.</p>
+     */
+    public static final String PARALLEL_LAYER_RENDERING_KEY = "parallelLayerRendering";
+
     /**
      * "vectorRenderingEnabled"      - Boolean  yes/no (see default vectorRenderingEnabledDEFAULT)
      * "declaredScaleDenominator"    - Double   the value of the scale denominator to use by the renderer.  
@@ -407,6 +437,11 @@ public class StreamingRenderer implements GTRenderer {
 
     private PainterThread painterThread;
 
+    /**
+     * The renderers painting the single layers, when painting them in parallel
+     */
+    private List<StreamingRenderer> layerRenderers = new CopyOnWriteArrayList<StreamingRenderer>();
+
     /**
      * The meta buffer for the current layer
      */
@@ -418,7 +453,8 @@ public class StreamingRenderer implements GTRenderer {
      * random feature collections instead of using the map context interface
      */
     public StreamingRenderer() {
-
+        // share the feature independent styles with the other renderers
+        styleFactory.setStyle2DCache(Style2DCache.getDefaultInstance());
     }
 
     /**
@@ -516,16 +552,22 @@ public class StreamingRenderer implements GTRenderer {
      */
     public void stopRendering() {
         renderingStopRequested = true;
-        // un-block the queue in case it was filled with requests and the main
-        // thread got blocked on it
-        requests.clear();
-        // wake up the painter and put a death pill in the queue
-        painterThread.interrupt();
-        try {
-            requests.put(new EndRequest());
-        } catch(InterruptedException e) {
-            throw new RuntimeException("Interrupted while trying to put the end " +
-            		"request in the requests queue, this should never happen", e);
+        // stop the layers being painted in parallel, if any
+        for (StreamingRenderer renderer : layerRenderers) {
+            renderer.stopRendering();
+        }
+        if (requests != null) {
+            // un-block the queue in case it was filled with requests and the main
+            // thread got blocked on it
+            requests.clear();
+            // wake up the painter and put a death pill in the queue
+            painterThread.interrupt();
+            try {
+                requests.put(new EndRequest());
+            } catch(InterruptedException e) {
+                throw new RuntimeException("Interrupted while trying to put the end " +
+                		"request in the requests queue, this should never happen", e);
+            }
         }
 
         labelCache.stop();
@@ -767,6 +809,12 @@ public class StreamingRenderer implements GTRenderer {
                     mapExtent.getCoordinateReferenceSystem()); 
         }
 
+        // paint the layers on separate back buffers, in parallel, if possible
+        if (isParallelLayerRendering(graphics)) {
+            paintLayersInParallel(graphics, paintArea, mapArea, worldToScreen);
+            return;
+        }
+
         // Setup the secondary painting thread
         requests = getRequestsQueue();
         painterThread = new PainterThread(requests);
@@ -782,13 +830,14 @@ public class StreamingRenderer implements GTRenderer {
                 throw new IllegalStateException("Cannot call paint, you did not set a MapContent in this renderer");
             }
             
-            // split over multiple map contents, one per composition base
+            // split over multiple layer groups, one per composition base
+            List<Layer> layers = paintedLayer != null ? Collections.singletonList(paintedLayer)
+                    : mapContent.layers();
             List<CompositingGroup> compositingGroups = CompositingGroup.splitOnCompositingBase(
-                    graphics, paintArea, mapContent);
+                    graphics, paintArea, layers);
             
             int layerId = 0;
             for (CompositingGroup compositingGroup : compositingGroups) {
-                MapContent currentMapContent = compositingGroup.mapContent;
                 Graphics2D compositingGraphic = compositingGroup.graphics;
                 
                 // ////////////////////////////////////////////////////////////////////
@@ -802,7 +851,7 @@ public class StreamingRenderer implements GTRenderer {
                     ((LabelCacheImpl) labelCache).setLabelRenderingMode(LabelRenderingMode.valueOf(getTextRenderingMethod()));
                 }
                 
-                for (Layer layer : currentMapContent.layers()) {
+                for (Layer layer : compositingGroup.layers) {
                     layerId++;
                     if (!layer.isVisible()) {
                         // Only render layer when layer is visible
@@ -850,10 +899,9 @@ public class StreamingRenderer implements GTRenderer {
                         fireErrorEvent(e);
                     }
                 }
-                // the compositing group has its own map content, clones of the original one,
-                // they need to be disposed to avoid nagging messages (not that disposing here
-                // does any good...)
-                compositingGroup.mapContent.dispose();
+                // the layers cloned to split the styles need to be disposed to avoid nagging
+                // messages, the original ones belong to the caller
+                compositingGroup.dispose();
             }
         } finally {
             try {
@@ -882,6 +930,10 @@ public class StreamingRenderer implements GTRenderer {
                     styleFactory.getHitRatio()).append(" , hits ").append(
                             styleFactory.getHits()).append(", requests ").append(
                                     styleFactory.getRequests()).toString());
+        Style2DCache sharedCache = styleFactory.getStyle2DCache();
+        if (sharedCache != null && LOGGER.isLoggable(Level.FINE))
+            LOGGER.fine("Shared style cache hit ratio: " + sharedCache.getHitRatio() + ", hits "
+                    + sharedCache.getHits() + ", requests " + sharedCache.getRequests());
         if (error > 0) {
             LOGGER
             .warning(new StringBuffer(
@@ -891,6 +943,135 @@ public class StreamingRenderer implements GTRenderer {
         
     }
 
+    /**
+     * Returns true if {@link #PARALLEL_LAYER_RENDERING_KEY} is enabled, a thread pool is
+     * available, there is more than one layer to paint, and painting the layers on separate back buffers gives the same result as
+     * painting them in sequence on the target graphics
+     */
+    private boolean isParallelLayerRendering(Graphics2D graphics) {
+        if (rendererHints == null
+                || !Boolean.TRUE.equals(rendererHints.get(PARALLEL_LAYER_RENDERING_KEY))
+                || threadPool == null || mapContent == null || concatTransforms
+                || !graphics.getTransform().isIdentity()) {
+            return false;
+        }
+        
+        int visible = 0;
+        for (Layer layer : mapContent.layers()) {
+            if (!layer.isVisible()) {
+                continue;
+            }
+            visible++;
+            // composites blend with the layers painted below, they need the same surface
+            Style style = layer.getStyle();
+            if (layer instanceof DirectLayer || style == null) {
+                continue;
+            }
+            for (FeatureTypeStyle fts : style.featureTypeStyles()) {
+                Map<String, String> options = fts.getOptions();
+                if (options != null && (options.containsKey(FeatureTypeStyle.COMPOSITE) 
+                        || options.containsKey(FeatureTypeStyle.COMPOSITE_BASE))) {
+                    return false;
+                }
+                for (Rule rule : fts.rules()) {
+                    for (Symbolizer symbolizer : rule.symbolizers()) {
+                        options = symbolizer.getOptions();
+                        if (options != null && options.containsKey(FeatureTypeStyle.COMPOSITE)) {
+                            return false;
+                        }
+                    }
+                }
+            }
+        }
+        return visible > 1;
+    }
+
+    /**
+     * Paints each visible layer on its own back buffer, with a separate renderer running on the 
+     * thread pool, then composites the back buffers in z-order and replays the labels of each
+     * layer in the label cache. Only a limited number of layers is painted ahead of the
+     * compositing, see {@link #getMaxParallelLayers(ExecutorService)}
+     */
+    private void paintLayersInParallel(Graphics2D graphics, Rectangle paintArea,
+            ReferencedEnvelope mapArea, AffineTransform worldToScreen) {
+        labelCache.start();
+        if(labelCache instanceof LabelCacheImpl) {
+            ((LabelCacheImpl) labelCache).setLabelRenderingMode(LabelRenderingMode.valueOf(getTextRenderingMethod()));
+        }
+        
+        GraphicsConfiguration gc = graphics.getDeviceConfiguration();
+        List<LayerPainter> painters = new ArrayList<LayerPainter>();
+        int layerId = 0;
+        for (Layer layer : mapContent.layers()) {
+            layerId++;
+            if (layer.isVisible()) {
+                painters.add(new LayerPainter(layer, layerId, gc, graphics.getRenderingHints(),
+                        paintArea, mapArea, worldToScreen));
+            }
+        }
+        
+        int maxInFlight = getMaxParallelLayers(threadPool);
+        LinkedList<Future<LayerImage>> layerImages = new LinkedList<Future<LayerImage>>();
+        int next = 0;
+        try {
+            while (next < painters.size() && layerImages.size() < maxInFlight) {
+                layerImages.add(threadPool.submit(painters.get(next++)));
+            }
+            
+            // composite as soon as the next layer in z-order is ready, then start the next one
+            while (!layerImages.isEmpty()) {
+                Future<LayerImage> future = layerImages.removeFirst();
+                if (renderingStopRequested) {
+                    future.cancel(false);
+                    continue;
+                }
+                try {
+                    LayerImage layerImage = future.get();
+                    graphics.drawImage(layerImage.image, paintArea.x, paintArea.y, null);
+                    layerImage.image.flush();
+                    
+                    String id = String.valueOf(layerImage.layerId);
+                    labelCache.startLayer(id);
+                    layerImage.labels.replay(labelCache, id);
+                    labelCache.endLayer(id, graphics, paintArea);
+                } catch (ExecutionException e) {
+                    fireErrorEvent(e.getCause());
+                } catch (InterruptedException e) {
+                    fireErrorEvent(e);
+                    stopRendering();
+                }
+                if (!renderingStopRequested && next < painters.size()) {
+                    layerImages.add(threadPool.submit(painters.get(next++)));
+                }
+            }
+        } finally {
+            for (Future<LayerImage> future : layerImages) {
+                future.cancel(false);
+            }
+        }
+        
+        if(!renderingStopRequested) {
+            labelCache.end(graphics, paintArea);
+        } else {
+            labelCache.clear();
+        }
+    }
+
+    /**
+     * Returns the number of layers painted ahead of the compositing, each one holding a back
+     * buffer as large as the paint area: the thread pool size if known and bounded, the number
+     * of processors otherwise
+     */
+    int getMaxParallelLayers(ExecutorService pool) {
+        if (pool instanceof ThreadPoolExecutor) {
+            int size = ((ThreadPoolExecutor) pool).getMaximumPoolSize();
+            if (size < Integer.MAX_VALUE) {
+                return Math.max(1, size);
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
     /**
      * Builds the blocking queue used to bridge between the data loading thread and
      * the painting one
@@ -3210,14 +3391,15 @@ public class StreamingRenderer implements GTRenderer {
 
             // we need to clone if the clone flag is high or if the coordinate sequence is not the one we asked for
             Geometry geom = originalGeom;
-            if (clone
-                    || !(geom.getFactory().getCoordinateSequenceFactory() instanceof LiteCoordinateSequenceFactory)) {
-                int dim = sa.crs != null ? sa.crs.getCoordinateSystem().getDimension() : 2;
-                geom = LiteCoordinateSequence.cloneGeometry(geom, dim);
-            }
+            boolean copy = clone
+                    || !(geom.getFactory().getCoordinateSequenceFactory() instanceof LiteCoordinateSequenceFactory);
 
             LiteShape2 shape;
             if(projectionHandler != null && sa != null) {
+                if (copy) {
+                    int dim = sa.crs != null ? sa.crs.getCoordinateSystem().getDimension() : 2;
+                    geom = LiteCoordinateSequence.cloneGeometry(geom, dim);
+                }
                 // first generalize and transform the geometry into the rendering CRS
                 geom = projectionHandler.preProcess(geom);
                 if(geom == null) {
@@ -3249,8 +3431,7 @@ public class StreamingRenderer implements GTRenderer {
                         shape = null;
                     } else {
                         // apply the affine transform turning the coordinates into pixels
-                        d = new Decimator(-1, -1);
-                        geom = d.decimateTransformGeneralize(geom, sa.axform);
+                        geom = NULL_DECIMATOR.decimateTransformGeneralize(geom, sa.axform);
     
                         // wrap into a lite shape
                         geom.geometryChanged();
@@ -3261,7 +3442,8 @@ public class StreamingRenderer implements GTRenderer {
                 MathTransform xform = null;
                 if (sa != null)
                     xform = sa.xform;
-                shape = new LiteShape2(geom, xform, getDecimator(xform), false, false);
+                // the decimator copies the geometry while generalizing it, if needed
+                shape = new LiteShape2(geom, xform, getDecimator(xform), false, copy);
             }
 
             // cache the result
@@ -3636,6 +3818,90 @@ public class StreamingRenderer implements GTRenderer {
         
     }
     
+    /**
+     * The back buffer and the labels of a layer painted in parallel with the others
+     */
+    static class LayerImage {
+        int layerId;
+
+        BufferedImage image;
+
+        DeferredLabelCache labels;
+
+        LayerImage(int layerId, BufferedImage image, DeferredLabelCache labels) {
+            this.layerId = layerId;
+            this.image = image;
+            this.labels = labels;
+        }
+    }
+
+    /**
+     * Paints a single layer on its own back buffer, using a renderer configured like this one
+     */
+    class LayerPainter implements Callable<LayerImage> {
+        Layer layer;
+
+        int layerId;
+
+        GraphicsConfiguration gc;
+
+        RenderingHints graphicsHints;
+
+        Rectangle paintArea;
+
+        ReferencedEnvelope mapArea;
+
+        AffineTransform worldToScreen;
+
+        LayerPainter(Layer layer, int layerId, GraphicsConfiguration gc,
+                RenderingHints graphicsHints, Rectangle paintArea, ReferencedEnvelope mapArea,
+                AffineTransform worldToScreen) {
+            this.layer = layer;
+            this.layerId = layerId;
+            this.gc = gc;
+            this.graphicsHints = graphicsHints;
+            this.paintArea = paintArea;
+            this.mapArea = mapArea;
+            this.worldToScreen = worldToScreen;
+        }
+
+        public LayerImage call() throws Exception {
+            DeferredLabelCache labels = new DeferredLabelCache();
+            BufferedImage image = gc.createCompatibleImage(paintArea.width, paintArea.height,
+                    Transparency.TRANSLUCENT);
+            if (renderingStopRequested) {
+                return new LayerImage(layerId, image, labels);
+            }
+            
+            Map hints = new HashMap(rendererHints);
+            hints.put(LABEL_CACHE_KEY, labels);
+            hints.remove(PARALLEL_LAYER_RENDERING_KEY);
+            StreamingRenderer renderer = new StreamingRenderer();
+            renderer.setRendererHints(hints);
+            renderer.setJava2DHints(java2dHints);
+            renderer.setGeneralizationDistance(generalizationDistance);
+            renderer.setInteractive(interactive);
+            for (RenderListener listener : renderListeners) {
+                renderer.addRenderListener(listener);
+            }
+            // share the map content, painting just the layer at hand
+            renderer.setMapContent(mapContent);
+            renderer.paintedLayer = layer;
+            
+            Graphics2D graphics = image.createGraphics();
+            layerRenderers.add(renderer);
+            try {
+                graphics.setRenderingHints(graphicsHints);
+                graphics.translate(-paintArea.x, -paintArea.y);
+                renderer.paint(graphics, paintArea, mapArea, worldToScreen);
+            } finally {
+                layerRenderers.remove(renderer);
+                graphics.dispose();
+            }
+            return new LayerImage(layerId, image, labels);
+        }
+    }
+
     /**
      * The secondary thread that actually issues the paint requests against the graphic object
      * @author aaime
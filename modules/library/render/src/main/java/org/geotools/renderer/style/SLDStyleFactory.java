@@ -220,6 +220,11 @@ public class SLDStyleFactory {
 
 	private long requests;
 
+	/**
+	 * The cache of feature independent styles shared with other factories, if any
+	 */
+	private Style2DCache style2DCache;
+
 	/**
 	 * Holds value of property mapScaleDenominator.
 	 */
@@ -293,6 +298,26 @@ public class SLDStyleFactory {
 		this.vectorRenderingEnabled = vectorRenderingEnabled;
 	}
 
+	/**
+	 * Returns the style cache shared with other factories, or null if styles are
+	 * cached only by this factory
+	 */
+	public Style2DCache getStyle2DCache() {
+		return style2DCache;
+	}
+
+	/**
+	 * Sets a style cache shared with other factories. Feature independent styles
+	 * not yet known to this factory are looked up there before being built, and
+	 * added to it afterwards
+	 * 
+	 * @param style2DCache
+	 *            the shared cache, or null to cache styles only in this factory
+	 */
+	public void setStyle2DCache(Style2DCache style2DCache) {
+		this.style2DCache = style2DCache;
+	}
+
 	public double getHitRatio() {
 		return (double) hits / (double) requests;
 	}
@@ -338,33 +363,46 @@ public class SLDStyleFactory {
 
 		if (style != null) {
 			hits++;
+		} else if (dynamicSymbolizers.containsKey(key)) {
+			// known dynamic symbolizer, build the style for this feature
+			return createStyleInternal(drawMe, symbolizer, scaleRange);
 		} else {
-			style = createStyleInternal(drawMe, symbolizer, scaleRange);
-
-			// for some legitimate cases some styles cannot be turned into a
-			// valid Style2D
-			// e.g., point symbolizer that contains no graphic that can be used
-			// due to network issues
-			if (style == null) {
-				return null;
+			// lets see if it's static or dynamic
+			StyleAttributeExtractorTruncated sae = new StyleAttributeExtractorTruncated();
+			sae.visit(symbolizer);
+
+			Set nameSet = sae.getAttributeNameSet();
+			boolean noAttributes = (nameSet == null) || (nameSet.size() == 0);
+			if (!noAttributes || sae.isUsingVolatileFunctions()) {
+				dynamicSymbolizers.put(key, Boolean.TRUE);
+				return createStyleInternal(drawMe, symbolizer, scaleRange);
 			}
 
-			// if known dynamic symbolizer return the style
-			if (dynamicSymbolizers.containsKey(key)) {
-				return style;
-			} else {
-				// lets see if it's static or dynamic
-				StyleAttributeExtractorTruncated sae = new StyleAttributeExtractorTruncated();
-				sae.visit(symbolizer);
-
-				Set nameSet = sae.getAttributeNameSet();
-				boolean noAttributes = (nameSet == null) || (nameSet.size() == 0);
-				if (noAttributes && !sae.isUsingVolatileFunctions()) {
-					staticSymbolizers.put(key, style);
-				} else {
-					dynamicSymbolizers.put(key, Boolean.TRUE);
+			// static, it might have been already built by another factory. Functions
+			// can depend on the request, e.g. env(), so only the symbolizers made of
+			// literals are shared
+			Style2DCache.Key sharedKey = null;
+			if (style2DCache != null && !sae.isUsingFunctions()) {
+				sharedKey = new Style2DCache.Key(symbolizer, scaleRange,
+						lineOptimizationEnabled, vectorRenderingEnabled,
+						renderingHints);
+				style = style2DCache.get(sharedKey);
+			}
+			if (style == null) {
+				style = createStyleInternal(drawMe, symbolizer, scaleRange);
+
+				// for some legitimate cases some styles cannot be turned into a
+				// valid Style2D
+				// e.g., point symbolizer that contains no graphic that can be used
+				// due to network issues
+				if (style == null) {
+					return null;
+				}
+				if (sharedKey != null) {
+					style2DCache.put(sharedKey, style);
 				}
 			}
+			staticSymbolizers.put(key, style);
 		}
 		return style;
 	}
@@ -0,0 +1,419 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.style;
+
+import java.awt.Paint;
+import java.awt.RenderingHints;
+import java.awt.TexturePaint;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.Icon;
+
+import org.geotools.styling.AnchorPoint;
+import org.geotools.styling.Displacement;
+import org.geotools.styling.Fill;
+import org.geotools.styling.Graphic;
+import org.geotools.styling.LineSymbolizer;
+import org.geotools.styling.Mark;
+import org.geotools.styling.PointSymbolizer;
+import org.geotools.styling.PolygonSymbolizer;
+import org.geotools.styling.Stroke;
+import org.geotools.styling.Symbolizer;
+import org.geotools.styling.TextSymbolizer;
+import org.geotools.styling.TextSymbolizer2;
+import org.geotools.styling.visitor.DuplicatingStyleVisitor;
+import org.geotools.util.Range;
+import org.opengis.filter.expression.Expression;
+import org.opengis.style.GraphicalSymbol;
+
+/**
+ * A bounded, thread safe cache of the {@link Style2D} objects built out of symbolizers made only
+ * of literals, meant to be shared among {@link SLDStyleFactory} instances so that the marks,
+ * fonts and images of a style are not rebuilt by each rendering. Symbolizers using functions are
+ * not shared, as their values may depend on the request even when no attribute is involved.
+ * <p>
+ * The renderer works against symbolizers rescaled to the target DPI and unit of measure, which
+ * are new objects for each rendering, so the symbolizers are compared by value, along with the
+ * scale range and the factory settings affecting the result. The symbolizer equality ignores
+ * some of the values baked into the styles, such as the displacement, anchor point and gaps of
+ * the graphics, or the vendor options, so the keys compare those explicitly. The values cached
+ * are shared among threads and must be treated as read only.
+ * <p>
+ * The cache is bounded both by number of entries and by the estimated memory held by the
+ * styles, mostly the images of icons and graphic fills and strokes. The limits of the default
+ * instance can be set with the <code>org.geotools.render.style2DCacheSize</code> and
+ * <code>org.geotools.render.style2DCacheMemory</code> (in bytes) system properties, the least
+ * recently used entries are evicted first. A size of zero disables the default instance.
+ *
+ * @source $URL$
+ */
+public class Style2DCache {
+
+    static final int DEFAULT_SIZE = Integer.getInteger("org.geotools.render.style2DCacheSize", 1000);
+
+    static final long DEFAULT_MEMORY = Long.getLong("org.geotools.render.style2DCacheMemory",
+            16 * 1024 * 1024);
+
+    /**
+     * Rough memory used by a style besides its images, including its key
+     */
+    static final long ENTRY_WEIGHT = 1024;
+
+    static Style2DCache defaultInstance;
+
+    LinkedHashMap<Key, Entry> styles;
+
+    int maxSize;
+
+    long maxMemory;
+
+    long memory;
+
+    AtomicLong hits = new AtomicLong();
+
+    AtomicLong requests = new AtomicLong();
+
+    /**
+     * Returns the default, system wide style cache, or null if it has been disabled
+     */
+    public static synchronized Style2DCache getDefaultInstance() {
+        if (defaultInstance == null && DEFAULT_SIZE > 0 && DEFAULT_MEMORY > 0) {
+            defaultInstance = new Style2DCache(DEFAULT_SIZE, DEFAULT_MEMORY);
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Creates a cache holding at most the specified number of styles, and the default amount of
+     * memory
+     *
+     * @param maxSize
+     */
+    public Style2DCache(int maxSize) {
+        this(maxSize, DEFAULT_MEMORY);
+    }
+
+    /**
+     * Creates a cache holding at most the specified number of styles, using at most the
+     * specified amount of memory
+     *
+     * @param maxSize The maximum number of styles
+     * @param maxMemory The maximum estimated memory used by the styles, in bytes
+     */
+    public Style2DCache(int maxSize, long maxMemory) {
+        this.maxSize = maxSize;
+        this.maxMemory = maxMemory;
+        this.styles = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns the cached style, or null if not found
+     */
+    Style2D get(Key key) {
+        requests.incrementAndGet();
+        Entry entry;
+        synchronized (styles) {
+            entry = styles.get(key);
+        }
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry.style;
+        }
+        return null;
+    }
+
+    void put(Key key, Style2D style) {
+        long weight = ENTRY_WEIGHT + getImageMemory(style);
+        if (weight > maxMemory) {
+            // would evict everything else
+            return;
+        }
+        Key detached = key.detach();
+        synchronized (styles) {
+            Entry previous = styles.put(detached, new Entry(style, weight));
+            if (previous != null) {
+                memory -= previous.weight;
+            }
+            memory += weight;
+            Iterator<Entry> it = styles.values().iterator();
+            while ((styles.size() > maxSize || memory > maxMemory) && it.hasNext()) {
+                memory -= it.next().weight;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Estimates the memory used by the images held by a style
+     */
+    static long getImageMemory(Style2D style) {
+        long result = 0;
+        if (style instanceof IconStyle2D) {
+            Icon icon = ((IconStyle2D) style).getIcon();
+            if (icon != null) {
+                result += 4L * icon.getIconWidth() * icon.getIconHeight();
+            }
+        } else if (style instanceof GraphicStyle2D) {
+            result += getImageMemory(((GraphicStyle2D) style).getImage());
+        } else if (style instanceof TextStyle2D) {
+            result += getImageMemory(((TextStyle2D) style).getGraphic());
+        }
+        if (style instanceof LineStyle2D) {
+            result += getImageMemory(((LineStyle2D) style).getGraphicStroke());
+        }
+        if (style instanceof PolygonStyle2D) {
+            PolygonStyle2D polygon = (PolygonStyle2D) style;
+            result += getImageMemory(polygon.getGraphicFill());
+            Paint fill = polygon.getFill();
+            if (fill instanceof TexturePaint) {
+                result += getImageMemory(((TexturePaint) fill).getImage());
+            }
+        }
+        return result;
+    }
+
+    static long getImageMemory(BufferedImage image) {
+        if (image == null) {
+            return 0;
+        }
+        return 4L * image.getWidth() * image.getHeight();
+    }
+
+    /**
+     * Drops all the cached styles
+     */
+    public void clear() {
+        synchronized (styles) {
+            styles.clear();
+            memory = 0;
+        }
+    }
+
+    /**
+     * Returns the number of styles currently cached
+     */
+    public int size() {
+        synchronized (styles) {
+            return styles.size();
+        }
+    }
+
+    /**
+     * Returns the estimated memory used by the cached styles, in bytes
+     */
+    public long getMemory() {
+        synchronized (styles) {
+            return memory;
+        }
+    }
+
+    public double getHitRatio() {
+        return (double) hits.get() / (double) requests.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    static class Entry {
+        Style2D style;
+
+        long weight;
+
+        Entry(Style2D style, long weight) {
+            this.style = style;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Key of a cached style. The keys stored in the cache hold a copy of the symbolizer, so that
+     * changes to the original cannot alter them
+     */
+    static class Key {
+        Symbolizer symbolizer;
+
+        /**
+         * The values going into the style that the symbolizer equality ignores
+         */
+        List<Object> details;
+
+        double minScale;
+
+        double maxScale;
+
+        boolean lineOptimizationEnabled;
+
+        boolean vectorRenderingEnabled;
+
+        RenderingHints renderingHints;
+
+        int hashCode;
+
+        Key(Symbolizer symbolizer, Range scaleRange, boolean lineOptimizationEnabled,
+                boolean vectorRenderingEnabled, RenderingHints renderingHints) {
+            this.symbolizer = symbolizer;
+            this.minScale = ((Number) scaleRange.getMinValue()).doubleValue();
+            this.maxScale = ((Number) scaleRange.getMaxValue()).doubleValue();
+            this.lineOptimizationEnabled = lineOptimizationEnabled;
+            this.vectorRenderingEnabled = vectorRenderingEnabled;
+            this.renderingHints = renderingHints;
+            this.details = getDetails(symbolizer);
+
+            int result = symbolizer.hashCode();
+            result = result * 37 + details.hashCode();
+            result = result * 37 + doubleHash(minScale);
+            result = result * 37 + doubleHash(maxScale);
+            result = result * 37 + (lineOptimizationEnabled ? 1 : 0);
+            result = result * 37 + (vectorRenderingEnabled ? 1 : 0);
+            result = result * 37 + renderingHints.hashCode();
+            this.hashCode = result;
+        }
+
+        Key(Key other, Symbolizer symbolizer) {
+            this.symbolizer = symbolizer;
+            this.details = other.details;
+            this.minScale = other.minScale;
+            this.maxScale = other.maxScale;
+            this.lineOptimizationEnabled = other.lineOptimizationEnabled;
+            this.vectorRenderingEnabled = other.vectorRenderingEnabled;
+            this.renderingHints = (RenderingHints) other.renderingHints.clone();
+            this.hashCode = other.hashCode;
+        }
+
+        /**
+         * Returns a key equal to this one, but independent of the symbolizer and hints it was
+         * built from
+         */
+        Key detach() {
+            DuplicatingStyleVisitor duplicator = new DuplicatingStyleVisitor();
+            symbolizer.accept(duplicator);
+            return new Key(this, (Symbolizer) duplicator.getCopy());
+        }
+
+        private int doubleHash(double value) {
+            long bits = Double.doubleToLongBits(value);
+
+            return (int) (bits ^ (bits >>> 32));
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hashCode == other.hashCode && minScale == other.minScale
+                    && maxScale == other.maxScale
+                    && lineOptimizationEnabled == other.lineOptimizationEnabled
+                    && vectorRenderingEnabled == other.vectorRenderingEnabled
+                    && renderingHints.equals(other.renderingHints)
+                    && symbolizer.equals(other.symbolizer) && details.equals(other.details);
+        }
+
+        /**
+         * Collects the vendor options and the placement of the graphics of a symbolizer. The
+         * symbolizer is made of literals, so the values are evaluated once and for all, and
+         * survive the copy made by {@link #detach()}, which does not preserve the gaps
+         */
+        static List<Object> getDetails(Symbolizer symbolizer) {
+            List<Object> details = new ArrayList<Object>();
+            Map<String, String> options = symbolizer.getOptions();
+            details.add(options == null ? null : new HashMap<String, String>(options));
+            if (symbolizer instanceof PointSymbolizer) {
+                addDetails(((PointSymbolizer) symbolizer).getGraphic(), details);
+            } else if (symbolizer instanceof LineSymbolizer) {
+                addDetails(((LineSymbolizer) symbolizer).getStroke(), details);
+            } else if (symbolizer instanceof PolygonSymbolizer) {
+                addDetails(((PolygonSymbolizer) symbolizer).getFill(), details);
+                addDetails(((PolygonSymbolizer) symbolizer).getStroke(), details);
+            } else if (symbolizer instanceof TextSymbolizer) {
+                TextSymbolizer text = (TextSymbolizer) symbolizer;
+                addDetails(text.getFill(), details);
+                if (text.getHalo() != null) {
+                    addDetails(text.getHalo().getFill(), details);
+                }
+                if (text instanceof TextSymbolizer2) {
+                    addDetails(((TextSymbolizer2) text).getGraphic(), details);
+                }
+            }
+            return details;
+        }
+
+        static void addDetails(Fill fill, List<Object> details) {
+            if (fill != null) {
+                addDetails(fill.getGraphicFill(), details);
+            }
+        }
+
+        static void addDetails(Stroke stroke, List<Object> details) {
+            if (stroke != null) {
+                addDetails(stroke.getGraphicFill(), details);
+                addDetails(stroke.getGraphicStroke(), details);
+            }
+        }
+
+        static void addDetails(Graphic graphic, List<Object> details) {
+            if (graphic == null) {
+                details.add(null);
+                return;
+            }
+            Displacement displacement = graphic.getDisplacement();
+            if (displacement == null) {
+                details.add(null);
+            } else {
+                details.add(evaluate(displacement.getDisplacementX()));
+                details.add(evaluate(displacement.getDisplacementY()));
+            }
+            AnchorPoint anchor = graphic.getAnchorPoint();
+            if (anchor == null) {
+                details.add(null);
+            } else {
+                details.add(evaluate(anchor.getAnchorPointX()));
+                details.add(evaluate(anchor.getAnchorPointY()));
+            }
+            details.add(evaluate(graphic.getGap()));
+            details.add(evaluate(graphic.getInitialGap()));
+            for (GraphicalSymbol symbol : graphic.graphicalSymbols()) {
+                if (symbol instanceof Mark) {
+                    addDetails(((Mark) symbol).getFill(), details);
+                    addDetails(((Mark) symbol).getStroke(), details);
+                }
+            }
+        }
+
+        static Object evaluate(Expression expression) {
+            return expression == null ? null : expression.evaluate(null);
+        }
+    }
+}
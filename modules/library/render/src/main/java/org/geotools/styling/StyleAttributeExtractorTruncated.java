@@ -46,18 +46,30 @@ public class StyleAttributeExtractorTruncated extends StyleAttributeExtractor
 
 	boolean usingVolatileFunctions = false;
 	
+	boolean usingFunctions = false;
+	
 	@Override
 	public void clear() {
 		super.clear();
 		usingVolatileFunctions = false;
+		usingFunctions = false;
 	}
 	
 	public boolean isUsingVolatileFunctions() {
 		return usingVolatileFunctions;
 	}
 
+	/**
+	 * Returns true if any function is used, volatile or not. Functions not using any attribute
+	 * can still depend on the rendering request, e.g. env()
+	 */
+	public boolean isUsingFunctions() {
+		return usingFunctions;
+	}
+
 	public Object visit(org.opengis.filter.expression.Function expression, Object data) {
 		usingVolatileFunctions |= (expression instanceof VolatileFunction);
+		usingFunctions = true;
 		return super.visit(expression, data);
 	};
 
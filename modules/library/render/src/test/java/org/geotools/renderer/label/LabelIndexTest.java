@@ -0,0 +1,64 @@
+package org.geotools.renderer.label;
+
+import static org.junit.Assert.*;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class LabelIndexTest {
+
+    @Test
+    public void testOverlap() {
+        LabelIndex index = new LabelIndex();
+        assertFalse(index.labelsWithinDistance(new Rectangle2D.Double(0, 0, 10, 10), 0));
+        index.addLabel(null, new Rectangle2D.Double(100, 100, 50, 10));
+
+        assertTrue(index.labelsWithinDistance(new Rectangle2D.Double(140, 105, 50, 10), 0));
+        // touching counts as interfering
+        assertTrue(index.labelsWithinDistance(new Rectangle2D.Double(150, 100, 10, 10), 0));
+        assertFalse(index.labelsWithinDistance(new Rectangle2D.Double(155, 100, 10, 10), 0));
+        // but not if within the distance
+        assertTrue(index.labelsWithinDistance(new Rectangle2D.Double(155, 100, 10, 10), 5));
+        // negative distance disables the check
+        assertFalse(index.labelsWithinDistance(new Rectangle2D.Double(100, 100, 10, 10), -1));
+    }
+
+    @Test
+    public void testGrowth() {
+        LabelIndex index = new LabelIndex();
+        // labels spread over a large area, also in negative coordinates, the grid has to grow
+        for (int i = -50; i < 50; i++) {
+            index.addLabel(null, new Rectangle2D.Double(i * 100, i * 50, 20, 10));
+        }
+        for (int i = -50; i < 50; i++) {
+            assertTrue(index.labelsWithinDistance(new Rectangle2D.Double(i * 100 + 10,
+                    i * 50 + 5, 1, 1), 0));
+            assertFalse(index.labelsWithinDistance(new Rectangle2D.Double(i * 100 + 50,
+                    i * 50 + 5, 1, 1), 0));
+        }
+    }
+
+    @Test
+    public void testLargeAndFarAway() {
+        LabelIndex index = new LabelIndex();
+        index.addLabel(null, new Rectangle2D.Double(0, 0, 10, 10));
+        // too large for the grid
+        index.addLabel(null, new Rectangle2D.Double(-1e6, 500, 2e6, 10));
+        // too far away from the grid
+        index.addLabel(null, new Rectangle2D.Double(1e9, 1e9, 10, 10));
+
+        assertTrue(index.labelsWithinDistance(new Rectangle2D.Double(5, 5, 1, 1), 0));
+        assertTrue(index.labelsWithinDistance(new Rectangle2D.Double(300, 505, 1, 1), 0));
+        assertTrue(index.labelsWithinDistance(new Rectangle2D.Double(1e9 + 5, 1e9 + 5, 1, 1), 0));
+        assertFalse(index.labelsWithinDistance(new Rectangle2D.Double(300, 300, 1, 1), 0));
+    }
+
+    @Test
+    public void testReserveArea() {
+        LabelIndex index = new LabelIndex();
+        index.reserveArea(Arrays.<Rectangle2D> asList(new Rectangle2D.Double(0, 0, 100, 20)));
+        assertTrue(index.labelsWithinDistance(new Rectangle2D.Double(50, 10, 5, 5), 0));
+    }
+}
@@ -16,4 +16,31 @@ public class LineStringCursorTest {
         double maxAngle = cursor.getMaxAngleChange(0, ls.getLength());
         assertTrue(maxAngle < 11.5);
     }
+
+    @Test
+    public void testMoveTo() throws Exception {
+        LineString ls = (LineString) new WKTReader().read(
+                "LINESTRING(0 0, 10 0, 10 10, 10 10, 20 10)");
+        LineStringCursor cursor = new LineStringCursor(ls);
+        assertEquals(30, cursor.getLineStringLength(), 0d);
+
+        cursor.moveTo(15);
+        assertEquals(1, cursor.segment);
+        assertEquals(15, cursor.getCurrentOrdinate(), 0d);
+        assertEquals(10, cursor.getCurrentPosition().x, 1e-9);
+        assertEquals(5, cursor.getCurrentPosition().y, 1e-9);
+
+        // at a segment boundary the cursor stays on the earlier segment
+        cursor.moveTo(10);
+        assertEquals(0, cursor.segment);
+        cursor.moveTo(20);
+        assertEquals(1, cursor.segment);
+        cursor.moveTo(25);
+        assertEquals(3, cursor.segment);
+
+        cursor.moveTo(-5);
+        assertEquals(0, cursor.getCurrentOrdinate(), 0d);
+        cursor.moveTo(50);
+        assertEquals(30, cursor.getCurrentOrdinate(), 0d);
+    }
 }
@@ -0,0 +1,101 @@
+package org.geotools.renderer.lite;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import org.geotools.data.property.PropertyDataStore;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.MapContent;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleBuilder;
+import org.geotools.test.TestData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ *
+ * @source $URL$
+ */
+public class MetaTileRendererTest {
+
+    MapContent mc;
+
+    StreamingRenderer renderer;
+
+    @Before
+    public void setUp() throws Exception {
+        File property = new File(TestData.getResource(this, "buildings.properties").toURI());
+        PropertyDataStore ds = new PropertyDataStore(property.getParentFile());
+        SimpleFeatureSource fs = ds.getFeatureSource("buildings");
+
+        StyleBuilder sb = new StyleBuilder();
+        Style style = sb.createStyle(sb.createPolygonSymbolizer(sb.createStroke(Color.RED, 10),
+                sb.createFill(Color.GRAY)));
+
+        mc = new MapContent();
+        mc.addLayer(new FeatureLayer(fs, style));
+        renderer = new StreamingRenderer();
+        renderer.setMapContent(mc);
+    }
+
+    @After
+    public void tearDown() {
+        mc.dispose();
+    }
+
+    @Test
+    public void testGutter() {
+        MetaTileRenderer mtr = new MetaTileRenderer(renderer, 150, 150);
+        // half of the stroke plus the antialiasing pixel
+        assertEquals(6, mtr.getGutter());
+        mtr.setGutter(20);
+        assertEquals(20, mtr.getGutter());
+    }
+
+    @Test
+    public void testTilesMatchSinglePaint() throws Exception {
+        ReferencedEnvelope bounds = new ReferencedEnvelope(0, 10, 0, 10, DefaultGeographicCRS.WGS84);
+        BufferedImage expected = RendererBaseTest.renderImage(renderer, bounds, null);
+
+        MetaTileRenderer mtr = new MetaTileRenderer(renderer, 150, 150);
+        BufferedImage[][] tiles = mtr.paint(bounds, 2, 2);
+        assertEquals(2, tiles.length);
+        assertEquals(2, tiles[0].length);
+
+        for (int r = 0; r < 2; r++) {
+            for (int c = 0; c < 2; c++) {
+                BufferedImage tile = tiles[r][c];
+                assertEquals(150, tile.getWidth());
+                assertEquals(150, tile.getHeight());
+                for (int x = 0; x < 150; x++) {
+                    for (int y = 0; y < 150; y++) {
+                        int expectedPixel = expected.getRGB(c * 150 + x, r * 150 + y);
+                        int actualPixel = tile.getRGB(x, y);
+                        // the reference has a white background, the tiles are transparent
+                        if ((actualPixel >>> 24) == 255) {
+                            assertSimilar("Pixel differs at " + x + "," + y + " in tile " + r
+                                    + "," + c, expectedPixel, actualPixel);
+                        } else if ((actualPixel >>> 24) == 0) {
+                            assertEquals(Color.WHITE.getRGB(), expectedPixel);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    void assertSimilar(String message, int expected, int actual) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            int delta = ((expected >> shift) & 0xFF) - ((actual >> shift) & 0xFF);
+            assertTrue(message, Math.abs(delta) <= 2);
+        }
+    }
+}
@@ -6,6 +6,18 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridCoverageFactory;
@@ -15,6 +27,8 @@ import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.map.FeatureLayer;
 import org.geotools.map.GridCoverageLayer;
 import org.geotools.map.MapContent;
+import org.geotools.map.event.MapLayerListEvent;
+import org.geotools.map.event.MapLayerListListener;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.geotools.styling.Style;
 import org.geotools.styling.StyleBuilder;
@@ -28,6 +42,9 @@ import org.junit.Test;
  */
 public class MultiLayerTest {
 
+    static final ReferencedEnvelope BOUNDS = new ReferencedEnvelope(0, 10, 0, 10,
+            DefaultGeographicCRS.WGS84);
+
 	@Test
 	public void testRasterOpacity() throws Exception {
 		// a polygon layer
@@ -65,4 +82,189 @@ public class MultiLayerTest {
 		assertEquals(0, pixel[2]);
 		assertEquals(255, pixel[3]);
 	}
+
+	@Test
+	public void testParallelLayers() throws Exception {
+        MapContent mc = buildParallelContent(2);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            StreamingRenderer renderer = new StreamingRenderer();
+            renderer.setMapContent(mc);
+            BufferedImage sequential = RendererBaseTest.renderImage(renderer, BOUNDS, null);
+
+            renderer.setThreadPool(pool);
+            renderer.setRendererHints(parallelHints());
+            BufferedImage parallel = RendererBaseTest.renderImage(renderer, BOUNDS, null);
+
+            // the layers back buffers are composited in z-order, the outline stays on top
+            assertSimilar(sequential, parallel);
+        } finally {
+            pool.shutdown();
+            mc.dispose();
+        }
+	}
+
+	@Test
+	public void testParallelLayersRepeated() throws Exception {
+        MapContent mc = buildParallelContent(2);
+        FeatureLayer fillLayer = (FeatureLayer) mc.layers().get(0);
+        FeatureLayer outlineLayer = (FeatureLayer) mc.layers().get(1);
+        SimpleFeatureSource fs = fillLayer.getSimpleFeatureSource();
+        Style outline = outlineLayer.getStyle();
+        final AtomicInteger changes = new AtomicInteger();
+        final AtomicInteger disposals = new AtomicInteger();
+        mc.addMapLayerListListener(new MapLayerListListener() {
+            public void layerAdded(MapLayerListEvent event) {
+            }
+
+            public void layerRemoved(MapLayerListEvent event) {
+            }
+
+            public void layerChanged(MapLayerListEvent event) {
+                changes.incrementAndGet();
+            }
+
+            public void layerMoved(MapLayerListEvent event) {
+            }
+
+            public void layerPreDispose(MapLayerListEvent event) {
+                disposals.incrementAndGet();
+            }
+        });
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            StreamingRenderer renderer = new StreamingRenderer();
+            renderer.setMapContent(mc);
+            renderer.setThreadPool(pool);
+            renderer.setRendererHints(parallelHints());
+            BufferedImage first = RendererBaseTest.renderImage(renderer, BOUNDS, null);
+            BufferedImage second = RendererBaseTest.renderImage(renderer, BOUNDS, null);
+
+            // the layers are not disposed, nor detached from the caller map content
+            assertEquals(0, disposals.get());
+            assertEquals(2, mc.layers().size());
+            assertSame(fs, fillLayer.getFeatureSource());
+            assertSame(outline, outlineLayer.getStyle());
+            assertNotNull(outlineLayer.getQuery());
+            outlineLayer.setVisible(false);
+            assertEquals(1, changes.get());
+
+            // and the second paint is the same as the first one
+            assertTrue(countNonWhite(first) > 0);
+            assertSimilar(first, second);
+        } finally {
+            pool.shutdown();
+            mc.dispose();
+        }
+	}
+
+	@Test
+	public void testParallelLayersInFlight() throws Exception {
+        MapContent mc = buildParallelContent(6);
+        // counts the layers painted but not yet composited
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(2, 2, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>()) {
+            @Override
+            public <T> Future<T> submit(Callable<T> task) {
+                int current = inFlight.incrementAndGet();
+                if (current > maxInFlight.get()) {
+                    maxInFlight.set(current);
+                }
+                final Future<T> delegate = super.submit(task);
+                return new Future<T>() {
+                    public boolean cancel(boolean mayInterruptIfRunning) {
+                        return delegate.cancel(mayInterruptIfRunning);
+                    }
+
+                    public boolean isCancelled() {
+                        return delegate.isCancelled();
+                    }
+
+                    public boolean isDone() {
+                        return delegate.isDone();
+                    }
+
+                    public T get() throws InterruptedException, ExecutionException {
+                        try {
+                            return delegate.get();
+                        } finally {
+                            inFlight.decrementAndGet();
+                        }
+                    }
+
+                    public T get(long timeout, TimeUnit unit) throws InterruptedException,
+                            ExecutionException, TimeoutException {
+                        return delegate.get(timeout, unit);
+                    }
+                };
+            }
+        };
+        try {
+            StreamingRenderer renderer = new StreamingRenderer();
+            renderer.setMapContent(mc);
+            renderer.setThreadPool(pool);
+            renderer.setRendererHints(parallelHints());
+            BufferedImage image = RendererBaseTest.renderImage(renderer, BOUNDS, null);
+
+            // all the layers got painted, but never more back buffers than threads at once
+            assertTrue(countNonWhite(image) > 0);
+            assertEquals(6, pool.getCompletedTaskCount());
+            assertEquals(2, maxInFlight.get());
+        } finally {
+            pool.shutdown();
+            mc.dispose();
+        }
+	}
+
+    /**
+     * Builds a map content alternating fill and outline layers on the buildings
+     */
+    MapContent buildParallelContent(int layers) throws Exception {
+        File property = new File(TestData.getResource(this, "buildings.properties").toURI());
+        PropertyDataStore ds = new PropertyDataStore(property.getParentFile());
+        SimpleFeatureSource fs = ds.getFeatureSource("buildings");
+
+        StyleBuilder sb = new StyleBuilder();
+        Style fill = sb.createStyle(sb.createPolygonSymbolizer(null, sb.createFill(Color.GRAY)));
+        Style outline = sb.createStyle(sb.createLineSymbolizer(Color.RED, 3));
+
+        MapContent mc = new MapContent();
+        for (int i = 0; i < layers; i++) {
+            mc.addLayer(new FeatureLayer(fs, i % 2 == 0 ? fill : outline));
+        }
+        return mc;
+    }
+
+    Map parallelHints() {
+        Map hints = new HashMap();
+        hints.put(StreamingRenderer.PARALLEL_LAYER_RENDERING_KEY, Boolean.TRUE);
+        return hints;
+    }
+
+    int countNonWhite(BufferedImage image) {
+        int count = 0;
+        for (int x = 0; x < image.getWidth(); x++) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                if (image.getRGB(x, y) != Color.WHITE.getRGB()) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    void assertSimilar(BufferedImage expectedImage, BufferedImage actualImage) {
+        for (int x = 0; x < expectedImage.getWidth(); x++) {
+            for (int y = 0; y < expectedImage.getHeight(); y++) {
+                int expected = expectedImage.getRGB(x, y);
+                int actual = actualImage.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int delta = ((expected >> shift) & 0xFF) - ((actual >> shift) & 0xFF);
+                    assertTrue("Pixel differs at " + x + "," + y, Math.abs(delta) <= 2);
+                }
+            }
+        }
+    }
 }
@@ -33,6 +33,7 @@ import junit.framework.TestCase;
 
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.filter.function.EnvFunction;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.renderer.lite.StreamingRenderer;
 import org.geotools.renderer.style.SLDStyleFactory.SymbolizerKey;
@@ -368,4 +369,118 @@ public class SLDStyleFactoryTest extends TestCase {
          Style2D icon = sld.createPointStyle(feature, symb, range);
          assertNotNull(icon);
      }
+
+    public void testSharedStyleCache() throws Exception {
+        Style2DCache cache = new Style2DCache(10);
+        SLDStyleFactory f1 = new SLDStyleFactory();
+        f1.setStyle2DCache(cache);
+        SLDStyleFactory f2 = new SLDStyleFactory();
+        f2.setStyle2DCache(cache);
+
+        // equal symbolizers, but different objects, as in two renderings of the same style
+        Style2D s1 = f1.createStyle(feature, lineSymbolizer(), range);
+        Style2D s2 = f2.createStyle(feature, lineSymbolizer(), range);
+        assertNotNull(s1);
+        assertSame(s1, s2);
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getHits());
+
+        // different settings, different style
+        SLDStyleFactory f3 = new SLDStyleFactory();
+        f3.setStyle2DCache(cache);
+        f3.setLineOptimizationEnabled(true);
+        assertNotSame(s1, f3.createStyle(feature, lineSymbolizer(), range));
+        assertEquals(2, cache.size());
+
+        // feature dependent symbolizers are not shared
+        LineSymbolizer dynamic = sf.createLineSymbolizer(sf.createStroke(ff.property("color"),
+                ff.literal(2)), null);
+        f1.createStyle(feature, dynamic, range);
+        assertEquals(2, cache.size());
+    }
+
+    public void testSharedStyleCacheEnv() throws Exception {
+        Style2DCache cache = new Style2DCache(10);
+        LineSymbolizer ls = sf.createLineSymbolizer(sf.createStroke(
+                ff.function("env", ff.literal("color"), ff.literal("#FF0000")), ff.literal(2)),
+                null);
+
+        // two requests with different environments, the style cannot be shared among them
+        try {
+            EnvFunction.setLocalValue("color", "#0000FF");
+            SLDStyleFactory f1 = new SLDStyleFactory();
+            f1.setStyle2DCache(cache);
+            LineStyle2D s1 = (LineStyle2D) f1.createStyle(feature, ls, range);
+            assertEquals(Color.BLUE, s1.getContour());
+
+            EnvFunction.setLocalValue("color", "#00FF00");
+            SLDStyleFactory f2 = new SLDStyleFactory();
+            f2.setStyle2DCache(cache);
+            LineStyle2D s2 = (LineStyle2D) f2.createStyle(feature, ls, range);
+            assertEquals(Color.GREEN, s2.getContour());
+            assertEquals(0, cache.size());
+        } finally {
+            EnvFunction.clearLocalValues();
+        }
+    }
+
+    public void testSharedStyleCacheDisplacement() throws Exception {
+        Style2DCache cache = new Style2DCache(10);
+        SLDStyleFactory f1 = new SLDStyleFactory();
+        f1.setStyle2DCache(cache);
+        SLDStyleFactory f2 = new SLDStyleFactory();
+        f2.setStyle2DCache(cache);
+
+        // a drop shadow and its marker, the graphic equality ignores the displacement
+        PointSymbolizer shadow = markSymbolizer();
+        shadow.getGraphic().setDisplacement(sf.createDisplacement(ff.literal(3), ff.literal(-3)));
+        PointSymbolizer marker = markSymbolizer();
+        assertEquals(shadow, marker);
+
+        MarkStyle2D s1 = (MarkStyle2D) f1.createStyle(feature, shadow, range);
+        MarkStyle2D s2 = (MarkStyle2D) f2.createStyle(feature, marker, range);
+        assertEquals(3f, s1.getDisplacementX());
+        assertEquals(0f, s2.getDisplacementX());
+        assertEquals(2, cache.size());
+
+        // same displacement, shared
+        PointSymbolizer shadow2 = markSymbolizer();
+        shadow2.getGraphic().setDisplacement(sf.createDisplacement(ff.literal(3), ff.literal(-3)));
+        SLDStyleFactory f3 = new SLDStyleFactory();
+        f3.setStyle2DCache(cache);
+        assertSame(s1, f3.createStyle(feature, shadow2, range));
+    }
+
+    public void testSharedStyleCacheMemory() throws Exception {
+        // room for two styles without images
+        Style2DCache cache = new Style2DCache(10, 2 * Style2DCache.ENTRY_WEIGHT);
+        for (int i = 1; i <= 3; i++) {
+            SLDStyleFactory factory = new SLDStyleFactory();
+            factory.setStyle2DCache(cache);
+            factory.createStyle(feature, sf.createLineSymbolizer(sf.createStroke(
+                    ff.literal("#FF0000"), ff.literal(i)), null), range);
+        }
+        assertEquals(2, cache.size());
+        assertEquals(2 * Style2DCache.ENTRY_WEIGHT, cache.getMemory());
+
+        // images are weighted by the size of their raster
+        BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+        assertEquals(40000, Style2DCache.getImageMemory(image));
+        cache.clear();
+        assertEquals(0, cache.getMemory());
+    }
+
+    PointSymbolizer markSymbolizer() {
+        Mark mark = sf.createMark(ff.literal("square"), sf.createStroke(ff.literal("#000000"),
+                ff.literal(1)), sf.createFill(ff.literal("#FF0000")), ff.literal(10),
+                ff.literal(0));
+        Graphic graphic = sf.createGraphic(null, new Mark[] { mark }, null, null,
+                ff.literal(10), null);
+        return sf.createPointSymbolizer(graphic, null);
+    }
+
+    LineSymbolizer lineSymbolizer() {
+        return sf.createLineSymbolizer(sf.createStroke(ff.literal("#FF0000"), ff.literal(2)),
+                null);
+    }
 }
@@ -916,6 +916,91 @@ public class OracleDialect extends PreparedStatementSQLDialect {
         return result;
     }
 
+    /**
+     * Estimates the bounds using the dimension bounds declared in the geometry metadata views.
+     * They are the bounds of the spatial index domain, usually larger than the data bounds.
+     */
+    @Override
+    public List<ReferencedEnvelope> getEstimatedBounds(String schema,
+            SimpleFeatureType featureType, Connection cx) throws SQLException, IOException {
+        String tableName = featureType.getTypeName();
+        if (dataStore.getVirtualTables().get(tableName) != null) {
+            return null;
+        }
+        boolean useUserViews = (schema == null || "".equals(schema)) && canAccessUserViews(cx);
+
+        List<ReferencedEnvelope> result = new ArrayList<ReferencedEnvelope>();
+        Statement st = null;
+        ResultSet rs = null;
+        try {
+            st = cx.createStatement();
+            for (AttributeDescriptor att : featureType.getAttributeDescriptors()) {
+                if (!(att instanceof GeometryDescriptor)) {
+                    continue;
+                }
+                StringBuffer sql = new StringBuffer("SELECT DIM.SDO_LB, DIM.SDO_UB FROM ");
+                sql.append(useUserViews ? "MDSYS.USER_SDO_GEOM_METADATA" : "MDSYS.ALL_SDO_GEOM_METADATA");
+                sql.append(" USGM, table(USGM.DIMINFO) DIM WHERE ");
+                sql.append("TABLE_NAME='").append(tableName.toUpperCase()).append("' AND ");
+                sql.append("COLUMN_NAME='").append(att.getLocalName().toUpperCase()).append("'");
+                if (!useUserViews && schema != null && !"".equals(schema)) {
+                    sql.append(" AND OWNER='" + schema + "'");
+                }
+                LOGGER.log(Level.FINE, "Estimating the table extent from the metadata: {0}", sql);
+                rs = st.executeQuery(sql.toString());
+                // the first two dimensions are the horizontal ones
+                double[] bounds = new double[4];
+                int dimensions = 0;
+                while (dimensions < 2 && rs.next()) {
+                    bounds[dimensions * 2] = rs.getDouble(1);
+                    bounds[dimensions * 2 + 1] = rs.getDouble(2);
+                    dimensions++;
+                }
+                rs.close();
+                if (dimensions == 2) {
+                    CoordinateReferenceSystem crs = ((GeometryDescriptor) att)
+                            .getCoordinateReferenceSystem();
+                    result.add(new ReferencedEnvelope(bounds[0], bounds[1], bounds[2], bounds[3],
+                            crs));
+                }
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Failed to read the geometry metadata, falling back on envelope aggregation", e);
+            return null;
+        } finally {
+            dataStore.closeSafe(rs);
+            dataStore.closeSafe(st);
+        }
+        return result;
+    }
+
+    /**
+     * Estimates the row count using the optimizer statistics, as gathered by DBMS_STATS
+     */
+    @Override
+    public int getEstimatedCount(String schema, SimpleFeatureType featureType, Connection cx)
+            throws SQLException, IOException {
+        String tableName = featureType.getTypeName();
+        if (dataStore.getVirtualTables().get(tableName) != null) {
+            return -1;
+        }
+        String sql;
+        if (schema != null && !"".equals(schema)) {
+            sql = "SELECT NUM_ROWS FROM ALL_TABLES WHERE OWNER = '" + schema
+                    + "' AND TABLE_NAME = '" + tableName.toUpperCase() + "'";
+        } else {
+            sql = "SELECT NUM_ROWS FROM USER_TABLES WHERE TABLE_NAME = '"
+                    + tableName.toUpperCase() + "'";
+        }
+        try {
+            Integer rows = readIntegerFromStatement(cx, sql);
+            return rows != null ? rows : -1;
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Failed to read the table statistics, falling back on count", e);
+            return -1;
+        }
+    }
+
     @Override
     public void postCreateTable(String schemaName,
             SimpleFeatureType featureType, Connection cx) throws SQLException {
@@ -0,0 +1,534 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.postgis;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.geotools.geometry.jts.LiteCoordinateSequence;
+import org.geotools.geometry.jts.LiteCoordinateSequenceFactory;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.CoordinateSequenceFactory;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.io.ParseException;
+
+/**
+ * A WKB reader that works directly off a byte array (or a stream fully buffered into a reusable
+ * byte array) and builds the coordinate sequences in a single pass.
+ * <p>
+ * Besides OGC WKB and its PostGIS EWKB extension (SRID and Z/M flags, also in the ISO 1000/2000/3000
+ * type code flavour) the reader understands the compact TWKB encoding produced by PostGIS
+ * {@code ST_AsTWKB}. The two are told apart by the first byte, which is the byte order marker (0 or
+ * 1) in WKB, while in TWKB it holds the geometry type and the precision. TWKB must thus be
+ * produced with a non zero precision, otherwise a point would be mistaken for WKB.
+ * <p>
+ * When the geometry factory uses a {@link LiteCoordinateSequenceFactory} the ordinates are decoded
+ * straight into the packed array backing a {@link LiteCoordinateSequence}, otherwise the sequence
+ * is created and filled through the factory. M values are read and dropped, as JTS has no place for
+ * them.
+ * <p>
+ * Instances keep their buffers between calls and are not thread safe.
+ *
+ * @source $URL$
+ */
+public class PackedWKBReader {
+
+    static final int WKB_POINT = 1;
+
+    static final int WKB_LINESTRING = 2;
+
+    static final int WKB_POLYGON = 3;
+
+    static final int WKB_MULTIPOINT = 4;
+
+    static final int WKB_MULTILINESTRING = 5;
+
+    static final int WKB_MULTIPOLYGON = 6;
+
+    static final int WKB_GEOMETRYCOLLECTION = 7;
+
+    static final int EWKB_Z = 0x80000000;
+
+    static final int EWKB_M = 0x40000000;
+
+    static final int EWKB_SRID = 0x20000000;
+
+    static final int TWKB_BBOX = 0x01;
+
+    static final int TWKB_SIZE = 0x02;
+
+    static final int TWKB_IDLIST = 0x04;
+
+    static final int TWKB_EXTENDED_DIMS = 0x08;
+
+    static final int TWKB_EMPTY = 0x10;
+
+    GeometryFactory factory;
+
+    CoordinateSequenceFactory csFactory;
+
+    boolean lite;
+
+    /** buffer used to collect streamed input, reused across reads */
+    byte[] streamBuffer = new byte[1024];
+
+    byte[] data;
+
+    int pos;
+
+    int limit;
+
+    boolean littleEndian;
+
+    /** TWKB running ordinate values, the encoding is delta based */
+    long[] last = new long[4];
+
+    public PackedWKBReader() {
+        this(new GeometryFactory(new LiteCoordinateSequenceFactory()));
+    }
+
+    public PackedWKBReader(GeometryFactory factory) {
+        setGeometryFactory(factory);
+    }
+
+    public GeometryFactory getGeometryFactory() {
+        return factory;
+    }
+
+    public void setGeometryFactory(GeometryFactory factory) {
+        if (this.factory == factory) {
+            return;
+        }
+        this.factory = factory;
+        this.csFactory = factory.getCoordinateSequenceFactory();
+        this.lite = csFactory instanceof LiteCoordinateSequenceFactory;
+    }
+
+    /**
+     * Reads a WKB, EWKB or TWKB encoded geometry
+     */
+    public Geometry read(byte[] bytes) throws ParseException {
+        return read(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Reads a WKB, EWKB or TWKB encoded geometry out of a portion of the given array
+     */
+    public Geometry read(byte[] bytes, int offset, int length) throws ParseException {
+        if (length <= 0) {
+            throw new ParseException("Empty geometry representation");
+        }
+        this.data = bytes;
+        this.pos = offset;
+        this.limit = offset + length;
+        try {
+            Geometry result;
+            if (bytes[offset] == 0 || bytes[offset] == 1) {
+                result = readWKB(0);
+            } else {
+                result = readTWKB();
+            }
+            if (pos > limit) {
+                throw new ParseException("Unexpected end of geometry representation");
+            }
+            return result;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new ParseException("Unexpected end of geometry representation");
+        } finally {
+            this.data = null;
+        }
+    }
+
+    /**
+     * Reads a geometry from a stream. The stream contents are collected in an internal buffer that
+     * is reused by the following calls, the stream is not closed.
+     */
+    public Geometry read(InputStream is) throws IOException, ParseException {
+        int length = 0;
+        int read;
+        while ((read = is.read(streamBuffer, length, streamBuffer.length - length)) != -1) {
+            length += read;
+            if (length == streamBuffer.length) {
+                byte[] grown = new byte[streamBuffer.length * 2];
+                System.arraycopy(streamBuffer, 0, grown, 0, length);
+                streamBuffer = grown;
+            }
+        }
+        return read(streamBuffer, 0, length);
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // WKB/EWKB
+    // ---------------------------------------------------------------------------------------
+
+    Geometry readWKB(int srid) throws ParseException {
+        littleEndian = data[pos++] == 1;
+        int typeInt = readInt();
+
+        boolean hasZ = (typeInt & EWKB_Z) != 0;
+        boolean hasM = (typeInt & EWKB_M) != 0;
+        if ((typeInt & EWKB_SRID) != 0) {
+            srid = readInt();
+        }
+        int type = typeInt & 0x0FFFFFFF;
+        if (type > 1000) {
+            // ISO WKB flavour
+            int flavour = type / 1000;
+            hasZ |= flavour == 1 || flavour == 3;
+            hasM |= flavour == 2 || flavour == 3;
+            type = type % 1000;
+        }
+        int dimension = hasZ ? 3 : 2;
+        int stride = dimension + (hasM ? 1 : 0);
+
+        Geometry result;
+        switch (type) {
+        case WKB_POINT:
+            result = readWKBPoint(dimension, stride);
+            break;
+        case WKB_LINESTRING:
+            result = factory.createLineString(readWKBSequence(readCount(), dimension, stride));
+            break;
+        case WKB_POLYGON:
+            result = readWKBPolygon(dimension, stride);
+            break;
+        case WKB_MULTIPOINT: {
+            Point[] points = new Point[readCount()];
+            for (int i = 0; i < points.length; i++) {
+                points[i] = (Point) readWKB(srid);
+            }
+            result = factory.createMultiPoint(points);
+            break;
+        }
+        case WKB_MULTILINESTRING: {
+            LineString[] lines = new LineString[readCount()];
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = (LineString) readWKB(srid);
+            }
+            result = factory.createMultiLineString(lines);
+            break;
+        }
+        case WKB_MULTIPOLYGON: {
+            Polygon[] polygons = new Polygon[readCount()];
+            for (int i = 0; i < polygons.length; i++) {
+                polygons[i] = (Polygon) readWKB(srid);
+            }
+            result = factory.createMultiPolygon(polygons);
+            break;
+        }
+        case WKB_GEOMETRYCOLLECTION: {
+            Geometry[] geometries = new Geometry[readCount()];
+            for (int i = 0; i < geometries.length; i++) {
+                geometries[i] = readWKB(srid);
+            }
+            result = factory.createGeometryCollection(geometries);
+            break;
+        }
+        default:
+            throw new ParseException("Unknown WKB geometry type: " + type);
+        }
+        result.setSRID(srid);
+        return result;
+    }
+
+    Point readWKBPoint(int dimension, int stride) {
+        CoordinateSequence cs = readWKBSequence(1, dimension, stride);
+        // PostGIS encodes POINT EMPTY as a point with NaN ordinates
+        if (Double.isNaN(cs.getOrdinate(0, 0)) && Double.isNaN(cs.getOrdinate(0, 1))) {
+            return factory.createPoint(csFactory.create(0, dimension));
+        }
+        return factory.createPoint(cs);
+    }
+
+    Polygon readWKBPolygon(int dimension, int stride) throws ParseException {
+        int rings = readCount();
+        if (rings == 0) {
+            return factory.createPolygon(null, null);
+        }
+        LinearRing shell = factory.createLinearRing(readWKBSequence(readCount(), dimension,
+                stride));
+        LinearRing[] holes = new LinearRing[rings - 1];
+        for (int i = 0; i < holes.length; i++) {
+            holes[i] = factory.createLinearRing(readWKBSequence(readCount(), dimension, stride));
+        }
+        return factory.createPolygon(shell, holes);
+    }
+
+    CoordinateSequence readWKBSequence(int size, int dimension, int stride) {
+        if (lite) {
+            double[] coords = new double[size * dimension];
+            int idx = 0;
+            for (int i = 0; i < size; i++) {
+                for (int d = 0; d < dimension; d++) {
+                    coords[idx++] = readDouble();
+                }
+                if (stride > dimension) {
+                    pos += 8;
+                }
+            }
+            return new LiteCoordinateSequence(coords, dimension);
+        } else {
+            CoordinateSequence cs = csFactory.create(size, dimension);
+            int csDimension = cs.getDimension();
+            for (int i = 0; i < size; i++) {
+                for (int d = 0; d < dimension; d++) {
+                    double value = readDouble();
+                    if (d < csDimension) {
+                        cs.setOrdinate(i, d, value);
+                    }
+                }
+                if (stride > dimension) {
+                    pos += 8;
+                }
+            }
+            return cs;
+        }
+    }
+
+    int readCount() throws ParseException {
+        int count = readInt();
+        // each element takes at least 4 bytes, a bigger count means corrupt data
+        if (count < 0 || count > (limit - pos) / 4 + 1) {
+            throw new ParseException("Invalid WKB element count: " + count);
+        }
+        return count;
+    }
+
+    int readInt() {
+        byte[] b = data;
+        int p = pos;
+        pos += 4;
+        if (littleEndian) {
+            return (b[p] & 0xFF) | (b[p + 1] & 0xFF) << 8 | (b[p + 2] & 0xFF) << 16
+                    | (b[p + 3] & 0xFF) << 24;
+        } else {
+            return (b[p] & 0xFF) << 24 | (b[p + 1] & 0xFF) << 16 | (b[p + 2] & 0xFF) << 8
+                    | (b[p + 3] & 0xFF);
+        }
+    }
+
+    double readDouble() {
+        byte[] b = data;
+        int p = pos;
+        pos += 8;
+        long bits;
+        if (littleEndian) {
+            bits = (b[p] & 0xFFL) | (b[p + 1] & 0xFFL) << 8 | (b[p + 2] & 0xFFL) << 16
+                    | (b[p + 3] & 0xFFL) << 24 | (b[p + 4] & 0xFFL) << 32
+                    | (b[p + 5] & 0xFFL) << 40 | (b[p + 6] & 0xFFL) << 48
+                    | (b[p + 7] & 0xFFL) << 56;
+        } else {
+            bits = (b[p] & 0xFFL) << 56 | (b[p + 1] & 0xFFL) << 48 | (b[p + 2] & 0xFFL) << 40
+                    | (b[p + 3] & 0xFFL) << 32 | (b[p + 4] & 0xFFL) << 24
+                    | (b[p + 5] & 0xFFL) << 16 | (b[p + 6] & 0xFFL) << 8 | (b[p + 7] & 0xFFL);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // TWKB
+    // ---------------------------------------------------------------------------------------
+
+    Geometry readTWKB() throws ParseException {
+        int typeAndPrecision = data[pos++] & 0xFF;
+        int type = typeAndPrecision & 0x0F;
+        int precision = zigzag(typeAndPrecision >> 4);
+        int metadata = data[pos++] & 0xFF;
+
+        boolean hasZ = false;
+        boolean hasM = false;
+        int zPrecision = 0;
+        if ((metadata & TWKB_EXTENDED_DIMS) != 0) {
+            int dims = data[pos++] & 0xFF;
+            hasZ = (dims & 0x01) != 0;
+            hasM = (dims & 0x02) != 0;
+            zPrecision = (dims & 0x1C) >> 2;
+        }
+        int dimension = hasZ ? 3 : 2;
+        int stride = dimension + (hasM ? 1 : 0);
+        if ((metadata & TWKB_SIZE) != 0) {
+            readUnsignedVarInt();
+        }
+        if ((metadata & TWKB_BBOX) != 0) {
+            for (int i = 0; i < stride * 2; i++) {
+                readUnsignedVarInt();
+            }
+        }
+
+        double scale = Math.pow(10, precision);
+        double zScale = Math.pow(10, zPrecision);
+        boolean empty = (metadata & TWKB_EMPTY) != 0;
+        boolean idList = (metadata & TWKB_IDLIST) != 0;
+        for (int i = 0; i < last.length; i++) {
+            last[i] = 0;
+        }
+
+        switch (type) {
+        case WKB_POINT:
+            if (empty) {
+                return factory.createPoint(csFactory.create(0, dimension));
+            }
+            return factory.createPoint(readTWKBSequence(1, dimension, stride, scale, zScale));
+        case WKB_LINESTRING:
+            if (empty) {
+                return factory.createLineString(csFactory.create(0, dimension));
+            }
+            return factory.createLineString(readTWKBSequence(readTWKBCount(), dimension, stride,
+                    scale, zScale));
+        case WKB_POLYGON:
+            if (empty) {
+                return factory.createPolygon(null, null);
+            }
+            return readTWKBPolygon(dimension, stride, scale, zScale);
+        case WKB_MULTIPOINT: {
+            if (empty) {
+                return factory.createMultiPoint(new Point[0]);
+            }
+            Point[] points = new Point[readTWKBCount()];
+            skipIdList(idList, points.length);
+            for (int i = 0; i < points.length; i++) {
+                points[i] = factory.createPoint(readTWKBSequence(1, dimension, stride, scale,
+                        zScale));
+            }
+            return factory.createMultiPoint(points);
+        }
+        case WKB_MULTILINESTRING: {
+            if (empty) {
+                return factory.createMultiLineString(new LineString[0]);
+            }
+            LineString[] lines = new LineString[readTWKBCount()];
+            skipIdList(idList, lines.length);
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = factory.createLineString(readTWKBSequence(readTWKBCount(), dimension,
+                        stride, scale, zScale));
+            }
+            return factory.createMultiLineString(lines);
+        }
+        case WKB_MULTIPOLYGON: {
+            if (empty) {
+                return factory.createMultiPolygon(new Polygon[0]);
+            }
+            Polygon[] polygons = new Polygon[readTWKBCount()];
+            skipIdList(idList, polygons.length);
+            for (int i = 0; i < polygons.length; i++) {
+                polygons[i] = readTWKBPolygon(dimension, stride, scale, zScale);
+            }
+            return factory.createMultiPolygon(polygons);
+        }
+        case WKB_GEOMETRYCOLLECTION: {
+            if (empty) {
+                return factory.createGeometryCollection(new Geometry[0]);
+            }
+            Geometry[] geometries = new Geometry[readTWKBCount()];
+            skipIdList(idList, geometries.length);
+            for (int i = 0; i < geometries.length; i++) {
+                // every member carries its own header
+                geometries[i] = readTWKB();
+            }
+            return factory.createGeometryCollection(geometries);
+        }
+        default:
+            throw new ParseException("Unknown TWKB geometry type: " + type);
+        }
+    }
+
+    Polygon readTWKBPolygon(int dimension, int stride, double scale, double zScale)
+            throws ParseException {
+        int rings = readTWKBCount();
+        if (rings == 0) {
+            return factory.createPolygon(null, null);
+        }
+        LinearRing shell = factory.createLinearRing(readTWKBSequence(readTWKBCount(), dimension,
+                stride, scale, zScale));
+        LinearRing[] holes = new LinearRing[rings - 1];
+        for (int i = 0; i < holes.length; i++) {
+            holes[i] = factory.createLinearRing(readTWKBSequence(readTWKBCount(), dimension,
+                    stride, scale, zScale));
+        }
+        return factory.createPolygon(shell, holes);
+    }
+
+    CoordinateSequence readTWKBSequence(int size, int dimension, int stride, double scale,
+            double zScale) {
+        double[] coords = new double[size * dimension];
+        int idx = 0;
+        for (int i = 0; i < size; i++) {
+            for (int d = 0; d < stride; d++) {
+                last[d] += zigzag(readUnsignedVarInt());
+                if (d < 2) {
+                    coords[idx++] = last[d] / scale;
+                } else if (d < dimension) {
+                    coords[idx++] = last[d] / zScale;
+                }
+            }
+        }
+        if (lite) {
+            return new LiteCoordinateSequence(coords, dimension);
+        }
+        CoordinateSequence cs = csFactory.create(size, dimension);
+        int csDimension = Math.min(dimension, cs.getDimension());
+        for (int i = 0; i < size; i++) {
+            for (int d = 0; d < csDimension; d++) {
+                cs.setOrdinate(i, d, coords[i * dimension + d]);
+            }
+        }
+        return cs;
+    }
+
+    void skipIdList(boolean idList, int count) {
+        if (idList) {
+            for (int i = 0; i < count; i++) {
+                readUnsignedVarInt();
+            }
+        }
+    }
+
+    int readTWKBCount() throws ParseException {
+        long count = readUnsignedVarInt();
+        // each element takes at least one byte
+        if (count > limit - pos + 1) {
+            throw new ParseException("Invalid TWKB element count: " + count);
+        }
+        return (int) count;
+    }
+
+    long readUnsignedVarInt() {
+        long result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos++];
+            result |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return result;
+    }
+
+    static long zigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static int zigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.postgis;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.Iterator;
+
+import org.geotools.factory.Hints;
+import org.geotools.util.Converters;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.postgresql.copy.CopyIn;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.io.ByteOrderValues;
+import com.vividsolutions.jts.io.WKBWriter;
+
+/**
+ * Streams rows into a <code>COPY ... FROM STDIN</code> operation, using the text format and
+ * hex encoded EWKB for the geometries.
+ * <p>
+ * Rows are encoded and sent to the server in chunks as they are pulled from the iterator, so
+ * that the features backing them never need to be all in memory at the same time.
+ * </p>
+ * 
+ * @source $URL$
+ */
+class PostGISCopyLoader {
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+    
+    /**
+     * The number of characters accumulated before sending them to the server
+     */
+    static final int CHUNK_SIZE = 64 * 1024;
+    
+    static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    
+    /**
+     * The EWKB flag marking the presence of a SRID
+     */
+    static final int EWKB_SRID_FLAG = 0x20000000;
+
+    Class[] bindings;
+    
+    int[] srids;
+    
+    int[] dimensions;
+    
+    WKBWriter[] writers = new WKBWriter[4];
+    
+    StringBuilder buffer = new StringBuilder(CHUNK_SIZE + 1024);
+
+    /**
+     * Builds a loader for the specified columns
+     * 
+     * @param featureType The feature type of the table being loaded
+     * @param columns The columns being loaded
+     * @param bindings The classes of the column values
+     * @param srids The srid of the geometry columns, or -1 if unknown
+     */
+    PostGISCopyLoader(SimpleFeatureType featureType, String[] columns, Class[] bindings,
+            int[] srids) {
+        this.bindings = bindings;
+        this.srids = srids;
+        this.dimensions = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            AttributeDescriptor att = featureType.getDescriptor(columns[i]);
+            if (att instanceof GeometryDescriptor) {
+                Object dimension = att.getUserData().get(Hints.COORDINATE_DIMENSION);
+                if (dimension instanceof Integer) {
+                    dimensions[i] = (Integer) dimension;
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes the rows and sends them to the copy operation, ending it once all of them have
+     * been sent. The copy is cancelled if any error occurs.
+     * 
+     * @return The number of rows copied
+     */
+    long load(Iterator<Object[]> rows, CopyIn copy) throws SQLException, IOException {
+        boolean done = false;
+        try {
+            while (rows.hasNext()) {
+                encodeRow(rows.next());
+                if (buffer.length() >= CHUNK_SIZE) {
+                    send(copy);
+                }
+            }
+            send(copy);
+            long count = copy.endCopy();
+            done = true;
+            return count;
+        } finally {
+            if (!done && copy.isActive()) {
+                copy.cancelCopy();
+            }
+        }
+    }
+
+    void send(CopyIn copy) throws SQLException {
+        if (buffer.length() > 0) {
+            byte[] bytes = buffer.toString().getBytes(UTF8);
+            copy.writeToCopy(bytes, 0, bytes.length);
+            buffer.setLength(0);
+        }
+    }
+
+    void encodeRow(Object[] row) throws IOException {
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                buffer.append('\t');
+            }
+            encodeValue(row[i], i);
+        }
+        buffer.append('\n');
+    }
+
+    void encodeValue(Object value, int column) throws IOException {
+        if (value == null) {
+            buffer.append("\\N");
+        } else if (value instanceof Geometry) {
+            encodeGeometry((Geometry) value, column);
+        } else if (value instanceof byte[]) {
+            // bytea escape format, with the backslashes escaped for the copy
+            for (byte b : (byte[]) value) {
+                buffer.append("\\\\");
+                int v = b & 0xFF;
+                buffer.append((char) ('0' + (v >> 6))).append((char) ('0' + ((v >> 3) & 7)))
+                        .append((char) ('0' + (v & 7)));
+            }
+        } else if (value instanceof Boolean) {
+            buffer.append(((Boolean) value).booleanValue() ? 't' : 'f');
+        } else if (value instanceof Date) {
+            // use the sql representation matching the column type
+            long time = ((Date) value).getTime();
+            Class binding = bindings[column];
+            if (java.sql.Date.class.equals(binding)) {
+                buffer.append(new java.sql.Date(time).toString());
+            } else if (java.sql.Time.class.equals(binding)) {
+                buffer.append(new java.sql.Time(time).toString());
+            } else if (value instanceof Timestamp) {
+                buffer.append(value.toString());
+            } else {
+                buffer.append(new Timestamp(time).toString());
+            }
+        } else if (value instanceof Number) {
+            buffer.append(value.toString());
+        } else {
+            String text = Converters.convert(value, String.class);
+            escape(text != null ? text : value.toString());
+        }
+    }
+
+    void escape(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '\\':
+                buffer.append("\\\\");
+                break;
+            case '\t':
+                buffer.append("\\t");
+                break;
+            case '\n':
+                buffer.append("\\n");
+                break;
+            case '\r':
+                buffer.append("\\r");
+                break;
+            default:
+                buffer.append(c);
+            }
+        }
+    }
+
+    void encodeGeometry(Geometry g, int column) throws IOException {
+        if (g.isEmpty()) {
+            // same as the regular inserts
+            buffer.append("\\N");
+            return;
+        }
+        if (g instanceof LinearRing) {
+            //postgis does not handle linear rings, convert to just a line string
+            g = g.getFactory().createLineString(((LinearRing) g).getCoordinateSequence());
+        }
+        
+        int dimension = dimensions[column];
+        if (dimension <= 0) {
+            Coordinate c = g.getCoordinate();
+            dimension = c != null && !Double.isNaN(c.z) ? 3 : 2;
+        }
+        dimension = Math.min(Math.max(dimension, 2), 3);
+        if (writers[dimension] == null) {
+            writers[dimension] = new WKBWriter(dimension, ByteOrderValues.BIG_ENDIAN);
+        }
+        byte[] wkb = writers[dimension].write(g);
+        
+        int srid = srids[column] > 0 ? srids[column] : g.getSRID();
+        if (srid > 0) {
+            // EWKB: byte order, type with the srid flag, srid, then the rest of the wkb
+            int type = ((wkb[1] & 0xFF) << 24) | ((wkb[2] & 0xFF) << 16) | ((wkb[3] & 0xFF) << 8)
+                    | (wkb[4] & 0xFF);
+            appendHex(wkb[0]);
+            appendHex(type | EWKB_SRID_FLAG);
+            appendHex(srid);
+            for (int i = 5; i < wkb.length; i++) {
+                appendHex(wkb[i]);
+            }
+        } else {
+            for (int i = 0; i < wkb.length; i++) {
+                appendHex(wkb[i]);
+            }
+        }
+    }
+
+    void appendHex(byte b) {
+        buffer.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+    }
+
+    void appendHex(int value) {
+        appendHex((byte) (value >>> 24));
+        appendHex((byte) (value >>> 16));
+        appendHex((byte) (value >>> 8));
+        appendHex((byte) value);
+    }
+}
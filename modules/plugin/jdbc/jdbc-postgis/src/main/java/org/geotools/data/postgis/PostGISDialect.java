@@ -19,6 +19,7 @@ package org.geotools.data.postgis;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Savepoint;
@@ -28,6 +29,7 @@ import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -35,17 +37,24 @@ import java.util.UUID;
 import java.util.logging.Level;
 
 import org.geotools.data.jdbc.FilterToSQL;
+import org.geotools.data.jdbc.datasource.DataSourceFinder;
+import org.geotools.data.jdbc.datasource.UnWrapper;
 import org.geotools.factory.Hints;
+import org.geotools.feature.visitor.MedianVisitor;
+import org.geotools.feature.visitor.StandardDeviationVisitor;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.jdbc.BasicSQLDialect;
 import org.geotools.jdbc.ColumnMetadata;
 import org.geotools.jdbc.JDBCDataStore;
 import org.geotools.referencing.CRS;
 import org.geotools.util.Version;
+import org.opengis.feature.FeatureVisitor;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
 
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
@@ -114,14 +123,52 @@ public class PostGISDialect extends BasicSQLDialect {
        return "distinct".equalsIgnoreCase(function);
     }
 
+    @Override
+    public void registerAggregateFunctions(
+            Map<Class<? extends FeatureVisitor>, String> aggregates) {
+        super.registerAggregateFunctions(aggregates);
+        // population standard deviation, matching StandardDeviationVisitor
+        aggregates.put(StandardDeviationVisitor.class, "stddev_pop");
+        // ordered set aggregates showed up in PostgreSQL 9.4
+        if (pgsqlVersion != null && pgsqlVersion.compareTo(PGSQL_V_9_4) >= 0) {
+            aggregates.put(MedianVisitor.class, "median");
+        }
+    }
+
+    @Override
+    public String getAggregateFunction(String function, AttributeDescriptor attribute) {
+        // percentile_cont only accepts numbers and intervals, other types are left to
+        // the in memory median
+        if ("median".equals(function) && (attribute == null 
+                || !Number.class.isAssignableFrom(attribute.getType().getBinding()))) {
+            return null;
+        }
+        return function;
+    }
+
+    @Override
+    public void encodeAggregateFunction(String function, String column, StringBuffer sql) {
+        if ("median".equals(function)) {
+            sql.append("percentile_cont(0.5) WITHIN GROUP (ORDER BY ").append(column).append(")");
+        } else {
+            super.encodeAggregateFunction(function, column, sql);
+        }
+    }
+
     static final Version V_1_5_0 = new Version("1.5.0");
 
     static final Version V_2_0_0 = new Version("2.0.0");
 
+    static final Version V_2_1_0 = new Version("2.1.0");
+
+    static final Version V_2_2_0 = new Version("2.2.0");
+
     static final Version PGSQL_V_9_0 = new Version("9.0");
     
     static final Version PGSQL_V_9_1 = new Version("9.1");
 
+    static final Version PGSQL_V_9_4 = new Version("9.4");
+
     public PostGISDialect(JDBCDataStore dataStore) {
         super(dataStore);
     }
@@ -136,6 +183,17 @@ public class PostGISDialect extends BasicSQLDialect {
     
     Version version, pgsqlVersion;
 
+    /**
+     * Whether geometries are transferred as raw bytea, requires a driver that understands the
+     * hex bytea output of PostgreSQL 9 (older drivers get base64 encoded text instead)
+     */
+    volatile boolean binaryTransfer;
+
+    /** Whether ST_AsTWKB is available to transfer simplified geometries */
+    volatile boolean twkbSupported;
+
+    volatile boolean transferChecked;
+
     public boolean isLooseBBOXEnabled() {
         return looseBBOXEnabled;
     }
@@ -182,6 +240,34 @@ public class PostGISDialect extends BasicSQLDialect {
     public void initializeConnection(Connection cx) throws SQLException {
         super.initializeConnection(cx);
         getPostgreSQLVersion(cx);
+        if (!transferChecked) {
+            checkGeometryTransfer(cx);
+        }
+    }
+
+    /**
+     * Figures out how geometries can be transferred, done once against the first connection
+     */
+    synchronized void checkGeometryTransfer(Connection cx) {
+        if (transferChecked) {
+            return;
+        }
+        try {
+            binaryTransfer = cx.getMetaData().getDriverMajorVersion() >= 9;
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Could not determine the JDBC driver version, "
+                    + "geometries will be transferred base64 encoded", e);
+            binaryTransfer = false;
+        }
+        try {
+            Version postgis = getVersion(cx);
+            twkbSupported = postgis != null && postgis.compareTo(V_2_2_0) >= 0;
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Could not determine the PostGIS version, "
+                    + "TWKB transfer disabled", e);
+            twkbSupported = false;
+        }
+        transferChecked = true;
     }
 
     @Override
@@ -233,6 +319,7 @@ public class PostGISDialect extends BasicSQLDialect {
         }  else {
             reader.setGeometryFactory(factory);
         }
+        reader.setBase64(!binaryTransfer);
         return reader;
     }
 
@@ -250,25 +337,55 @@ public class PostGISDialect extends BasicSQLDialect {
                 JDBCDataStore.JDBC_NATIVE_TYPENAME));
     
         if (geography) {
-            sql.append("encode(ST_AsBinary(");
+            encodeBinaryStart(sql);
+            sql.append("ST_AsBinary(");
             encodeColumnName(prefix, gatt.getLocalName(), sql);
-            sql.append("),'base64')");
+            sql.append(")");
+            encodeBinaryEnd(sql);
         }
         else {
             boolean force2D = hints != null && hints.containsKey(Hints.FEATURE_2D) && 
                 Boolean.TRUE.equals(hints.get(Hints.FEATURE_2D));
 
+            encodeBinaryStart(sql);
             if (force2D) {
-                sql.append("encode(ST_AsBinary(ST_Force_2D(");
+                sql.append("ST_AsBinary(ST_Force_2D(");
                 encodeColumnName(prefix, gatt.getLocalName(), sql);
-                sql.append(")),'base64')");
+                sql.append("))");
             } else {
-                sql.append("encode(ST_AsEWKB(");
+                sql.append("ST_AsEWKB(");
                 encodeColumnName(prefix, gatt.getLocalName(), sql);
-                sql.append("),'base64')");
+                sql.append(")");
             }
+            encodeBinaryEnd(sql);
+        }
+    }
+
+    /**
+     * Opens the base64 encoding of a binary geometry column, unless raw bytea transfer is enabled
+     */
+    void encodeBinaryStart(StringBuffer sql) {
+        if (!binaryTransfer) {
+            sql.append("encode(");
         }
     }
+
+    void encodeBinaryEnd(StringBuffer sql) {
+        if (!binaryTransfer) {
+            sql.append(",'base64')");
+        }
+    }
+
+    /**
+     * Returns the number of decimal digits TWKB should retain so that the rounding error stays
+     * well below the simplification distance. TWKB can store between -8 and 7, zero is avoided
+     * so that the first byte of the output never looks like a WKB byte order marker.
+     */
+    static int getTWKBPrecision(double distance) {
+        int precision = (int) Math.ceil(-Math.log10(distance)) + 1;
+        precision = Math.max(-7, Math.min(7, precision));
+        return precision == 0 ? 1 : precision;
+    }
     
     @Override
     public void encodeGeometryColumnSimplified(GeometryDescriptor gatt, String prefix, int srid,
@@ -279,15 +396,22 @@ public class PostGISDialect extends BasicSQLDialect {
             boolean geography = "geography".equals(gatt.getUserData().get(
                     JDBCDataStore.JDBC_NATIVE_TYPENAME));
     
+            encodeBinaryStart(sql);
             if (geography) {
-                sql.append("encode(ST_AsBinary(");
+                sql.append("ST_AsBinary(");
+                encodeColumnName(prefix, gatt.getLocalName(), sql);
+                sql.append(")");
+            } else if (twkbSupported && distance != null && distance > 0
+                    && !Double.isInfinite(distance)) {
+                sql.append("ST_AsTWKB(ST_Simplify(ST_Force_2D(");
                 encodeColumnName(prefix, gatt.getLocalName(), sql);
-                sql.append("),'base64')");
+                sql.append("), "  + distance + "), " + getTWKBPrecision(distance) + ")");
             } else {
-                sql.append("encode(ST_AsBinary(ST_Simplify(ST_Force_2D(");
+                sql.append("ST_AsBinary(ST_Simplify(ST_Force_2D(");
                 encodeColumnName(prefix, gatt.getLocalName(), sql);
-                sql.append("), "  + distance + ")),'base64')");
+                sql.append("), "  + distance + "))");
             }
+            encodeBinaryEnd(sql);
         }
     }
 
@@ -304,6 +428,12 @@ public class PostGISDialect extends BasicSQLDialect {
         if (!estimatedExtentsEnabled)
             return null;
 
+        return getEstimatedBounds(schema, featureType, cx);
+    }
+
+    @Override
+    public List<ReferencedEnvelope> getEstimatedBounds(String schema, SimpleFeatureType featureType,
+            Connection cx) throws SQLException, IOException {
         String tableName = featureType.getTypeName();
         if (dataStore.getVirtualTables().get(tableName) != null) {
             return null;
@@ -324,7 +454,10 @@ public class PostGISDialect extends BasicSQLDialect {
                 if (att instanceof GeometryDescriptor) {
                     // use estimated extent (optimizer statistics)
                     StringBuffer sql = new StringBuffer();
-                    sql.append("select ST_AsText(ST_force_2d(ST_Envelope(ST_Estimated_Extent('");
+                    Version version = getVersion(cx);
+                    String function = version != null && version.compareTo(V_2_1_0) >= 0 ? 
+                            "ST_EstimatedExtent" : "ST_Estimated_Extent";
+                    sql.append("select ST_AsText(ST_force_2d(ST_Envelope(" + function + "('");
                     if(schema != null) {
                         sql.append(schema);
                         sql.append("', '");
@@ -365,6 +498,55 @@ public class PostGISDialect extends BasicSQLDialect {
         return result;
     }
 
+    @Override
+    public int getEstimatedCount(String schema, SimpleFeatureType featureType, Connection cx)
+            throws SQLException, IOException {
+        String tableName = featureType.getTypeName();
+        if (dataStore.getVirtualTables().get(tableName) != null) {
+            return -1;
+        }
+
+        StringBuffer name = new StringBuffer();
+        if (schema != null && !"".equals(schema)) {
+            encodeSchemaName(schema, name);
+            name.append(".");
+        }
+        encodeTableName(tableName, name);
+
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        Savepoint savePoint = null;
+        try {
+            if(!cx.getAutoCommit()) {
+                savePoint = cx.setSavepoint();
+            }
+            // planner statistics, updated by VACUUM, ANALYZE and CREATE INDEX
+            ps = cx.prepareStatement("SELECT reltuples, relpages FROM pg_class WHERE oid = ?::regclass");
+            ps.setString(1, name.toString());
+            rs = ps.executeQuery();
+            if (rs.next()) {
+                double tuples = rs.getDouble(1);
+                // never analyzed tables report no pages and zero or negative tuples
+                if (tuples > 0 || (tuples == 0 && rs.getInt(2) > 0)) {
+                    return (int) Math.min(Math.round(tuples), Integer.MAX_VALUE);
+                }
+            }
+            return -1;
+        } catch(SQLException e) {
+            if(savePoint != null) {
+                cx.rollback(savePoint);
+            }
+            LOGGER.log(Level.WARNING, "Failed to read the table statistics, falling back on count", e);
+            return -1;
+        } finally {
+            if(savePoint != null) {
+                cx.releaseSavepoint(savePoint);
+            }
+            dataStore.closeSafe(rs);
+            dataStore.closeSafe(ps);
+        }
+    }
+
     @Override
     public Envelope decodeGeometryEnvelope(ResultSet rs, int column,
             Connection cx) throws SQLException, IOException {
@@ -697,6 +879,100 @@ public class PostGISDialect extends BasicSQLDialect {
         return null;
     }
 
+    @Override
+    public List<Object> getNextSequenceValues(String schemaName, String sequenceName,
+            int count, Connection cx) throws SQLException {
+        Statement st = cx.createStatement();
+        try {
+            String sql = "SELECT nextval('" + sequenceName + "') FROM generate_series(1, "
+                    + count + ")";
+
+            dataStore.getLogger().fine(sql);
+            ResultSet rs = st.executeQuery(sql);
+            try {
+                List<Object> values = new ArrayList<Object>(count);
+                while (rs.next()) {
+                    values.add(rs.getLong(1));
+                }
+                return values;
+            } finally {
+                dataStore.closeSafe(rs);
+            }
+        } finally {
+            dataStore.closeSafe(st);
+        }
+    }
+    
+    @Override
+    public boolean isBulkLoadSupported() {
+        return true;
+    }
+    
+    /**
+     * Loads the rows with a <code>COPY ... FROM STDIN</code>, in text format with hex encoded
+     * EWKB geometries
+     */
+    @Override
+    public long bulkLoad(SimpleFeatureType featureType, String[] columns, Class[] bindings,
+            int[] srids, Iterator<Object[]> rows, Connection cx) throws SQLException,
+            IOException {
+        StringBuffer sql = new StringBuffer("COPY ");
+        String schema = dataStore.getDatabaseSchema();
+        if (schema != null && !"".equals(schema)) {
+            encodeSchemaName(schema, sql);
+            sql.append(".");
+        }
+        encodeTableName(featureType.getTypeName(), sql);
+        sql.append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            encodeColumnName(columns[i], sql);
+        }
+        sql.append(") FROM STDIN");
+        dataStore.getLogger().fine(sql.toString());
+
+        CopyIn copy = unwrapConnection(cx).getCopyAPI().copyIn(sql.toString());
+        return new PostGISCopyLoader(featureType, columns, bindings, srids).load(rows, copy);
+    }
+    
+    /**
+     * Obtains the native postgres connection, needed to access the COPY api
+     */
+    PGConnection unwrapConnection(Connection cx) throws SQLException {
+        if (cx instanceof PGConnection) {
+            return (PGConnection) cx;
+        }
+
+        try {
+            UnWrapper unwrapper = DataSourceFinder.getUnWrapper(cx);
+            if (unwrapper != null) {
+                Connection uwcx = unwrapper.unwrap(cx);
+                if (uwcx instanceof PGConnection) {
+                    return (PGConnection) uwcx;
+                }
+            } else {
+                // try to use java 6 unwrapping
+                try {
+                    if (cx.isWrapperFor(PGConnection.class)) {
+                        return cx.unwrap(PGConnection.class);
+                    }
+                } catch (Throwable t) {
+                    // not a mistake, old DBCP versions will throw an Error here, we need to
+                    // catch it
+                    LOGGER.log(Level.FINER, "Failed to unwrap connection using java 6 facilities",
+                            t);
+                }
+            }
+        } catch (IOException e) {
+            throw (SQLException) new SQLException(
+                    "Could not obtain native postgres connection.").initCause(e);
+        }
+
+        throw new SQLException("Could not obtain native postgres connection for " + cx);
+    }
+
     @Override
     public boolean lookupGeneratedValuesPostInsert() {
         return true;
@@ -22,14 +22,19 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.geotools.factory.Hints;
 import org.geotools.jdbc.ColumnMetadata;
 import org.geotools.jdbc.JDBCDataStore;
 import org.geotools.jdbc.PreparedFilterToSQL;
+import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.jdbc.PreparedStatementSQLDialect;
+import org.opengis.feature.FeatureVisitor;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.feature.type.GeometryDescriptor;
 
 import com.vividsolutions.jts.geom.Envelope;
@@ -57,6 +62,40 @@ public class PostGISPSDialect extends PreparedStatementSQLDialect {
     public boolean isAggregatedSortSupported(String function) {
         return "distinct".equalsIgnoreCase(function);
     }
+
+    @Override
+    public void registerAggregateFunctions(
+            Map<Class<? extends FeatureVisitor>, String> aggregates) {
+        delegate.registerAggregateFunctions(aggregates);
+    }
+
+    @Override
+    public void encodeAggregateFunction(String function, String column, StringBuffer sql) {
+        delegate.encodeAggregateFunction(function, column, sql);
+    }
+
+    @Override
+    public String getAggregateFunction(String function, AttributeDescriptor attribute) {
+        return delegate.getAggregateFunction(function, attribute);
+    }
+    
+    @Override
+    public List<ReferencedEnvelope> getOptimizedBounds(String schema,
+            SimpleFeatureType featureType, Connection cx) throws SQLException, IOException {
+        return delegate.getOptimizedBounds(schema, featureType, cx);
+    }
+
+    @Override
+    public List<ReferencedEnvelope> getEstimatedBounds(String schema,
+            SimpleFeatureType featureType, Connection cx) throws SQLException, IOException {
+        return delegate.getEstimatedBounds(schema, featureType, cx);
+    }
+
+    @Override
+    public int getEstimatedCount(String schema, SimpleFeatureType featureType, Connection cx)
+            throws SQLException, IOException {
+        return delegate.getEstimatedCount(schema, featureType, cx);
+    }
     
     @Override
     public boolean includeTable(String schemaName, String tableName, Connection cx)
@@ -152,6 +191,24 @@ public class PostGISPSDialect extends PreparedStatementSQLDialect {
                 cx);
     }
 
+    @Override
+    public List<Object> getNextSequenceValues(String schemaName, String sequenceName,
+            int count, Connection cx) throws SQLException {
+        return delegate.getNextSequenceValues(schemaName, sequenceName, count, cx);
+    }
+
+    @Override
+    public boolean isBulkLoadSupported() {
+        return delegate.isBulkLoadSupported();
+    }
+
+    @Override
+    public long bulkLoad(SimpleFeatureType featureType, String[] columns, Class[] bindings,
+            int[] srids, Iterator<Object[]> rows, Connection cx) throws SQLException,
+            IOException {
+        return delegate.bulkLoad(featureType, columns, bindings, srids, rows, cx);
+    }
+
     public boolean isLooseBBOXEnabled() {
         return delegate.isLooseBBOXEnabled();
     }
@@ -85,6 +85,14 @@ public class PostgisNGDataStoreFactory extends JDBCDataStoreFactory {
     public static final Param SIMPLIFY = new Param("Support on the fly geometry simplification", Boolean.class, 
             "When enabled, operations such as map rendering will pass a hint that will enable the usage of ST_Simplify", false, Boolean.TRUE);
     
+    /**
+     * Enables loading big feature collections with COPY instead of inserts
+     */
+    public static final Param BULK_LOAD_THRESHOLD = new Param("Bulk load threshold", Integer.class,
+            "Minimum number of features a collection must have for it to be loaded with a COPY " +
+            "instead of regular inserts. Set to 0 to disable bulk loading", false, 0,
+            new KVP( Param.LEVEL, "advanced"));
+    
     
     @Override
     protected SQLDialect createSQLDialect(JDBCDataStore dataStore) {
@@ -156,6 +164,12 @@ public class PostgisNGDataStoreFactory extends JDBCDataStoreFactory {
         // check geometry simplification (on by default)
         Boolean simplify = (Boolean) SIMPLIFY.lookUp(params);
         dialect.setSimplifyEnabled(simplify == null || simplify);
+        
+        // check if big collections should be loaded with COPY
+        Integer bulkLoadThreshold = (Integer) BULK_LOAD_THRESHOLD.lookUp(params);
+        if (bulkLoadThreshold != null && bulkLoadThreshold > 0) {
+            dataStore.setBulkLoadThreshold(bulkLoadThreshold);
+        }
 
         return dataStore;
     }
@@ -174,6 +188,7 @@ public class PostgisNGDataStoreFactory extends JDBCDataStoreFactory {
         parameters.put(MAX_OPEN_PREPARED_STATEMENTS.key, MAX_OPEN_PREPARED_STATEMENTS);
         parameters.put(ENCODE_FUNCTIONS.key, ENCODE_FUNCTIONS);
         parameters.put(SIMPLIFY.key, SIMPLIFY);
+        parameters.put(BULK_LOAD_THRESHOLD.key, BULK_LOAD_THRESHOLD);
         parameters.put(CREATE_DB_IF_MISSING.key, CREATE_DB_IF_MISSING);
         parameters.put(CREATE_PARAMS.key, CREATE_PARAMS);
     }
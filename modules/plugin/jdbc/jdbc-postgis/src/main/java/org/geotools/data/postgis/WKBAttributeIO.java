@@ -28,8 +28,6 @@ import org.geotools.data.DataSourceException;
 
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
-import com.vividsolutions.jts.io.ByteArrayInStream;
-import com.vividsolutions.jts.io.WKBReader;
 import com.vividsolutions.jts.io.WKBWriter;
 
 
@@ -44,20 +42,31 @@ import com.vividsolutions.jts.io.WKBWriter;
  * @since 2.4.1
  */
 public class WKBAttributeIO {
-    WKBReader wkbr;
-    ByteArrayInStream inStream = new ByteArrayInStream(new byte[0]);
-    GeometryFactory gf;
+    PackedWKBReader wkbr;
+    boolean base64 = true;
 
     public WKBAttributeIO() {
         this(new GeometryFactory());
     }
     
     public WKBAttributeIO(GeometryFactory gf) {
-        wkbr = new WKBReader(gf);
+        wkbr = new PackedWKBReader(gf);
     }
     
     public void setGeometryFactory(GeometryFactory gf) {
-        wkbr = new WKBReader(gf);
+        wkbr.setGeometryFactory(gf);
+    }
+
+    public boolean isBase64() {
+        return base64;
+    }
+
+    /**
+     * Sets whether the column values are base64 encoded (the default) or carry the raw
+     * WKB/TWKB bytes
+     */
+    public void setBase64(boolean base64) {
+        this.base64 = base64;
     }
 
     /**
@@ -78,8 +87,7 @@ public class WKBAttributeIO {
         if (wkbBytes == null)  //DJB: null value from database --> null geometry (the same behavior as WKT).  NOTE: sending back a GEOMETRYCOLLECTION(EMPTY) is also a possibility, but this is not the same as NULL
             return null;
         try {
-            inStream.setBytes(wkbBytes);
-            return wkbr.read(inStream);
+            return wkbr.read(wkbBytes);
         } catch (Exception e) {
             throw new DataSourceException("An exception occurred while parsing WKB data", e);
         }
@@ -94,7 +102,7 @@ public class WKBAttributeIO {
             byte bytes[] = rs.getBytes(columnName);
             if (bytes == null) // ie. its a null column -> return a null geometry!
                 return null;
-            return wkb2Geometry(Base64.decode(bytes));
+            return wkb2Geometry(base64 ? Base64.decode(bytes) : bytes);
         } catch (SQLException e) {
             throw new DataSourceException("SQL exception occurred while reading the geometry.", e);
         }
@@ -109,7 +117,7 @@ public class WKBAttributeIO {
             byte bytes[] = rs.getBytes(columnIndex);
             if (bytes == null) // ie. its a null column -> return a null geometry!
                 return null;
-            return wkb2Geometry(Base64.decode(bytes));
+            return wkb2Geometry(base64 ? Base64.decode(bytes) : bytes);
         } catch (SQLException e) {
             throw new DataSourceException("SQL exception occurred while reading the geometry.", e);
         }
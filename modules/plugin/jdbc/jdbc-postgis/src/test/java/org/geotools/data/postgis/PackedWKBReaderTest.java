@@ -0,0 +1,163 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.postgis;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+
+import org.geotools.geometry.jts.LiteCoordinateSequence;
+import org.geotools.geometry.jts.LiteCoordinateSequenceFactory;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.io.ByteOrderValues;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBWriter;
+import com.vividsolutions.jts.io.WKTReader;
+
+/**
+ *
+ *
+ * @source $URL$
+ */
+public class PackedWKBReaderTest {
+
+    GeometryFactory liteFactory = new GeometryFactory(new LiteCoordinateSequenceFactory());
+
+    WKTReader wkt = new WKTReader();
+
+    @Test
+    public void testWKB() throws Exception {
+        PackedWKBReader reader = new PackedWKBReader(liteFactory);
+        String[] geometries = new String[] { "POINT(1 2)", "LINESTRING(1 2, 3 4, 5 6)",
+                "POLYGON((0 0, 10 0, 10 10, 0 10, 0 0), (1 1, 2 1, 2 2, 1 1))",
+                "MULTIPOINT((1 2), (3 4))", "MULTILINESTRING((1 2, 3 4), (5 6, 7 8))",
+                "MULTIPOLYGON(((0 0, 1 0, 1 1, 0 0)), ((5 5, 6 5, 6 6, 5 5)))",
+                "GEOMETRYCOLLECTION(POINT(1 2), LINESTRING(3 4, 5 6))" };
+        for (String g : geometries) {
+            Geometry expected = wkt.read(g);
+            for (int order : new int[] { ByteOrderValues.BIG_ENDIAN,
+                    ByteOrderValues.LITTLE_ENDIAN }) {
+                byte[] bytes = new WKBWriter(2, order).write(expected);
+                Geometry actual = reader.read(bytes);
+                assertTrue(g, expected.equalsExact(actual));
+            }
+        }
+    }
+
+    @Test
+    public void testEWKB() throws Exception {
+        PackedWKBReader reader = new PackedWKBReader(liteFactory);
+        Geometry expected = wkt.read("LINESTRING(1 2 3, 4 5 6)");
+        expected.setSRID(4326);
+        byte[] bytes = new WKBWriter(3, ByteOrderValues.LITTLE_ENDIAN, true).write(expected);
+
+        LineString actual = (LineString) reader.read(bytes);
+        assertEquals(4326, actual.getSRID());
+        assertTrue(actual.getCoordinateSequence() instanceof LiteCoordinateSequence);
+        assertEquals(3, actual.getCoordinateSequence().getDimension());
+        assertEquals(6, actual.getCoordinateN(1).z, 0d);
+        assertTrue(expected.equalsExact(actual));
+    }
+
+    @Test
+    public void testDefaultFactory() throws Exception {
+        PackedWKBReader reader = new PackedWKBReader(new GeometryFactory());
+        Geometry expected = wkt.read("POLYGON((0 0, 10 0, 10 10, 0 10, 0 0))");
+        Geometry actual = reader.read(new WKBWriter().write(expected));
+        assertTrue(actual instanceof Polygon);
+        assertTrue(expected.equalsExact(actual));
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        PackedWKBReader reader = new PackedWKBReader(liteFactory);
+        // large enough to force the internal buffer to grow
+        StringBuilder sb = new StringBuilder("LINESTRING(");
+        for (int i = 0; i < 1000; i++) {
+            sb.append(i > 0 ? ", " : "").append(i).append(" ").append(i * 2);
+        }
+        Geometry expected = wkt.read(sb.append(")").toString());
+        byte[] bytes = new WKBWriter().write(expected);
+        assertTrue(expected.equalsExact(reader.read(new ByteArrayInputStream(bytes))));
+        // buffer reuse
+        Geometry point = wkt.read("POINT(1 2)");
+        bytes = new WKBWriter().write(point);
+        assertTrue(point.equalsExact(reader.read(new ByteArrayInputStream(bytes))));
+    }
+
+    @Test
+    public void testEmptyPoint() throws Exception {
+        PackedWKBReader reader = new PackedWKBReader(liteFactory);
+        // PostGIS encodes POINT EMPTY using NaN ordinates
+        Point nan = liteFactory.createPoint(new LiteCoordinateSequence(new double[] { Double.NaN,
+                Double.NaN }, 2));
+        Point actual = (Point) reader.read(new WKBWriter().write(nan));
+        assertTrue(actual.isEmpty());
+    }
+
+    @Test
+    public void testTWKBLineString() throws Exception {
+        PackedWKBReader reader = new PackedWKBReader(liteFactory);
+        // ST_AsTWKB('LINESTRING(1 1,5 5)'::geometry)
+        Geometry actual = reader.read(bytes(0x02, 0x00, 0x02, 0x02, 0x02, 0x08, 0x08));
+        assertTrue(wkt.read("LINESTRING(1 1, 5 5)").equalsExact(actual));
+
+        // ST_AsTWKB('LINESTRING(1.1 2, 3 4.5)'::geometry, 1)
+        actual = reader.read(bytes(0x22, 0x00, 0x02, 0x16, 0x28, 0x26, 0x32));
+        assertTrue(wkt.read("LINESTRING(1.1 2, 3 4.5)").equalsExact(actual, 1e-9));
+    }
+
+    @Test
+    public void testTWKBMultiPolygon() throws Exception {
+        PackedWKBReader reader = new PackedWKBReader(liteFactory);
+        // MULTIPOLYGON(((0 0, 1 0, 1 1, 0 0)), ((2 2, 3 2, 3 3, 2 2))) with precision 1,
+        // the deltas carry on from one polygon to the next
+        byte[] bytes = bytes(0x26, 0x00, 0x02,
+                0x01, 0x04, 0x00, 0x00, 0x14, 0x00, 0x00, 0x14, 0x13, 0x13,
+                0x01, 0x04, 0x28, 0x28, 0x14, 0x00, 0x00, 0x14, 0x13, 0x13);
+        Geometry expected = wkt
+                .read("MULTIPOLYGON(((0 0, 1 0, 1 1, 0 0)), ((2 2, 3 2, 3 3, 2 2)))");
+        assertTrue(expected.equalsExact(reader.read(bytes), 1e-9));
+    }
+
+    @Test
+    public void testTWKBEmpty() throws Exception {
+        PackedWKBReader reader = new PackedWKBReader(liteFactory);
+        assertTrue(reader.read(bytes(0x23, 0x10)).isEmpty());
+    }
+
+    @Test(expected = ParseException.class)
+    public void testTruncated() throws Exception {
+        Geometry g = wkt.read("LINESTRING(1 2, 3 4, 5 6)");
+        byte[] bytes = new WKBWriter().write(g);
+        new PackedWKBReader(liteFactory).read(bytes, 0, bytes.length - 4);
+    }
+
+    byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+}
@@ -16,6 +16,8 @@
  */
 package org.geotools.data.postgis;
 
+import java.io.IOException;
+
 import org.geotools.jdbc.JDBCFeatureStoreOnlineTest;
 import org.geotools.jdbc.JDBCTestSetup;
 
@@ -30,5 +32,11 @@ public class PostgisFeatureStoreOnlineTest extends JDBCFeatureStoreOnlineTest {
     protected JDBCTestSetup createTestSetup() {
         return new PostGISTestSetup();
     }
+    
+    public void testAddFeaturesBulkLoad() throws IOException {
+        // load any collection with a COPY
+        dataStore.setBulkLoadThreshold(1);
+        checkAddFeatures();
+    }
 
 }
@@ -25,12 +25,15 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 
 import org.geotools.data.jdbc.FilterToSQL;
 import org.geotools.factory.Hints;
 import org.geotools.geometry.jts.Geometries;
+import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.jdbc.BasicSQLDialect;
 import org.geotools.jdbc.JDBCDataStore;
 import org.geotools.referencing.CRS;
@@ -279,6 +282,88 @@ public class SpatiaLiteDialect extends BasicSQLDialect {
         return super.getGeometrySRID(schemaName, tableName, columnName, cx);
     }
 
+    @Override
+    public List<ReferencedEnvelope> getEstimatedBounds(String schema,
+            SimpleFeatureType featureType, Connection cx) throws SQLException, IOException {
+        List<ReferencedEnvelope> result = new ArrayList<ReferencedEnvelope>();
+        for (AttributeDescriptor att : featureType.getAttributeDescriptors()) {
+            if (att instanceof GeometryDescriptor) {
+                double[] stats = getLayerStatistics(featureType.getTypeName(), 
+                        att.getLocalName(), cx);
+                if (stats == null) {
+                    return null;
+                }
+                CoordinateReferenceSystem crs = ((GeometryDescriptor) att)
+                        .getCoordinateReferenceSystem();
+                result.add(new ReferencedEnvelope(stats[1], stats[3], stats[2], stats[4], crs));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int getEstimatedCount(String schema, SimpleFeatureType featureType, Connection cx)
+            throws SQLException, IOException {
+        GeometryDescriptor gd = featureType.getGeometryDescriptor();
+        if (gd == null) {
+            return -1;
+        }
+        double[] stats = getLayerStatistics(featureType.getTypeName(), gd.getLocalName(), cx);
+        return stats != null ? (int) stats[0] : -1;
+    }
+
+    /**
+     * Reads the row count and extent SpatiaLite keeps for a geometry column, as updated by
+     * UpdateLayerStatistics(), from geometry_columns_statistics (SpatiaLite 4) or 
+     * layer_statistics (older versions).
+     * 
+     * @return row count, min x, min y, max x, max y, or null if not available
+     */
+    double[] getLayerStatistics(String tableName, String columnName, Connection cx)
+            throws SQLException {
+        String[] queries = new String[] {
+            "SELECT row_count, extent_min_x, extent_min_y, extent_max_x, extent_max_y " + 
+            "FROM geometry_columns_statistics " + 
+            "WHERE f_table_name = '" + tableName + "' " + 
+            "AND f_geometry_column = '" + columnName + "'",
+            "SELECT row_count, extent_min_x, extent_min_y, extent_max_x, extent_max_y " + 
+            "FROM layer_statistics " + 
+            "WHERE table_name = '" + tableName + "' " + 
+            "AND geometry_column = '" + columnName + "'" };
+        Statement st = cx.createStatement();
+        try {
+            for (String sql : queries) {
+                LOGGER.fine( sql );
+                try {
+                    ResultSet rs = st.executeQuery(sql);
+                    try {
+                        if (rs.next()) {
+                            double[] stats = new double[5];
+                            for (int i = 0; i < stats.length; i++) {
+                                stats[i] = rs.getDouble(i + 1);
+                                if (rs.wasNull()) {
+                                    // statistics never computed
+                                    return null;
+                                }
+                            }
+                            return stats;
+                        }
+                    }
+                    finally {
+                        dataStore.closeSafe(rs);
+                    }
+                }
+                catch(SQLException e) {
+                    LOGGER.log(Level.FINEST, "error querying the layer statistics", e);
+                }
+            }
+        }
+        finally {
+            dataStore.closeSafe( st );
+        }
+        return null;
+    }
+
     @Override
     public void encodeGeometryColumn(GeometryDescriptor gatt, String prefix,
             int srid, Hints hints, StringBuffer sql) {
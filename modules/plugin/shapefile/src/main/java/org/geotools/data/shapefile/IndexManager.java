@@ -7,8 +7,13 @@ import java.io.IOException;
 import java.net.URL;
 import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.TreeSet;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -23,14 +28,33 @@ import org.geotools.data.shapefile.index.CachedQuadTree;
 import org.geotools.data.shapefile.index.CloseableIterator;
 import org.geotools.data.shapefile.index.Data;
 import org.geotools.data.shapefile.index.DataDefinition;
+import org.geotools.data.shapefile.index.QuadTreeCache;
 import org.geotools.data.shapefile.index.TreeException;
+import org.geotools.data.shapefile.index.attribute.AttributeIndex;
 import org.geotools.data.shapefile.index.quadtree.QuadTree;
 import org.geotools.data.shapefile.index.quadtree.StoreException;
 import org.geotools.data.shapefile.index.quadtree.fs.FileSystemIndexStore;
+import org.geotools.data.shapefile.index.rtree.PackedRTree;
 import org.geotools.data.shapefile.shp.IndexFile;
+import org.geotools.util.Converters;
 import org.geotools.util.NullProgressListener;
 import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.filter.And;
+import org.opengis.filter.BinaryComparisonOperator;
+import org.opengis.filter.Filter;
 import org.opengis.filter.Id;
+import org.opengis.filter.Or;
+import org.opengis.filter.PropertyIsBetween;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.PropertyIsGreaterThan;
+import org.opengis.filter.PropertyIsGreaterThanOrEqualTo;
+import org.opengis.filter.PropertyIsLessThan;
+import org.opengis.filter.PropertyIsLessThanOrEqualTo;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
 import org.opengis.filter.identity.Identifier;
 
 import com.vividsolutions.jts.geom.Envelope;
@@ -50,9 +74,35 @@ class IndexManager {
 
     int maxQixCacheSize = DEFAULT_MAX_QIX_CACHE_SIZE;
 
-    CachedQuadTree cachedTree;
+    /**
+     * The cache of in memory quadtrees, shared with the other stores
+     */
+    QuadTreeCache quadTreeCache = QuadTreeCache.getDefault();
 
     ShapefileDataStore store;
+
+    /**
+     * The columns of the attribute index, along with the time stamp and size of the index file
+     * they have been read from
+     */
+    Set<String> attributeIndexColumns;
+
+    long attributeIndexLastModified;
+
+    long attributeIndexLength;
+
+    /**
+     * The packed R-tree kept open between queries, along with the time stamp and size of the
+     * index file it has been opened from. Searches hold the read lock, opening and closing the
+     * tree require the write one
+     */
+    PackedRTree packedTree;
+
+    long packedTreeLastModified;
+
+    long packedTreeLength;
+
+    final ReentrantReadWriteLock packedTreeLock = new ReentrantReadWriteLock();
     
     /**
      * Used to lock the files when doing accesses to check indexes and the like
@@ -90,15 +140,35 @@ class IndexManager {
      * @return true if the spatial index has been created/updated
      */
     public boolean createSpatialIndex(boolean force) {
+        return createSpatialIndex(force, store.isPackedSpatialIndex());
+    }
+
+    /**
+     * Creates the quadtree or packed R-tree spatial index is appropriate.
+     * 
+     * @param force Forces the index re-creation even if the spatial index seems to be up to date
+     * @param packed If true the packed R-tree (.hrx) will be created, otherwise the quadtree (.qix)
+     * @return true if the spatial index has been created/updated
+     */
+    boolean createSpatialIndex(boolean force, boolean packed) {
         // create index as needed
         try {
-            if (shpFiles.isLocal() && (isIndexStale(QIX) || force)) {
+            if (shpFiles.isLocal() && (isIndexStale(packed ? HRX : QIX) || force)) {
                 ShapefileDataStoreFactory.LOGGER.fine("Creating spatial index for "
                         + shpFiles.get(SHP));
 
+                if (packed) {
+                    // release the old tree before the file gets replaced
+                    closePackedRTree();
+                }
                 ShapeFileIndexer indexer = new ShapeFileIndexer();
                 indexer.setShapeFileName(shpFiles);
+                indexer.setPacked(packed);
                 indexer.index(false, new NullProgressListener());
+                if (!packed) {
+                    // the file timestamp might not have changed, make sure the old tree is gone
+                    quadTreeCache.remove(DataUtilities.urlToFile(new URL(shpFiles.get(QIX))));
+                }
 
                 return true;
             }
@@ -176,12 +246,13 @@ class IndexManager {
      * @return
      */
     boolean isSpatialIndexAvailable() {
-        return shpFiles.isLocal() && shpFiles.exists(QIX);
+        return shpFiles.isLocal()
+                && (shpFiles.exists(QIX) || (store.isPackedSpatialIndex() && shpFiles.exists(HRX)));
     }
 
     /**
-     * Returns true if the specified index file is outdated compared to the shapefile .shp and .shx
-     * files
+     * Returns true if the specified index file is outdated compared to the files it is built
+     * from, the shapefile .shp and .shx files, or the .dbf file for the attribute index
      * 
      * @param indexType
      * @return
@@ -191,29 +262,35 @@ class IndexManager {
             throw new IllegalStateException(
                     "This method only applies if the files are local and the file can be created");
 
+        ShpFileType sourceType = indexType == AIX ? DBF : SHP;
         URL indexURL = shpFiles.acquireRead(indexType, writer);
-        URL shpURL = shpFiles.acquireRead(SHP, writer);
+        URL sourceURL = shpFiles.acquireRead(sourceType, writer);
         try {
 
             if (indexURL == null) {
                 return true;
             }
-            // indexes require both the SHP and SHX so if either or missing then
-            // you don't need to
-            // index
-            if (!shpFiles.exists(SHX) || !shpFiles.exists(SHP)) {
+            if (indexType == AIX) {
+                // the attribute index cannot be trusted without the dbf it was built from
+                if (!shpFiles.exists(DBF)) {
+                    return true;
+                }
+            } else if (!shpFiles.exists(SHX) || !shpFiles.exists(SHP)) {
+                // indexes require both the SHP and SHX so if either or missing then
+                // you don't need to
+                // index
                 return false;
             }
 
             File indexFile = DataUtilities.urlToFile(indexURL);
-            File shpFile = DataUtilities.urlToFile(shpURL);
+            File sourceFile = DataUtilities.urlToFile(sourceURL);
             long indexLastModified = indexFile.lastModified();
-            long shpLastModified = shpFile.lastModified();
-            boolean shpChangedMoreRecently = indexLastModified < shpLastModified;
-            return !indexFile.exists() || shpChangedMoreRecently;
+            long sourceLastModified = sourceFile.lastModified();
+            boolean sourceChangedMoreRecently = indexLastModified < sourceLastModified;
+            return !indexFile.exists() || sourceChangedMoreRecently;
         } finally {
-            if (shpURL != null) {
-                shpFiles.unlockRead(shpURL, writer);
+            if (sourceURL != null) {
+                shpFiles.unlockRead(sourceURL, writer);
             }
             if (indexURL != null) {
                 shpFiles.unlockRead(indexURL, writer);
@@ -231,50 +308,48 @@ class IndexManager {
      * @throws TreeException
      */
     List<Data> queryFidIndex(Id fidFilter) throws IOException {
-        // sort by fid to increase performance and allow skipping on natural order
-        TreeSet<Identifier> idsSet = new TreeSet<Identifier>(new IdentifierComparator(store.getTypeName().getLocalPart()));
-        idsSet.addAll(fidFilter.getIdentifiers());
+        List<String> fids = new ArrayList<String>(fidFilter.getIdentifiers().size());
+        for (Identifier identifier : fidFilter.getIdentifiers()) {
+            fids.add(identifier.toString());
+        }
 
+        // resolve all the fids in one pass, the records come back in file order, so that
+        // the shp file can be read sequentially
+        int[] recnos;
         IndexedFidReader reader = new IndexedFidReader(shpFiles);
-
-        List<Data> records = new ArrayList(idsSet.size());
         try {
-            IndexFile shx = store.shpManager.openIndexFile();
-            try {
+            recnos = reader.findFids(fids);
+        } finally {
+            reader.close();
+        }
+        if (LOGGER.isLoggable(Level.FINEST)) {
+            LOGGER.finest(recnos.length + " out of " + fids.size() + " fids found in the index");
+        }
 
-                DataDefinition def = new DataDefinition("US-ASCII");
-                def.addField(Integer.class);
-                def.addField(Long.class);
-                for (Identifier identifier : idsSet) {
-                    String fid = identifier.toString();
-                    long recno = reader.findFid(fid);
-                    if (recno == -1) {
-                        if (LOGGER.isLoggable(Level.FINEST)) {
-                            LOGGER.finest("fid " + fid
-                                    + " not found in index, continuing with next queried fid...");
-                        }
-                        continue;
-                    }
-                    try {
-                        Data data = new Data(def);
-                        data.addValue(new Integer((int) recno + 1));
-                        data.addValue(new Long(shx.getOffsetInBytes((int) recno)));
-                        if (LOGGER.isLoggable(Level.FINEST)) {
-                            LOGGER.finest("fid " + fid + " found for record #" + data.getValue(0)
-                                    + " at index file offset " + data.getValue(1));
-                        }
-                        records.add(data);
-                    } catch (Exception e) {
-                        IOException exception = new IOException();
-                        exception.initCause(e);
-                        throw exception;
+        List<Data> records = new ArrayList(recnos.length);
+        IndexFile shx = store.shpManager.openIndexFile();
+        try {
+            DataDefinition def = new DataDefinition("US-ASCII");
+            def.addField(Integer.class);
+            def.addField(Long.class);
+            for (int recno : recnos) {
+                try {
+                    Data data = new Data(def);
+                    data.addValue(new Integer(recno + 1));
+                    data.addValue(new Long(shx.getOffsetInBytes(recno)));
+                    if (LOGGER.isLoggable(Level.FINEST)) {
+                        LOGGER.finest("record #" + data.getValue(0)
+                                + " at index file offset " + data.getValue(1));
                     }
+                    records.add(data);
+                } catch (Exception e) {
+                    IOException exception = new IOException();
+                    exception.initCause(e);
+                    throw exception;
                 }
-            } finally {
-                shx.close();
             }
         } finally {
-            reader.close();
+            shx.close();
         }
 
         return records;
@@ -294,29 +369,53 @@ class IndexManager {
             IOException, TreeException {
         CloseableIterator<Data> tmp = null;
 
+        if (store.isPackedSpatialIndex() && shpFiles.isLocal()) {
+            // check if the packed index needs recreating
+            createSpatialIndex(false, true);
+            Lock lock = getPackedRTree();
+            if (lock != null) {
+                // the search collects all the offsets, the tree is not needed afterwards
+                try {
+                    if (bbox.contains(packedTree.getBounds())) {
+                        return null;
+                    } else {
+                        return packedTree.search(bbox);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            // fall back on the quadtree
+        }
+
         // check if the spatial index needs recreating
-        createSpatialIndex(false);
+        createSpatialIndex(false, false);
 
-        if (cachedTree == null) {
-            boolean canCache = false;
+        CachedQuadTree cachedTree = null;
+        File cacheableFile = null;
+        if (maxQixCacheSize > 0) {
             URL treeURL = shpFiles.acquireRead(QIX, writer);
             try {
                 File treeFile = DataUtilities.urlToFile(treeURL);
 
                 if (treeFile != null && treeFile.exists() && treeFile.length() < 1024 * maxQixCacheSize) {
-                    canCache = true;
+                    cacheableFile = treeFile;
+                    cachedTree = quadTreeCache.get(treeFile);
                 }
+            } catch (IOException e) {
+                throw new DataSourceException("Error looking up the cached QuadTree", e);
             } finally {
                 shpFiles.unlockRead(treeURL, writer);
             }
 
-            if (canCache) {
+            if (cacheableFile != null && cachedTree == null) {
                 QuadTree quadTree = openQuadTree();
                 if (quadTree != null) {
                     LOGGER.warning("Experimental: loading in memory the quadtree for "
                             + shpFiles.get(SHP));
                     cachedTree = new CachedQuadTree(quadTree);
                     quadTree.close();
+                    quadTreeCache.put(cacheableFile, cachedTree);
                 }
             }
         }
@@ -373,7 +472,426 @@ class IndexManager {
         }
     }
 
+    /**
+     * Makes sure the open packed R-tree matches the current index file, reopening it if the file
+     * changed, as {@link QuadTreeCache} does for the quadtrees.
+     * 
+     * @return The read lock on the tree, to be released after searching it, or null if the tree
+     *         is not available
+     */
+    Lock getPackedRTree() {
+        URL treeURL = shpFiles.acquireRead(HRX, writer);
+        try {
+            File treeFile = DataUtilities.urlToFile(treeURL);
+            long lastModified = treeFile.lastModified();
+            long length = treeFile.length();
+            Lock readLock = packedTreeLock.readLock();
+            readLock.lock();
+            if (packedTree != null && packedTreeLastModified == lastModified
+                    && packedTreeLength == length) {
+                return readLock;
+            }
+            readLock.unlock();
+
+            packedTreeLock.writeLock().lock();
+            try {
+                if (packedTree == null || packedTreeLastModified != lastModified
+                        || packedTreeLength != length) {
+                    closePackedRTree();
+                    packedTree = openPackedRTree();
+                    packedTreeLastModified = lastModified;
+                    packedTreeLength = length;
+                }
+                if (packedTree == null) {
+                    return null;
+                }
+                // downgrade, so that the tree cannot be closed before the search is done
+                readLock.lock();
+                return readLock;
+            } finally {
+                packedTreeLock.writeLock().unlock();
+            }
+        } finally {
+            shpFiles.unlockRead(treeURL, writer);
+        }
+    }
+
+    /**
+     * Closes the open packed R-tree, if any
+     */
+    void closePackedRTree() {
+        packedTreeLock.writeLock().lock();
+        try {
+            if (packedTree != null) {
+                packedTree.close();
+            }
+        } catch (StoreException e) {
+            LOGGER.log(Level.FINE, "Failed to close the packed R-tree", e);
+        } finally {
+            packedTree = null;
+            packedTreeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Opens the packed R-tree index, if available
+     * 
+     * @return The tree, or null if the index file is missing or could not be read
+     */
+    PackedRTree openPackedRTree() {
+        URL treeURL = shpFiles.acquireRead(HRX, writer);
+        try {
+            File treeFile = DataUtilities.urlToFile(treeURL);
+            if (treeFile == null || !treeFile.exists() || treeFile.length() == 0) {
+                return null;
+            }
+
+            return new PackedRTree(treeFile, store.isMemoryMapped());
+        } catch (StoreException e) {
+            LOGGER.log(Level.WARNING, "Could not open the packed R-tree index "
+                    + shpFiles.get(HRX) + ", falling back on the quadtree", e);
+            return null;
+        } finally {
+            shpFiles.unlockRead(treeURL, writer);
+        }
+    }
+
+    /**
+     * Creates the attribute index if the store has indexed attributes, and the index is missing,
+     * stale, or does not cover all of them
+     * 
+     * @return true if the attribute index has been created/updated
+     */
+    boolean createAttributeIndex() {
+        List<String> columns = store.getIndexedAttributes();
+        if (columns.isEmpty() || !shpFiles.isLocal() || !store.isIndexCreationEnabled()
+                || !shpFiles.exists(DBF)) {
+            return false;
+        }
+        try {
+            if (!isIndexStale(AIX) && getAttributeIndexColumns().containsAll(columns)) {
+                return false;
+            }
+            LOGGER.fine("Creating attribute index on " + columns + " for " + shpFiles.get(SHP));
+            ShapeFileIndexer indexer = new ShapeFileIndexer();
+            indexer.setShapeFileName(shpFiles);
+            indexer.setCharset(store.getCharset());
+            indexer.indexAttributes(columns);
+            synchronized (this) {
+                attributeIndexColumns = null;
+            }
+            return true;
+        } catch (Throwable t) {
+            LOGGER.log(Level.SEVERE, t.getLocalizedMessage(), t);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the columns covered by the attribute index, reading them only when the index file
+     * changed since the last call
+     * 
+     * @return The columns, or an empty set if the index is missing or could not be read
+     * @throws IOException
+     */
+    synchronized Set<String> getAttributeIndexColumns() throws IOException {
+        URL indexURL = shpFiles.acquireRead(AIX, writer);
+        long lastModified, length;
+        try {
+            File indexFile = DataUtilities.urlToFile(indexURL);
+            if (indexFile == null || !indexFile.exists()) {
+                return Collections.emptySet();
+            }
+            lastModified = indexFile.lastModified();
+            length = indexFile.length();
+        } finally {
+            shpFiles.unlockRead(indexURL, writer);
+        }
+        if (attributeIndexColumns != null && lastModified == attributeIndexLastModified
+                && length == attributeIndexLength) {
+            return attributeIndexColumns;
+        }
+
+        AttributeIndex index = openAttributeIndex();
+        if (index == null) {
+            return Collections.emptySet();
+        }
+        try {
+            attributeIndexColumns = new HashSet<String>(index.getColumns());
+            attributeIndexLastModified = lastModified;
+            attributeIndexLength = length;
+            return attributeIndexColumns;
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * Opens the attribute index, if available
+     * 
+     * @return The index, or null if the index file is missing, stale or could not be read
+     */
+    AttributeIndex openAttributeIndex() {
+        if (!shpFiles.isLocal() || !shpFiles.exists(AIX)) {
+            return null;
+        }
+        URL indexURL = shpFiles.acquireRead(AIX, writer);
+        try {
+            File indexFile = DataUtilities.urlToFile(indexURL);
+            if (indexFile == null || !indexFile.exists() || indexFile.length() == 0) {
+                return null;
+            }
+
+            return new AttributeIndex(indexFile, store.isMemoryMapped());
+        } catch (StoreException e) {
+            LOGGER.log(Level.WARNING, "Could not open the attribute index " + shpFiles.get(AIX), e);
+            return null;
+        } finally {
+            shpFiles.unlockRead(indexURL, writer);
+        }
+    }
+
+    /**
+     * Uses the attribute index to find the records matching the filter. The result is a superset
+     * of the matching records, the filter still needs to be evaluated on the features.
+     * 
+     * @param filter
+     * @return The sorted, zero based, record numbers, or null if the index cannot be used for
+     *         this filter
+     * @throws IOException
+     */
+    int[] queryAttributeIndex(Filter filter) throws IOException {
+        if (store.getIndexedAttributes().isEmpty() || filter == null
+                || filter == Filter.INCLUDE) {
+            return null;
+        }
+        if (!shpFiles.isLocal()) {
+            return null;
+        }
+        createAttributeIndex();
+        if (isIndexStale(AIX)) {
+            return null;
+        }
+        AttributeIndex index = openAttributeIndex();
+        if (index == null) {
+            return null;
+        }
+        try {
+            return queryAttributeIndex(index, store.getSchema(), filter);
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * Recursively matches the filter against the index, handling comparisons between an indexed
+     * column and a literal, as well as their AND/OR combinations
+     */
+    int[] queryAttributeIndex(AttributeIndex index, SimpleFeatureType schema, Filter filter)
+            throws IOException {
+        if (filter instanceof And) {
+            // any indexed child restricts the result
+            int[] result = null;
+            for (Filter child : ((And) filter).getChildren()) {
+                int[] records = queryAttributeIndex(index, schema, child);
+                if (records != null) {
+                    result = result == null ? records : intersect(result, records);
+                }
+            }
+            return result;
+        } else if (filter instanceof Or) {
+            // all the children must be indexed
+            int[] result = new int[0];
+            for (Filter child : ((Or) filter).getChildren()) {
+                int[] records = queryAttributeIndex(index, schema, child);
+                if (records == null) {
+                    return null;
+                }
+                result = union(result, records);
+            }
+            return result;
+        } else if (filter instanceof PropertyIsBetween) {
+            PropertyIsBetween between = (PropertyIsBetween) filter;
+            String column = getIndexedColumn(index, schema, between.getExpression());
+            if (column == null || index.getType(column) != AttributeIndex.NUMBER) {
+                return null;
+            }
+            Double min = toNumber(between.getLowerBoundary());
+            Double max = toNumber(between.getUpperBoundary());
+            if (min == null || max == null) {
+                return null;
+            }
+            return index.range(column, min, true, max, true);
+        } else if (filter instanceof BinaryComparisonOperator) {
+            BinaryComparisonOperator comparison = (BinaryComparisonOperator) filter;
+            Expression property = comparison.getExpression1();
+            Expression literal = comparison.getExpression2();
+            // literal op property is the same as property reversed-op literal
+            boolean reversed = false;
+            if (property instanceof Literal && literal instanceof PropertyName) {
+                property = comparison.getExpression2();
+                literal = comparison.getExpression1();
+                reversed = true;
+            }
+            String column = getIndexedColumn(index, schema, property);
+            if (column == null || !(literal instanceof Literal)) {
+                return null;
+            }
+            if (index.getType(column) == AttributeIndex.STRING) {
+                Object value = ((Literal) literal).getValue();
+                if (filter instanceof PropertyIsEqualTo && comparison.isMatchingCase()
+                        && value instanceof String) {
+                    return index.equalTo(column, value);
+                }
+                return null;
+            }
+            Double value = toNumber(literal);
+            if (value == null) {
+                return null;
+            }
+            if (filter instanceof PropertyIsEqualTo) {
+                return index.equalTo(column, value);
+            } else if (filter instanceof PropertyIsGreaterThan) {
+                return reversed ? index.range(column, null, false, value, false) : index.range(
+                        column, value, false, null, false);
+            } else if (filter instanceof PropertyIsGreaterThanOrEqualTo) {
+                return reversed ? index.range(column, null, false, value, true) : index.range(
+                        column, value, true, null, false);
+            } else if (filter instanceof PropertyIsLessThan) {
+                return reversed ? index.range(column, value, false, null, false) : index.range(
+                        column, null, false, value, false);
+            } else if (filter instanceof PropertyIsLessThanOrEqualTo) {
+                return reversed ? index.range(column, value, true, null, false) : index.range(
+                        column, null, false, value, true);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the indexed dbf column the expression refers to, or null if the expression is not a
+     * property name, or does not map to an indexed column
+     */
+    private String getIndexedColumn(AttributeIndex index, SimpleFeatureType schema,
+            Expression expression) {
+        if (!(expression instanceof PropertyName)) {
+            return null;
+        }
+        AttributeDescriptor descriptor = schema.getDescriptor(((PropertyName) expression)
+                .getPropertyName());
+        if (descriptor == null
+                || descriptor.getUserData().get(ShapefileDataStore.ORIGINAL_FIELD_NAME) != null) {
+            // duplicated dbf field names have been renamed, the index uses the original ones
+            return null;
+        }
+        String name = descriptor.getLocalName();
+        return index.getColumns().contains(name) ? name : null;
+    }
+
+    private Double toNumber(Expression expression) {
+        if (!(expression instanceof Literal)) {
+            return null;
+        }
+        Double value = Converters.convert(((Literal) expression).getValue(), Double.class);
+        return value == null || value.isNaN() ? null : value;
+    }
+
+    static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[k++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, k);
+    }
+
+    static int[] union(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                result[k++] = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                result[k++] = b[j++];
+            } else {
+                result[k++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, k);
+    }
+
+    /**
+     * Turns the records found in the attribute index into a list of records to be read, keeping
+     * only the ones also returned by the spatial index, if any
+     * 
+     * @param records The sorted, zero based, record numbers
+     * @param spatial The records found by the spatial index, or null. Will be closed.
+     * @return The records, sorted by .shp offset
+     * @throws IOException
+     */
+    CloseableIterator<Data> intersectAttributeIndex(int[] records, CloseableIterator<Data> spatial)
+            throws IOException {
+        int[] offsets = new int[records.length];
+        IndexFile shx = store.shpManager.openIndexFile();
+        if (shx == null) {
+            throw new IOException("Cannot use the attribute index without the .shx file");
+        }
+        try {
+            for (int i = 0; i < records.length; i++) {
+                offsets[i] = shx.getOffset(records[i]);
+            }
+        } finally {
+            shx.close();
+        }
+        Arrays.sort(offsets);
+
+        if (spatial != null) {
+            try {
+                // the spatial indexes return offsets in bytes
+                int[] spatialOffsets = new int[16];
+                int count = 0;
+                while (spatial.hasNext()) {
+                    if (count == spatialOffsets.length) {
+                        spatialOffsets = Arrays.copyOf(spatialOffsets, count * 2);
+                    }
+                    spatialOffsets[count++] = (int) (((Long) spatial.next().getValue(1)) / 2);
+                }
+                spatialOffsets = Arrays.copyOf(spatialOffsets, count);
+                Arrays.sort(spatialOffsets);
+
+                int k = 0;
+                for (int i = 0, j = 0; i < offsets.length && j < spatialOffsets.length;) {
+                    if (offsets[i] < spatialOffsets[j]) {
+                        i++;
+                    } else if (offsets[i] > spatialOffsets[j]) {
+                        j++;
+                    } else {
+                        offsets[k++] = offsets[i];
+                        i++;
+                        j++;
+                    }
+                }
+                offsets = Arrays.copyOf(offsets, k);
+            } finally {
+                spatial.close();
+            }
+        }
+
+        return new PackedRTree.OffsetIterator(offsets);
+    }
+
     public void dispose() {
-        this.cachedTree = null;
+        // the in memory quadtree is shared, it's up to the cache to release it
+        closePackedRTree();
     }
 }
@@ -91,6 +91,9 @@ class IndexedShapefileFeatureReader extends ShapefileFeatureReader {
             if (dbf != null) {
                 ((IndexedDbaseFileReader) dbf).goTo(record.number);
                 row = dbf.readRow();
+                if (row.isDeleted()) {
+                    continue;
+                }
             } else {
                 row = null;
             }
@@ -0,0 +1,434 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.shapefile;
+
+import static org.geotools.data.shapefile.files.ShpFileType.*;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.data.shapefile.files.ShpFiles;
+import org.geotools.data.shapefile.index.CloseableIterator;
+import org.geotools.data.shapefile.index.Data;
+import org.geotools.data.shapefile.index.DataDefinition;
+import org.geotools.data.shapefile.shp.IndexFile;
+import org.geotools.factory.Hints;
+import org.geotools.feature.visitor.FeatureCalc;
+import org.geotools.feature.visitor.LimitingVisitor;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.FeatureVisitor;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Id;
+
+/**
+ * Visits the contents of a shapefile using multiple threads. The file is split in contiguous
+ * ranges of records of roughly the same byte size using the offsets found in the .shx file, each
+ * range is then read by its own set of readers (which share the same memory mapped buffers when
+ * the store has buffer caching enabled). The features are handed over to the visitor, on the
+ * calling thread, through a bounded queue, so that the visitor does not need to be thread safe.
+ * <p>
+ * Since the features reach the visitor out of their natural order only {@link FeatureCalc}
+ * visitors, whose result does not depend on the visit order, are supported.
+ */
+class ParallelShapefileScanner {
+
+    static final Logger LOGGER = Logging.getLogger(ParallelShapefileScanner.class);
+
+    /**
+     * Ranges with less records than this are not worth the overhead of a separate reader
+     */
+    static final int DEFAULT_MIN_PARTITION_RECORDS = 10000;
+
+    /**
+     * Size of the queue used to hand over the features to the visitor
+     */
+    static final int QUEUE_SIZE = 1024;
+
+    /**
+     * Marks the end of a partition in the queue
+     */
+    static final Object END = new Object();
+
+    ShapefileFeatureSource source;
+
+    int threads;
+
+    ExecutorService executor;
+
+    int minPartitionRecords = DEFAULT_MIN_PARTITION_RECORDS;
+
+    volatile boolean aborted;
+
+    /**
+     * Builds a new scanner
+     *
+     * @param source The source to be scanned
+     * @param threads The maximum number of ranges read in parallel
+     * @param executor The executor used to run the readers, if null a temporary one will be
+     *        created for the duration of the scan
+     */
+    public ParallelShapefileScanner(ShapefileFeatureSource source, int threads,
+            ExecutorService executor) {
+        this.source = source;
+        this.threads = threads;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns true if the query/visitor combination can be handled by a parallel scan, that is,
+     * the visitor result does not depend on the visit order, and the query does not need paging,
+     * sorting, reprojection or a feature id lookup
+     *
+     * @param query
+     * @param visitor
+     * @return
+     */
+    static boolean canScan(Query query, FeatureVisitor visitor) {
+        if (!(visitor instanceof FeatureCalc)) {
+            return false;
+        }
+        if (visitor instanceof LimitingVisitor && ((LimitingVisitor) visitor).hasLimits()) {
+            return false;
+        }
+        if (query.getFilter() instanceof Id) {
+            // the fid index will do a much better job
+            return false;
+        }
+        if (!query.isMaxFeaturesUnlimited()
+                || (query.getStartIndex() != null && query.getStartIndex() > 0)
+                || (query.getSortBy() != null && query.getSortBy().length > 0)
+                || !query.getJoins().isEmpty()) {
+            return false;
+        }
+        if (query.getCoordinateSystem() != null || query.getCoordinateSystemReproject() != null) {
+            return false;
+        }
+        // the screenmap is not thread safe
+        Hints hints = query.getHints();
+        if (hints != null && hints.get(Hints.SCREENMAP) != null) {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Scans the shapefile in parallel, feeding the visitor with the features matching the query.
+     *
+     * @param query
+     * @param visitor
+     * @return false if the shapefile could not be split in at least two ranges, in that case the
+     *         visitor has not been called and the caller should fall back on a sequential scan
+     * @throws IOException
+     */
+    public boolean scan(final Query query, FeatureVisitor visitor) throws IOException {
+        // in snapshot mode the channels are not locked while reading, hold the lock while
+        // splitting the file and opening the readers so that all ranges read the same version.
+        // Otherwise each reader locks its own files, and has to be opened by the thread using it
+        ShpFiles shpFiles = source.shpFiles;
+        URL url = null;
+        if (shpFiles.isSnapshotMode()) {
+            url = shpFiles.acquireRead(SHP, ShapefileFeatureSource.SNAPSHOT_READER);
+        }
+        final List<int[]> partitions;
+        final List<FeatureReader<SimpleFeatureType, SimpleFeature>> readers;
+        try {
+            IndexFile shx = source.getDataStore().shpManager.openIndexFile();
+            if (shx == null) {
+                return false;
+            }
+            try {
+                partitions = computePartitions(shx, threads, minPartitionRecords);
+            } finally {
+                shx.close();
+            }
+            if (partitions.size() < 2) {
+                return false;
+            }
+            readers = url != null ? openReaders(query, partitions) : null;
+        } finally {
+            if (url != null) {
+                shpFiles.unlockRead(url, ShapefileFeatureSource.SNAPSHOT_READER);
+            }
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Scanning " + source.getSchema().getTypeName() + " in "
+                    + partitions.size() + " parallel ranges");
+        }
+
+        ExecutorService localExecutor = executor;
+        if (localExecutor == null) {
+            localExecutor = Executors.newFixedThreadPool(partitions.size());
+        }
+        final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(QUEUE_SIZE);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        try {
+            for (int i = 0; i < partitions.size(); i++) {
+                final int index = i;
+                futures.add(localExecutor.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        try {
+                            FeatureReader<SimpleFeatureType, SimpleFeature> reader;
+                            if (readers != null) {
+                                reader = claim(readers, index);
+                            } else {
+                                int[] partition = partitions.get(index);
+                                reader = source.getPartitionReader(query, partition[0],
+                                        partition[1]);
+                            }
+                            if (reader != null) {
+                                readPartition(reader, queue);
+                            }
+                        } finally {
+                            put(queue, END);
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            // drain the queue until all the partitions are done
+            int completed = 0;
+            while (completed < partitions.size()) {
+                Object next = queue.take();
+                if (next == END) {
+                    completed++;
+                } else {
+                    visitor.visit((SimpleFeature) next);
+                }
+            }
+
+            // report any failure occurred while reading
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            throw (IOException) new IOException("Parallel scan interrupted").initCause(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw (IOException) new IOException("Parallel scan failed").initCause(cause);
+        } finally {
+            // in case of failure make sure the readers stop and release the files
+            aborted = true;
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+            if (readers != null) {
+                for (int i = 0; i < readers.size(); i++) {
+                    closeSafe(claim(readers, i));
+                }
+            }
+            if (executor == null) {
+                localExecutor.shutdown();
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Opens the readers of all the partitions, closing the ones already open in case of failure
+     */
+    List<FeatureReader<SimpleFeatureType, SimpleFeature>> openReaders(Query query,
+            List<int[]> partitions) throws IOException {
+        List<FeatureReader<SimpleFeatureType, SimpleFeature>> readers = 
+                new ArrayList<FeatureReader<SimpleFeatureType, SimpleFeature>>();
+        try {
+            for (int[] partition : partitions) {
+                readers.add(source.getPartitionReader(query, partition[0], partition[1]));
+            }
+        } catch (IOException e) {
+            for (FeatureReader<SimpleFeatureType, SimpleFeature> reader : readers) {
+                closeSafe(reader);
+            }
+            throw e;
+        }
+        return readers;
+    }
+
+    /**
+     * Takes ownership of a pre-opened reader, returns null if it has already been taken
+     */
+    FeatureReader<SimpleFeatureType, SimpleFeature> claim(
+            List<FeatureReader<SimpleFeatureType, SimpleFeature>> readers, int index) {
+        synchronized (readers) {
+            return readers.set(index, null);
+        }
+    }
+
+    void closeSafe(FeatureReader<SimpleFeatureType, SimpleFeature> reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to close a partition reader", e);
+            }
+        }
+    }
+
+    void readPartition(FeatureReader<SimpleFeatureType, SimpleFeature> reader,
+            BlockingQueue<Object> queue) throws IOException, InterruptedException {
+        try {
+            while (!aborted && reader.hasNext()) {
+                put(queue, reader.next());
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Puts an object in the queue, giving up if the scan has been aborted in the meantime
+     */
+    void put(BlockingQueue<Object> queue, Object object) throws InterruptedException {
+        while (!queue.offer(object, 100, TimeUnit.MILLISECONDS)) {
+            if (aborted) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Splits the records listed in the .shx file in up to <code>partitions</code> contiguous
+     * ranges, each one covering roughly the same number of bytes in the .shp file
+     *
+     * @param shx The shapefile index
+     * @param partitions The maximum number of ranges
+     * @param minRecords The minimum number of records in a range
+     * @return A list of ranges, each one expressed as a start (included) and end (excluded)
+     *         record index
+     * @throws IOException
+     */
+    static List<int[]> computePartitions(IndexFile shx, int partitions, int minRecords)
+            throws IOException {
+        List<int[]> result = new ArrayList<int[]>();
+        int count = shx.getRecordCount();
+        if (count <= 0) {
+            return result;
+        }
+        partitions = Math.max(1, Math.min(partitions, count / Math.max(1, minRecords)));
+
+        long first = shx.getOffsetInBytes(0);
+        long last = shx.getOffsetInBytes(count - 1) + shx.getContentLength(count - 1) * 2L;
+        long size = last - first;
+        int start = 0;
+        for (int i = 1; i < partitions && start < count; i++) {
+            long target = first + size * i / partitions;
+            // binary search the first record starting at or past the target offset
+            int low = start;
+            int high = count - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (shx.getOffsetInBytes(mid) < target) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            if (low > start) {
+                result.add(new int[] { start, low });
+                start = low;
+            }
+        }
+        if (start < count) {
+            result.add(new int[] { start, count });
+        }
+
+        return result;
+    }
+
+    /**
+     * Iterates over a contiguous range of records listed in the .shx file, returning the same
+     * record number and offset pairs as the spatial index would
+     */
+    static class RecordRangeIterator implements CloseableIterator<Data> {
+
+        static final DataDefinition DATA_DEFINITION = new DataDefinition("US-ASCII");
+
+        static {
+            DATA_DEFINITION.addField(Integer.class);
+            DATA_DEFINITION.addField(Long.class);
+        }
+
+        IndexFile shx;
+
+        int current;
+
+        int end;
+
+        Data data = new Data(DATA_DEFINITION);
+
+        public RecordRangeIterator(IndexFile shx, int start, int end) {
+            this.shx = shx;
+            this.current = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return current < end;
+        }
+
+        @Override
+        public Data next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("No more records in range");
+            }
+            // the reader consumes the data before asking for the next one, reuse the same object
+            try {
+                data.clear();
+                data.addValue(current + 1);
+                data.addValue(new Long(shx.getOffsetInBytes(current)));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            current++;
+            return data;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() throws IOException {
+            shx.close();
+        }
+    }
+}
@@ -19,6 +19,7 @@ package org.geotools.data.shapefile;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -27,17 +28,20 @@ import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.geotools.data.shapefile.dbf.DbaseFileReader;
 import org.geotools.data.shapefile.files.FileWriter;
 import org.geotools.data.shapefile.files.ShpFileType;
 import org.geotools.data.shapefile.files.ShpFiles;
 import org.geotools.data.shapefile.files.StorageFile;
 import org.geotools.data.shapefile.index.LockTimeoutException;
 import org.geotools.data.shapefile.index.TreeException;
+import org.geotools.data.shapefile.index.attribute.AttributeIndexBuilder;
 import org.geotools.data.shapefile.index.quadtree.Node;
 import org.geotools.data.shapefile.index.quadtree.QuadTree;
 import org.geotools.data.shapefile.index.quadtree.StoreException;
 import org.geotools.data.shapefile.index.quadtree.fs.FileSystemIndexStore;
 import org.geotools.data.shapefile.index.quadtree.fs.IndexHeader;
+import org.geotools.data.shapefile.index.rtree.PackedRTreeBuilder;
 import org.geotools.data.shapefile.shp.IndexFile;
 import org.geotools.data.shapefile.shp.ShapefileHeader;
 import org.geotools.data.shapefile.shp.ShapefileReader;
@@ -64,8 +68,10 @@ class ShapeFileIndexer implements FileWriter {
     private int leafSize = 16;
 
 	private String byteOrder;
+    private boolean packed = false;
     private boolean interactive = false;
     private ShpFiles shpFiles;
+    private Charset charset;
 
     public static void main(String[] args) throws IOException {
         if ((args.length < 1) || (((args.length - 1) % 2) != 0)) {
@@ -79,9 +85,8 @@ class ShapeFileIndexer implements FileWriter {
 
         for (int i = 0; i < args.length; i++) {
             if (args[i].equals("-t")) {
-                // idx.setIdxType(IndexType.valueOf(args[++i]));
-                // just skip it for backwards compatibility
-                i++;
+                // older index types are just skipped for backwards compatibility
+                idx.setPacked("HRX".equalsIgnoreCase(args[++i]));
             } else if (args[i].equals("-M")) {
                 idx.setMax(Integer.parseInt(args[++i]));
             } else if (args[i].equals("-s")) {
@@ -115,7 +120,7 @@ class ShapeFileIndexer implements FileWriter {
     }
 
     private static void usage() {
-        System.out.println("Usage: ShapeFileIndexer " + "-t <QIX> "
+        System.out.println("Usage: ShapeFileIndexer " + "-t <QIX | HRX> "
                 + "[-M <max tree depth>] "
                 + "[-b <byte order NL | NM>] " + "<shape file>"
                 + "[-s <max number of items in a leaf>]");
@@ -123,9 +128,9 @@ class ShapeFileIndexer implements FileWriter {
         System.out.println();
 
         System.out.println("Options:");
-        System.out.println("\t-t Index type: RTREE or QUADTREE");
+        System.out.println("\t-t Index type: QIX (quadtree, default) or HRX (packed Hilbert R-tree)");
         System.out.println();
-        System.out.println("Following options apllies only to QUADTREE:");
+        System.out.println("Following options apllies only to QIX:");
         System.out.println("\t-b byte order to use: NL = LSB; "
                 + "NM = MSB (default)");
 
@@ -165,32 +170,36 @@ class ShapeFileIndexer implements FileWriter {
         ShapefileReader reader = null;
 
         // Temporary file for building...
-        StorageFile storage = shpFiles.getStorageFile(ShpFileType.QIX);
+        StorageFile storage = shpFiles.getStorageFile(packed ? ShpFileType.HRX : ShpFileType.QIX);
         File treeFile = storage.getFile();
 
         try {
             reader = new ShapefileReader(shpFiles, true, false, new GeometryFactory());
             
-            if(max == -1) {
-                // compute a reasonable index max depth, considering a fully developed
-                // 10 levels one already contains 200k index nodes, good for indexing up
-                // to 3M features without consuming too much memory
-                int features = reader.getCount(0);
-                max = 1;
-                int nodes = 1;
-                while(nodes * leafSize < features) {
-                    max++;
-                    nodes *= 4;
-                }
-                if(max < 10) {
-                    max = 10;
-                }
+            if (packed) {
+                cnt = this.buildPackedRTree(reader, treeFile, verbose);
+            } else {
+                if(max == -1) {
+                    // compute a reasonable index max depth, considering a fully developed
+                    // 10 levels one already contains 200k index nodes, good for indexing up
+                    // to 3M features without consuming too much memory
+                    int features = reader.getCount(0);
+                    max = 1;
+                    int nodes = 1;
+                    while(nodes * leafSize < features) {
+                        max++;
+                        nodes *= 4;
+                    }
+                    if(max < 10) {
+                        max = 10;
+                    }
                 
-                reader.close();
-                reader = new ShapefileReader(shpFiles, true, false, new GeometryFactory());
-            }
+                    reader.close();
+                    reader = new ShapefileReader(shpFiles, true, false, new GeometryFactory());
+                }
             
-            cnt = this.buildQuadTree(reader, treeFile, verbose);
+                cnt = this.buildQuadTree(reader, treeFile, verbose);
+            }
         } finally {
             if (reader != null)
                 reader.close();
@@ -202,6 +211,68 @@ class ShapeFileIndexer implements FileWriter {
         return cnt;
     }
 
+    /**
+     * Builds the attribute index (.aix) over the specified dbf columns of the shapefile denoted
+     * by setShapeFileName(String fileName). Only character and numeric columns can be indexed,
+     * the others are skipped.
+     * 
+     * @param columns The names of the dbf columns to be indexed
+     * @return The number of indexed columns
+     * @throws IOException
+     */
+    public int indexAttributes(List<String> columns) throws IOException {
+        if (this.shpFiles == null) {
+            throw new IOException("You have to set a shape file name!");
+        }
+
+        StorageFile storage = shpFiles.getStorageFile(ShpFileType.AIX);
+        File indexFile = storage.getFile();
+        LOGGER.fine("Building attribute index on " + columns + " for file "
+                + indexFile.getAbsolutePath());
+
+        int cnt;
+        DbaseFileReader dbf = new DbaseFileReader(shpFiles, false,
+                charset != null ? charset : ShapefileDataStore.DEFAULT_STRING_CHARSET);
+        try {
+            cnt = new AttributeIndexBuilder(columns).build(dbf, indexFile);
+        } finally {
+            dbf.close();
+        }
+
+        storage.replaceOriginal();
+
+        return cnt;
+    }
+
+    private int buildPackedRTree(ShapefileReader reader, File file, boolean verbose)
+            throws IOException, StoreException {
+        LOGGER.fine("Building packed R-tree spatial index for file " + file.getAbsolutePath());
+
+        IndexFile shpIndex = new IndexFile(shpFiles, false);
+        int cnt = 0;
+        try {
+            PackedRTreeBuilder builder = leafSize > 1 ? new PackedRTreeBuilder(leafSize)
+                    : new PackedRTreeBuilder();
+            while (reader.hasNext()) {
+                Record rec = reader.nextRecord();
+                builder.insert(new Envelope(rec.minX, rec.maxX, rec.minY, rec.maxY),
+                        shpIndex.getOffset(cnt++));
+
+                if (verbose && ((cnt % 1000) == 0)) {
+                    System.out.print('.');
+                }
+                if (cnt % 100000 == 0)
+                    System.out.print('\n');
+            }
+            if (verbose)
+                System.out.println("done");
+            builder.store(file);
+        } finally {
+            shpIndex.close();
+        }
+        return cnt;
+    }
+
     private int buildQuadTree(ShapefileReader reader, File file, boolean verbose)
             throws IOException, StoreException {
         LOGGER.fine("Building quadtree spatial index with depth " +  max + " for file " + file.getAbsolutePath());
@@ -421,6 +492,28 @@ class ShapeFileIndexer implements FileWriter {
         this.byteOrder = byteOrder;
     }
 
+    /**
+     * If true a packed Hilbert R-tree (.hrx) will be built, otherwise a quadtree (.qix)
+     * 
+     * @param packed
+     */
+    public void setPacked(boolean packed) {
+        this.packed = packed;
+    }
+
+    public boolean isPacked() {
+        return packed;
+    }
+
+    /**
+     * The charset used to decode the dbf strings when building the attribute index
+     * 
+     * @param charset
+     */
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
     public String id() {
         return getClass().getName();
     }
@@ -0,0 +1,475 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.shapefile;
+
+import static org.geotools.data.shapefile.files.ShpFileType.*;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.FeatureEvent;
+import org.geotools.data.FeatureEvent.Type;
+import org.geotools.data.Transaction;
+import org.geotools.data.shapefile.dbf.DbaseFileHeader;
+import org.geotools.data.shapefile.dbf.DbaseFileWriter;
+import org.geotools.data.shapefile.fid.IndexedFidWriter;
+import org.geotools.data.shapefile.files.FileWriter;
+import org.geotools.data.shapefile.files.ShpFileType;
+import org.geotools.data.shapefile.files.ShpFiles;
+import org.geotools.data.shapefile.files.StorageFile;
+import org.geotools.data.shapefile.index.rtree.PackedRTreeBuilder;
+import org.geotools.data.shapefile.shp.IndexFile;
+import org.geotools.data.shapefile.shp.JTSUtilities;
+import org.geotools.data.shapefile.shp.ShapeType;
+import org.geotools.data.shapefile.shp.ShapefileHeader;
+import org.geotools.data.shapefile.shp.ShapefileReader;
+import org.geotools.data.shapefile.shp.ShapefileReader.Record;
+import org.geotools.data.shapefile.shp.ShapefileWriter;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.store.ContentFeatureSource;
+import org.geotools.data.store.ContentState;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.Filter;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Appends a stream of features to a shapefile in a single pass. Unlike the feature writers, which
+ * read back and rewrite each existing record, the existing records are copied as raw bytes, and
+ * the new ones are encoded in large buffers, so that the files are written with few, large
+ * calls. The headers and bounds are computed while writing, and the fid index and packed spatial
+ * index, if enabled, are generated in the same pass.
+ * <p>
+ * The load is not transactional, and the files are replaced only if all the features could be
+ * written. Other writers are kept out from the moment the current files are read to the one they
+ * get replaced, and once done the feature listeners receive a single event covering the appended
+ * features.
+ *
+ * @source $URL$
+ */
+class ShapefileBulkLoader implements FileWriter {
+
+    static final Logger LOGGER = Logging.getLogger(ShapefileBulkLoader.class);
+
+    /**
+     * The default size of the write buffers
+     */
+    static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    ShapefileDataStore store;
+
+    ShpFiles shpFiles;
+
+    int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    public ShapefileBulkLoader(ShapefileDataStore store) {
+        this.store = store;
+        this.shpFiles = store.shpFiles;
+    }
+
+    public String id() {
+        return "ShapefileBulkLoader-" + store.getTypeName().getLocalPart();
+    }
+
+    /**
+     * Appends the features to the shapefile
+     *
+     * @param features
+     * @return The number of features appended
+     * @throws IOException
+     */
+    public int load(SimpleFeatureCollection features) throws IOException {
+        if (!shpFiles.isLocal()) {
+            throw new IOException("Bulk loading is supported only for local files");
+        }
+        SimpleFeatureType schema = store.getSchema();
+        if (features.getSchema() != null) {
+            checkSchema(schema, features.getSchema());
+        }
+
+        // keep other writers from replacing the files between reading and replacing them
+        boolean writersLocked = shpFiles.lockWriters();
+        URL shpURL = null;
+        Envelope added = new Envelope();
+        int count;
+        try {
+            shpURL = shpFiles.acquireRead(SHP, this);
+            count = load(schema, features, added);
+        } finally {
+            try {
+                if (shpURL != null) {
+                    shpFiles.unlockRead(shpURL, this);
+                }
+            } finally {
+                if (writersLocked) {
+                    shpFiles.unlockWriters();
+                }
+            }
+        }
+
+        if (count > 0) {
+            fireFeaturesAdded(added);
+        }
+        return count;
+    }
+
+    private int load(SimpleFeatureType schema, SimpleFeatureCollection features, Envelope added)
+            throws IOException {
+        SimpleFeatureIterator fi = features.features();
+        try {
+            if (!fi.hasNext()) {
+                return 0;
+            }
+            SimpleFeature first = fi.next();
+            if (features.getSchema() == null) {
+                checkSchema(schema, first.getFeatureType());
+            }
+
+            // read the current state of the files
+            ShapefileHeader shpHeader = readShpHeader(SHP);
+            int existing = (readShpHeader(SHX).getFileLength() * 2 - 100) / 8;
+            int shpLength = shpHeader.getFileLength() * 2;
+            DbaseFileHeader dbfHeader = readDbfHeader();
+            if (dbfHeader.getNumRecords() != existing) {
+                throw new IOException("The .dbf file has " + dbfHeader.getNumRecords()
+                        + " records, but the .shx lists " + existing);
+            }
+
+            ShapeType shapeType;
+            Envelope bounds = new Envelope();
+            if (existing > 0) {
+                shapeType = shpHeader.getShapeType();
+                bounds.init(shpHeader.minX(), shpHeader.maxX(), shpHeader.minY(),
+                        shpHeader.maxY());
+            } else {
+                // same as the feature writer, use the first geometry to pick the type
+                Geometry g = (Geometry) first.getDefaultGeometry();
+                if (g != null) {
+                    shapeType = JTSUtilities.getShapeType(g,
+                            JTSUtilities.guessCoorinateDims(g.getCoordinates()));
+                } else {
+                    shapeType = JTSUtilities.getShapeType(schema.getGeometryDescriptor());
+                }
+            }
+
+            return append(schema, first, fi, shapeType, bounds, added, existing, shpLength,
+                    dbfHeader);
+        } finally {
+            fi.close();
+        }
+    }
+
+    /**
+     * Checks the features carry all the shapefile attributes, with compatible bindings, since
+     * they are written without going through the feature writer validation
+     */
+    private void checkSchema(SimpleFeatureType schema, SimpleFeatureType incoming)
+            throws IOException {
+        for (AttributeDescriptor ad : schema.getAttributeDescriptors()) {
+            if (ad instanceof GeometryDescriptor) {
+                if (incoming.getGeometryDescriptor() == null) {
+                    throw new IOException("The features to be loaded have no geometry, "
+                            + "while the shapefile has one");
+                }
+                continue;
+            }
+            AttributeDescriptor other = incoming.getDescriptor(ad.getLocalName());
+            if (other == null) {
+                throw new IOException("The features to be loaded lack the "
+                        + ad.getLocalName() + " attribute of the shapefile");
+            }
+            Class<?> binding = ad.getType().getBinding();
+            Class<?> otherBinding = other.getType().getBinding();
+            if (!binding.isAssignableFrom(otherBinding)
+                    && !(Number.class.isAssignableFrom(binding) && Number.class
+                            .isAssignableFrom(otherBinding))) {
+                throw new IOException("The " + ad.getLocalName() + " attribute of the features "
+                        + "to be loaded is a " + otherBinding.getName()
+                        + ", which cannot be stored in the shapefile " + binding.getName());
+            }
+        }
+    }
+
+    /**
+     * Lets the listeners know about the new features, and clears the cached bounds and count
+     */
+    private void fireFeaturesAdded(Envelope added) throws IOException {
+        ContentFeatureSource source = store.getFeatureSource();
+        // a source without transaction would replace the auto commit state with a copy
+        ContentState state = source.getEntry().getState(Transaction.AUTO_COMMIT);
+        state.setBounds(null);
+        state.setCount(-1);
+        ReferencedEnvelope bounds = new ReferencedEnvelope(added, store.getSchema()
+                .getCoordinateReferenceSystem());
+        state.fireFeatureEvent(new FeatureEvent(source, Type.ADDED, bounds, Filter.INCLUDE));
+    }
+
+    private int append(SimpleFeatureType schema, SimpleFeature first, SimpleFeatureIterator fi,
+            ShapeType shapeType, Envelope bounds, Envelope added, int existing, int shpLength,
+            DbaseFileHeader dbfHeader) throws IOException {
+        StorageFile shpStorage = shpFiles.getStorageFile(SHP);
+        StorageFile shxStorage = shpFiles.getStorageFile(SHX);
+        StorageFile dbfStorage = shpFiles.getStorageFile(DBF);
+        List<StorageFile> indexStorages = new ArrayList<StorageFile>();
+        boolean success = false;
+
+        FileChannel shpChannel = null;
+        FileChannel shxChannel = null;
+        FileChannel dbfChannel = null;
+        ShapefileWriter shpWriter = null;
+        DbaseFileWriter dbfWriter = null;
+        IndexedFidWriter fidWriter = null;
+        int records = existing;
+        try {
+            // copy over the existing records as raw bytes
+            shpChannel = shpStorage.getWriteChannel();
+            shxChannel = shxStorage.getWriteChannel();
+            dbfChannel = dbfStorage.getWriteChannel();
+            copy(SHP, shpChannel, shpLength);
+            copy(SHX, shxChannel, 100 + 8L * existing);
+            long dbfLength = dbfHeader.getHeaderLength() + (long) dbfHeader.getRecordLength()
+                    * existing;
+            copy(DBF, dbfChannel, dbfLength);
+
+            // setup the writers at the end of the existing records
+            shpWriter = new ShapefileWriter(shpChannel, shxChannel);
+            shpWriter.setBufferSize(bufferSize);
+            shpWriter.writeHeaders(bounds, shapeType, existing, shpLength);
+            shpWriter.skipRecords(existing, shpLength);
+            dbfChannel.position(0);
+            dbfWriter = new DbaseFileWriter(dbfHeader, dbfChannel, store.getCharset(),
+                    store.getTimeZone());
+            dbfWriter.setBufferSize(bufferSize);
+            dbfChannel.position(dbfLength);
+
+            // the indexes that can be built in the same pass
+            if (store.isFidIndexed()) {
+                // refreshes the existing index if stale, a missing one is built from scratch
+                store.indexManager.hasFidIndex(false);
+                StorageFile fixStorage = shpFiles.getStorageFile(FIX);
+                indexStorages.add(fixStorage);
+                fidWriter = new IndexedFidWriter(shpFiles, fixStorage);
+                for (int i = 0; i < existing; i++) {
+                    fidWriter.next();
+                }
+            }
+            PackedRTreeBuilder treeBuilder = null;
+            if (store.isIndexed() && store.isIndexCreationEnabled()
+                    && store.isPackedSpatialIndex()) {
+                treeBuilder = new PackedRTreeBuilder();
+                indexExisting(treeBuilder, existing);
+            }
+
+            // dbf attributes are the non geometric ones, in the same order as the schema
+            List<String> dbfAttributes = new ArrayList<String>();
+            for (AttributeDescriptor ad : schema.getAttributeDescriptors()) {
+                if (!(ad instanceof GeometryDescriptor)) {
+                    dbfAttributes.add(ad.getLocalName());
+                }
+            }
+            Object[] values = new Object[dbfAttributes.size()];
+
+            SimpleFeature feature = first;
+            while (feature != null) {
+                Geometry g = JTSUtilities.convertToCollection(
+                        (Geometry) feature.getDefaultGeometry(), shapeType);
+                int offset = shpWriter.getOffset();
+                shpWriter.writeGeometry(g);
+                if (g != null) {
+                    Envelope envelope = g.getEnvelopeInternal();
+                    if (!envelope.isNull()) {
+                        bounds.expandToInclude(envelope);
+                        added.expandToInclude(envelope);
+                        if (treeBuilder != null) {
+                            treeBuilder.insert(envelope, offset);
+                        }
+                    }
+                }
+
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = feature.getAttribute(dbfAttributes.get(i));
+                }
+                dbfWriter.write(values);
+
+                if (fidWriter != null) {
+                    fidWriter.next();
+                }
+                records++;
+
+                feature = fi.hasNext() ? fi.next() : null;
+            }
+
+            // finally, the headers
+            shpWriter.writeHeaders(bounds, shapeType, records, shpWriter.getOffset() * 2);
+            dbfWriter.flush();
+            dbfHeader.setNumRecords(records);
+            dbfChannel.position(0);
+            dbfHeader.writeHeader(dbfChannel);
+            shpWriter.close();
+            shpWriter = null;
+            dbfWriter.close();
+            dbfWriter = null;
+            if (fidWriter != null) {
+                fidWriter.close();
+                fidWriter = null;
+            }
+            if (treeBuilder != null) {
+                StorageFile hrxStorage = shpFiles.getStorageFile(HRX);
+                indexStorages.add(hrxStorage);
+                treeBuilder.store(hrxStorage.getFile());
+            }
+            success = true;
+        } finally {
+            closeQuietly(shpWriter, dbfWriter, fidWriter, shpChannel, shxChannel, dbfChannel);
+            if (!success) {
+                shpStorage.getFile().delete();
+                shxStorage.getFile().delete();
+                dbfStorage.getFile().delete();
+                for (StorageFile storage : indexStorages) {
+                    storage.getFile().delete();
+                }
+            }
+        }
+
+        // replace the data files first, so that the indexes end up being newer than them
+        StorageFile.replaceOriginals(shpStorage, shxStorage, dbfStorage);
+        if (!indexStorages.isEmpty()) {
+            // the open tree would keep the old file mapped
+            store.indexManager.closePackedRTree();
+            StorageFile.replaceOriginals(indexStorages.toArray(new StorageFile[indexStorages
+                    .size()]));
+        }
+        store.indexManager.dispose();
+
+        return records - existing;
+    }
+
+    /**
+     * Adds the existing records to the packed R-tree
+     */
+    private void indexExisting(PackedRTreeBuilder builder, int existing) throws IOException {
+        if (existing == 0) {
+            return;
+        }
+        ShapefileReader reader = new ShapefileReader(shpFiles, true, false,
+                new GeometryFactory());
+        IndexFile shx = new IndexFile(shpFiles, false);
+        try {
+            for (int i = 0; i < existing && reader.hasNext(); i++) {
+                Record rec = reader.nextRecord();
+                if (rec.type != ShapeType.NULL) {
+                    builder.insert(new Envelope(rec.minX, rec.maxX, rec.minY, rec.maxY),
+                            shx.getOffset(i));
+                }
+            }
+        } finally {
+            try {
+                reader.close();
+            } finally {
+                shx.close();
+            }
+        }
+    }
+
+    private ShapefileHeader readShpHeader(ShpFileType type) throws IOException {
+        ReadableByteChannel channel = shpFiles.getReadChannel(type, this);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(100);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Unexpected end of file while reading the "
+                            + type.extension + " header");
+                }
+            }
+            buffer.flip();
+            ShapefileHeader header = new ShapefileHeader();
+            header.read(buffer, true);
+            return header;
+        } finally {
+            channel.close();
+        }
+    }
+
+    private DbaseFileHeader readDbfHeader() throws IOException {
+        ReadableByteChannel channel = shpFiles.getReadChannel(DBF, this);
+        try {
+            DbaseFileHeader header = new DbaseFileHeader();
+            header.readHeader(channel, store.getCharset());
+            return header;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Copies the first <code>length</code> bytes of the original file into the target channel
+     */
+    private void copy(ShpFileType type, FileChannel target, long length) throws IOException {
+        FileChannel source = (FileChannel) shpFiles.getReadChannel(type, this);
+        try {
+            long position = 0;
+            while (position < length) {
+                long copied = target.transferFrom(source, position, length - position);
+                if (copied <= 0) {
+                    throw new IOException("Unexpected end of file while copying the "
+                            + type.extension + " file");
+                }
+                position += copied;
+            }
+            target.position(length);
+        } finally {
+            source.close();
+        }
+    }
+
+    private void closeQuietly(ShapefileWriter shpWriter, DbaseFileWriter dbfWriter,
+            IndexedFidWriter fidWriter, FileChannel... channels) {
+        try {
+            if (shpWriter != null) {
+                shpWriter.close();
+            }
+            if (dbfWriter != null) {
+                dbfWriter.close();
+            }
+            if (fidWriter != null) {
+                fidWriter.close();
+            }
+            for (FileChannel channel : channels) {
+                if (channel != null && channel.isOpen()) {
+                    channel.close();
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to close the bulk load files", e);
+        }
+    }
+}
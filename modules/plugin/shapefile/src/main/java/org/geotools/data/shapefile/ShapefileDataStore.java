@@ -28,10 +28,12 @@ import java.net.URL;
 import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 
 import org.geotools.data.DataSourceException;
@@ -42,10 +44,12 @@ import org.geotools.data.Query;
 import org.geotools.data.Transaction;
 import org.geotools.data.shapefile.dbf.DbaseFileException;
 import org.geotools.data.shapefile.dbf.DbaseFileHeader;
+import org.geotools.data.shapefile.files.MemoryMapPool;
 import org.geotools.data.shapefile.files.ShpFiles;
 import org.geotools.data.shapefile.files.StorageFile;
 import org.geotools.data.shapefile.shp.ShapeType;
 import org.geotools.data.shapefile.shp.ShapefileWriter;
+import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.store.ContentDataStore;
 import org.geotools.data.store.ContentEntry;
 import org.geotools.data.store.ContentFeatureSource;
@@ -111,6 +115,18 @@ public class ShapefileDataStore extends ContentDataStore implements FileDataStor
 
     boolean fidIndexed = true;
 
+    boolean packedSpatialIndex = false;
+
+    List<String> indexedAttributes = Collections.emptyList();
+
+    int parallelScanThreads = 1;
+
+    MemoryMapPool memoryMapPool;
+
+    boolean snapshotMode = false;
+
+    ExecutorService parallelScanExecutor;
+
     IndexManager indexManager;
 
     ShapefileSetManager shpManager;
@@ -399,6 +415,7 @@ public class ShapefileDataStore extends ContentDataStore implements FileDataStor
     @Override
     public void dispose() {
         super.dispose();
+        indexManager.dispose();
         if (shpFiles != null) {
             shpFiles.dispose();
             shpFiles = null;
@@ -441,7 +458,28 @@ public class ShapefileDataStore extends ContentDataStore implements FileDataStor
         return "ShapefileDataStore [file=" + shpFiles.get(SHP) + ", charset=" + charset + ", timeZone=" + timeZone
                 + ", memoryMapped=" + memoryMapped + ", bufferCachingEnabled="
                 + bufferCachingEnabled + ", indexed=" + indexed + ", fidIndexed=" + fidIndexed
-                + "]";
+                + ", packedSpatialIndex=" + packedSpatialIndex
+                + ", indexedAttributes=" + indexedAttributes + ", memoryMapPool=" + memoryMapPool
+                + ", snapshotMode=" + snapshotMode
+                + ", parallelScanThreads=" + parallelScanThreads + "]";
+    }
+
+    /**
+     * Appends the features to the shapefile in a single streaming pass. The existing records are
+     * copied without being decoded, the new ones are written with large buffers, and the fid
+     * index and packed spatial index (if enabled) are built along the way. This is much faster
+     * than a feature writer when loading large amounts of data, but the load is not part of any
+     * transaction, and feature listeners receive a single event for all the appended features.
+     * <p>
+     * The features must carry all the shapefile attributes with compatible bindings, attributes
+     * are matched by name.
+     * 
+     * @param features The features to append
+     * @return The number of features appended
+     * @throws IOException
+     */
+    public int bulkLoad(SimpleFeatureCollection features) throws IOException {
+        return new ShapefileBulkLoader(this).load(features);
     }
 
     @Override
@@ -467,6 +505,104 @@ public class ShapefileDataStore extends ContentDataStore implements FileDataStor
         return getFeatureWriterAppend(getTypeName().getLocalPart(), transaction);
     }
 
+    public int getParallelScanThreads() {
+        return parallelScanThreads;
+    }
+
+    /**
+     * When greater than one, visitors computing aggregates (bounds, sums, counts and the like)
+     * will scan the shapefile in parallel, splitting it in up to the specified number of ranges of
+     * records. Small shapefiles are always scanned sequentially. Defaults to one (no parallel scan)
+     * 
+     * @param parallelScanThreads
+     */
+    public void setParallelScanThreads(int parallelScanThreads) {
+        this.parallelScanThreads = parallelScanThreads;
+    }
+
+    public ExecutorService getParallelScanExecutor() {
+        return parallelScanExecutor;
+    }
+
+    /**
+     * Sets the executor used to run the parallel scans. If not set, a temporary thread pool will
+     * be created for each scan
+     * 
+     * @param parallelScanExecutor
+     */
+    public void setParallelScanExecutor(ExecutorService parallelScanExecutor) {
+        this.parallelScanExecutor = parallelScanExecutor;
+    }
+
+    /**
+     * Returns true if the spatial index is a packed Hilbert R-tree (.hrx) instead of the default
+     * quadtree (.qix)
+     * 
+     * @return
+     */
+    public boolean isPackedSpatialIndex() {
+        return packedSpatialIndex;
+    }
+
+    /**
+     * If true the spatial index will be a packed Hilbert R-tree (.hrx) instead of the default
+     * quadtree (.qix). The quadtree is still used if the packed index cannot be read.
+     * 
+     * @param packedSpatialIndex
+     */
+    public void setPackedSpatialIndex(boolean packedSpatialIndex) {
+        this.packedSpatialIndex = packedSpatialIndex;
+    }
+
+    public List<String> getIndexedAttributes() {
+        return indexedAttributes;
+    }
+
+    /**
+     * Sets the dbf columns that should be indexed in the attribute index (.aix), which is used to
+     * speed up equality, range and IN filters on them. Only character and numeric columns can be
+     * indexed. Defaults to an empty list (no attribute index)
+     * 
+     * @param indexedAttributes
+     */
+    public void setIndexedAttributes(List<String> indexedAttributes) {
+        this.indexedAttributes = indexedAttributes == null ? Collections.<String> emptyList()
+                : new ArrayList<String>(indexedAttributes);
+    }
+
+    public MemoryMapPool getMemoryMapPool() {
+        return memoryMapPool;
+    }
+
+    /**
+     * Sets a pool of memory mapped buffers shared with other stores, bounded in size. When set,
+     * and memory mapping is enabled, the read only mappings are taken from the pool instead of the
+     * per store buffer cache. Defaults to null (no pool)
+     * 
+     * @param memoryMapPool
+     */
+    public void setMemoryMapPool(MemoryMapPool memoryMapPool) {
+        this.memoryMapPool = memoryMapPool;
+        shpFiles.setMemoryMapPool(memoryMapPool);
+    }
+
+    public boolean isSnapshotMode() {
+        return snapshotMode;
+    }
+
+    /**
+     * Enables the snapshot mode, in which readers do not lock the files while reading them and
+     * writers publish their changes by atomically renaming the new files over the old ones. Open
+     * readers keep on reading the version of the files they opened. Meant for read mostly
+     * scenarios, see {@link ShpFiles#setSnapshotMode(boolean)} for details. Defaults to false
+     * 
+     * @param snapshotMode
+     */
+    public void setSnapshotMode(boolean snapshotMode) {
+        this.snapshotMode = snapshotMode;
+        shpFiles.setSnapshotMode(snapshotMode);
+    }
+
     public boolean isIndexCreationEnabled() {
         return indexCreationEnabled;
     }
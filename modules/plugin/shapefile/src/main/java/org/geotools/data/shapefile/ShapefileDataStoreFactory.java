@@ -23,9 +23,11 @@ import java.io.Serializable;
 import java.net.URI;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 import java.util.logging.Logger;
@@ -36,6 +38,7 @@ import org.geotools.data.FileDataStore;
 import org.geotools.data.FileDataStoreFactorySpi;
 import org.geotools.data.directory.DirectoryDataStore;
 import org.geotools.data.directory.FileStoreFactory;
+import org.geotools.data.shapefile.files.MemoryMapPool;
 import org.geotools.data.shapefile.files.ShpFiles;
 import org.geotools.util.KVP;
 import org.geotools.util.logging.Logging;
@@ -139,6 +142,47 @@ public class ShapefileDataStoreFactory implements FileDataStoreFactorySpi {
             Boolean.class, "enable/disable the use of spatial index for local shapefiles", false,
             true, new KVP(Param.LEVEL, "advanced"));
 
+    /**
+     * Optional - use a packed R-tree as the spatial index
+     */
+    public static final Param PACKED_SPATIAL_INDEX = new Param("packed spatial index",
+            Boolean.class,
+            "use a packed Hilbert R-tree (.hrx) as the spatial index instead of the quadtree (.qix)",
+            false, false, new KVP(Param.LEVEL, "advanced"));
+
+    /**
+     * Optional - number of threads used to scan the shapefile when computing aggregates
+     */
+    public static final Param PARALLEL_SCAN_THREADS = new Param("parallel scan threads",
+            Integer.class,
+            "number of threads used to scan large shapefiles when computing aggregates, 1 disables parallel scans",
+            false, 1, new KVP(Param.LEVEL, "advanced"));
+
+    /**
+     * Optional - comma separated list of dbf columns to be indexed in the attribute index
+     */
+    public static final Param INDEXED_ATTRIBUTES = new Param("indexed attributes",
+            String.class,
+            "comma separated list of dbf columns to be indexed in the attribute index (.aix)",
+            false, null, new KVP(Param.LEVEL, "advanced"));
+
+    /**
+     * Optional - share the memory mapped buffers with the other stores using the process wide
+     * {@link MemoryMapPool}
+     */
+    public static final Param SHARED_MEMORY_MAPS = new Param("share memory maps",
+            Boolean.class,
+            "take the memory maps from a pool shared with the other stores, and bounded in size",
+            false, false, new KVP(Param.LEVEL, "advanced"));
+
+    /**
+     * Optional - enable/disable the snapshot mode, readers do not lock the files and writers
+     * publish changes by atomic rename
+     */
+    public static final Param SNAPSHOT_MODE = new Param("snapshot mode", Boolean.class,
+            "readers do not lock the files, writers publish their changes by atomic rename",
+            false, false, new KVP(Param.LEVEL, "advanced"));
+
     public String getDisplayName() {
         return "Shapefile";
     }
@@ -149,7 +193,9 @@ public class ShapefileDataStoreFactory implements FileDataStoreFactorySpi {
 
     public Param[] getParametersInfo() {
         return new Param[] { URLP, NAMESPACEP, ENABLE_SPATIAL_INDEX, CREATE_SPATIAL_INDEX, DBFCHARSET, DBFTIMEZONE,
-                MEMORY_MAPPED, CACHE_MEMORY_MAPS, FILE_TYPE, FSTYPE };
+                MEMORY_MAPPED, CACHE_MEMORY_MAPS, FILE_TYPE, FSTYPE, PACKED_SPATIAL_INDEX,
+                PARALLEL_SCAN_THREADS, INDEXED_ATTRIBUTES, SHARED_MEMORY_MAPS,
+                SNAPSHOT_MODE };
     }
 
     public boolean isAvailable() {
@@ -168,6 +214,11 @@ public class ShapefileDataStoreFactory implements FileDataStoreFactorySpi {
         Charset dbfCharset = lookup(DBFCHARSET, params, Charset.class);
         TimeZone dbfTimeZone = lookup(DBFTIMEZONE, params, TimeZone.class);
         Boolean isCreateSpatialIndex = lookup(CREATE_SPATIAL_INDEX, params, Boolean.class);
+        Boolean isPackedSpatialIndex = lookup(PACKED_SPATIAL_INDEX, params, Boolean.class);
+        Integer parallelScanThreads = lookup(PARALLEL_SCAN_THREADS, params, Integer.class);
+        String indexedAttributes = lookup(INDEXED_ATTRIBUTES, params, String.class);
+        Boolean sharedMemoryMaps = lookup(SHARED_MEMORY_MAPS, params, Boolean.class);
+        Boolean snapshotMode = lookup(SNAPSHOT_MODE, params, Boolean.class);
         Boolean isEnableSpatialIndex = (Boolean) ENABLE_SPATIAL_INDEX.lookUp(params);
         if (isEnableSpatialIndex == null) {
             // should not be needed as default is TRUE
@@ -198,6 +249,21 @@ public class ShapefileDataStoreFactory implements FileDataStoreFactorySpi {
             store.setTimeZone(dbfTimeZone);
             store.setIndexed(enableIndex);
             store.setIndexCreationEnabled(createIndex);
+            store.setPackedSpatialIndex(isPackedSpatialIndex);
+            store.setParallelScanThreads(parallelScanThreads);
+            if (indexedAttributes != null) {
+                List<String> columns = new ArrayList<String>();
+                for (String column : indexedAttributes.split(",")) {
+                    if (column.trim().length() > 0) {
+                        columns.add(column.trim());
+                    }
+                }
+                store.setIndexedAttributes(columns);
+            }
+            if (useMemoryMappedBuffer && sharedMemoryMaps) {
+                store.setMemoryMapPool(MemoryMapPool.getDefault());
+            }
+            store.setSnapshotMode(isLocal && snapshotMode);
             return store;
         }
     }
@@ -17,6 +17,7 @@
 package org.geotools.data.shapefile;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -132,6 +133,16 @@ class ShapefileFeatureReader implements FeatureReader<SimpleFeatureType, SimpleF
                     }
                 }
             }
+
+            // let the dbf reader copy out only the fields we are going to read
+            int[] projection = new int[dbfindexes.length];
+            int fields = 0;
+            for (int index : dbfindexes) {
+                if (index != -1) {
+                    projection[fields++] = index;
+                }
+            }
+            dbf.setProjection(Arrays.copyOf(projection, fields));
         }
     }
 
@@ -19,6 +19,7 @@ package org.geotools.data.shapefile;
 import static org.geotools.data.shapefile.files.ShpFileType.*;
 
 import java.io.IOException;
+import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
@@ -38,6 +39,7 @@ import org.geotools.data.FeatureSource;
 import org.geotools.data.PrjFileReader;
 import org.geotools.data.Query;
 import org.geotools.data.ReTypeFeatureReader;
+import org.geotools.data.Transaction;
 import org.geotools.data.shapefile.dbf.DbaseFileHeader;
 import org.geotools.data.shapefile.dbf.DbaseFileReader;
 import org.geotools.data.shapefile.fid.IndexedFidReader;
@@ -309,12 +311,35 @@ class ShapefileFeatureSource extends ContentFeatureSource {
 
     }
 
+    /**
+     * Locks the files while opening a reader in snapshot mode
+     */
+    static final FileReader SNAPSHOT_READER = new FileReader() {
+        public String id() {
+            return "Shapefile Datastore's snapshot reader";
+        }
+    };
+
     @Override
     protected FeatureReader<SimpleFeatureType, SimpleFeature> getReaderInternal(Query q)
             throws IOException {
+        if (!shpFiles.isSnapshotMode()) {
+            return openReader(q);
+        }
+
+        // in snapshot mode the channels are not locked while reading, hold a lock while
+        // querying the indexes and opening the files so that they all share the same version
+        URL url = shpFiles.acquireRead(SHP, SNAPSHOT_READER);
+        try {
+            return openReader(q);
+        } finally {
+            shpFiles.unlockRead(url, SNAPSHOT_READER);
+        }
+    }
+
+    private FeatureReader<SimpleFeatureType, SimpleFeature> openReader(Query q)
+            throws IOException {
         SimpleFeatureType resultSchema = getResultSchema(q);
-        SimpleFeatureType readSchema = getReadSchema(q);
-        GeometryFactory geometryFactory = getGeometryFactory(q);
 
         // grab the target bbox, if any
         Envelope bbox = new ReferencedEnvelope();
@@ -342,6 +367,13 @@ class ShapefileFeatureSource extends ContentFeatureSource {
                 throw new IOException("Error querying index: " + e.getMessage());
             }
         }
+        // narrow down the records with the attribute index, if the filter can use it
+        if (getDataStore().isIndexed() && !(filter instanceof Id)) {
+            int[] records = indexManager.queryAttributeIndex(filter);
+            if (records != null) {
+                goodRecs = indexManager.intersectAttributeIndex(records, goodRecs);
+            }
+        }
         // do we have anything to read at all? If not don't bother opening all the files
         if (goodRecs != null && !goodRecs.hasNext()) {
             LOGGER.log(Level.FINE, "Empty results for " + resultSchema.getName().getLocalPart()
@@ -356,6 +388,48 @@ class ShapefileFeatureSource extends ContentFeatureSource {
             fidReader = new IndexedFidReader(shpFiles);
         }
 
+        return getReader(q, bbox, goodRecs, fidReader);
+    }
+
+    /**
+     * Returns a reader limited to the records between <code>start</code> (included) and
+     * <code>end</code> (excluded), as listed in the .shx file. Used to scan the shapefile in
+     * parallel, see {@link ParallelShapefileScanner}. In snapshot mode the caller must hold the
+     * {@link #SNAPSHOT_READER} lock, so that the shx, shp and dbf opened belong to the same version
+     * 
+     * @param q
+     * @param start
+     * @param end
+     * @return
+     * @throws IOException
+     */
+    FeatureReader<SimpleFeatureType, SimpleFeature> getPartitionReader(Query q, int start, int end)
+            throws IOException {
+        IndexFile shx = getDataStore().shpManager.openIndexFile();
+        if (shx == null) {
+            throw new IOException("Cannot read a range of records without the .shx file");
+        }
+
+        Envelope bbox = new ReferencedEnvelope();
+        if (q.getFilter() != null) {
+            bbox = (Envelope) q.getFilter().accept(ExtractBoundsFilterVisitor.BOUNDS_VISITOR, bbox);
+        }
+        CloseableIterator<Data> records = new ParallelShapefileScanner.RecordRangeIterator(shx,
+                start, end);
+        return getReader(q, bbox, records, null);
+    }
+
+    /**
+     * Sets up the shapefile feature reader, eventually limiting the read to the records provided
+     * by <code>goodRecs</code>
+     */
+    FeatureReader<SimpleFeatureType, SimpleFeature> getReader(Query q, Envelope bbox,
+            CloseableIterator<Data> goodRecs, IndexedFidReader fidReader) throws IOException {
+        SimpleFeatureType resultSchema = getResultSchema(q);
+        SimpleFeatureType readSchema = getReadSchema(q);
+        GeometryFactory geometryFactory = getGeometryFactory(q);
+        Filter filter = q.getFilter();
+
         // setup the feature readers
         ShapefileSetManager shpManager = getDataStore().shpManager;
         ShapefileReader shapeReader = shpManager.openShapeReader(geometryFactory, goodRecs != null);
@@ -592,6 +666,17 @@ class ShapefileFeatureSource extends ContentFeatureSource {
 
     @Override
     protected boolean handleVisitor(Query query, FeatureVisitor visitor) throws IOException {
+        ShapefileDataStore ds = getDataStore();
+        int threads = ds.getParallelScanThreads();
+        if (threads > 1 && shpFiles.isLocal()
+                && (getTransaction() == null || getTransaction() == Transaction.AUTO_COMMIT)
+                && ParallelShapefileScanner.canScan(query, visitor)) {
+            ParallelShapefileScanner scanner = new ParallelShapefileScanner(this, threads,
+                    ds.getParallelScanExecutor());
+            if (scanner.scan(resolvePropertyNames(query), visitor)) {
+                return true;
+            }
+        }
         return super.handleVisitor(query, visitor);
     }
 
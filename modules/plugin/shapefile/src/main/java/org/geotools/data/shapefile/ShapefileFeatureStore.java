@@ -60,16 +60,31 @@ class ShapefileFeatureStore extends ContentFeatureStore {
             throw new IllegalArgumentException("no write flags set");
         }
 
-        ShapefileFeatureReader reader = (ShapefileFeatureReader) delegate
-                .getReaderInternal(Query.ALL);
-        FeatureWriter<SimpleFeatureType, SimpleFeature> writer;
-        ShapefileDataStore ds = getDataStore();
-        if(ds.indexManager.hasFidIndex(false) || ds.isFidIndexed() && ds.indexManager.hasFidIndex(true)) {
-            writer = new IndexedShapefileFeatureWriter(ds.indexManager, reader, ds.getCharset(), ds.getTimeZone());
-        } else {
-            writer = new ShapefileFeatureWriter(delegate.shpFiles, reader, ds.getCharset(), 
-                    ds.getTimeZone());
+        // the lock is released by the writer once the files are replaced
+        boolean writersLocked = delegate.shpFiles.lockWriters();
+        ShapefileFeatureWriter writer;
+        try {
+            ShapefileFeatureReader reader = (ShapefileFeatureReader) delegate
+                    .getReaderInternal(Query.ALL);
+            ShapefileDataStore ds = getDataStore();
+            if(ds.indexManager.hasFidIndex(false) || ds.isFidIndexed() && ds.indexManager.hasFidIndex(true)) {
+                writer = new IndexedShapefileFeatureWriter(ds.indexManager, reader, ds.getCharset(), ds.getTimeZone());
+            } else {
+                writer = new ShapefileFeatureWriter(delegate.shpFiles, reader, ds.getCharset(), 
+                        ds.getTimeZone());
+            }
+        } catch (IOException e) {
+            if (writersLocked) {
+                delegate.shpFiles.unlockWriters();
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            if (writersLocked) {
+                delegate.shpFiles.unlockWriters();
+            }
+            throw e;
         }
+        writer.writersLocked = writersLocked;
 
         // if we only have to add move to the end.
         // TODO: just make the code transfer the bytes in bulk instead and start actual writing at
@@ -84,7 +99,7 @@ class ShapefileFeatureStore extends ContentFeatureStore {
         // but writes down the mall
         Filter filter = query.getFilter();
         if (filter != null && !Filter.INCLUDE.equals(filter)) {
-            writer = new FilteringFeatureWriter(writer, filter);
+            return new FilteringFeatureWriter(writer, filter);
         }
 
         return writer;
@@ -113,6 +113,9 @@ class ShapefileFeatureWriter implements FeatureWriter<SimpleFeatureType, SimpleF
 
     private boolean guessShapeType;
 
+    // true if the writer holds the ShpFiles writers lock, to be released once the files are replaced
+    boolean writersLocked;
+
     public ShapefileFeatureWriter(ShpFiles shpFiles, ShapefileFeatureReader featureReader,
             Charset charset, TimeZone timezone) throws IOException {
         this.shpFiles = shpFiles;
@@ -256,8 +259,15 @@ class ShapefileFeatureWriter implements FeatureWriter<SimpleFeatureType, SimpleF
                 }
             }
         } finally {
-            doClose();
-            clean();
+            try {
+                doClose();
+                clean();
+            } finally {
+                if (writersLocked) {
+                    writersLocked = false;
+                    shpFiles.unlockWriters();
+                }
+            }
         }
     }
 
@@ -29,6 +29,7 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Locale;
 import java.util.TimeZone;
@@ -77,6 +78,9 @@ public class DbaseFileReader implements FileReader {
         
         public Object read(final int column) throws IOException {
             final int offset = fieldOffsets[column];
+            if (loaded != null && !loaded[column]) {
+                loadField(column);
+            }
             return readObject(offset, column);
         }
 
@@ -113,6 +117,22 @@ public class DbaseFileReader implements FileReader {
     
     int[] fieldOffsets;
 
+    /**
+     * The fields copied out of the buffer on each read, or null if all fields are
+     */
+    int[] projection;
+
+    /**
+     * Which fields of the current record have been copied in the bytes array, null if not
+     * using a projection
+     */
+    boolean[] loaded;
+
+    /**
+     * Position in the buffer of the first field of the current record
+     */
+    int recordStart;
+
     int cnt = 1;
 
     Row row;
@@ -381,7 +401,7 @@ public class DbaseFileReader implements FileReader {
         final int numFields = header.getNumFields();
 
         for (int j = 0; j < numFields; j++) {
-            entry[j + offset] = readObject(fieldOffsets[j], j);
+            entry[j + offset] = readField(j);
         }
 
         return entry;
@@ -397,9 +417,58 @@ public class DbaseFileReader implements FileReader {
      */
     public Object readField(final int fieldNum)
             throws IOException {
+        if (loaded != null && !loaded[fieldNum]) {
+            loadField(fieldNum);
+        }
         return readObject(fieldOffsets[fieldNum], fieldNum);
     }
 
+    /**
+     * Sets the fields that will be read on each record. When set, each read will copy out of the
+     * buffer only the bytes of the specified fields, leaving the other ones in the buffer, where
+     * they will be fetched from only if explicitly requested. This saves a good amount of work
+     * when reading a few fields out of wide records.
+     * 
+     * @param fields The indexes of the fields to be read (zero based), or null to read all fields
+     */
+    public void setProjection(final int[] fields) {
+        if (fields == null || fields.length >= header.getNumFields()) {
+            this.projection = null;
+            this.loaded = null;
+        } else {
+            for (int field : fields) {
+                if (field < 0 || field >= header.getNumFields()) {
+                    throw new IllegalArgumentException("Invalid field index " + field
+                            + ", the file has " + header.getNumFields() + " fields");
+                }
+            }
+            this.projection = fields.clone();
+            this.loaded = new boolean[header.getNumFields()];
+        }
+    }
+
+    /**
+     * Returns the fields that will be read on each record, or null if all fields are read
+     * 
+     * @return
+     */
+    public int[] getProjection() {
+        return projection == null ? null : projection.clone();
+    }
+
+    /**
+     * Copies the bytes of the specified field of the current record out of the buffer
+     * 
+     * @param fieldNum
+     */
+    private void loadField(final int fieldNum) {
+        final int position = buffer.position();
+        buffer.position(recordStart + fieldOffsets[fieldNum]);
+        buffer.get(bytes, fieldOffsets[fieldNum], fieldLengths[fieldNum]);
+        buffer.position(position);
+        loaded[fieldNum] = true;
+    }
+
     /**
      * Transfer, by bytes, the next record to the writer.
      */
@@ -427,9 +496,20 @@ public class DbaseFileReader implements FileReader {
             final char deleted = (char) buffer.get();
             row.deleted = deleted == '*';
 
-            buffer.limit(buffer.position() + header.getRecordLength() - 1);
-            buffer.get(bytes); // SK: There is a side-effect here!!!
-            buffer.limit(buffer.capacity());
+            if (projection == null) {
+                buffer.limit(buffer.position() + header.getRecordLength() - 1);
+                buffer.get(bytes); // SK: There is a side-effect here!!!
+                buffer.limit(buffer.capacity());
+            } else {
+                // copy only the requested fields, the others stay in the buffer and can still
+                // be loaded on demand until the next read
+                recordStart = buffer.position();
+                Arrays.fill(loaded, false);
+                for (int field : projection) {
+                    loadField(field);
+                }
+                buffer.position(recordStart + header.getRecordLength() - 1);
+            }
 
             foundRecord = true;
         }
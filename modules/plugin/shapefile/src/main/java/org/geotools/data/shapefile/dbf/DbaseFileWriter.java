@@ -63,6 +63,10 @@ public class DbaseFileWriter {
     private DbaseFileWriter.FieldFormatter formatter;
     WritableByteChannel channel;
     private ByteBuffer buffer;
+    /**
+     * Accumulates the records before writing them, when a buffer size has been set
+     */
+    private ByteBuffer batch;
     /**
      * The null values to use for each column. This will be accessed only when
      * null values are actually encountered, but it is allocated in the ctor
@@ -174,11 +178,52 @@ public class DbaseFileWriter {
 
     private void write() throws IOException {
         buffer.position(0);
+        if (batch != null) {
+            if (batch.remaining() < buffer.remaining()) {
+                flush();
+            }
+            batch.put(buffer);
+            return;
+        }
         int r = buffer.remaining();
         while ((r -= channel.write(buffer)) > 0) {
             ; // do nothing
         }
     }
+
+    /**
+     * Sets the size of the buffer used to accumulate records before writing them to the channel.
+     * By default each record is written as soon as it's encoded, a positive size allows to write
+     * large sequences of records in a single call when bulk loading data.
+     * 
+     * @param bufferSize The buffer size in bytes, or zero to write each record immediately
+     * @throws IOException
+     */
+    public void setBufferSize(int bufferSize) throws IOException {
+        flush();
+        if (batch != null) {
+            NIOUtilities.clean(batch, false);
+            batch = null;
+        }
+        if (bufferSize > 0) {
+            batch = NIOUtilities.allocate(Math.max(bufferSize, header.getRecordLength()));
+        }
+    }
+
+    /**
+     * Writes the buffered records to the channel
+     * 
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        if (batch != null && batch.position() > 0) {
+            batch.flip();
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+            batch.clear();
+        }
+    }
     
     /**
      * Write a single dbase record.
@@ -317,13 +362,18 @@ public class DbaseFileWriter {
         // buffer.put((byte) 0).position(0).limit(1);
         // write();
         if (channel != null && channel.isOpen()) {
+            flush();
             channel.close();
             streamLogger.close();
         }
         if(buffer != null) {
             NIOUtilities.clean(buffer, false);
         }
+        if (batch != null) {
+            NIOUtilities.clean(batch, false);
+        }
         buffer = null;
+        batch = null;
         channel = null;
         formatter = null;
     }
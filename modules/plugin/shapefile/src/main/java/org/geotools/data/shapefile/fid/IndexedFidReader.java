@@ -22,7 +22,10 @@ import java.io.IOException;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.NoSuchElementException;
 import java.util.logging.Logger;
 
@@ -185,6 +188,119 @@ public class IndexedFidReader implements FIDReader, FileReader {
         }
     }
 
+    /**
+     * Resolves many fids at once. The fids are sorted and then looked up in a single forward
+     * pass over the memory mapped index, taking advantage of the ids being stored in increasing
+     * order: each lookup only has to consider the records following the previous match, and at
+     * most {@link #getRemoves()} records before the predicted position.
+     * 
+     * @param fids the fids to find
+     * @return the record numbers in the SHX file of the fids that have been found, sorted in file
+     *         order, without duplicates
+     * @throws IOException
+     */
+    public int[] findFids(Collection<String> fids) throws IOException {
+        // parse and sort the ids, skipping the fids not belonging to this shapefile
+        long[] ids = new long[fids.size()];
+        int idCount = 0;
+        int idx = typeName.length();
+        for (String fid : fids) {
+            if (fid != null && fid.startsWith(typeName)) {
+                try {
+                    long id = Long.parseLong(fid.substring(idx), 10);
+                    if (id >= 0) {
+                        ids[idCount++] = id;
+                    }
+                } catch (NumberFormatException e) {
+                    // not a fid of this shapefile
+                }
+            }
+        }
+        if (idCount == 0 || count == 0) {
+            return new int[0];
+        }
+        Arrays.sort(ids, 0, idCount);
+
+        long size = IndexedFidWriter.HEADER_SIZE + count * IndexedFidWriter.RECORD_SIZE;
+        if (!(readChannel instanceof FileChannel) || size > Integer.MAX_VALUE) {
+            // cannot map the file, resolve the fids one by one
+            int[] result = new int[idCount];
+            int found = 0;
+            for (int i = 0; i < idCount; i++) {
+                if (i == 0 || ids[i] != ids[i - 1]) {
+                    long recno = findFid(typeName + ids[i]);
+                    if (recno != -1) {
+                        result[found++] = (int) recno;
+                    }
+                }
+            }
+            result = Arrays.copyOf(result, found);
+            Arrays.sort(result);
+            return result;
+        }
+        FileChannel fc = (FileChannel) readChannel;
+        ByteBuffer records = fc.map(MapMode.READ_ONLY, 0, size);
+        try {
+            int[] result = new int[idCount];
+            int found = 0;
+            long next = 0;
+            long previous = -1;
+            for (int i = 0; i < idCount && next < count; i++) {
+                long desired = ids[i];
+                if (desired == previous) {
+                    continue;
+                }
+                previous = desired;
+
+                // ids start at 1 and grow by one, but for the removed records
+                long low = Math.max(next, desired - 1 - removes);
+                long high = Math.min(count - 1, desired - 1);
+                if (low > high || idAt(records, low) > desired || idAt(records, high) < desired) {
+                    // the removes count cannot be trusted, search all the remaining records
+                    low = next;
+                    high = count - 1;
+                }
+                long rec = lowerBound(records, desired, low, high);
+                if (rec < count && idAt(records, rec) == desired) {
+                    result[found++] = records.getInt(position(rec) + 8);
+                    next = rec + 1;
+                } else {
+                    next = rec;
+                }
+            }
+
+            result = Arrays.copyOf(result, found);
+            Arrays.sort(result);
+            return result;
+        } finally {
+            NIOUtilities.clean(records, true);
+        }
+    }
+
+    private static int position(long recno) {
+        return (int) (IndexedFidWriter.HEADER_SIZE + recno * IndexedFidWriter.RECORD_SIZE);
+    }
+
+    private static long idAt(ByteBuffer records, long recno) {
+        return records.getLong(position(recno));
+    }
+
+    /**
+     * Returns the first record between low and high whose id is greater or equal than the desired
+     * one, or high + 1 if there is none
+     */
+    private static long lowerBound(ByteBuffer records, long desired, long low, long high) {
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            if (idAt(records, mid) < desired) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
     /**
      * Searches for the desired record.
      * 
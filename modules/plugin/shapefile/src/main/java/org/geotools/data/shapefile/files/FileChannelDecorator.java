@@ -24,6 +24,10 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.data.shapefile.files.MemoryMapPool.Mapping;
 
 
 /**
@@ -46,6 +50,8 @@ public class FileChannelDecorator extends FileChannel implements
     private final FileReader reader;
     private final FileWriter writer;
     private boolean closed;
+    /** The mappings pinned in the memory map pool, released on close */
+    private List<Mapping> pinned;
 
     public FileChannelDecorator(FileChannel channel, ShpFiles shapefileFiles,
             URL url, FileReader requestor) {
@@ -77,6 +83,17 @@ public class FileChannelDecorator extends FileChannel implements
 
     public MappedByteBuffer map(MapMode mode, long position, long size)
             throws IOException {
+        MemoryMapPool pool = shapefileFiles.getMemoryMapPool();
+        if (pool != null && mode == MapMode.READ_ONLY && !shapefileFiles.isSnapshotMode()) {
+            Mapping mapping = pool.pin(wrapped, url, position, size);
+            synchronized (this) {
+                if (pinned == null) {
+                    pinned = new ArrayList<Mapping>(2);
+                }
+                pinned.add(mapping);
+            }
+            return mapping.duplicate();
+        }
 //    	return wrapped.map(mode, position, size)
     	 return shapefileFiles.map(wrapped, url, mode, position, size);
     }
@@ -143,18 +160,34 @@ public class FileChannelDecorator extends FileChannel implements
         try {
             wrapped.close();
         } finally {
-            if (!closed) {
-                closed = true;
-                if (reader != null) {
-                    shapefileFiles.unlockRead(url, reader);
-                } else {
-                    shapefileFiles.unlockWrite(url, writer);
-                }
+            unpin();
+            releaseLock();
+        }
+
+    }
+
+    /**
+     * Releases the lock on the file, if not already released. Used on close, or right after
+     * opening the channel in snapshot mode
+     */
+    synchronized void releaseLock() {
+        if (!closed) {
+            closed = true;
+            if (reader != null) {
+                shapefileFiles.unlockRead(url, reader);
+            } else {
+                shapefileFiles.unlockWrite(url, writer);
             }
         }
+    }
 
+    private synchronized void unpin() {
+        if (pinned != null) {
+            for (Mapping mapping : pinned) {
+                mapping.pool.unpin(mapping);
+            }
+            pinned = null;
+        }
     }
-    
-    
 
 }
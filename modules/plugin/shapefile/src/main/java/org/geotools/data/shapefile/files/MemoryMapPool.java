@@ -0,0 +1,361 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.shapefile.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.shapefile.files.MemoryMapCache.MappingKey;
+import org.geotools.resources.NIOUtilities;
+import org.geotools.util.logging.Logging;
+
+/**
+ * A pool of read only memory mapped buffers that can be shared by any number of shapefile stores,
+ * keeping the total size of the mapped regions under a configurable budget.
+ * <p>
+ * Each mapping is pinned while a channel is using it, and released when the channel is closed
+ * (that is, when the {@link org.geotools.data.shapefile.shp.ShapefileReader} or
+ * {@link org.geotools.data.shapefile.dbf.DbaseFileReader} using it are closed). When the budget
+ * is exceeded, the least recently used mappings that are not pinned get unmapped. Pinned mappings
+ * are never released, so the budget can be temporarily exceeded if too many files are being read
+ * at the same time.
+ * <p>
+ * The pool keeps track of the hits, misses and evictions, to help sizing it.
+ *
+ * @source $URL$
+ */
+public class MemoryMapPool {
+
+    static final Logger LOGGER = Logging.getLogger(MemoryMapPool.class);
+
+    /**
+     * The default budget, 1GB, can be changed with the
+     * <code>org.geotools.shapefile.memoryMapPoolSize</code> system variable (in bytes)
+     */
+    public static final long DEFAULT_MAX_BYTES;
+
+    static {
+        long max = 1024L * 1024 * 1024;
+        try {
+            String smax = System.getProperty("org.geotools.shapefile.memoryMapPoolSize");
+            if (smax != null) {
+                max = Long.parseLong(smax);
+            }
+        } catch (Throwable t) {
+            LOGGER.log(Level.SEVERE, "Could not set the memory map pool size", t);
+        }
+        DEFAULT_MAX_BYTES = max;
+    }
+
+    static MemoryMapPool DEFAULT;
+
+    /**
+     * Returns the process wide pool, sized after {@link #DEFAULT_MAX_BYTES}
+     *
+     * @return
+     */
+    public static synchronized MemoryMapPool getDefault() {
+        if (DEFAULT == null) {
+            DEFAULT = new MemoryMapPool(DEFAULT_MAX_BYTES);
+        }
+        return DEFAULT;
+    }
+
+    /**
+     * A mapped region, with the number of channels using it
+     */
+    static class Mapping {
+        final MemoryMapPool pool;
+
+        final MappingKey key;
+
+        MappedByteBuffer buffer;
+
+        int pins;
+
+        /**
+         * Set when the mapping has been removed from the pool while still pinned, it will be
+         * unmapped when the last pin is released
+         */
+        boolean removed;
+
+        Mapping(MemoryMapPool pool, MappingKey key, MappedByteBuffer buffer) {
+            this.pool = pool;
+            this.key = key;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Returns a private copy of the mapped buffer, sharing the same memory
+         */
+        MappedByteBuffer duplicate() {
+            return (MappedByteBuffer) buffer.duplicate();
+        }
+    }
+
+    /**
+     * The mappings, in access order (least recently used first)
+     */
+    Map<MappingKey, Mapping> mappings = new LinkedHashMap<MappingKey, Mapping>(16, 0.75f, true);
+
+    long maxBytes;
+
+    long mappedBytes;
+
+    AtomicLong hits = new AtomicLong();
+
+    AtomicLong misses = new AtomicLong();
+
+    AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Builds a new pool
+     *
+     * @param maxBytes The maximum size, in bytes, of the regions kept mapped
+     */
+    public MemoryMapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Maps the region of the file, or reuses an existing mapping, and pins it. The caller must
+     * call {@link #unpin(Mapping)} when done with it.
+     *
+     * @param channel The channel used to map the file, if needed
+     * @param url The file being mapped
+     * @param position
+     * @param size
+     * @return The pinned mapping
+     * @throws IOException
+     */
+    Mapping pin(FileChannel channel, URL url, long position, long size) throws IOException {
+        File file = DataUtilities.urlToFile(url).getCanonicalFile();
+        MappingKey key = new MappingKey(file, position, size);
+        synchronized (this) {
+            Mapping mapping = mappings.get(key);
+            if (mapping != null) {
+                hits.incrementAndGet();
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.log(Level.FINE, "Using pooled map for " + file.getAbsolutePath());
+                }
+            } else {
+                misses.incrementAndGet();
+                mapping = new Mapping(this, key, channel.map(MapMode.READ_ONLY, position, size));
+                mappings.put(key, mapping);
+                mappedBytes += size;
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.log(Level.FINE, "Mapping and pooling " + file.getAbsolutePath());
+                }
+            }
+            mapping.pins++;
+            evict();
+            return mapping;
+        }
+    }
+
+    /**
+     * Releases a mapping pinned by {@link #pin(FileChannel, URL, long, long)}
+     *
+     * @param mapping
+     */
+    synchronized void unpin(Mapping mapping) {
+        mapping.pins--;
+        if (mapping.removed) {
+            if (mapping.pins <= 0) {
+                release(mapping);
+            }
+        } else {
+            evict();
+        }
+    }
+
+    /**
+     * Unmaps the least recently used mappings that are not pinned, until the pool gets back
+     * under budget
+     */
+    private void evict() {
+        if (mappedBytes <= maxBytes) {
+            return;
+        }
+        for (Iterator<Mapping> it = mappings.values().iterator(); it.hasNext()
+                && mappedBytes > maxBytes;) {
+            Mapping mapping = it.next();
+            if (mapping.pins <= 0) {
+                it.remove();
+                mappedBytes -= mapping.key.size;
+                evictions.incrementAndGet();
+                release(mapping);
+            }
+        }
+    }
+
+    /**
+     * Removes a mapping from the pool, unmapping it right away if not in use, or as soon as the
+     * last pin is released otherwise
+     */
+    private void remove(Mapping mapping) {
+        mappedBytes -= mapping.key.size;
+        mapping.removed = true;
+        if (mapping.pins <= 0) {
+            release(mapping);
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.log(Level.FINE, "Removed mapping for " + mapping.key.file.getAbsolutePath());
+        }
+    }
+
+    private void release(Mapping mapping) {
+        if (mapping.buffer != null) {
+            NIOUtilities.clean(mapping.buffer, true);
+            mapping.buffer = null;
+        }
+    }
+
+    /**
+     * Removes all the mappings of the specified file. Used before writing the file, as some
+     * platforms (Windows) won't allow writing a file that's memory mapped
+     *
+     * @param url
+     */
+    public void cleanFile(URL url) {
+        try {
+            final File rawFile = DataUtilities.urlToFile(url);
+            if (rawFile == null) {
+                // not a local file
+                return;
+            }
+            File file = rawFile.getCanonicalFile();
+            synchronized (this) {
+                for (Iterator<Mapping> it = mappings.values().iterator(); it.hasNext();) {
+                    Mapping mapping = it.next();
+                    if (mapping.key.file.equals(file)) {
+                        it.remove();
+                        remove(mapping);
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            LOGGER.log(Level.WARNING,
+                    "An error occurred while trying to clean the memory map pool", t);
+        }
+    }
+
+    /**
+     * Removes all the mappings from the pool. The ones in use will be unmapped when released.
+     */
+    public synchronized void clear() {
+        List<Mapping> removed = new ArrayList<Mapping>(mappings.values());
+        mappings.clear();
+        for (Mapping mapping : removed) {
+            remove(mapping);
+        }
+    }
+
+    /**
+     * Returns the maximum size, in bytes, of the regions kept mapped
+     *
+     * @return
+     */
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the maximum size, in bytes, of the regions kept mapped. Lowering it will evict the
+     * unused mappings in excess right away
+     *
+     * @param maxBytes
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * The total size of the regions currently in the pool
+     *
+     * @return
+     */
+    public synchronized long getMappedBytes() {
+        return mappedBytes;
+    }
+
+    /**
+     * The number of regions currently in the pool
+     *
+     * @return
+     */
+    public synchronized int getMappingCount() {
+        return mappings.size();
+    }
+
+    /**
+     * The number of mapping requests satisfied by an existing mapping
+     *
+     * @return
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * The number of mapping requests that required a new mapping
+     *
+     * @return
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * The number of mappings unmapped to keep the pool under budget
+     *
+     * @return
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Resets the hits, misses and evictions counters
+     */
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryMapPool [maxBytes=" + getMaxBytes() + ", mappedBytes=" + getMappedBytes()
+                + ", mappings=" + getMappingCount() + ", hits=" + getHits() + ", misses="
+                + getMisses() + ", evictions=" + getEvictions() + "]";
+    }
+}
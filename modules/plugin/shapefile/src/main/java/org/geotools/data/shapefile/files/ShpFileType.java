@@ -50,6 +50,16 @@ public enum ShpFileType {
      * format the mapservers shptree tool generates
      */
     QIX("qix"),
+    /**
+     * the .hrx file, a packed Hilbert R-tree spatial index of the shapefile, an
+     * alternative to the .qix one
+     */
+    HRX("hrx"),
+    /**
+     * the .aix file, it contains sorted indexes over the values of some of the
+     * dbf columns
+     */
+    AIX("aix"),
     /**
      * the .fix file, it contains all the Feature IDs for constant time lookup
      * by fid also so that the fids stay consistent across deletes and adds
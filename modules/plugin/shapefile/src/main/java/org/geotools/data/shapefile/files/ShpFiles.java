@@ -44,6 +44,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -101,6 +102,21 @@ public class ShpFiles {
 
     private boolean memoryMapCacheEnabled;
 
+    /**
+     * An optional pool of read only memory mapped buffers, shared with other stores
+     */
+    private MemoryMapPool memoryMapPool;
+
+    /**
+     * When true, the read channels release their lock as soon as the file is opened
+     */
+    private volatile boolean snapshotMode;
+
+    /**
+     * Serializes the writers in snapshot mode, where the read locks do not keep them out
+     */
+    private final ReentrantLock writersLock = new ReentrantLock();
+
     /**
      * Searches for all the files and adds then to the map of files.
      * 
@@ -488,6 +504,9 @@ public class ShpFiles {
         readWriteLock.writeLock().lock();
         threadLockers.add(new ShpFilesLocker(url, requestor));
         mapCache.cleanFileCache(url);
+        if (memoryMapPool != null) {
+            memoryMapPool.cleanFile(url);
+        }
         return url;
     }
 
@@ -794,7 +813,13 @@ public class ShpFiles {
                 File file = DataUtilities.urlToFile(url);
 
                 RandomAccessFile raf = new RandomAccessFile(file, "r");
-                channel = new FileChannelDecorator(raf.getChannel(), this, url, requestor);
+                FileChannelDecorator decorator = new FileChannelDecorator(raf.getChannel(), this,
+                        url, requestor);
+                channel = decorator;
+                if (snapshotMode) {
+                    // the open file keeps on pointing to the current version even if replaced
+                    decorator.releaseLock();
+                }
 
             } else {
                 InputStream in = url.openConnection().getInputStream();
@@ -923,7 +948,8 @@ public class ShpFiles {
      */
     MappedByteBuffer map(FileChannel wrapped, URL url, MapMode mode, long position, long size)
             throws IOException {
-        if (memoryMapCacheEnabled) {
+        // in snapshot mode the cached mappings could belong to a replaced version of the file
+        if (memoryMapCacheEnabled && !snapshotMode) {
             return mapCache.map(wrapped, url, mode, position, size);
         } else {
             return wrapped.map(mode, position, size);
@@ -953,6 +979,88 @@ public class ShpFiles {
         }
     }
 
+    /**
+     * Returns the pool of memory mapped buffers used by this set of files, if any
+     * 
+     * @return
+     */
+    public MemoryMapPool getMemoryMapPool() {
+        return memoryMapPool;
+    }
+
+    /**
+     * Sets a pool of memory mapped buffers, that can be shared among many stores. When set, the
+     * read only mappings are taken from the pool, and pinned until the channel that required them
+     * is closed. The pool takes precedence over the memory map cache.
+     * 
+     * @param memoryMapPool
+     */
+    public void setMemoryMapPool(MemoryMapPool memoryMapPool) {
+        this.memoryMapPool = memoryMapPool;
+    }
+
+    /**
+     * Returns true if the snapshot mode is enabled, see {@link #setSnapshotMode(boolean)}
+     * 
+     * @return
+     */
+    public boolean isSnapshotMode() {
+        return snapshotMode;
+    }
+
+    /**
+     * Enables the snapshot mode, meant for read mostly scenarios with occasional writes. In
+     * snapshot mode the read channels release their read lock as soon as the file is opened, so
+     * readers never keep writers waiting. Writers prepare the new version of the files in
+     * temporary files and then publish it by renaming them over the original ones: open readers
+     * keep on reading the version they opened, and the old version is released by the file
+     * system when its last reader is closed.
+     * <p>
+     * Readers opening more than one file should hold a read lock on the {@link ShpFileType#SHP}
+     * file while opening them, to make sure they all belong to the same version.
+     * <p>
+     * The atomic replacement requires a file system allowing to rename a file over an open one
+     * (e.g., any POSIX one), on other platforms the files are replaced as in the normal mode.
+     * The memory map cache and pool are not used in snapshot mode, as the mappings they hold
+     * could belong to a replaced version of the files.
+     * <p>
+     * Since the writers do not hold read locks on the version they copy either, they have to be
+     * serialized with {@link #lockWriters()}, or the last one replacing the files would drop the
+     * edits of the others.
+     * 
+     * @param snapshotMode
+     */
+    public void setSnapshotMode(boolean snapshotMode) {
+        this.snapshotMode = snapshotMode;
+        if (snapshotMode) {
+            mapCache.clean();
+        }
+    }
+
+    /**
+     * In snapshot mode, waits for the other writers to be done and locks them out, otherwise
+     * does nothing as the read locks already keep a writer from replacing the files another one
+     * is copying. Writers have to call it before opening the files they copy, and hold it until
+     * the new version has replaced the originals.
+     * 
+     * @return true if the lock was taken, in which case it must be released by the same thread
+     *         with {@link #unlockWriters()}
+     */
+    public boolean lockWriters() {
+        if (!snapshotMode) {
+            return false;
+        }
+        writersLock.lock();
+        return true;
+    }
+
+    /**
+     * Releases the lock taken by {@link #lockWriters()}
+     */
+    public void unlockWriters() {
+        writersLock.unlock();
+    }
+
     /**
      * Returns true if the file exists. Throws an exception if the file is not local.
      * 
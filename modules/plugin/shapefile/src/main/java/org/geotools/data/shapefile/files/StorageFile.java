@@ -116,6 +116,13 @@ public final class StorageFile implements Comparable<StorageFile>, FileWriter {
                     if (storage.equals(dest))
                         return;
 
+                    // in snapshot mode try to publish the new version with an atomic rename,
+                    // the readers still using the old version will keep on reading it
+                    if (storageFile.shpFiles.isSnapshotMode() && storage.exists()
+                            && storage.renameTo(dest)) {
+                        continue;
+                    }
+
                     if (dest.exists()) {
                         if (!dest.delete()) {
                             LOGGER.severe("Unable to delete the file: "
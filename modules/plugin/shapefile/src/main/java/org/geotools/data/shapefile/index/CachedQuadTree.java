@@ -29,8 +29,14 @@ import org.geotools.data.shapefile.shp.IndexFile;
 import com.vividsolutions.jts.geom.Envelope;
 
 /**
- * An experimental QIX in memory index cache. It loads the tree into a packed
- * memory structure that 
+ * An experimental QIX in memory index cache. It loads the tree into a packed memory structure
+ * made of a few primitive arrays, with no per node objects: the nodes are laid out in depth first
+ * order, each one with its bounds, the range of its shape offsets, and the position of the node
+ * following its subtree, so that the search can skip a whole subtree not intersecting the
+ * search area.
+ * <p>
+ * Trees can be shared among stores by means of a {@link QuadTreeCache}
+ * 
  * @author Andrea Aime - OpenGeo
  *
  *
@@ -44,48 +50,118 @@ public class CachedQuadTree {
         DATA_DEFINITION.addField(Long.class);
     };
     
-    MemoryNode root;
+    /**
+     * The node bounds, as minx, miny, maxx, maxy for each node
+     */
+    float[] bounds;
+
+    /**
+     * For each node, the index of the first node after its subtree
+     */
+    int[] skip;
+
+    /**
+     * For each node, the position of its first shape offset in {@link #offsets}. The shapes of
+     * node n are between starts[n] and starts[n + 1]
+     */
+    int[] starts;
+
+    /**
+     * The number of nodes
+     */
+    int nodeCount;
+
+    /**
+     * The shape offsets, in bytes
+     */
     Indices offsets;
     
     public CachedQuadTree(QuadTree tree) throws IOException {
     	offsets = new Indices();
-        this.root = cloneAndTranslate(tree.getRoot(), tree.getIndexfile());
+    	bounds = new float[64 * 4];
+    	skip = new int[64];
+    	starts = new int[65];
+        cloneAndTranslate(tree.getRoot(), tree.getIndexfile());
+        starts[nodeCount] = offsets.size();
+
+        // trim the arrays to size
+        bounds = Arrays.copyOf(bounds, nodeCount * 4);
+        skip = Arrays.copyOf(skip, nodeCount);
+        starts = Arrays.copyOf(starts, nodeCount + 1);
+        offsets.trim();
     }
     
     public Envelope getBounds() {
-        return new Envelope(root.minx, root.maxx, root.miny, root.maxy);
+        return new Envelope(bounds[0], bounds[2], bounds[1], bounds[3]);
+    }
+
+    /**
+     * Returns the number of nodes in the tree
+     * 
+     * @return
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns an estimate of the memory used by the tree, in bytes
+     * 
+     * @return
+     */
+    public long getSizeInBytes() {
+        return 4L * (bounds.length + skip.length + starts.length + offsets.indices.length);
     }
 
-    private MemoryNode cloneAndTranslate(Node node, IndexFile indexfile) throws IOException {
+    private void cloneAndTranslate(Node node, IndexFile indexfile) throws IOException {
+        int n = nodeCount++;
+        if (n == skip.length) {
+            int newSize = skip.length * 2;
+            bounds = Arrays.copyOf(bounds, newSize * 4);
+            skip = Arrays.copyOf(skip, newSize);
+            starts = Arrays.copyOf(starts, newSize + 1);
+        }
+
+        // round the bounds outwards, so that the float conversion cannot miss any shape
+        Envelope envelope = node.getBounds();
+        bounds[n * 4] = roundDown(envelope.getMinX());
+        bounds[n * 4 + 1] = roundDown(envelope.getMinY());
+        bounds[n * 4 + 2] = roundUp(envelope.getMaxX());
+        bounds[n * 4 + 3] = roundUp(envelope.getMaxY());
+
     	// copy the shape ids and clean up
     	node.pack();
         int[] shapeIds = node.getShapesId();
-        int start = -1;
-        int end = -1;
+        starts[n] = offsets.size();
         if(shapeIds != null && shapeIds.length > 0) {
-        	start = offsets.size();
             // turn the shape ids into offsets so that we won't need to open the index file anymore
             for (int i = 0; i < shapeIds.length; i++) {
                 offsets.add(indexfile.getOffsetInBytes(shapeIds[i]));
             }
-            end = offsets.size();
         }
         node.clean();
         
         // recurse and then clean up the subnodes as well
-        MemoryNode mem = new MemoryNode(node.getBounds(), start, end, node.getNumSubNodes());
         for (int i = 0; i < node.getNumSubNodes(); i++) {
-            mem.subnodes[i] =  cloneAndTranslate(node.getSubNode(i), indexfile);
+            cloneAndTranslate(node.getSubNode(i), indexfile);
         }
         node.clearSubNodes();
-        
-        return mem;
+        skip[n] = nodeCount;
+    }
+
+    static float roundDown(double value) {
+        float f = (float) value;
+        return f > value ? Math.nextAfter(f, Double.NEGATIVE_INFINITY) : f;
+    }
+
+    static float roundUp(double value) {
+        float f = (float) value;
+        return f < value ? Math.nextAfter(f, Double.POSITIVE_INFINITY) : f;
     }
-    
 
     public CloseableIterator<Data> search(final Envelope bounds) throws StoreException {
         final Indices indices = new Indices();
-        collectIndices(indices, root, bounds);
+        collectIndices(indices, bounds);
         indices.sort();
         final Data data = new Data(DATA_DEFINITION);
         return new CloseableIterator<Data>() {
@@ -133,19 +209,24 @@ public class CachedQuadTree {
         };
     }
     
-    void collectIndices(Indices indices, MemoryNode node, Envelope bounds) throws StoreException {
-        if(!node.intersects(bounds)) {
-            return;
-        }
-        
-        if(node.start > -1 && node.end >= node.start) {
-        	for(int i = node.start; i < node.end; i++) {
-        		indices.add(offsets.get(i));
-        	}
-        }
-        
-        for (MemoryNode child : node.subnodes) {
-            collectIndices(indices, child, bounds);
+    void collectIndices(Indices indices, Envelope envelope) throws StoreException {
+        final double minx = envelope.getMinX();
+        final double miny = envelope.getMinY();
+        final double maxx = envelope.getMaxX();
+        final double maxy = envelope.getMaxY();
+        int n = 0;
+        while (n < nodeCount) {
+            int b = n * 4;
+            if (bounds[b] > maxx || bounds[b + 2] < minx || bounds[b + 1] > maxy
+                    || bounds[b + 3] < miny) {
+                // skip the whole subtree
+                n = skip[n];
+            } else {
+                for (int i = starts[n]; i < starts[n + 1]; i++) {
+                    indices.add(offsets.get(i));
+                }
+                n++;
+            }
         }
     }
 
@@ -183,7 +264,7 @@ public class CachedQuadTree {
          */
         void add(int index) {
             curr++;
-            if((curr * 2 + 1) >= indices.length) {
+            if(curr >= indices.length) {
                 int newSize = indices.length * 3 / 2;
                 if(newSize < 10) {
                     newSize = 10;
@@ -209,29 +290,13 @@ public class CachedQuadTree {
         void sort() {
             Arrays.sort(indices, 0, curr + 1);
         }
-    }
 
-    static class MemoryNode {
-    	float minx, miny, maxx, maxy;
-    	int start;
-    	int end;
-    	MemoryNode[] subnodes;
-		
-    	public MemoryNode(Envelope envelope, int start, int end, int numSubnodes) {
-			this.minx = (float) envelope.getMinX();
-			this.miny = (float) envelope.getMinY();
-			this.maxx = (float) envelope.getMaxX();
-			this.maxy = (float) envelope.getMaxY();
-			this.start = start;
-			this.end = end;
-			this.subnodes = new MemoryNode[numSubnodes];
-		}
-
-		public boolean intersects(Envelope bounds) {
-			// TODO: optimize this one
-			return new Envelope(minx, maxx, miny, maxy).intersects(bounds);
-		}
-    	
+        /**
+         * Releases the unused space
+         */
+        void trim() {
+            indices = Arrays.copyOf(indices, curr + 1);
+        }
     }
 
 }
@@ -0,0 +1,260 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.shapefile.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.util.logging.Logging;
+
+/**
+ * A cache of {@link CachedQuadTree} shared by all the shapefile stores, bounded by the memory the
+ * trees use. The trees are associated to the qix file they have been loaded from, and are
+ * automatically discarded when the file is modified. When over budget, the least recently used
+ * trees are dropped.
+ *
+ * @source $URL$
+ */
+public class QuadTreeCache {
+
+    static final Logger LOGGER = Logging.getLogger(QuadTreeCache.class);
+
+    /**
+     * The default budget, 256MB, can be changed with the
+     * <code>org.geotools.shapefile.qixCacheMaxBytes</code> system variable (in bytes)
+     */
+    public static final long DEFAULT_MAX_BYTES;
+
+    static {
+        long max = 256L * 1024 * 1024;
+        try {
+            String smax = System.getProperty("org.geotools.shapefile.qixCacheMaxBytes");
+            if (smax != null) {
+                max = Long.parseLong(smax);
+            }
+        } catch (Throwable t) {
+            LOGGER.log(Level.SEVERE, "Could not set the qix cache size", t);
+        }
+        DEFAULT_MAX_BYTES = max;
+    }
+
+    static QuadTreeCache DEFAULT;
+
+    /**
+     * Returns the process wide cache, sized after {@link #DEFAULT_MAX_BYTES}
+     *
+     * @return
+     */
+    public static synchronized QuadTreeCache getDefault() {
+        if (DEFAULT == null) {
+            DEFAULT = new QuadTreeCache(DEFAULT_MAX_BYTES);
+        }
+        return DEFAULT;
+    }
+
+    /**
+     * A cached tree, along with the state of the file it has been loaded from
+     */
+    static class Entry {
+        CachedQuadTree tree;
+
+        long lastModified;
+
+        long length;
+
+        long size;
+
+        Entry(CachedQuadTree tree, File file) {
+            this.tree = tree;
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            this.size = tree.getSizeInBytes();
+        }
+
+        boolean isValid(File file) {
+            return lastModified == file.lastModified() && length == file.length();
+        }
+    }
+
+    /**
+     * The trees, in access order (least recently used first)
+     */
+    Map<File, Entry> trees = new LinkedHashMap<File, Entry>(16, 0.75f, true);
+
+    long maxBytes;
+
+    long sizeInBytes;
+
+    AtomicLong hits = new AtomicLong();
+
+    AtomicLong misses = new AtomicLong();
+
+    AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Builds a new cache
+     *
+     * @param maxBytes The maximum memory, in bytes, used by the cached trees
+     */
+    public QuadTreeCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the tree loaded from the specified qix file, or null if not found, or if the file
+     * has been modified since the tree was loaded
+     *
+     * @param qixFile
+     * @return
+     * @throws IOException
+     */
+    public CachedQuadTree get(File qixFile) throws IOException {
+        File file = qixFile.getCanonicalFile();
+        synchronized (this) {
+            Entry entry = trees.get(file);
+            if (entry != null && !entry.isValid(file)) {
+                remove(file);
+                entry = null;
+            }
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.tree;
+        }
+    }
+
+    /**
+     * Caches the tree loaded from the specified qix file, evicting the least recently used trees
+     * if the cache goes over budget
+     *
+     * @param qixFile
+     * @param tree
+     * @throws IOException
+     */
+    public void put(File qixFile, CachedQuadTree tree) throws IOException {
+        File file = qixFile.getCanonicalFile();
+        synchronized (this) {
+            remove(file);
+            Entry entry = new Entry(tree, file);
+            trees.put(file, entry);
+            sizeInBytes += entry.size;
+            evict();
+        }
+    }
+
+    /**
+     * Removes the tree loaded from the specified qix file, if any
+     *
+     * @param qixFile
+     * @throws IOException
+     */
+    public void remove(File qixFile) throws IOException {
+        File file = qixFile.getCanonicalFile();
+        synchronized (this) {
+            Entry entry = trees.remove(file);
+            if (entry != null) {
+                sizeInBytes -= entry.size;
+            }
+        }
+    }
+
+    private void evict() {
+        for (Iterator<Map.Entry<File, Entry>> it = trees.entrySet().iterator(); it.hasNext()
+                && sizeInBytes > maxBytes;) {
+            Map.Entry<File, Entry> entry = it.next();
+            it.remove();
+            sizeInBytes -= entry.getValue().size;
+            evictions.incrementAndGet();
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "Evicted the cached quadtree for " + entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Removes all the trees from the cache
+     */
+    public synchronized void clear() {
+        trees.clear();
+        sizeInBytes = 0;
+    }
+
+    /**
+     * Returns the maximum memory, in bytes, used by the cached trees
+     *
+     * @return
+     */
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the maximum memory, in bytes, used by the cached trees. Lowering it will evict the
+     * trees in excess right away
+     *
+     * @param maxBytes
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * The estimated memory used by the cached trees
+     *
+     * @return
+     */
+    public synchronized long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * The number of cached trees
+     *
+     * @return
+     */
+    public synchronized int getTreeCount() {
+        return trees.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "QuadTreeCache [maxBytes=" + getMaxBytes() + ", sizeInBytes=" + getSizeInBytes()
+                + ", trees=" + getTreeCount() + ", hits=" + getHits() + ", misses="
+                + getMisses() + ", evictions=" + getEvictions() + "]";
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.shapefile.index.attribute;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.shapefile.index.quadtree.StoreException;
+import org.geotools.resources.NIOUtilities;
+import org.geotools.util.logging.Logging;
+
+/**
+ * A read only index over the values of some dbf columns, stored in a '.aix' file. Each column is
+ * stored as an array of (value, record number) entries sorted by value, which is binary searched
+ * to answer equality and range lookups: this is a static, fully packed equivalent of a B-tree,
+ * where the search touches a logarithmic number of pages and the matches are read sequentially.
+ * <p>
+ * The file is made of a header, a directory of the indexed columns, and the entries, all in
+ * little endian order:
+ * <ul>
+ * <li>the "GTAI" magic bytes, the format version and the number of columns</li>
+ * <li>for each column its name (as a short length followed by the UTF-8 bytes), its type (N for
+ * numbers, C for strings), the key length, the number of entries and the position of the first
+ * entry in the file</li>
+ * <li>the entries, each one being a key followed by the zero based record number. Numeric keys
+ * are stored as doubles, string keys as fixed length UTF-16 chars, padded with zeroes</li>
+ * </ul>
+ * Null values are not indexed.
+ *
+ * @source $URL$
+ */
+public class AttributeIndex {
+
+    static final Logger LOGGER = Logging.getLogger(AttributeIndex.class);
+
+    static final byte[] MAGIC = new byte[] { 'G', 'T', 'A', 'I' };
+
+    static final int VERSION = 1;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Numeric column type
+     */
+    public static final char NUMBER = 'N';
+
+    /**
+     * String column type
+     */
+    public static final char STRING = 'C';
+
+    /**
+     * The description of an indexed column
+     */
+    static class Column {
+        String name;
+
+        char type;
+
+        int keyLength;
+
+        int count;
+
+        long start;
+
+        int entryLength() {
+            return keyLength + 4;
+        }
+    }
+
+    File file;
+
+    FileInputStream fis;
+
+    FileChannel channel;
+
+    ByteBuffer mapped;
+
+    ByteBuffer entryBuffer;
+
+    Map<String, Column> columns = new LinkedHashMap<String, Column>();
+
+    /**
+     * Opens an attribute index
+     *
+     * @param file The '.aix' file
+     * @param useMemoryMapping If true the file will be memory mapped (unless larger than 2GB),
+     *        otherwise the entries will be read from the file on demand
+     * @throws StoreException If the file cannot be read, or is not a valid attribute index
+     */
+    public AttributeIndex(File file, boolean useMemoryMapping) throws StoreException {
+        this.file = file;
+        try {
+            fis = new FileInputStream(file);
+            channel = fis.getChannel();
+            if (useMemoryMapping && channel.size() < Integer.MAX_VALUE) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } else {
+                mapped = null;
+            }
+
+            ByteBuffer header = read(0, 12);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(MAGIC, magic)) {
+                throw new StoreException(file + " is not an attribute index file");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new StoreException("Unsupported attribute index version " + version);
+            }
+            int numColumns = header.getInt();
+            long position = 12;
+            int maxEntryLength = 0;
+            for (int i = 0; i < numColumns; i++) {
+                int nameLength = read(position, 2).getShort();
+                ByteBuffer buffer = read(position + 2, nameLength + 1 + 4 + 4 + 8);
+                byte[] name = new byte[nameLength];
+                buffer.get(name);
+                Column column = new Column();
+                column.name = new String(name, UTF8);
+                column.type = (char) buffer.get();
+                column.keyLength = buffer.getInt();
+                column.count = buffer.getInt();
+                column.start = buffer.getLong();
+                columns.put(column.name, column);
+                maxEntryLength = Math.max(maxEntryLength, column.entryLength());
+                position += 2 + buffer.capacity();
+            }
+            entryBuffer = ByteBuffer.allocate(maxEntryLength);
+            entryBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        } catch (StoreException e) {
+            closeQuietly();
+            throw e;
+        } catch (IOException e) {
+            closeQuietly();
+            throw new StoreException(e);
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer;
+        if (mapped != null) {
+            if (position + length > mapped.limit()) {
+                throw new IOException("Unexpected end of file while reading " + file);
+            }
+            buffer = mapped.duplicate();
+            buffer.position((int) position);
+            buffer.limit((int) position + length);
+            buffer = buffer.slice();
+        } else {
+            buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of file while reading " + file);
+                }
+            }
+            buffer.flip();
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Returns the names of the indexed columns
+     *
+     * @return
+     */
+    public Set<String> getColumns() {
+        return columns.keySet();
+    }
+
+    /**
+     * Returns the type of the specified column, {@link #NUMBER} or {@link #STRING}, or 0 if the
+     * column is not indexed
+     *
+     * @param column
+     * @return
+     */
+    public char getType(String column) {
+        Column c = columns.get(column);
+        return c == null ? 0 : c.type;
+    }
+
+    /**
+     * Returns the records whose column value is equal to the specified one
+     *
+     * @param column The column name
+     * @param value A {@link Number} for numeric columns, a {@link String} for the others
+     * @return The sorted, zero based record numbers
+     * @throws StoreException
+     */
+    public int[] equalTo(String column, Object value) throws StoreException {
+        return range(column, value, true, value, true);
+    }
+
+    /**
+     * Returns the records whose column value is in the specified range
+     *
+     * @param column The column name
+     * @param min The lower bound, or null if unbounded. A {@link Number} for numeric columns, a
+     *        {@link String} for the others
+     * @param minInclusive Whether the lower bound is part of the range
+     * @param max The upper bound, or null if unbounded
+     * @param maxInclusive Whether the upper bound is part of the range
+     * @return The sorted, zero based record numbers
+     * @throws StoreException
+     */
+    public int[] range(String column, Object min, boolean minInclusive, Object max,
+            boolean maxInclusive) throws StoreException {
+        Column c = columns.get(column);
+        if (c == null) {
+            throw new IllegalArgumentException("Column " + column + " is not indexed");
+        }
+        try {
+            // first entry in the range, and first entry past the range
+            int start = min == null ? 0 : search(c, min, !minInclusive);
+            int end = max == null ? c.count : search(c, max, maxInclusive);
+            if (end <= start) {
+                return new int[0];
+            }
+
+            int[] records = new int[end - start];
+            ByteBuffer entries = read(c.start + (long) start * c.entryLength(), records.length
+                    * c.entryLength());
+            for (int i = 0; i < records.length; i++) {
+                records[i] = entries.getInt(i * c.entryLength() + c.keyLength);
+            }
+            Arrays.sort(records);
+            return records;
+        } catch (IOException e) {
+            throw new StoreException(e);
+        }
+    }
+
+    /**
+     * Binary searches the first entry whose key is greater or equal than the value (or strictly
+     * greater, if <code>after</code> is true)
+     */
+    int search(Column c, Object value, boolean after) throws IOException {
+        int low = 0;
+        int high = c.count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(c, mid, value);
+            if (cmp < 0 || (after && cmp == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares the key of the specified entry with the value
+     */
+    int compare(Column c, int entry, Object value) throws IOException {
+        ByteBuffer key = entry(c, entry);
+        if (c.type == NUMBER) {
+            return Double.compare(key.getDouble(0), ((Number) value).doubleValue());
+        } else {
+            return readString(key, c.keyLength).compareTo((String) value);
+        }
+    }
+
+    private ByteBuffer entry(Column c, int entry) throws IOException {
+        long position = c.start + (long) entry * c.entryLength();
+        if (mapped != null) {
+            return read(position, c.entryLength());
+        }
+        entryBuffer.clear();
+        entryBuffer.limit(c.entryLength());
+        while (entryBuffer.hasRemaining()) {
+            if (channel.read(entryBuffer, position + entryBuffer.position()) < 0) {
+                throw new IOException("Unexpected end of file while reading " + file);
+            }
+        }
+        entryBuffer.flip();
+        return entryBuffer;
+    }
+
+    static String readString(ByteBuffer key, int keyLength) {
+        int chars = keyLength / 2;
+        char[] value = new char[chars];
+        int length = 0;
+        for (int i = 0; i < chars; i++) {
+            value[i] = key.getChar(i * 2);
+            if (value[i] != 0) {
+                length = i + 1;
+            }
+        }
+        return new String(value, 0, length);
+    }
+
+    /**
+     * Closes the index and releases the file
+     *
+     * @throws StoreException
+     */
+    public void close() throws StoreException {
+        try {
+            if (mapped != null) {
+                NIOUtilities.clean(mapped, true);
+                mapped = null;
+            }
+            if (channel != null) {
+                channel.close();
+            }
+            if (fis != null) {
+                fis.close();
+            }
+        } catch (IOException e) {
+            throw new StoreException(e);
+        } finally {
+            channel = null;
+            fis = null;
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (StoreException e) {
+            LOGGER.log(Level.FINE, "Failed to close " + file, e);
+        }
+    }
+}
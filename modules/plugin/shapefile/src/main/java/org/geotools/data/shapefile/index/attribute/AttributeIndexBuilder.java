@@ -0,0 +1,271 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.shapefile.index.attribute;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.shapefile.dbf.DbaseFileHeader;
+import org.geotools.data.shapefile.dbf.DbaseFileReader;
+import org.geotools.data.shapefile.dbf.DbaseFileReader.Row;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Builds an {@link AttributeIndex} out of a dbf file. The values of the indexed columns are
+ * collected in memory, sorted, and then written out column by column.
+ * <p>
+ * Only character and numeric columns can be indexed, other columns are skipped.
+ *
+ * @source $URL$
+ */
+public class AttributeIndexBuilder {
+
+    static final Logger LOGGER = Logging.getLogger(AttributeIndexBuilder.class);
+
+    /**
+     * The values of a column being indexed
+     */
+    static class ColumnValues {
+        AttributeIndex.Column column = new AttributeIndex.Column();
+
+        int field;
+
+        double[] numbers;
+
+        String[] strings;
+
+        int[] records = new int[1024];
+
+        int count;
+
+        void add(Object value, int record) {
+            if (count == records.length) {
+                records = Arrays.copyOf(records, count * 2);
+                if (numbers != null) {
+                    numbers = Arrays.copyOf(numbers, count * 2);
+                } else {
+                    strings = Arrays.copyOf(strings, count * 2);
+                }
+            }
+            if (numbers != null) {
+                double number = ((Number) value).doubleValue();
+                if (Double.isNaN(number)) {
+                    return;
+                }
+                numbers[count] = number;
+            } else {
+                strings[count] = (String) value;
+            }
+            records[count++] = record;
+        }
+
+        int compare(int i, int j) {
+            int cmp;
+            if (numbers != null) {
+                cmp = Double.compare(numbers[i], numbers[j]);
+            } else {
+                cmp = strings[i].compareTo(strings[j]);
+            }
+            return cmp != 0 ? cmp : records[i] - records[j];
+        }
+    }
+
+    List<String> columns;
+
+    /**
+     * Builds a new index builder
+     *
+     * @param columns The names of the dbf columns to be indexed
+     */
+    public AttributeIndexBuilder(List<String> columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * Reads the dbf and writes out the index
+     *
+     * @param dbf The dbf reader, positioned on the first record. It won't be closed.
+     * @param file The target '.aix' file
+     * @return The number of indexed columns
+     * @throws IOException
+     */
+    public int build(DbaseFileReader dbf, File file) throws IOException {
+        DbaseFileHeader header = dbf.getHeader();
+        List<ColumnValues> values = new ArrayList<ColumnValues>();
+        for (String name : columns) {
+            int field = -1;
+            for (int i = 0; i < header.getNumFields(); i++) {
+                if (header.getFieldName(i).equals(name)) {
+                    field = i;
+                    break;
+                }
+            }
+            if (field == -1) {
+                LOGGER.log(Level.WARNING, "Cannot index column " + name
+                        + ", it's not part of the dbf file");
+                continue;
+            }
+            char type = Character.toUpperCase(header.getFieldType(field));
+            ColumnValues cv = new ColumnValues();
+            cv.field = field;
+            cv.column.name = name;
+            if (type == 'N' || type == 'F') {
+                cv.column.type = AttributeIndex.NUMBER;
+                cv.column.keyLength = 8;
+                cv.numbers = new double[cv.records.length];
+            } else if (type == 'C') {
+                cv.column.type = AttributeIndex.STRING;
+                cv.column.keyLength = header.getFieldLength(field) * 2;
+                cv.strings = new String[cv.records.length];
+            } else {
+                LOGGER.log(Level.WARNING, "Cannot index column " + name + ", type " + type
+                        + " is not supported");
+                continue;
+            }
+            values.add(cv);
+        }
+
+        int[] projection = new int[values.size()];
+        for (int i = 0; i < projection.length; i++) {
+            projection[i] = values.get(i).field;
+        }
+        dbf.setProjection(projection);
+        int record = 0;
+        while (dbf.hasNext()) {
+            Row row = dbf.readRow();
+            if (!row.isDeleted()) {
+                for (ColumnValues cv : values) {
+                    Object value = row.read(cv.field);
+                    if (value != null) {
+                        cv.add(value, record);
+                    }
+                }
+            }
+            record++;
+        }
+
+        store(values, file);
+        return values.size();
+    }
+
+    void store(List<ColumnValues> values, File file) throws IOException {
+        // compute the directory size, to place the entries right after it
+        long position = 12;
+        for (ColumnValues cv : values) {
+            position += 2 + cv.column.name.getBytes(AttributeIndex.UTF8).length + 1 + 4 + 4 + 8;
+        }
+
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            FileChannel channel = fos.getChannel();
+            ByteBuffer header = ByteBuffer.allocate((int) position);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            header.put(AttributeIndex.MAGIC);
+            header.putInt(AttributeIndex.VERSION);
+            header.putInt(values.size());
+            for (ColumnValues cv : values) {
+                byte[] name = cv.column.name.getBytes(AttributeIndex.UTF8);
+                header.putShort((short) name.length);
+                header.put(name);
+                header.put((byte) cv.column.type);
+                header.putInt(cv.column.keyLength);
+                header.putInt(cv.count);
+                header.putLong(position);
+                position += (long) cv.count * cv.column.entryLength();
+            }
+            header.flip();
+            write(channel, header);
+
+            for (ColumnValues cv : values) {
+                int[] order = sort(cv);
+                int entryLength = cv.column.entryLength();
+                ByteBuffer buffer = ByteBuffer.allocate(Math.max(entryLength, 64 * 1024)
+                        / entryLength * entryLength);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                for (int i = 0; i < cv.count; i++) {
+                    if (buffer.remaining() < entryLength) {
+                        buffer.flip();
+                        write(channel, buffer);
+                        buffer.clear();
+                    }
+                    int idx = order[i];
+                    if (cv.numbers != null) {
+                        buffer.putDouble(cv.numbers[idx]);
+                    } else {
+                        String value = cv.strings[idx];
+                        int chars = cv.column.keyLength / 2;
+                        for (int j = 0; j < chars; j++) {
+                            buffer.putChar(j < value.length() ? value.charAt(j) : 0);
+                        }
+                    }
+                    buffer.putInt(cv.records[idx]);
+                }
+                buffer.flip();
+                write(channel, buffer);
+            }
+        } finally {
+            fos.close();
+        }
+    }
+
+    private void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Returns the positions of the values, sorted by value and record number (merge sort, as the
+     * JDK does not sort primitives with a custom comparator)
+     */
+    int[] sort(ColumnValues cv) {
+        int[] order = new int[cv.count];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        int[] work = new int[cv.count];
+        for (int width = 1; width < order.length; width *= 2) {
+            for (int low = 0; low < order.length; low += 2 * width) {
+                int mid = Math.min(low + width, order.length);
+                int high = Math.min(low + 2 * width, order.length);
+                int i = low, j = mid, k = low;
+                while (i < mid && j < high) {
+                    work[k++] = cv.compare(order[i], order[j]) <= 0 ? order[i++] : order[j++];
+                }
+                while (i < mid) {
+                    work[k++] = order[i++];
+                }
+                while (j < high) {
+                    work[k++] = order[j++];
+                }
+            }
+            int[] swap = order;
+            order = work;
+            work = swap;
+        }
+        return order;
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.shapefile.index.rtree;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.shapefile.index.CloseableIterator;
+import org.geotools.data.shapefile.index.Data;
+import org.geotools.data.shapefile.index.DataDefinition;
+import org.geotools.data.shapefile.index.quadtree.StoreException;
+import org.geotools.resources.NIOUtilities;
+import org.geotools.util.logging.Logging;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * A read only, bulk loaded R-tree stored in a '.hrx' file. The shapes are sorted along a Hilbert
+ * curve and packed in full nodes, which are laid out level by level, leaves first, so that the
+ * children of a node are always contiguous in the file. A BBOX search will touch only the nodes
+ * intersecting the area, each one being a single contiguous run of bytes, no matter how the data
+ * is distributed.
+ * <p>
+ * The file is made of a header followed by the entries, all in little endian order:
+ * <ul>
+ * <li>the "GTHR" magic bytes, the format version, the node size, the number of shapes and the
+ * number of levels</li>
+ * <li>the index of the first entry of each level, plus the total number of entries</li>
+ * <li>the entries, each one being an envelope (minx, miny, maxx, maxy) and an integer value, that
+ * is the shape offset in the .shp file (in 16 bit words, as in the .shx file) for the leaves, or
+ * the index of the first child entry for the other levels</li>
+ * </ul>
+ * <p>
+ * An open tree can be searched by several threads at the same time, but must not be closed
+ * while being searched.
+ *
+ * @source $URL$
+ */
+public class PackedRTree {
+
+    static final Logger LOGGER = Logging.getLogger(PackedRTree.class);
+
+    static final byte[] MAGIC = new byte[] { 'G', 'T', 'H', 'R' };
+
+    static final int VERSION = 1;
+
+    /**
+     * Size of the fixed part of the header: magic, version, node size, shape count, level count
+     */
+    static final int HEADER_SIZE = 4 + 4 * 4;
+
+    /**
+     * Size of an entry: envelope plus value
+     */
+    static final int ENTRY_SIZE = 4 * 8 + 4;
+
+    static final DataDefinition DATA_DEFINITION = new DataDefinition("US-ASCII");
+
+    static {
+        DATA_DEFINITION.addField(Integer.class);
+        DATA_DEFINITION.addField(Long.class);
+    }
+
+    File file;
+
+    FileInputStream fis;
+
+    FileChannel channel;
+
+    /**
+     * The whole file, when memory mapped
+     */
+    ByteBuffer mapped;
+
+    int nodeSize;
+
+    int numShapes;
+
+    /**
+     * The index of the first entry of each level, plus the total number of entries as the last
+     * element
+     */
+    int[] levelBounds;
+
+    long entriesStart;
+
+    /**
+     * Opens a packed R-tree
+     *
+     * @param file The '.hrx' file
+     * @param useMemoryMapping If true the file will be memory mapped, otherwise the nodes will be
+     *        read from the file on demand
+     * @throws StoreException If the file cannot be read, or is not a valid packed R-tree
+     */
+    public PackedRTree(File file, boolean useMemoryMapping) throws StoreException {
+        this.file = file;
+        try {
+            if (LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.finest("Opening packed R-tree " + file.getCanonicalPath());
+            }
+            fis = new FileInputStream(file);
+            channel = fis.getChannel();
+
+            ByteBuffer header = read(0, HEADER_SIZE);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(MAGIC, magic)) {
+                throw new StoreException(file + " is not a packed R-tree file");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new StoreException("Unsupported packed R-tree version " + version);
+            }
+            nodeSize = header.getInt();
+            numShapes = header.getInt();
+            int numLevels = header.getInt();
+
+            ByteBuffer levels = read(HEADER_SIZE, (numLevels + 1) * 4);
+            levelBounds = new int[numLevels + 1];
+            for (int i = 0; i < levelBounds.length; i++) {
+                levelBounds[i] = levels.getInt();
+            }
+            entriesStart = HEADER_SIZE + (numLevels + 1) * 4;
+            long expected = entriesStart + (long) levelBounds[numLevels] * ENTRY_SIZE;
+            if (channel.size() < expected) {
+                throw new StoreException(file + " is truncated, expected " + expected
+                        + " bytes but found " + channel.size());
+            }
+
+            if (useMemoryMapping) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        } catch (StoreException e) {
+            closeQuietly();
+            throw e;
+        } catch (IOException e) {
+            closeQuietly();
+            throw new StoreException(e);
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        readFully(buffer, position);
+        buffer.flip();
+        return buffer;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file while reading " + file);
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Returns the number of shapes indexed by this tree
+     *
+     * @return
+     */
+    public int getNumShapes() {
+        return numShapes;
+    }
+
+    /**
+     * Returns the number of entries in each node
+     *
+     * @return
+     */
+    public int getNodeSize() {
+        return nodeSize;
+    }
+
+    /**
+     * Returns the bounds of all the shapes in the tree
+     *
+     * @return
+     * @throws StoreException
+     */
+    public Envelope getBounds() throws StoreException {
+        Envelope bounds = new Envelope();
+        if (levelBounds.length < 2) {
+            return bounds;
+        }
+        int root = levelBounds[levelBounds.length - 2];
+        int end = levelBounds[levelBounds.length - 1];
+        ByteBuffer entries = entries(root, end - root, newBuffer(end - root));
+        for (int i = 0; i < end - root; i++) {
+            int base = entries.position() + i * ENTRY_SIZE;
+            bounds.expandToInclude(new Envelope(entries.getDouble(base),
+                    entries.getDouble(base + 16), entries.getDouble(base + 8), entries
+                            .getDouble(base + 24)));
+        }
+        return bounds;
+    }
+
+    /**
+     * Returns the offsets in the .shp file (in 16 bit words) of the shapes whose bounds intersect the
+     * specified envelope, sorted in file order
+     *
+     * @param bounds
+     * @return
+     * @throws StoreException
+     */
+    public int[] searchOffsets(Envelope bounds) throws StoreException {
+        int numLevels = levelBounds.length - 1;
+        if (numLevels == 0 || bounds.isNull()) {
+            return new int[0];
+        }
+
+        final double minx = bounds.getMinX();
+        final double miny = bounds.getMinY();
+        final double maxx = bounds.getMaxX();
+        final double maxy = bounds.getMaxY();
+
+        ByteBuffer buffer = newBuffer(nodeSize);
+        int[] result = new int[16];
+        int found = 0;
+        // stack of nodes to be visited, as a (first entry, level) pair
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = levelBounds[numLevels - 1];
+        stack[top++] = numLevels - 1;
+        while (top > 0) {
+            int level = stack[--top];
+            int first = stack[--top];
+            int count = Math.min(nodeSize, levelBounds[level + 1] - first);
+            ByteBuffer entries = entries(first, count, buffer);
+            int start = entries.position();
+            for (int i = 0; i < count; i++) {
+                int base = start + i * ENTRY_SIZE;
+                if (entries.getDouble(base) > maxx || entries.getDouble(base + 8) > maxy
+                        || entries.getDouble(base + 16) < minx
+                        || entries.getDouble(base + 24) < miny) {
+                    continue;
+                }
+                int value = entries.getInt(base + 32);
+                if (level == 0) {
+                    if (found == result.length) {
+                        result = Arrays.copyOf(result, found * 2);
+                    }
+                    result[found++] = value;
+                } else {
+                    if (top + 2 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[top++] = value;
+                    stack[top++] = level - 1;
+                }
+            }
+        }
+
+        // go back to file order, to make the reads sequential
+        int[] offsets = Arrays.copyOf(result, found);
+        Arrays.sort(offsets);
+        return offsets;
+    }
+
+    /**
+     * Returns the records whose bounds intersect the specified envelope, in the same format as
+     * the quadtree search (the record number is not available and set to zero, the reader uses
+     * the .shp offset only)
+     *
+     * @param bounds
+     * @return
+     * @throws StoreException
+     */
+    public CloseableIterator<Data> search(Envelope bounds) throws StoreException {
+        return new OffsetIterator(searchOffsets(bounds));
+    }
+
+    /**
+     * Returns a buffer for a single search: a view of the mapped file, or a buffer large enough
+     * for the specified number of entries. Searches do not share buffers, so that the tree can
+     * be searched by several threads at the same time
+     */
+    ByteBuffer newBuffer(int entries) {
+        ByteBuffer buffer;
+        if (mapped != null) {
+            buffer = mapped.duplicate();
+        } else {
+            buffer = ByteBuffer.allocate(entries * ENTRY_SIZE);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer holding the specified entries, positioned on the first one
+     */
+    ByteBuffer entries(int first, int count, ByteBuffer buffer) throws StoreException {
+        long position = entriesStart + (long) first * ENTRY_SIZE;
+        if (mapped != null) {
+            buffer.position((int) position);
+            return buffer;
+        }
+        try {
+            buffer.clear();
+            buffer.limit(count * ENTRY_SIZE);
+            readFully(buffer, position);
+            buffer.position(0);
+            return buffer;
+        } catch (IOException e) {
+            throw new StoreException(e);
+        }
+    }
+
+    /**
+     * Closes the tree and releases the file
+     *
+     * @throws StoreException
+     */
+    public void close() throws StoreException {
+        try {
+            if (mapped != null) {
+                NIOUtilities.clean(mapped, true);
+                mapped = null;
+            }
+            if (channel != null) {
+                channel.close();
+            }
+            if (fis != null) {
+                fis.close();
+            }
+        } catch (IOException e) {
+            throw new StoreException(e);
+        } finally {
+            channel = null;
+            fis = null;
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (StoreException e) {
+            LOGGER.log(Level.FINE, "Failed to close " + file, e);
+        }
+    }
+
+    /**
+     * Iterates over a sorted array of .shp offsets, expressed in 16 bit words
+     */
+    public static class OffsetIterator implements CloseableIterator<Data> {
+
+        int[] offsets;
+
+        int idx;
+
+        Data data = new Data(DATA_DEFINITION);
+
+        public OffsetIterator(int[] offsets) {
+            this.offsets = offsets;
+        }
+
+        public boolean hasNext() {
+            return offsets != null && idx < offsets.length;
+        }
+
+        public Data next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                data.clear();
+                data.addValue(0);
+                data.addValue(offsets[idx++] * 2L);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return data;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void close() throws IOException {
+            offsets = null;
+        }
+    }
+}
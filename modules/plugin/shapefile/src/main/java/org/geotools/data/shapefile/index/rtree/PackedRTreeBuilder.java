@@ -0,0 +1,317 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.shapefile.index.rtree;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.geotools.data.shapefile.index.quadtree.StoreException;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Bulk loads a {@link PackedRTree}: the shapes are collected in memory, sorted along the Hilbert
+ * curve of their centers, and then written out bottom up, grouping <code>nodeSize</code> entries
+ * of each level into an entry of the level above, until a single node is left.
+ *
+ * @source $URL$
+ */
+public class PackedRTreeBuilder {
+
+    /**
+     * The default number of entries in each node
+     */
+    public static final int DEFAULT_NODE_SIZE = 16;
+
+    /**
+     * Size of the cells of the grid used to compute the Hilbert values
+     */
+    static final int HILBERT_MAX = (1 << 16) - 1;
+
+    int nodeSize;
+
+    int count;
+
+    double[] boxes = new double[4 * 1024];
+
+    int[] offsets = new int[1024];
+
+    Envelope bounds = new Envelope();
+
+    public PackedRTreeBuilder() {
+        this(DEFAULT_NODE_SIZE);
+    }
+
+    /**
+     * Builds a new tree builder
+     *
+     * @param nodeSize The number of entries in each node, must be at least 2
+     */
+    public PackedRTreeBuilder(int nodeSize) {
+        if (nodeSize < 2) {
+            throw new IllegalArgumentException("The node size must be at least 2, was "
+                    + nodeSize);
+        }
+        this.nodeSize = nodeSize;
+    }
+
+    /**
+     * Adds a shape to the tree
+     *
+     * @param bounds The shape bounds
+     * @param offset The shape offset in the .shp file, in 16 bit words
+     */
+    public void insert(Envelope bounds, int offset) {
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+            boxes = Arrays.copyOf(boxes, count * 8);
+        }
+        int base = count * 4;
+        boxes[base] = bounds.getMinX();
+        boxes[base + 1] = bounds.getMinY();
+        boxes[base + 2] = bounds.getMaxX();
+        boxes[base + 3] = bounds.getMaxY();
+        offsets[count] = offset;
+        this.bounds.expandToInclude(bounds);
+        count++;
+    }
+
+    /**
+     * Returns the number of shapes added so far
+     *
+     * @return
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Sorts the shapes and writes out the tree
+     *
+     * @param file The target '.hrx' file
+     * @throws StoreException
+     */
+    public void store(File file) throws StoreException {
+        // sort the shapes along the hilbert curve, keeping the (unsigned) hilbert value in the
+        // upper bits and the shape index in the lower 31 ones
+        long[] order = new long[count];
+        double minX = bounds.getMinX();
+        double minY = bounds.getMinY();
+        double width = bounds.getWidth();
+        double height = bounds.getHeight();
+        for (int i = 0; i < count; i++) {
+            int base = i * 4;
+            double cx = (boxes[base] + boxes[base + 2]) / 2;
+            double cy = (boxes[base + 1] + boxes[base + 3]) / 2;
+            int hx = width > 0 ? (int) (HILBERT_MAX * (cx - minX) / width) : 0;
+            int hy = height > 0 ? (int) (HILBERT_MAX * (cy - minY) / height) : 0;
+            order[i] = ((hilbert(hx, hy) & 0xFFFFFFFFL) << 31) | i;
+        }
+        Arrays.sort(order);
+
+        // compute the levels layout
+        List<Integer> levelBounds = new ArrayList<Integer>();
+        int levelSize = count;
+        int total = 0;
+        if (count > 0) {
+            do {
+                levelBounds.add(total);
+                total += levelSize;
+                levelSize = (levelSize + nodeSize - 1) / nodeSize;
+            } while (total - levelBounds.get(levelBounds.size() - 1) > nodeSize);
+        }
+        levelBounds.add(total);
+        int numLevels = levelBounds.size() - 1;
+
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(file);
+            FileChannel channel = fos.getChannel();
+
+            ByteBuffer header = ByteBuffer.allocate(PackedRTree.HEADER_SIZE
+                    + levelBounds.size() * 4);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            header.put(PackedRTree.MAGIC);
+            header.putInt(PackedRTree.VERSION);
+            header.putInt(nodeSize);
+            header.putInt(count);
+            header.putInt(numLevels);
+            for (Integer bound : levelBounds) {
+                header.putInt(bound);
+            }
+            header.flip();
+            write(channel, header);
+
+            ByteBuffer buffer = ByteBuffer.allocate(PackedRTree.ENTRY_SIZE * 1024);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            // the leaves, the upper levels entries bounds are computed while writing
+            // the level below
+            int parents = numLevels > 1 ? levelBounds.get(2) - levelBounds.get(1) : 0;
+            double[] parentBoxes = new double[parents * 4];
+            for (int i = 0; i < count; i++) {
+                int idx = (int) (order[i] & Integer.MAX_VALUE);
+                int base = idx * 4;
+                buffer = putEntry(channel, buffer, boxes[base], boxes[base + 1], boxes[base + 2],
+                        boxes[base + 3], offsets[idx]);
+                if (parents > 0) {
+                    expand(parentBoxes, i / nodeSize, boxes, base, i % nodeSize == 0);
+                }
+            }
+            // release memory early, the upper levels are much smaller
+            boxes = null;
+            offsets = null;
+
+            for (int level = 1; level < numLevels; level++) {
+                double[] levelBoxes = parentBoxes;
+                int levelCount = levelBounds.get(level + 1) - levelBounds.get(level);
+                int childStart = levelBounds.get(level - 1);
+                parents = level + 1 < numLevels ? levelBounds.get(level + 2)
+                        - levelBounds.get(level + 1) : 0;
+                parentBoxes = new double[parents * 4];
+                for (int i = 0; i < levelCount; i++) {
+                    int base = i * 4;
+                    buffer = putEntry(channel, buffer, levelBoxes[base], levelBoxes[base + 1],
+                            levelBoxes[base + 2], levelBoxes[base + 3], childStart + i * nodeSize);
+                    if (parents > 0) {
+                        expand(parentBoxes, i / nodeSize, levelBoxes, base, i % nodeSize == 0);
+                    }
+                }
+            }
+            buffer.flip();
+            write(channel, buffer);
+        } catch (IOException e) {
+            throw new StoreException(e);
+        } finally {
+            if (fos != null) {
+                try {
+                    fos.close();
+                } catch (IOException e) {
+                    throw new StoreException(e);
+                }
+            }
+        }
+    }
+
+    private ByteBuffer putEntry(FileChannel channel, ByteBuffer buffer, double minx,
+            double miny, double maxx, double maxy, int value) throws IOException {
+        if (buffer.remaining() < PackedRTree.ENTRY_SIZE) {
+            buffer.flip();
+            write(channel, buffer);
+            buffer.clear();
+        }
+        buffer.putDouble(minx);
+        buffer.putDouble(miny);
+        buffer.putDouble(maxx);
+        buffer.putDouble(maxy);
+        buffer.putInt(value);
+        return buffer;
+    }
+
+    private void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Expands the parent box to include the child one
+     */
+    private void expand(double[] parents, int parent, double[] children, int childBase,
+            boolean first) {
+        int base = parent * 4;
+        if (first) {
+            System.arraycopy(children, childBase, parents, base, 4);
+        } else {
+            parents[base] = Math.min(parents[base], children[childBase]);
+            parents[base + 1] = Math.min(parents[base + 1], children[childBase + 1]);
+            parents[base + 2] = Math.max(parents[base + 2], children[childBase + 2]);
+            parents[base + 3] = Math.max(parents[base + 3], children[childBase + 3]);
+        }
+    }
+
+    /**
+     * Computes the position of the x,y cell along a Hilbert curve filling a 2^16 x 2^16 grid
+     * (branch free algorithm from "Fast Hilbert curve generation, sorting, and range queries" by
+     * Fabian Giesen)
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    static int hilbert(int x, int y) {
+        int a = x ^ y;
+        int b = 0xFFFF ^ a;
+        int c = 0xFFFF ^ (x | y);
+        int d = x & (y ^ 0xFFFF);
+
+        int A = a | (b >>> 1);
+        int B = (a >>> 1) ^ a;
+        int C = ((c >>> 1) ^ (b & (d >>> 1))) ^ c;
+        int D = ((a & (c >>> 1)) ^ (d >>> 1)) ^ d;
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = ((a & (a >>> 2)) ^ (b & (b >>> 2)));
+        B = ((a & (b >>> 2)) ^ (b & ((a ^ b) >>> 2)));
+        C ^= ((a & (c >>> 2)) ^ (b & (d >>> 2)));
+        D ^= ((b & (c >>> 2)) ^ ((a ^ b) & (d >>> 2)));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = ((a & (a >>> 4)) ^ (b & (b >>> 4)));
+        B = ((a & (b >>> 4)) ^ (b & ((a ^ b) >>> 4)));
+        C ^= ((a & (c >>> 4)) ^ (b & (d >>> 4)));
+        D ^= ((b & (c >>> 4)) ^ ((a ^ b) & (d >>> 4)));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        C ^= ((a & (c >>> 8)) ^ (b & (d >>> 8)));
+        D ^= ((b & (c >>> 8)) ^ ((a ^ b) & (d >>> 8)));
+
+        a = C ^ (C >>> 1);
+        b = D ^ (D >>> 1);
+
+        int i0 = x ^ y;
+        int i1 = b | (0xFFFF ^ (i0 | a));
+
+        i0 = (i0 | (i0 << 8)) & 0x00FF00FF;
+        i0 = (i0 | (i0 << 4)) & 0x0F0F0F0F;
+        i0 = (i0 | (i0 << 2)) & 0x33333333;
+        i0 = (i0 | (i0 << 1)) & 0x55555555;
+
+        i1 = (i1 | (i1 << 8)) & 0x00FF00FF;
+        i1 = (i1 | (i1 << 4)) & 0x0F0F0F0F;
+        i1 = (i1 | (i1 << 2)) & 0x33333333;
+        i1 = (i1 | (i1 << 1)) & 0x55555555;
+
+        return (i1 << 1) | i0;
+    }
+}
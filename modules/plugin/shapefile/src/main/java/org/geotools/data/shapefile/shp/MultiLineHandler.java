@@ -112,6 +112,25 @@ public class MultiLineHandler implements ShapeHandler {
         return geometryFactory.createMultiLineString((LineString[]) null);
     }
 
+    /**
+     * Reads each part straight into its packed coordinate sequence
+     */
+    private Object readPacked(ByteBuffer buffer, int numParts, int numPoints, int[] partOffsets,
+            int dimensions) {
+        final DoubleBuffer points = buffer.asDoubleBuffer();
+        LineString[] lines = new LineString[numParts];
+        for (int part = 0; part < numParts; part++) {
+            int start = partOffsets[part];
+            int finish = part == (numParts - 1) ? numPoints : partOffsets[part + 1];
+            int length = finish - start;
+            // single point lines are turned into two points ones
+            int extra = length == 1 ? 1 : 0;
+            lines[part] = geometryFactory.createLineString(PackedCoordinateReader.read(points,
+                    numPoints, start, length, dimensions, extra));
+        }
+        return geometryFactory.createMultiLineString(lines);
+    }
+
     public Object read(ByteBuffer buffer, ShapeType type, boolean flatGeometry) {
         if (type == ShapeType.NULL) {
             return createNull();
@@ -129,6 +148,9 @@ public class MultiLineHandler implements ShapeHandler {
         for (int i = 0; i < numParts; i++) {
             partOffsets[i] = buffer.getInt();
         }
+        if (PackedCoordinateReader.isPacked(geometryFactory)) {
+            return readPacked(buffer, numParts, numPoints, partOffsets, dimensions);
+        }
         // read the first two coordinates and start building the coordinate
         // sequences
         CoordinateSequence[] lines = new CoordinateSequence[numParts];
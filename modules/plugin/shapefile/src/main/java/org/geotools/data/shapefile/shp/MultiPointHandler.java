@@ -110,6 +110,10 @@ public class MultiPointHandler implements ShapeHandler {
 
         int numpoints = buffer.getInt();
         int dimensions = shapeType == shapeType.MULTIPOINTZ && !flatGeometry ? 3 : 2;
+        if (PackedCoordinateReader.isPacked(geometryFactory)) {
+            return geometryFactory.createMultiPoint(PackedCoordinateReader.read(
+                    buffer.asDoubleBuffer(), numpoints, 0, numpoints, dimensions, 0));
+        }
         CoordinateSequence cs = geometryFactory.getCoordinateSequenceFactory().create(numpoints, dimensions);
 
         DoubleBuffer dbuffer = buffer.asDoubleBuffer();
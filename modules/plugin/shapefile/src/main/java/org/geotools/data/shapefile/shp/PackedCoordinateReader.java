@@ -0,0 +1,115 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.shapefile.shp;
+
+import java.nio.DoubleBuffer;
+
+import org.geotools.geometry.jts.LiteCoordinateSequence;
+import org.geotools.geometry.jts.LiteCoordinateSequenceFactory;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Decodes the points of a shape record straight into the packed <code>double[]</code> backing a
+ * {@link LiteCoordinateSequence}, with a single bulk copy out of the shp buffer and no
+ * intermediate arrays or {@link com.vividsolutions.jts.geom.Coordinate} objects.
+ * <p>
+ * Used by the handlers when the geometry factory builds {@link LiteCoordinateSequence} (as the
+ * renderer asks for), in all other cases the sequences are built via the factory as usual. The
+ * ordinates are copied out of the buffer, as opposed to being read lazily from it, since the
+ * buffer is reused (or unmapped) as soon as the reader moves on.
+ */
+final class PackedCoordinateReader {
+
+    private PackedCoordinateReader() {
+        // no instances
+    }
+
+    /**
+     * Returns true if the geometry factory builds packed {@link LiteCoordinateSequence}, that
+     * can be filled directly from the shp buffer
+     *
+     * @param gf
+     * @return
+     */
+    static boolean isPacked(GeometryFactory gf) {
+        return gf.getCoordinateSequenceFactory() instanceof LiteCoordinateSequenceFactory;
+    }
+
+    /**
+     * Returns true if the first and last point of the run are equal (or the run is empty)
+     *
+     * @param points The buffer containing the record points, positioned on the first x ordinate
+     * @param numPoints The total number of points in the record
+     * @param start The index of the first point of the run
+     * @param length The number of points in the run
+     * @param dimensions 2 to compare xy only, 3 to compare the z values too
+     * @return
+     */
+    static boolean isClosed(DoubleBuffer points, int numPoints, int start, int length,
+            int dimensions) {
+        if (length == 0) {
+            return true;
+        }
+        int last = start + length - 1;
+        if (points.get(start * 2) != points.get(last * 2)
+                || points.get(start * 2 + 1) != points.get(last * 2 + 1)) {
+            return false;
+        }
+        if (dimensions == 3) {
+            int zStart = numPoints * 2 + 2;
+            return points.get(zStart + start) == points.get(zStart + last);
+        }
+        return true;
+    }
+
+    /**
+     * Reads a run of points into a new packed coordinate sequence
+     *
+     * @param points The buffer containing the record points, positioned on the first x ordinate
+     * @param numPoints The total number of points in the record
+     * @param start The index of the first point to be read
+     * @param length The number of points to be read
+     * @param dimensions 2 for a xy sequence, 3 to also read the z values following the xy block
+     * @param extra The number of points to append to the sequence, as copies of the first point
+     *        (used to close rings and to turn single point lines into two points ones)
+     * @return
+     */
+    static CoordinateSequence read(DoubleBuffer points, int numPoints, int start, int length,
+            int dimensions, int extra) {
+        double[] ordinates = new double[(length + extra) * dimensions];
+        if (dimensions == 2) {
+            DoubleBuffer slice = points.duplicate();
+            slice.position(start * 2);
+            slice.get(ordinates, 0, length * 2);
+        } else {
+            // z values follow the xy block and the z range
+            int zStart = numPoints * 2 + 2 + start;
+            for (int i = 0, j = 0; i < length; i++) {
+                ordinates[j++] = points.get((start + i) * 2);
+                ordinates[j++] = points.get((start + i) * 2 + 1);
+                ordinates[j++] = points.get(zStart + i);
+            }
+        }
+        for (int i = length * dimensions; i < ordinates.length; i++) {
+            ordinates[i] = ordinates[i % dimensions];
+        }
+
+        return new LiteCoordinateSequence(ordinates, dimensions);
+    }
+}
@@ -148,7 +148,9 @@ public class PolygonHandler implements ShapeHandler {
 
         ArrayList shells = new ArrayList();
         ArrayList holes = new ArrayList();
-        CoordinateSequence coords = readCoordinates(buffer, numPoints, dimensions);
+        final boolean packed = PackedCoordinateReader.isPacked(geometryFactory);
+        final DoubleBuffer points = packed ? buffer.asDoubleBuffer() : null;
+        CoordinateSequence coords = packed ? null : readCoordinates(buffer, numPoints, dimensions);
 
         int offset = 0;
         int start;
@@ -165,6 +167,14 @@ public class PolygonHandler implements ShapeHandler {
             }
 
             length = finish - start;
+            if (packed) {
+                // read the ring straight into its packed storage
+                int close = PackedCoordinateReader.isClosed(points, numPoints, start, length,
+                        dimensions) ? 0 : 1;
+                addRing(PackedCoordinateReader.read(points, numPoints, start, length,
+                        dimensions, close), shells, holes);
+                continue;
+            }
             int close = 0; // '1' if the ring must be closed, '0' otherwise
             if ((coords.getOrdinate(start, 0) != coords.getOrdinate(finish - 1, 0)) 
                     || (coords.getOrdinate(start, 1) != coords.getOrdinate(finish - 1, 1))
@@ -195,19 +205,7 @@ public class PolygonHandler implements ShapeHandler {
                     csRing.setOrdinate(length, 2, coords.getOrdinate(start, 2));
                 }
             }
-            // REVISIT: polygons with only 1 or 2 points are not polygons -
-            // geometryFactory will bomb so we skip if we find one.
-            if (csRing.size() == 0 || csRing.size() > 3) {
-                LinearRing ring = geometryFactory.createLinearRing(csRing);
-
-                if (CoordinateSequences.isCCW(csRing)) {
-                    // counter-clockwise
-                    holes.add(ring);
-                } else {
-                    // clockwise
-                    shells.add(ring);
-                }
-            }
+            addRing(csRing, shells, holes);
         }
 
         // quick optimization: if there's only one shell no need to check
@@ -230,6 +228,22 @@ public class PolygonHandler implements ShapeHandler {
         }
     }
 
+    private void addRing(CoordinateSequence csRing, List shells, List holes) {
+        // REVISIT: polygons with only 1 or 2 points are not polygons -
+        // geometryFactory will bomb so we skip if we find one.
+        if (csRing.size() == 0 || csRing.size() > 3) {
+            LinearRing ring = geometryFactory.createLinearRing(csRing);
+
+            if (CoordinateSequences.isCCW(csRing)) {
+                // counter-clockwise
+                holes.add(ring);
+            } else {
+                // clockwise
+                shells.add(ring);
+            }
+        }
+    }
+
     /**
      * @param buffer
      * @param numPoints
@@ -63,6 +63,7 @@ public class ShapefileWriter {
     int offset;
     int lp;
     int cnt;
+    int bufferSize;
     private StreamLogging shpLogger = new StreamLogging(
             "SHP Channel in ShapefileWriter");
     private StreamLogging shxLogger = new StreamLogging(
@@ -100,8 +101,55 @@ public class ShapefileWriter {
      * Allocate some buffers for writing.
      */
     private void allocateBuffers() {
-        shapeBuffer = NIOUtilities.allocate(16 * 1024);
-        indexBuffer = NIOUtilities.allocate(100);
+        if (bufferSize > 0) {
+            shapeBuffer = NIOUtilities.allocate(bufferSize);
+            indexBuffer = NIOUtilities.allocate(Math.max(100, bufferSize / 4));
+        } else {
+            shapeBuffer = NIOUtilities.allocate(16 * 1024);
+            indexBuffer = NIOUtilities.allocate(100);
+        }
+    }
+
+    /**
+     * Sets the size of the buffer used to accumulate records before writing them to the channels.
+     * By default each record is written as soon as it's encoded, a positive size allows to write
+     * large sequences of records in a single call when bulk loading data.
+     * 
+     * @param bufferSize The buffer size in bytes, or zero to write each record immediately
+     * @throws IOException
+     */
+    public void setBufferSize(int bufferSize) throws IOException {
+        if (shapeBuffer != null) {
+            drain();
+            NIOUtilities.clean(shapeBuffer, false);
+            NIOUtilities.clean(indexBuffer, false);
+        }
+        this.bufferSize = bufferSize;
+        allocateBuffers();
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Writes the buffered records to the channels
+     * 
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        if (shapeBuffer != null) {
+            drain();
+        }
+    }
+
+    /**
+     * Returns the offset, in 16 bit words, at which the next record will be written
+     * 
+     * @return
+     */
+    public int getOffset() {
+        return offset;
     }
 
     /**
@@ -169,6 +217,8 @@ public class ShapefileWriter {
         }
         if (shapeBuffer == null)
             allocateBuffers();
+        else if (shapeBuffer.position() > 0 || indexBuffer.position() > 0)
+            drain();
         ShapefileHeader header = new ShapefileHeader();
         header.write(shapeBuffer, type, numberOfGeometries, fileLength / 2,
                 bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds
@@ -198,6 +248,24 @@ public class ShapefileWriter {
         shxChannel.position(100);
     }
 
+    /**
+     * Positions the channels after the existing records, so that new ones get appended to them.
+     * The headers must have been written before, and MUST be rewritten after this operation, or
+     * the file may be corrupt...
+     * 
+     * @param numberOfGeometries The number of records already in the files
+     * @param fileLength The current length of the .shp file, in bytes
+     */
+    public void skipRecords(int numberOfGeometries, int fileLength) throws IOException {
+        if (shapeBuffer == null)
+            throw new IOException("Must write headers first");
+        drain();
+        shpChannel.position(fileLength);
+        shxChannel.position(100 + 8L * numberOfGeometries);
+        offset = fileLength / 2;
+        cnt = numberOfGeometries;
+    }
+
     /**
      * Write a single Geometry to this shapefile. The Geometry must be
      * compatable with the ShapeType assigned during the writing of the headers.
@@ -205,12 +273,19 @@ public class ShapefileWriter {
     public void writeGeometry(Geometry g) throws IOException {
         if (shapeBuffer == null)
             throw new IOException("Must write headers first");
+        // computing the length can be expensive for large geometries, do it once
+        int length = g == null ? 4 : handler.getLength(g);
+        if (bufferSize > 0) {
+            // only drain when the buffers cannot hold the record
+            if (shapeBuffer.remaining() < length + 8 || indexBuffer.remaining() < 8) {
+                drain();
+            }
+        }
         lp = shapeBuffer.position();
-        int length;
         if(g == null)
         	length = writeNullGeometry();
         else 
-        	length = writeNonNullGeometry(g);
+        	length = writeNonNullGeometry(g, length);
 
         assert (length * 2 == (shapeBuffer.position() - lp) - 8);
 
@@ -221,13 +296,13 @@ public class ShapefileWriter {
         indexBuffer.putInt(length);
         offset += length + 4;
 
-        drain();
-        assert (shapeBuffer.position() == 0);
+        if (bufferSize == 0) {
+            drain();
+            assert (shapeBuffer.position() == 0);
+        }
     }
 
-	private int writeNonNullGeometry(Geometry g) {
-		int length = handler.getLength(g);
-
+	private int writeNonNullGeometry(Geometry g, int length) {
         // must allocate enough for shape + header (2 ints)
         checkShapeBuffer(length + 8);
 
@@ -262,6 +337,9 @@ public class ShapefileWriter {
      * Close the underlying Channels.
      */
     public void close() throws IOException {
+        if (bufferSize > 0 && shpChannel != null && shpChannel.isOpen()) {
+            flush();
+        }
         try {
             if (shpChannel != null && shpChannel.isOpen()) {
                 shpChannel.close();
@@ -107,6 +107,30 @@ public class DbaseFileTest extends TestCaseSupport {
         dbf2.close();
     }
 
+    @Test
+    public void testProjection() throws Exception {
+        Object[] attrs = new Object[dbf.getHeader().getNumFields()];
+        for (boolean memoryMapped : new boolean[] { false, true }) {
+            DbaseFileReader dbf2 = new DbaseFileReader(shpFiles, memoryMapped,
+                    ShapefileDataStore.DEFAULT_STRING_CHARSET);
+            try {
+                dbf2.setProjection(new int[] { 4, 0 });
+                while (dbf2.hasNext()) {
+                    dbf.readEntry(attrs);
+                    DbaseFileReader.Row r = dbf2.readRow();
+                    assertEquals(attrs[0], r.read(0));
+                    assertEquals(attrs[4], r.read(4));
+                    // fields outside of the projection are loaded on demand
+                    assertEquals(attrs[251], r.read(251));
+                }
+            } finally {
+                dbf2.close();
+            }
+            dbf.close();
+            dbf = new DbaseFileReader(shpFiles, false, ShapefileDataStore.DEFAULT_STRING_CHARSET);
+        }
+    }
+
     @Test
     public void testHeader() throws Exception {
         DbaseFileHeader header = new DbaseFileHeader();
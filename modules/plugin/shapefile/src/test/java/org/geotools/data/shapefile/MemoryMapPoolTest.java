@@ -0,0 +1,150 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.shapefile;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.geotools.data.Query;
+import org.geotools.data.shapefile.files.MemoryMapPool;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.junit.Test;
+
+/**
+ *
+ * @source $URL$
+ */
+public class MemoryMapPoolTest extends TestCaseSupport {
+
+    private ShapefileDataStore createStore(File shpFile, MemoryMapPool pool) throws Exception {
+        ShapefileDataStore store = new ShapefileDataStore(shpFile.toURI().toURL());
+        store.setMemoryMapped(true);
+        store.setIndexed(false);
+        store.setMemoryMapPool(pool);
+        return store;
+    }
+
+    private int count(ShapefileDataStore store) throws Exception {
+        SimpleFeatureIterator fi = store.getFeatureSource().getFeatures().features();
+        try {
+            int count = 0;
+            while (fi.hasNext()) {
+                fi.next();
+                count++;
+            }
+            return count;
+        } finally {
+            fi.close();
+        }
+    }
+
+    @Test
+    public void testSharedAcrossStores() throws Exception {
+        File shpFile = copyShapefiles(STATE_POP);
+        MemoryMapPool pool = new MemoryMapPool(Long.MAX_VALUE);
+        ShapefileDataStore first = createStore(shpFile, pool);
+        ShapefileDataStore second = createStore(shpFile, pool);
+        try {
+            int expected = count(first);
+            long misses = pool.getMisses();
+            assertTrue(misses > 0);
+            assertEquals(misses, pool.getMappingCount());
+            assertTrue(pool.getMappedBytes() > shpFile.length());
+
+            // the second store reuses the mappings of the first one
+            pool.resetStatistics();
+            assertEquals(expected, count(second));
+            assertEquals(0, pool.getMisses());
+            assertTrue(pool.getHits() >= misses);
+            assertEquals(0, pool.getEvictions());
+        } finally {
+            first.dispose();
+            second.dispose();
+        }
+        // disposing the stores does not affect the shared pool
+        assertTrue(pool.getMappingCount() > 0);
+        pool.clear();
+        assertEquals(0, pool.getMappingCount());
+        assertEquals(0, pool.getMappedBytes());
+    }
+
+    @Test
+    public void testEvictionAndPinning() throws Exception {
+        File shpFile = copyShapefiles(STATE_POP);
+        MemoryMapPool pool = new MemoryMapPool(Long.MAX_VALUE);
+        ShapefileDataStore store = createStore(shpFile, pool);
+        try {
+            int expected = store.getFeatureSource().getCount(Query.ALL);
+            SimpleFeatureIterator fi = store.getFeatureSource().getFeatures().features();
+            try {
+                assertTrue(fi.hasNext());
+                assertTrue(pool.getMappedBytes() > shpFile.length());
+
+                // the mappings in use cannot be evicted, the budget is exceeded
+                pool.setMaxBytes(0);
+                assertTrue(pool.getMappedBytes() > shpFile.length());
+
+                // writing the file removes its mappings, but the open reader keeps on working
+                pool.cleanFile(shpFile.toURI().toURL());
+                int count = 0;
+                while (fi.hasNext()) {
+                    fi.next();
+                    count++;
+                }
+                assertEquals(expected, count);
+            } finally {
+                fi.close();
+            }
+
+            // once released, the mappings over budget are evicted
+            assertEquals(expected, count(store));
+            assertEquals(0, pool.getMappingCount());
+            assertEquals(0, pool.getMappedBytes());
+            assertTrue(pool.getEvictions() > 0);
+        } finally {
+            store.dispose();
+        }
+    }
+
+    @Test
+    public void testFactoryParam() throws Exception {
+        File shpFile = copyShapefiles(STATE_POP);
+        Map<String, Serializable> params = new HashMap<String, Serializable>();
+        params.put(ShapefileDataStoreFactory.URLP.key, shpFile.toURI().toURL());
+        params.put(ShapefileDataStoreFactory.MEMORY_MAPPED.key, true);
+        params.put(ShapefileDataStoreFactory.SHARED_MEMORY_MAPS.key, true);
+        ShapefileDataStore store = (ShapefileDataStore) new ShapefileDataStoreFactory()
+                .createDataStore(params);
+        try {
+            assertSame(MemoryMapPool.getDefault(), store.getMemoryMapPool());
+        } finally {
+            store.dispose();
+        }
+
+        params.remove(ShapefileDataStoreFactory.SHARED_MEMORY_MAPS.key);
+        store = (ShapefileDataStore) new ShapefileDataStoreFactory().createDataStore(params);
+        try {
+            assertNull(store.getMemoryMapPool());
+        } finally {
+            store.dispose();
+        }
+    }
+}
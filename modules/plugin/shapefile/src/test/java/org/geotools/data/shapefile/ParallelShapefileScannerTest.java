@@ -0,0 +1,152 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.shapefile;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.List;
+
+import org.geotools.data.Query;
+import org.geotools.data.shapefile.shp.IndexFile;
+import org.geotools.data.store.ContentFeatureSource;
+import org.geotools.feature.visitor.BoundsVisitor;
+import org.geotools.feature.visitor.CountVisitor;
+import org.geotools.feature.visitor.SumVisitor;
+import org.geotools.feature.visitor.UniqueVisitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+
+/**
+ *
+ * @source $URL$
+ */
+public class ParallelShapefileScannerTest extends TestCaseSupport {
+
+    ShapefileDataStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        File shpFile = copyShapefiles(STATE_POP);
+        store = new ShapefileDataStore(shpFile.toURI().toURL());
+        store.setMemoryMapped(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.dispose();
+        super.tearDown();
+    }
+
+    @Test
+    public void testPartitions() throws Exception {
+        IndexFile shx = store.shpManager.openIndexFile();
+        try {
+            int count = shx.getRecordCount();
+            List<int[]> partitions = ParallelShapefileScanner.computePartitions(shx, 4, 1);
+            assertEquals(4, partitions.size());
+            // contiguous and covering all records
+            int start = 0;
+            for (int[] partition : partitions) {
+                assertEquals(start, partition[0]);
+                assertTrue(partition[1] > partition[0]);
+                start = partition[1];
+            }
+            assertEquals(count, start);
+
+            // too few records to split
+            partitions = ParallelShapefileScanner.computePartitions(shx, 4, count);
+            assertEquals(1, partitions.size());
+        } finally {
+            shx.close();
+        }
+    }
+
+    @Test
+    public void testAggregates() throws Exception {
+        checkAggregates(Filter.INCLUDE);
+        checkAggregates(ff.greater(ff.property("PERSONS"), ff.literal(3000000)));
+        checkAggregates(ff.bbox("", -100, 30, -80, 40, null));
+    }
+
+    @Test
+    public void testAggregatesSnapshotMode() throws Exception {
+        // the readers are opened up front, under the snapshot lock
+        store.setSnapshotMode(true);
+        checkAggregates(Filter.INCLUDE);
+        checkAggregates(ff.greater(ff.property("PERSONS"), ff.literal(3000000)));
+        assertEquals(0, store.shpFiles.numberOfLocks());
+    }
+
+    void checkAggregates(Filter filter) throws Exception {
+        ShapefileFeatureSource source = ((ShapefileFeatureStore) store.getFeatureSource()).delegate;
+        Query query = new Query(store.getTypeName().getLocalPart(), filter);
+
+        BoundsVisitor bounds = new BoundsVisitor();
+        SumVisitor sum = new SumVisitor(ff.property("PERSONS"));
+        CountVisitor count = new CountVisitor();
+        UniqueVisitor unique = new UniqueVisitor("STATE_NAME");
+        source.accepts(query, bounds, null);
+        source.accepts(query, sum, null);
+        source.accepts(query, count, null);
+        source.accepts(query, unique, null);
+
+        BoundsVisitor parallelBounds = new BoundsVisitor();
+        SumVisitor parallelSum = new SumVisitor(ff.property("PERSONS"));
+        CountVisitor parallelCount = new CountVisitor();
+        UniqueVisitor parallelUnique = new UniqueVisitor("STATE_NAME");
+        assertTrue(scanner(source).scan(query, parallelBounds));
+        assertTrue(scanner(source).scan(query, parallelSum));
+        assertTrue(scanner(source).scan(query, parallelCount));
+        assertTrue(scanner(source).scan(query, parallelUnique));
+
+        assertEquals(bounds.getBounds(), parallelBounds.getBounds());
+        assertEquals(sum.getResult().toDouble(), parallelSum.getResult().toDouble(), 1e-6);
+        assertEquals(count.getCount(), parallelCount.getCount());
+        assertEquals(unique.getUnique(), parallelUnique.getUnique());
+    }
+
+    ParallelShapefileScanner scanner(ShapefileFeatureSource source) {
+        ParallelShapefileScanner scanner = new ParallelShapefileScanner(source, 4, null);
+        scanner.minPartitionRecords = 1;
+        return scanner;
+    }
+
+    @Test
+    public void testCanScan() throws Exception {
+        Query query = new Query(store.getTypeName().getLocalPart());
+        assertTrue(ParallelShapefileScanner.canScan(query, new CountVisitor()));
+
+        query.setMaxFeatures(10);
+        assertFalse(ParallelShapefileScanner.canScan(query, new CountVisitor()));
+
+        query = new Query(store.getTypeName().getLocalPart(), ff.id(ff.featureId("statepop.1")));
+        assertFalse(ParallelShapefileScanner.canScan(query, new CountVisitor()));
+    }
+
+    @Test
+    public void testSmallFileFallsBack() throws Exception {
+        store.setParallelScanThreads(4);
+        ContentFeatureSource source = store.getFeatureSource();
+        // statepop is way smaller than the minimum partition size, the scan is sequential
+        CountVisitor count = new CountVisitor();
+        source.accepts(Query.ALL, count, null);
+        assertEquals(source.getCount(Query.ALL), count.getCount());
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.shapefile;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.FeatureEvent;
+import org.geotools.data.FeatureListener;
+import org.geotools.data.Query;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ *
+ * @source $URL$
+ */
+public class ShapefileBulkLoaderTest extends TestCaseSupport {
+
+    private SimpleFeatureCollection createPoints(SimpleFeatureType type, int start, int count) {
+        GeometryFactory gf = new GeometryFactory();
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+        ListFeatureCollection features = new ListFeatureCollection(type);
+        for (int i = start; i < start + count; i++) {
+            fb.add(gf.createPoint(new Coordinate(i % 100, i / 100)));
+            fb.add("name" + i);
+            fb.add(i);
+            features.add(fb.buildFeature(null));
+        }
+        return features;
+    }
+
+    @Test
+    public void testLoadAndAppend() throws Exception {
+        File file = getTempFile();
+        ShapefileDataStore store = new ShapefileDataStore(file.toURI().toURL());
+        try {
+            store.createSchema(DataUtilities.createType("bulk",
+                    "the_geom:Point,name:String,value:Integer"));
+            SimpleFeatureType schema = store.getSchema();
+
+            // small buffers, to make the writers drain several times
+            ShapefileBulkLoader loader = new ShapefileBulkLoader(store);
+            loader.bufferSize = 1024;
+            assertEquals(5000, loader.load(createPoints(schema, 0, 5000)));
+            assertEquals(0, store.bulkLoad(new DefaultFeatureCollection()));
+            assertEquals(100, store.bulkLoad(createPoints(schema, 5000, 100)));
+
+            assertEquals(5100, store.getFeatureSource().getCount(Query.ALL));
+            assertEquals(new ReferencedEnvelope(0, 99, 0, 50, null), new ReferencedEnvelope(store
+                    .getFeatureSource().getBounds()));
+            Set<String> fids = new HashSet<String>();
+            SimpleFeatureIterator fi = store.getFeatureSource().getFeatures().features();
+            try {
+                int i = 0;
+                while (fi.hasNext()) {
+                    SimpleFeature f = fi.next();
+                    assertEquals("name" + i, f.getAttribute("name"));
+                    assertEquals(i, ((Number) f.getAttribute("value")).intValue());
+                    Point p = (Point) f.getDefaultGeometry();
+                    assertEquals(i % 100, p.getX(), 0d);
+                    assertEquals(i / 100, p.getY(), 0d);
+                    assertTrue(fids.add(f.getID()));
+                    i++;
+                }
+                assertEquals(5100, i);
+            } finally {
+                fi.close();
+            }
+        } finally {
+            store.dispose();
+        }
+    }
+
+    @Test
+    public void testAppendWithIndexes() throws Exception {
+        File shpFile = copyShapefiles(STATE_POP);
+        ShapefileDataStore source = new ShapefileDataStore(shpFile.toURI().toURL());
+        File target = getTempFile();
+        ShapefileDataStore store = new ShapefileDataStore(target.toURI().toURL());
+        store.setPackedSpatialIndex(true);
+        try {
+            store.createSchema(source.getSchema());
+            int count = source.getFeatureSource().getCount(Query.ALL);
+            assertEquals(count, store.bulkLoad(source.getFeatureSource().getFeatures()));
+            assertTrue(new File(target.getParentFile(), target.getName().replace(".shp", ".hrx"))
+                    .exists());
+            assertTrue(new File(target.getParentFile(), target.getName().replace(".shp", ".fix"))
+                    .exists());
+            assertEquals(count, store.bulkLoad(source.getFeatureSource().getFeatures()));
+            assertEquals(2 * count, store.getFeatureSource().getCount(Query.ALL));
+
+            Query query = new Query(store.getTypeNames()[0], ff.bbox("", -100, 30, -80, 40,
+                    null));
+            int expected = source.getFeatureSource().getFeatures(query).size();
+            assertTrue(expected > 0);
+            assertEquals(2 * expected, store.getFeatureSource().getFeatures(query).size());
+            assertEquals(source.getFeatureSource().getBounds(), store.getFeatureSource()
+                    .getBounds());
+
+            // the appended features can be found by id
+            String fid = store.getTypeNames()[0] + "." + (count + 5);
+            assertEquals(1, store.getFeatureSource().getFeatures(ff.id(ff.featureId(fid))).size());
+        } finally {
+            source.dispose();
+            store.dispose();
+        }
+    }
+
+    @Test
+    public void testSchemaMismatch() throws Exception {
+        File file = getTempFile();
+        ShapefileDataStore store = new ShapefileDataStore(file.toURI().toURL());
+        try {
+            store.createSchema(DataUtilities.createType("bulk",
+                    "the_geom:Point,name:String,value:Integer"));
+
+            // missing attribute
+            SimpleFeatureType missing = DataUtilities.createType("bulk", "the_geom:Point,name:String");
+            try {
+                store.bulkLoad(new ListFeatureCollection(missing));
+                fail("Should have rejected features without the value attribute");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("value"));
+            }
+
+            // incompatible binding
+            SimpleFeatureType wrong = DataUtilities.createType("bulk",
+                    "the_geom:Point,name:String,value:java.util.Date");
+            try {
+                store.bulkLoad(new ListFeatureCollection(wrong));
+                fail("Should have rejected a date value attribute");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("value"));
+            }
+            assertEquals(0, store.getFeatureSource().getCount(Query.ALL));
+        } finally {
+            store.dispose();
+        }
+    }
+
+    @Test
+    public void testFeatureEvent() throws Exception {
+        File file = getTempFile();
+        ShapefileDataStore store = new ShapefileDataStore(file.toURI().toURL());
+        try {
+            store.createSchema(DataUtilities.createType("bulk",
+                    "the_geom:Point,name:String,value:Integer"));
+            SimpleFeatureType schema = store.getSchema();
+            final List<FeatureEvent> events = new ArrayList<FeatureEvent>();
+            store.getFeatureSource().addFeatureListener(new FeatureListener() {
+                public void changed(FeatureEvent event) {
+                    events.add(event);
+                }
+            });
+
+            assertEquals(0, store.bulkLoad(new DefaultFeatureCollection()));
+            assertTrue(events.isEmpty());
+            assertEquals(200, store.bulkLoad(createPoints(schema, 0, 200)));
+            assertEquals(1, events.size());
+            assertEquals(FeatureEvent.Type.ADDED, events.get(0).getType());
+            assertEquals(new ReferencedEnvelope(0, 99, 0, 1, null), new ReferencedEnvelope(
+                    events.get(0).getBounds()));
+        } finally {
+            store.dispose();
+        }
+    }
+}
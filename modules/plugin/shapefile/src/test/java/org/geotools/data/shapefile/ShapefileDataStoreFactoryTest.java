@@ -147,6 +147,20 @@ public class ShapefileDataStoreFactoryTest extends TestCaseSupport {
         ds.dispose();
     }
     
+    @Test
+    public void testBufferCachingLeavesMapCache() throws Exception {
+        File f = copyShapefiles(STATE_POP);
+        Map<String, Serializable> params = map(URLP.key, f.toURI().toURL());
+        ShapefileDataStore ds = (ShapefileDataStore) factory.createDataStore(params);
+        try {
+            // buffer caching is on by default, the memory map cache stays off
+            assertTrue(ds.isBufferCachingEnabled());
+            assertFalse(ds.shpFiles.isMemoryMapCacheEnabled());
+        } finally {
+            ds.dispose();
+        }
+    }
+
     private Map<String, Serializable> map(Object... pairs) {
         if ((pairs.length & 1) != 0) {
             throw new IllegalArgumentException("Pairs was not an even number");
@@ -54,6 +54,9 @@ import org.geotools.data.FeatureWriter;
 import org.geotools.data.Query;
 import org.geotools.data.Transaction;
 import org.geotools.data.shapefile.files.ShpFileType;
+import org.geotools.data.shapefile.index.CloseableIterator;
+import org.geotools.data.shapefile.index.Data;
+import org.geotools.data.shapefile.index.rtree.PackedRTree;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
@@ -1542,6 +1545,39 @@ public class ShapefileDataStoreTest extends TestCaseSupport {
         assertTrue(ds.indexManager.isIndexStale(fix));
         ds.dispose();
     }
+
+    @Test
+    public void testPackedRTreeKeptOpen() throws Exception {
+        File shpFile = copyShapefiles(STATE_POP);
+        ShapefileDataStore ds = new ShapefileDataStore(shpFile.toURI().toURL());
+        ds.setPackedSpatialIndex(true);
+        try {
+            Envelope bbox = new Envelope(-100, -80, 30, 40);
+            CloseableIterator<Data> it = ds.indexManager.querySpatialIndex(bbox);
+            int count = 0;
+            while (it.hasNext()) {
+                it.next();
+                count++;
+            }
+            it.close();
+            assertTrue(count > 0);
+            PackedRTree tree = ds.indexManager.packedTree;
+            assertNotNull(tree);
+
+            // the tree is reused as long as the index file does not change
+            ds.indexManager.querySpatialIndex(bbox).close();
+            assertSame(tree, ds.indexManager.packedTree);
+
+            // and reopened once it gets rebuilt
+            File hrxFile = sibling(shpFile, ShpFileType.HRX.extension);
+            assertTrue(hrxFile.setLastModified(hrxFile.lastModified() - 10000));
+            ds.indexManager.querySpatialIndex(bbox).close();
+            assertNotSame(tree, ds.indexManager.packedTree);
+        } finally {
+            ds.dispose();
+        }
+        assertNull(ds.indexManager.packedTree);
+    }
     
     
     /**
@@ -30,6 +30,7 @@ import junit.framework.AssertionFailedError;
 
 import org.geotools.TestData;
 import org.geotools.data.DataStore;
+import org.geotools.data.shapefile.index.QuadTreeCache;
 import org.geotools.data.Query;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
@@ -256,6 +257,40 @@ public class ShapefileQuadTreeReadWriteTest extends TestCaseSupport {
         ds.dispose();
     }
 
+    @Test
+    public void testCachedQuadTree() throws Exception {
+        File file = copyShapefiles("shapes/streams.shp");
+        ShapefileDataStore plain = new ShapefileDataStore(file.toURI().toURL());
+        ShapefileDataStore cached = new ShapefileDataStore(file.toURI().toURL());
+        ShapefileDataStore other = new ShapefileDataStore(file.toURI().toURL());
+        try {
+            for (ShapefileDataStore ds : new ShapefileDataStore[] { cached, other }) {
+                ds.indexManager.maxQixCacheSize = 10000;
+                ds.indexManager.quadTreeCache = new QuadTreeCache(Long.MAX_VALUE);
+            }
+            // the two stores share the same tree cache
+            other.indexManager.quadTreeCache = cached.indexManager.quadTreeCache;
+
+            FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+            ReferencedEnvelope bounds = plain.getFeatureSource().getBounds();
+            Envelope query = new Envelope(bounds.getMinX(), bounds.centre().x, bounds.getMinY(),
+                    bounds.centre().y);
+            Query q = new Query(plain.getTypeNames()[0], ff.bbox("", query.getMinX(),
+                    query.getMinY(), query.getMaxX(), query.getMaxY(), null));
+            int expected = plain.getFeatureSource().getFeatures(q).size();
+            assertTrue(expected > 0);
+            assertEquals(expected, cached.getFeatureSource().getFeatures(q).size());
+            assertEquals(expected, other.getFeatureSource().getFeatures(q).size());
+            QuadTreeCache cache = cached.indexManager.quadTreeCache;
+            assertEquals(1, cache.getTreeCount());
+            assertTrue(cache.getHits() > 0);
+        } finally {
+            plain.dispose();
+            cached.dispose();
+            other.dispose();
+        }
+    }
+
     public static final void main(String[] args) throws Exception {
         junit.textui.TestRunner.run(suite(ShapefileQuadTreeReadWriteTest.class));
     }
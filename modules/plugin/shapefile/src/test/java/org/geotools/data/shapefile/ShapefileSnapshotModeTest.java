@@ -0,0 +1,173 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.shapefile;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureStore;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ *
+ * @source $URL$
+ */
+public class ShapefileSnapshotModeTest extends TestCaseSupport {
+
+    @Test
+    public void testWriteWhileReading() throws Exception {
+        File shpFile = copyShapefiles(STATE_POP);
+        final ShapefileDataStore store = new ShapefileDataStore(shpFile.toURI().toURL());
+        store.setSnapshotMode(true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final int count = store.getFeatureSource().getCount(Query.ALL);
+
+            // copy the first feature, to be appended while a reader is open
+            final ListFeatureCollection added = new ListFeatureCollection(store.getSchema());
+            SimpleFeatureIterator fi = store.getFeatureSource().getFeatures().features();
+            try {
+                added.add(SimpleFeatureBuilder.copy(fi.next()));
+            } finally {
+                fi.close();
+            }
+
+            fi = store.getFeatureSource().getFeatures().features();
+            try {
+                assertTrue(fi.hasNext());
+                fi.next();
+                // the open reader does not hold any lock
+                assertEquals(0, store.shpFiles.numberOfLocks());
+
+                // so the writer does not have to wait for it
+                Future<Void> write = executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        SimpleFeatureStore fs = (SimpleFeatureStore) store.getFeatureSource();
+                        fs.addFeatures((SimpleFeatureCollection) added);
+                        return null;
+                    }
+                });
+                write.get(30, TimeUnit.SECONDS);
+
+                // the open reader keeps on reading the old version
+                int read = 1;
+                while (fi.hasNext()) {
+                    SimpleFeature f = fi.next();
+                    assertNotNull(f.getDefaultGeometry());
+                    read++;
+                }
+                assertEquals(count, read);
+            } finally {
+                fi.close();
+            }
+
+            // while new readers see the new one
+            assertEquals(count + 1, store.getFeatureSource().getCount(Query.ALL));
+            assertEquals(count + 1, store.getFeatureSource().getFeatures().size());
+        } finally {
+            executor.shutdown();
+            store.dispose();
+        }
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        File shpFile = copyShapefiles(STATE_POP);
+        final ShapefileDataStore store = new ShapefileDataStore(shpFile.toURI().toURL());
+        store.setSnapshotMode(true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final int count = store.getFeatureSource().getCount(Query.ALL);
+            final String typeName = store.getTypeNames()[0];
+
+            FeatureWriter<SimpleFeatureType, SimpleFeature> writer = store
+                    .getFeatureWriterAppend(typeName, Transaction.AUTO_COMMIT);
+            Future<Void> write;
+            try {
+                SimpleFeature f = writer.next();
+                f.setAttribute("STATE_NAME", "first");
+                writer.write();
+
+                // a second writer has to wait for the first one to replace the files
+                write = executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        FeatureWriter<SimpleFeatureType, SimpleFeature> writer = store
+                                .getFeatureWriterAppend(typeName, Transaction.AUTO_COMMIT);
+                        try {
+                            SimpleFeature f = writer.next();
+                            f.setAttribute("STATE_NAME", "second");
+                            writer.write();
+                        } finally {
+                            writer.close();
+                        }
+                        return null;
+                    }
+                });
+                try {
+                    write.get(500, TimeUnit.MILLISECONDS);
+                    fail("The second writer should be waiting for the first one");
+                } catch (TimeoutException e) {
+                    // fine
+                }
+            } finally {
+                writer.close();
+            }
+            write.get(30, TimeUnit.SECONDS);
+
+            // none of the edits got lost
+            assertEquals(count + 2, store.getFeatureSource().getCount(Query.ALL));
+        } finally {
+            executor.shutdown();
+            store.dispose();
+        }
+    }
+
+    @Test
+    public void testFactoryParam() throws Exception {
+        File shpFile = copyShapefiles(STATE_POP);
+        Map<String, Serializable> params = new HashMap<String, Serializable>();
+        params.put(ShapefileDataStoreFactory.URLP.key, shpFile.toURI().toURL());
+        params.put(ShapefileDataStoreFactory.SNAPSHOT_MODE.key, true);
+        ShapefileDataStore store = (ShapefileDataStore) new ShapefileDataStoreFactory()
+                .createDataStore(params);
+        try {
+            assertTrue(store.isSnapshotMode());
+            assertTrue(store.shpFiles.isSnapshotMode());
+        } finally {
+            store.dispose();
+        }
+    }
+}
@@ -109,6 +109,10 @@ public class TestCaseSupport {
             dieDieDIE(sibling(targetFile, "shx"));
             // Quad tree index
             dieDieDIE(sibling(targetFile, "qix"));
+            // Packed R-tree index
+            dieDieDIE(sibling(targetFile, "hrx"));
+            // Attribute index
+            dieDieDIE(sibling(targetFile, "aix"));
             // Feature ID index
             dieDieDIE(sibling(targetFile, "fix"));
             // R-Tree index
@@ -22,7 +22,10 @@ import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.TreeSet;
@@ -185,6 +188,54 @@ public class IndexedFidReaderTest extends FIDTestCase {
 
     }
 
+    @Test
+    public void testFindFids() throws Exception {
+        List<String> fids = new ArrayList<String>();
+        for (long i = reader.getCount(); i > 0; i--) {
+            fids.add(TYPE_NAME + "." + i);
+        }
+        // duplicates and fids not in the index are skipped
+        fids.add(TYPE_NAME + ".1");
+        fids.add(TYPE_NAME + "." + (reader.getCount() + 10));
+        fids.add(TYPE_NAME + ".abc");
+        fids.add("other.2");
+
+        int[] recnos = reader.findFids(fids);
+        assertEquals(reader.getCount(), recnos.length);
+        for (int i = 0; i < recnos.length; i++) {
+            assertEquals(i, recnos[i]);
+        }
+
+        int[] some = reader.findFids(Arrays.asList(TYPE_NAME + ".16", TYPE_NAME + ".4",
+                TYPE_NAME + ".11"));
+        assertTrue(Arrays.equals(new int[] { 3, 10, 15 }, some));
+        assertEquals(0, reader.findFids(Collections.<String> emptyList()).length);
+    }
+
+    @Test
+    public void testFindFidsAfterDelete() throws Exception {
+        reader.close();
+
+        ShpFiles shpFiles = new ShpFiles(fixFile);
+        IndexedFidWriter writer = new IndexedFidWriter(shpFiles);
+        try {
+            writer.next();
+            writer.next();
+            writer.next();
+            writer.remove();
+            while (writer.hasNext()) {
+                writer.next();
+            }
+        } finally {
+            writer.close();
+        }
+
+        reader = new IndexedFidReader(shpFiles);
+        int[] recnos = reader.findFids(Arrays.asList(TYPE_NAME + ".11", TYPE_NAME + ".3",
+                TYPE_NAME + ".4", TYPE_NAME + ".2"));
+        assertTrue(Arrays.toString(recnos), Arrays.equals(new int[] { 1, 2, 9 }, recnos));
+    }
+
     @Test
     public void testHardToFindFid() throws Exception {
         long offset = reader.search(5, 3, 7, 5);
@@ -0,0 +1,137 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.shapefile.index;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.TestCaseSupport;
+import org.geotools.data.shapefile.files.ShpFiles;
+import org.geotools.data.shapefile.index.quadtree.QuadTree;
+import org.geotools.data.shapefile.index.quadtree.fs.FileSystemIndexStore;
+import org.geotools.data.shapefile.shp.IndexFile;
+import org.geotools.factory.CommonFactoryFinder;
+import org.junit.Test;
+import org.opengis.filter.FilterFactory2;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ *
+ *
+ * @source $URL$
+ */
+public class CachedQuadTreeTest extends TestCaseSupport {
+
+    private List<Long> collect(CloseableIterator<Data> it) throws Exception {
+        List<Long> result = new ArrayList<Long>();
+        try {
+            while (it.hasNext()) {
+                result.add(((Number) it.next().getValue(1)).longValue());
+            }
+        } finally {
+            it.close();
+        }
+        return result;
+    }
+
+    private File createQuadTree(File shpFile) throws Exception {
+        // a spatial query makes the store build the quadtree
+        ShapefileDataStore store = new ShapefileDataStore(shpFile.toURI().toURL());
+        try {
+            FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+            store.getFeatureSource().getFeatures(ff.bbox("", -100, 30, -80, 40, null)).size();
+        } finally {
+            store.dispose();
+        }
+        File qixFile = new File(shpFile.getParentFile(), "statepop.qix");
+        assertTrue(qixFile.exists());
+        return qixFile;
+    }
+
+    private QuadTree openQuadTree(File qixFile, ShpFiles shpFiles) throws Exception {
+        return new FileSystemIndexStore(qixFile).load(new IndexFile(shpFiles, false), false);
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        File shpFile = copyShapefiles("shapes/statepop.shp");
+        ShpFiles shpFiles = new ShpFiles(shpFile);
+        File qixFile = createQuadTree(shpFile);
+
+        QuadTree quadTree = openQuadTree(qixFile, shpFiles);
+        CachedQuadTree cached = new CachedQuadTree(quadTree);
+        quadTree.close();
+        assertTrue(cached.getNodeCount() > 1);
+        assertTrue(cached.getSizeInBytes() > 0);
+
+        Envelope[] queries = new Envelope[] { new Envelope(-100, -80, 30, 40),
+                new Envelope(-75, -74, 40, 41), new Envelope(0, 10, 0, 10),
+                cached.getBounds() };
+        for (Envelope query : queries) {
+            List<Long> expected;
+            quadTree = openQuadTree(qixFile, shpFiles);
+            try {
+                expected = collect(quadTree.search(query));
+            } finally {
+                quadTree.close();
+            }
+            List<Long> actual = collect(cached.search(query));
+            // the cached tree returns the offsets sorted
+            Collections.sort(expected);
+            assertEquals(query.toString(), expected, actual);
+        }
+        assertTrue(collect(cached.search(new Envelope(0, 10, 0, 10))).isEmpty());
+        assertEquals(49, collect(cached.search(cached.getBounds())).size());
+    }
+
+    @Test
+    public void testSharedCache() throws Exception {
+        File shpFile = copyShapefiles("shapes/statepop.shp");
+        ShpFiles shpFiles = new ShpFiles(shpFile);
+        File qixFile = createQuadTree(shpFile);
+
+        QuadTree quadTree = openQuadTree(qixFile, shpFiles);
+        CachedQuadTree tree = new CachedQuadTree(quadTree);
+        quadTree.close();
+
+        QuadTreeCache cache = new QuadTreeCache(Long.MAX_VALUE);
+        assertNull(cache.get(qixFile));
+        cache.put(qixFile, tree);
+        assertSame(tree, cache.get(qixFile));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(tree.getSizeInBytes(), cache.getSizeInBytes());
+
+        // modifying the file invalidates the tree
+        assertTrue(qixFile.setLastModified(qixFile.lastModified() - 10000));
+        assertNull(cache.get(qixFile));
+        assertEquals(0, cache.getTreeCount());
+        assertEquals(0, cache.getSizeInBytes());
+
+        // going over budget evicts the least recently used trees
+        cache.put(qixFile, tree);
+        cache.setMaxBytes(tree.getSizeInBytes() - 1);
+        assertEquals(0, cache.getTreeCount());
+        assertEquals(1, cache.getEvictions());
+    }
+}
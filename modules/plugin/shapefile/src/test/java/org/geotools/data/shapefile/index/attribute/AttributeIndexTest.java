@@ -0,0 +1,255 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.shapefile.index.attribute;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.geotools.data.Query;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.TestCaseSupport;
+import org.geotools.data.shapefile.dbf.DbaseFileHeader;
+import org.geotools.data.shapefile.dbf.DbaseFileReader;
+import org.geotools.data.shapefile.dbf.DbaseFileWriter;
+import org.geotools.data.shapefile.files.ShpFiles;
+import org.geotools.data.shapefile.files.ShpFileType;
+import org.geotools.factory.CommonFactoryFinder;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+
+/**
+ *
+ *
+ * @source $URL$
+ */
+public class AttributeIndexTest extends TestCaseSupport {
+
+    @Test
+    public void testLookups() throws Exception {
+        File shpFile = copyShapefiles("shapes/statepop.shp");
+        File indexFile = getTempFile();
+        List<Object[]> rows = new ArrayList<Object[]>();
+        DbaseFileReader dbf = new DbaseFileReader(new ShpFiles(shpFile), false,
+                Charset.forName("ISO-8859-1"));
+        try {
+            int name = 0, persons = 0;
+            for (int i = 0; i < dbf.getHeader().getNumFields(); i++) {
+                if (dbf.getHeader().getFieldName(i).equals("STATE_NAME")) {
+                    name = i;
+                } else if (dbf.getHeader().getFieldName(i).equals("PERSONS")) {
+                    persons = i;
+                }
+            }
+            while (dbf.hasNext()) {
+                Object[] values = dbf.readEntry();
+                rows.add(new Object[] { values[name], values[persons] });
+            }
+        } finally {
+            dbf.close();
+        }
+
+        dbf = new DbaseFileReader(new ShpFiles(shpFile), false, Charset.forName("ISO-8859-1"));
+        try {
+            AttributeIndexBuilder builder = new AttributeIndexBuilder(Arrays.asList("STATE_NAME",
+                    "PERSONS", "NOT_THERE"));
+            assertEquals(2, builder.build(dbf, indexFile));
+        } finally {
+            dbf.close();
+        }
+
+        for (boolean memoryMapped : new boolean[] { true, false }) {
+            AttributeIndex index = new AttributeIndex(indexFile, memoryMapped);
+            try {
+                assertEquals(2, index.getColumns().size());
+                assertEquals(AttributeIndex.STRING, index.getType("STATE_NAME"));
+                assertEquals(AttributeIndex.NUMBER, index.getType("PERSONS"));
+
+                for (int i = 0; i < rows.size(); i++) {
+                    int[] found = index.equalTo("STATE_NAME", rows.get(i)[0]);
+                    assertTrue(Arrays.binarySearch(found, i) >= 0);
+                }
+                assertEquals(0, index.equalTo("STATE_NAME", "Atlantis").length);
+
+                double threshold = 3000000;
+                List<Integer> expected = new ArrayList<Integer>();
+                for (int i = 0; i < rows.size(); i++) {
+                    if (((Number) rows.get(i)[1]).doubleValue() > threshold) {
+                        expected.add(i);
+                    }
+                }
+                int[] found = index.range("PERSONS", threshold, false, null, false);
+                assertEquals(expected.size(), found.length);
+                for (int i = 0; i < found.length; i++) {
+                    assertEquals(expected.get(i).intValue(), found[i]);
+                }
+                int[] below = index.range("PERSONS", null, false, threshold, true);
+                assertEquals(rows.size(), found.length + below.length);
+            } finally {
+                index.close();
+            }
+        }
+    }
+
+    @Test
+    public void testStoreQueries() throws Exception {
+        File shpFile = copyShapefiles("shapes/statepop.shp");
+        ShapefileDataStore indexed = new ShapefileDataStore(shpFile.toURI().toURL());
+        indexed.setIndexedAttributes(Arrays.asList("STATE_NAME", "PERSONS"));
+        ShapefileDataStore plain = new ShapefileDataStore(shpFile.toURI().toURL());
+        plain.setIndexed(false);
+        try {
+            String typeName = indexed.getTypeNames()[0];
+            FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+            Filter[] filters = new Filter[] {
+                    ff.equals(ff.property("STATE_NAME"), ff.literal("Illinois")),
+                    ff.greater(ff.property("PERSONS"), ff.literal(3000000)),
+                    ff.lessOrEqual(ff.literal(3000000), ff.property("PERSONS")),
+                    ff.between(ff.property("PERSONS"), ff.literal(1000000), ff.literal("5000000")),
+                    ff.or(ff.equals(ff.property("STATE_NAME"), ff.literal("Illinois")),
+                            ff.equals(ff.property("STATE_NAME"), ff.literal("Texas"))),
+                    ff.and(ff.greater(ff.property("PERSONS"), ff.literal(3000000)),
+                            ff.bbox("", -100, 30, -80, 40, null)),
+                    ff.and(ff.greater(ff.property("PERSONS"), ff.literal(3000000)),
+                            ff.like(ff.property("STATE_NAME"), "New*")) };
+            for (Filter filter : filters) {
+                Query query = new Query(typeName, filter);
+                int expected = plain.getFeatureSource().getFeatures(query).size();
+                assertTrue(expected > 0);
+                assertEquals(filter.toString(), expected, indexed.getFeatureSource()
+                        .getFeatures(query).size());
+            }
+            assertTrue(new File(shpFile.getParentFile(), "statepop.aix").exists());
+        } finally {
+            indexed.dispose();
+            plain.dispose();
+        }
+    }
+
+    @Test
+    public void testStaleAgainstDbf() throws Exception {
+        File shpFile = copyShapefiles("shapes/statepop.shp");
+        File dbfFile = new File(shpFile.getParentFile(), "statepop.dbf");
+        File aixFile = new File(shpFile.getParentFile(), "statepop.aix");
+        ShapefileDataStore indexed = new ShapefileDataStore(shpFile.toURI().toURL());
+        indexed.setIndexedAttributes(Arrays.asList("STATE_NAME"));
+        try {
+            String typeName = indexed.getTypeNames()[0];
+            FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+            Query illinois = new Query(typeName, ff.equals(ff.property("STATE_NAME"),
+                    ff.literal("Illinois")));
+            Query atlantis = new Query(typeName, ff.equals(ff.property("STATE_NAME"),
+                    ff.literal("Atlantis")));
+            assertEquals(1, indexed.getFeatureSource().getFeatures(illinois).size());
+            assertTrue(aixFile.exists());
+
+            // rename Illinois in the dbf alone, the shp is left untouched
+            Charset charset = Charset.forName("ISO-8859-1");
+            DbaseFileReader dbf = new DbaseFileReader(new ShpFiles(shpFile), false, charset);
+            DbaseFileHeader header = dbf.getHeader();
+            List<Object[]> rows = new ArrayList<Object[]>();
+            try {
+                int name = 0;
+                for (int i = 0; i < header.getNumFields(); i++) {
+                    if (header.getFieldName(i).equals("STATE_NAME")) {
+                        name = i;
+                    }
+                }
+                while (dbf.hasNext()) {
+                    Object[] values = dbf.readEntry();
+                    if ("Illinois".equals(values[name])) {
+                        values[name] = "Atlantis";
+                    }
+                    rows.add(values);
+                }
+            } finally {
+                dbf.close();
+            }
+            FileOutputStream fos = new FileOutputStream(dbfFile);
+            DbaseFileWriter writer = new DbaseFileWriter(header, fos.getChannel(), charset);
+            try {
+                for (Object[] row : rows) {
+                    writer.write(row);
+                }
+            } finally {
+                writer.close();
+                fos.close();
+            }
+            long now = System.currentTimeMillis();
+            shpFile.setLastModified(now - 20000);
+            aixFile.setLastModified(now - 10000);
+            dbfFile.setLastModified(now);
+
+            assertEquals(0, indexed.getFeatureSource().getFeatures(illinois).size());
+            assertEquals(1, indexed.getFeatureSource().getFeatures(atlantis).size());
+        } finally {
+            indexed.dispose();
+        }
+    }
+
+    @Test
+    public void testRemoteShapefile() throws Exception {
+        // a shapefile read through a non file url cannot be indexed
+        File shpFile = copyShapefiles("shapes/statepop.shp");
+        File jar = new File(shpFile.getParentFile(), "statepop.jar");
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            for (ShpFileType type : new ShpFileType[] { ShpFileType.SHP, ShpFileType.SHX,
+                    ShpFileType.DBF, ShpFileType.PRJ }) {
+                File file = new File(shpFile.getParentFile(), "statepop." + type.extension);
+                zos.putNextEntry(new ZipEntry(file.getName()));
+                FileInputStream fis = new FileInputStream(file);
+                try {
+                    byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = fis.read(buffer)) > 0) {
+                        zos.write(buffer, 0, read);
+                    }
+                } finally {
+                    fis.close();
+                }
+                zos.closeEntry();
+            }
+        } finally {
+            zos.close();
+        }
+
+        URL url = new URL("jar:" + jar.toURI().toURL() + "!/statepop.shp");
+        ShapefileDataStore indexed = new ShapefileDataStore(url);
+        indexed.setIndexedAttributes(Arrays.asList("STATE_NAME"));
+        try {
+            String typeName = indexed.getTypeNames()[0];
+            FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+            Query illinois = new Query(typeName, ff.equals(ff.property("STATE_NAME"),
+                    ff.literal("Illinois")));
+            assertEquals(1, indexed.getFeatureSource().getFeatures(illinois).size());
+            assertFalse(new File(shpFile.getParentFile(), "statepop.aix").exists());
+        } finally {
+            indexed.dispose();
+        }
+    }
+}
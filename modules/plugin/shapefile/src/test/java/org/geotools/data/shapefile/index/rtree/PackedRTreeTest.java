@@ -0,0 +1,196 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.shapefile.index.rtree;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.geotools.data.Query;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.TestCaseSupport;
+import org.geotools.data.shapefile.index.CloseableIterator;
+import org.geotools.data.shapefile.index.Data;
+import org.geotools.factory.CommonFactoryFinder;
+import org.junit.Test;
+import org.opengis.filter.FilterFactory2;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ *
+ *
+ * @source $URL$
+ */
+public class PackedRTreeTest extends TestCaseSupport {
+
+    @Test
+    public void testSearch() throws Exception {
+        // skewed data, most of the boxes are packed in a small area
+        Random random = new Random(42);
+        List<Envelope> boxes = new ArrayList<Envelope>();
+        for (int i = 0; i < 5000; i++) {
+            double size = i % 10 == 0 ? 1000 : 1;
+            double x = (i % 10 == 0 ? random.nextDouble() * 10000 : 5000 + random.nextDouble() * 10);
+            double y = (i % 10 == 0 ? random.nextDouble() * 10000 : 5000 + random.nextDouble() * 10);
+            boxes.add(new Envelope(x, x + random.nextDouble() * size, y, y + random.nextDouble()
+                    * size));
+        }
+
+        File file = getTempFile();
+        PackedRTreeBuilder builder = new PackedRTreeBuilder(8);
+        for (int i = 0; i < boxes.size(); i++) {
+            builder.insert(boxes.get(i), i);
+        }
+        builder.store(file);
+
+        Envelope[] queries = new Envelope[] { new Envelope(5000, 5005, 5000, 5005),
+                new Envelope(0, 2000, 0, 2000), new Envelope(-10, -5, -10, -5),
+                new Envelope(0, 20000, 0, 20000) };
+        for (boolean memoryMapped : new boolean[] { true, false }) {
+            PackedRTree tree = new PackedRTree(file, memoryMapped);
+            try {
+                assertEquals(boxes.size(), tree.getNumShapes());
+                assertEquals(8, tree.getNodeSize());
+                Envelope bounds = new Envelope();
+                for (Envelope box : boxes) {
+                    bounds.expandToInclude(box);
+                }
+                assertEquals(bounds, tree.getBounds());
+
+                for (Envelope query : queries) {
+                    List<Integer> expected = new ArrayList<Integer>();
+                    for (int i = 0; i < boxes.size(); i++) {
+                        if (boxes.get(i).intersects(query)) {
+                            expected.add(i);
+                        }
+                    }
+                    int[] offsets = tree.searchOffsets(query);
+                    assertEquals(expected.size(), offsets.length);
+                    for (int i = 0; i < offsets.length; i++) {
+                        assertEquals(expected.get(i).intValue(), offsets[i]);
+                    }
+                }
+            } finally {
+                tree.close();
+            }
+        }
+    }
+
+    @Test
+    public void testSmallAndEmpty() throws Exception {
+        File file = getTempFile();
+        PackedRTreeBuilder builder = new PackedRTreeBuilder();
+        builder.store(file);
+        PackedRTree tree = new PackedRTree(file, false);
+        try {
+            assertEquals(0, tree.getNumShapes());
+            assertEquals(0, tree.searchOffsets(new Envelope(0, 10, 0, 10)).length);
+        } finally {
+            tree.close();
+        }
+
+        builder = new PackedRTreeBuilder();
+        builder.insert(new Envelope(0, 1, 0, 1), 50);
+        builder.insert(new Envelope(5, 6, 5, 6), 100);
+        builder.store(file);
+        tree = new PackedRTree(file, true);
+        try {
+            assertTrue(Arrays.equals(new int[] { 50, 100 },
+                    tree.searchOffsets(new Envelope(0, 10, 0, 10))));
+            CloseableIterator<Data> it = tree.search(new Envelope(4, 10, 4, 10));
+            assertTrue(it.hasNext());
+            assertEquals(200L, it.next().getValue(1));
+            assertFalse(it.hasNext());
+            it.close();
+        } finally {
+            tree.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentSearch() throws Exception {
+        File file = getTempFile();
+        PackedRTreeBuilder builder = new PackedRTreeBuilder(4);
+        for (int i = 0; i < 1000; i++) {
+            builder.insert(new Envelope(i, i + 1, i, i + 1), i);
+        }
+        builder.store(file);
+
+        for (boolean memoryMapped : new boolean[] { true, false }) {
+            final PackedRTree tree = new PackedRTree(file, memoryMapped);
+            try {
+                ExecutorService executor = Executors.newFixedThreadPool(4);
+                List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+                for (int t = 0; t < 16; t++) {
+                    final int start = t * 50;
+                    results.add(executor.submit(new Callable<Boolean>() {
+                        public Boolean call() throws Exception {
+                            for (int i = start; i < start + 200; i++) {
+                                int[] offsets = tree.searchOffsets(new Envelope(i + 0.2,
+                                        i + 0.8, i + 0.2, i + 0.8));
+                                if (offsets.length != 1 || offsets[0] != i) {
+                                    return false;
+                                }
+                            }
+                            return true;
+                        }
+                    }));
+                }
+                for (Future<Boolean> result : results) {
+                    assertTrue(result.get());
+                }
+                executor.shutdown();
+            } finally {
+                tree.close();
+            }
+        }
+    }
+
+    @Test
+    public void testStoreQueries() throws Exception {
+        File shpFile = copyShapefiles("shapes/statepop.shp");
+        ShapefileDataStore packed = new ShapefileDataStore(shpFile.toURI().toURL());
+        packed.setPackedSpatialIndex(true);
+        ShapefileDataStore plain = new ShapefileDataStore(shpFile.toURI().toURL());
+        plain.setIndexed(false);
+        try {
+            String typeName = packed.getTypeNames()[0];
+            FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+            Envelope[] queries = new Envelope[] { new Envelope(-100, -80, 30, 40),
+                    new Envelope(-75, -70, 40, 45), new Envelope(0, 10, 0, 10) };
+            for (Envelope envelope : queries) {
+                Query query = new Query(typeName, ff.bbox("", envelope.getMinX(),
+                        envelope.getMinY(), envelope.getMaxX(), envelope.getMaxY(), null));
+                assertEquals(plain.getFeatureSource().getFeatures(query).size(), packed
+                        .getFeatureSource().getFeatures(query).size());
+            }
+            assertTrue(new File(shpFile.getParentFile(), "statepop.hrx").exists());
+        } finally {
+            packed.dispose();
+            plain.dispose();
+        }
+    }
+}
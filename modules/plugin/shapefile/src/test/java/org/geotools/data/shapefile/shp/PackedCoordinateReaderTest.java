@@ -0,0 +1,127 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2015, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.shapefile.shp;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.geotools.geometry.jts.LiteCoordinateSequence;
+import org.geotools.geometry.jts.LiteCoordinateSequenceFactory;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.io.WKTReader;
+
+/**
+ *
+ *
+ * @source $URL$
+ */
+public class PackedCoordinateReaderTest {
+
+    GeometryFactory gf = new GeometryFactory();
+
+    GeometryFactory liteGf = new GeometryFactory(new LiteCoordinateSequenceFactory());
+
+    @Test
+    public void testPolygon() throws Exception {
+        Geometry polygon = new WKTReader(gf).read("MULTIPOLYGON(((0 0, 10 0, 10 10, 0 10, 0 0), "
+                + "(2 2, 2 4, 4 4, 4 2, 2 2)), ((20 20, 30 20, 30 30, 20 20)))");
+        checkRead(polygon, new PolygonHandler(ShapeType.POLYGON, gf),
+                new PolygonHandler(ShapeType.POLYGON, liteGf), false);
+        checkRead(polygon, new PolygonHandler(ShapeType.POLYGONZ, gf), new PolygonHandler(
+                ShapeType.POLYGONZ, liteGf), false);
+    }
+
+    @Test
+    public void testPolygonZ() throws Exception {
+        Geometry polygon = new WKTReader(gf)
+                .read("POLYGON((0 0 1, 10 0 2, 10 10 3, 0 10 4, 0 0 1))");
+        checkRead(polygon, new PolygonHandler(ShapeType.POLYGONZ, gf), new PolygonHandler(
+                ShapeType.POLYGONZ, liteGf), true);
+    }
+
+    @Test
+    public void testLines() throws Exception {
+        Geometry lines = new WKTReader(gf)
+                .read("MULTILINESTRING((0 0 1, 10 0 2, 10 10 3), (20 20 4, 30 30 5))");
+        checkRead(lines, new MultiLineHandler(ShapeType.ARC, gf), new MultiLineHandler(
+                ShapeType.ARC, liteGf), false);
+        checkRead(lines, new MultiLineHandler(ShapeType.ARCZ, gf), new MultiLineHandler(
+                ShapeType.ARCZ, liteGf), true);
+    }
+
+    @Test
+    public void testSinglePointLine() throws Exception {
+        Geometry lines = new WKTReader(gf).read("MULTILINESTRING((0 0, 10 10), (5 5, 5 5))");
+        ByteBuffer buffer = write(lines, new MultiLineHandler(ShapeType.ARC, gf));
+        // move the second part offset so that it contains a single point
+        buffer.putInt(44, 3);
+        Geometry read = (Geometry) new MultiLineHandler(ShapeType.ARC, liteGf).read(buffer,
+                ShapeType.ARC, false);
+        LineString second = (LineString) read.getGeometryN(1);
+        assertEquals(2, second.getNumPoints());
+        assertTrue(second.getCoordinateN(0).equals2D(second.getCoordinateN(1)));
+    }
+
+    @Test
+    public void testMultiPoint() throws Exception {
+        Geometry points = new WKTReader(gf).read("MULTIPOINT((0 0 1), (10 0 2), (10 10 3))");
+        checkRead(points, new MultiPointHandler(ShapeType.MULTIPOINT, gf), new MultiPointHandler(
+                ShapeType.MULTIPOINT, liteGf), false);
+        checkRead(points, new MultiPointHandler(ShapeType.MULTIPOINTZ, gf),
+                new MultiPointHandler(ShapeType.MULTIPOINTZ, liteGf), true);
+    }
+
+    /**
+     * Writes the geometry, reads it back with both the standard and packed handler, and compares
+     * the results
+     */
+    void checkRead(Geometry geometry, ShapeHandler handler, ShapeHandler packedHandler,
+            boolean checkZ) {
+        ByteBuffer buffer = write(geometry, handler);
+        Geometry expected = (Geometry) handler.read(buffer, handler.getShapeType(), false);
+        buffer.position(0);
+        Geometry actual = (Geometry) packedHandler.read(buffer, handler.getShapeType(), false);
+
+        assertTrue(expected.equalsExact(actual));
+        assertEquals(expected.getNumGeometries(), actual.getNumGeometries());
+        for (int i = 0; i < actual.getNumGeometries(); i++) {
+            Geometry g = actual.getGeometryN(i);
+            if (g instanceof LineString) {
+                assertTrue(((LineString) g).getCoordinateSequence() instanceof LiteCoordinateSequence);
+            }
+        }
+        if (checkZ) {
+            for (int i = 0; i < expected.getNumPoints(); i++) {
+                assertEquals(expected.getCoordinates()[i].z, actual.getCoordinates()[i].z, 0d);
+            }
+        }
+    }
+
+    ByteBuffer write(Geometry geometry, ShapeHandler handler) {
+        ByteBuffer buffer = ByteBuffer.allocate(handler.getLength(geometry));
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        handler.write(buffer, geometry);
+        buffer.flip();
+        return buffer;
+    }
+}